@@ -0,0 +1,150 @@
+package bench;
+
+import java.util.Locale;
+
+/**
+ * Benchmark measures the average time taken by an operation.
+ * The operation is first run for a warm-up period, so that the JIT compiler optimizes it, then run in batches
+ * of growing size until the measurement period is over. The results of the operation are kept in a field
+ * visible to other threads, so that the compiler cannot remove the work as dead code.
+ */
+public final class Benchmark {
+
+    /**
+     * An operation to measure.
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        /**
+         * Runs the operation once.
+         *
+         * @return Any result of the operation, consumed so that the work is not optimized away.
+         * @throws Exception If the operation fails, which aborts the benchmark.
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * The result of a benchmark.
+     */
+    public static final class Result {
+        private final String name;
+        private final String parameter;
+        private final long iterations;
+        private final double nanosPerOperation;
+
+        Result(String name, String parameter, long iterations, double nanosPerOperation) {
+            this.name = name;
+            this.parameter = parameter;
+            this.iterations = iterations;
+            this.nanosPerOperation = nanosPerOperation;
+        }
+
+        /**
+         * Gets the name of the benchmark.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the parameter of the benchmark, such as the size of the model.
+         *
+         * @return The parameter.
+         */
+        public String getParameter() {
+            return parameter;
+        }
+
+        /**
+         * Gets the number of operations measured.
+         *
+         * @return The number of operations.
+         */
+        public long getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Gets the average time taken by one operation.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public double getNanosPerOperation() {
+            return nanosPerOperation;
+        }
+
+        /**
+         *
+         * @return The result as a line of CSV: name, parameter and nanoseconds per operation.
+         */
+        public String toCsv() {
+            return name + "," + parameter + "," + String.format(Locale.ROOT, "%.1f", nanosPerOperation);
+        }
+
+        /**
+         *
+         * @return A string describing the result.
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-20s %10s %16.1f ns/op %10d ops", name, parameter, nanosPerOperation, iterations);
+        }
+    }
+
+    /**
+     * Field receiving the results of the operations.
+     */
+    public static volatile Object sink;
+
+    /**
+     * Duration of the warm-up and of the measurement, in nanoseconds.
+     */
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    /**
+     * Constructs a benchmark with the given warm-up and measurement durations.
+     *
+     * @param warmupMillis The warm-up duration, in milliseconds.
+     * @param measureMillis The measurement duration, in milliseconds.
+     */
+    public Benchmark(long warmupMillis, long measureMillis) {
+        this.warmupNanos = warmupMillis * 1_000_000L;
+        this.measureNanos = measureMillis * 1_000_000L;
+    }
+
+    /**
+     * Measures an operation. The operation is run at least once during the warm-up and once during the
+     * measurement, even if it takes longer than these periods.
+     *
+     * @param name The name of the benchmark.
+     * @param parameter The parameter of the benchmark.
+     * @param operation The operation.
+     * @return The result.
+     * @throws Exception If the operation fails.
+     */
+    public Result measure(String name, Object parameter, Operation operation) throws Exception {
+        long end = System.nanoTime() + warmupNanos;
+        do {
+            sink = operation.run();
+        } while (System.nanoTime() < end);
+
+        long iterations = 0;
+        long elapsed = 0;
+        long batch = 1;
+        while (elapsed < measureNanos) {
+            long begin = System.nanoTime();
+            for (long i = 0; i < batch; i++) {
+                sink = operation.run();
+            }
+            elapsed += System.nanoTime() - begin;
+            iterations += batch;
+            batch = Math.min(batch * 2, 1 << 20);
+        }
+        return new Result(name, String.valueOf(parameter), iterations, (double) elapsed / iterations);
+    }
+}
@@ -0,0 +1,241 @@
+package bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import compo.*;
+import model.CanvasManager;
+import model.Model;
+
+/**
+ * Benchmarks runs the benchmarks of the hot paths of the simulation on synthetic factories:
+ * ticks, itinerary calculation, room lookup, component insertion and persistence round trips.
+ *
+ * Usage: {@code java bench.Benchmarks [--quick] [--csv results.csv] [--baseline baseline.csv]}
+ * <ul>
+ * <li>{@code --quick} runs shorter measurements on the smaller sizes only;</li>
+ * <li>{@code --csv} saves the results, to be used as the baseline of later runs;</li>
+ * <li>{@code --baseline} prints the ratio of every result to the same benchmark of a saved run.</li>
+ * </ul>
+ */
+public final class Benchmarks {
+
+    /**
+     * Seed of the synthetic factories, so that every run measures the same models.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Number of rooms of the factories used by the tick benchmarks.
+     */
+    private static final int TICK_ROOMS = 100;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args The options, see the description of the class.
+     * @throws Exception If a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        boolean quick = false;
+        Path csv = null;
+        Path baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quick":
+                    quick = true;
+                    break;
+                case "--csv":
+                    csv = Path.of(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Benchmark benchmark = quick ? new Benchmark(200, 500) : new Benchmark(2000, 5000);
+        int[] robotCounts = quick ? new int[] { 10, 1000 } : new int[] { 10, 1000, 100000 };
+        int[] roomCounts = quick ? new int[] { 16, 256 } : new int[] { 16, 256, 4096 };
+        int[] insertCounts = quick ? new int[] { 1000 } : new int[] { 1000, 10000 };
+
+        Map<String, Double> reference = baseline == null ? Map.of() : readCsv(baseline);
+        List<Benchmark.Result> results = new ArrayList<>();
+        for (int robots : robotCounts) {
+            report(results, reference, benchTick(benchmark, robots));
+        }
+        for (int rooms : roomCounts) {
+            report(results, reference, benchItinerary(benchmark, rooms));
+        }
+        for (int rooms : roomCounts) {
+            report(results, reference, benchGoodRoom(benchmark, rooms));
+        }
+        for (int rooms : insertCounts) {
+            report(results, reference, benchAddCompo(benchmark, rooms));
+        }
+        report(results, reference, benchPersistence(benchmark, 256, 1000));
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv))) {
+                out.println("benchmark,parameter,ns_per_op");
+                for (Benchmark.Result result : results) {
+                    out.println(result.toCsv());
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures a tick of a factory with the given number of robots.
+     */
+    static Benchmark.Result benchTick(Benchmark benchmark, int robots) throws Exception {
+        Model model = FactoryGenerator.generate(TICK_ROOMS, robots, SEED);
+        return benchmark.measure("tick", robots, () -> {
+            model.behave(true);
+            return model;
+        });
+    }
+
+    /**
+     * Measures the calculation of an itinerary through four production areas of a factory with the given
+     * number of rooms.
+     */
+    static Benchmark.Result benchItinerary(Benchmark benchmark, int rooms) throws Exception {
+        Model model = FactoryGenerator.generate(rooms, 1, SEED);
+        Factory factory = model.getFactories().get(0);
+        Robot robot = robots(factory).get(0);
+        List<ProductionArea> areas = new ArrayList<>();
+        for (Room room : factory.getRooms()) {
+            areas.addAll(room.getPaList());
+        }
+        Random random = new Random(SEED);
+        ArrayList<ArrayList<Component>> destinations = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ArrayList<Component> list = new ArrayList<>();
+            for (int d = 0; d < 4; d++) {
+                list.add(areas.get(random.nextInt(areas.size())));
+            }
+            destinations.add(list);
+        }
+        int[] next = { 0 };
+        return benchmark.measure("calculateItinerary", rooms, () -> {
+            next[0] = (next[0] + 1) % destinations.size();
+            return robot.calculateItinerary(destinations.get(next[0]));
+        });
+    }
+
+    /**
+     * Measures the lookup of the room of a robot moving to random points of a factory with the given number of rooms.
+     */
+    static Benchmark.Result benchGoodRoom(Benchmark benchmark, int rooms) throws Exception {
+        Model model = FactoryGenerator.generate(rooms, 1, SEED);
+        Factory factory = model.getFactories().get(0);
+        Robot robot = robots(factory).get(0);
+        Random random = new Random(SEED);
+        int[] xs = new int[1024];
+        int[] ys = new int[1024];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = factory.getxCoordinate() + random.nextInt(factory.getWidth());
+            ys[i] = factory.getyCoordinate() + random.nextInt(factory.getHeight());
+        }
+        int[] next = { 0 };
+        return benchmark.measure("getGoodRoom", rooms, () -> {
+            int i = next[0] = (next[0] + 1) & (xs.length - 1);
+            robot.setxCoord(xs[i]);
+            robot.setyCoord(ys[i]);
+            Room room = robot.getGoodRoom();
+            robot.setRoom(room);
+            return room;
+        });
+    }
+
+    /**
+     * Measures the building of a factory with the given number of rooms, each added with {@link Factory#addCompo}.
+     */
+    static Benchmark.Result benchAddCompo(Benchmark benchmark, int rooms) throws Exception {
+        int cols = (int) Math.ceil(Math.sqrt(rooms));
+        int size = cols * FactoryGenerator.ROOM_SIZE;
+        return benchmark.measure("addCompo", rooms, () -> {
+            Model model = new Model("Bench", size + 2 * Component.CANVAS_MARGIN, size + 2 * Component.CANVAS_MARGIN);
+            Factory factory = new Factory("Bench factory", size, size);
+            model.addComponent(factory);
+            for (int i = 0; i < rooms; i++) {
+                new Room("Room " + i, (i % cols) * FactoryGenerator.ROOM_SIZE, (i / cols) * FactoryGenerator.ROOM_SIZE,
+                         FactoryGenerator.ROOM_SIZE, FactoryGenerator.ROOM_SIZE, factory);
+            }
+            return factory;
+        });
+    }
+
+    /**
+     * Measures saving a model with the canvas manager and reading it back.
+     */
+    static Benchmark.Result benchPersistence(Benchmark benchmark, int rooms, int robots) throws Exception {
+        Model model = FactoryGenerator.generate(rooms, robots, SEED);
+        Path directory = Files.createTempDirectory("bench");
+        model.setId(directory.resolve("model").toString());
+        CanvasManager manager = new CanvasManager(null);
+        int components = model.getCompoList().size();
+        try {
+            return benchmark.measure("persist+read", components, () -> {
+                manager.persist(model);
+                return manager.read(model.getId() + ".bin");
+            });
+        } finally {
+            Files.deleteIfExists(directory.resolve("model.bin"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Lists the robots of a factory.
+     */
+    private static List<Robot> robots(Factory factory) {
+        List<Robot> robots = new ArrayList<>();
+        for (Component c : factory.getComponents()) {
+            if (c instanceof Robot) {
+                robots.add((Robot) c);
+            }
+        }
+        return robots;
+    }
+
+    /**
+     * Prints a result, compared with the same benchmark of the baseline if any, and keeps it.
+     */
+    private static void report(List<Benchmark.Result> results, Map<String, Double> baseline, Benchmark.Result result) {
+        results.add(result);
+        Double reference = baseline.get(result.getName() + "," + result.getParameter());
+        if (reference == null) {
+            System.out.println(result);
+        } else {
+            System.out.println(result + String.format(Locale.ROOT, "   x%.2f vs baseline", result.getNanosPerOperation() / reference));
+        }
+    }
+
+    /**
+     * Reads the results of a previous run, by benchmark name and parameter.
+     */
+    private static Map<String, Double> readCsv(Path file) throws IOException {
+        Map<String, Double> results = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            int comma = line.lastIndexOf(',');
+            if (comma > 0 && !line.startsWith("benchmark,")) {
+                results.put(line.substring(0, comma), Double.parseDouble(line.substring(comma + 1)));
+            }
+        }
+        return results;
+    }
+}
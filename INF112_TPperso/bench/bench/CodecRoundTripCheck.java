@@ -0,0 +1,125 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import compo.*;
+import model.Model;
+import model.ModelCodec;
+
+/**
+ * CodecRoundTripCheck saves a generated model whose simulation settings differ from the defaults, reads it back,
+ * both from a stream and by mapping the file, and checks that every setting survived. It is run whenever a setting
+ * is added to a factory or to its components, since a setting the codec does not write is silently reset on load.
+ *
+ * Usage: {@code java bench.CodecRoundTripCheck}.
+ * The process exits with status 1 if a setting was lost.
+ */
+public final class CodecRoundTripCheck {
+
+    private CodecRoundTripCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Unused.
+     * @throws IOException If the model cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        Model model = FactoryGenerator.generate(9, 20, 1);
+        Factory factory = model.getFactories().get(0);
+        factory.setBatteries(200, 5);
+        factory.getDoors().get(0).setCapacity(3);
+        factory.getDoors().get(1).setCapacity(1);
+        factory.setDispatching(true);
+        factory.setCollisionsIgnored(true);
+        List<ProductionMachine> machines = machines(factory);
+        machines.get(0).setJobs(machines.get(1).getPa(), 40);
+        machines.get(2).setJobs(machines.get(0), 25);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelCodec.write(model, out);
+        byte[] bytes = out.toByteArray();
+        boolean passed = compare("lecture", factory, ModelCodec.read(new ByteArrayInputStream(bytes)));
+        Path file = Files.createTempFile("roundtrip", ".bin");
+        try {
+            Files.write(file, bytes);
+            passed &= compare("projection", factory, ModelCodec.map(file));
+        } finally {
+            Files.delete(file);
+        }
+        System.out.println(passed ? "Aller-retour : OK" : "Aller-retour : ECHEC");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares the settings of a factory with those of the factory of a model read back.
+     *
+     * @param mode The way the model was read back.
+     * @param expected The factory saved.
+     * @param model The model read back.
+     * @return True if every setting is the same.
+     */
+    private static boolean compare(String mode, Factory expected, Model model) {
+        Factory actual = model.getFactories().get(0);
+        boolean passed = check(mode, "capacité des batteries", expected.getBatteryCapacity(), actual.getBatteryCapacity());
+        passed &= check(mode, "puissance de recharge", expected.getChargeRate(), actual.getChargeRate());
+        for (int i = 0; i < expected.getDoors().size(); i++) {
+            Door door = expected.getDoors().get(i), read = actual.getDoors().get(i);
+            passed &= check(mode, "capacité de " + door.getName(), door.getCapacity() + (door.isCapacitySet() ? "" : " par défaut"),
+                            read.getCapacity() + (read.isCapacitySet() ? "" : " par défaut"));
+        }
+        passed &= check(mode, "répartition des tâches", expected.isDispatching(), actual.isDispatching());
+        passed &= check(mode, "collisions ignorées", expected.isCollisionsIgnored(), actual.isCollisionsIgnored());
+        List<ProductionMachine> machines = machines(expected), readMachines = machines(actual);
+        for (int i = 0; i < machines.size(); i++) {
+            ProductionMachine machine = machines.get(i), read = readMachines.get(i);
+            passed &= check(mode, "intervalle des tâches de " + machine.getName(), machine.getJobInterval(), read.getJobInterval());
+            passed &= check(mode, "destination des tâches de " + machine.getName(), name(machine.getJobDestination()),
+                            name(read.getJobDestination()));
+        }
+        return passed;
+    }
+
+    /**
+     * Gets the machines of a factory, in the order of its rooms.
+     */
+    private static List<ProductionMachine> machines(Factory factory) {
+        List<ProductionMachine> machines = new ArrayList<>();
+        for (Room room : factory.getRooms()) {
+            for (ProductionArea area : room.getPaList()) {
+                machines.addAll(area.getPm());
+            }
+        }
+        return machines;
+    }
+
+    /**
+     * Gets the name of a component, or null.
+     */
+    private static String name(Component component) {
+        return component == null ? null : component.getName();
+    }
+
+    /**
+     * Checks that a setting was read back unchanged, printing it otherwise.
+     *
+     * @return True if the setting is the same.
+     */
+    private static boolean check(String mode, String setting, Object expected, Object actual) {
+        if (Objects.equals(expected, actual)) {
+            return true;
+        }
+        System.out.println(mode + " : " + setting + " " + expected + " -> " + actual);
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+package bench;
+
+import java.util.Random;
+
+import compo.Component;
+import model.Model;
+import model.ModelBuilder;
+
+/**
+ * FactoryGenerator builds synthetic models of any size for the benchmarks.
+ * A generated factory is a grid of square rooms, each room being connected to its right and bottom neighbours
+ * by a door, and holding a production area with a machine in it. Robots are spread over the rooms and go back
+ * and forth between randomly chosen production areas. The same parameters and seed always give the same model.
+ */
+public final class FactoryGenerator {
+
+    /**
+     * Side of the rooms.
+     */
+    public static final int ROOM_SIZE = 100;
+
+    /**
+     * Length of the doors, centered on the walls they are in.
+     */
+    private static final int DOOR_LENGTH = 40;
+
+    /**
+     * Size and speed of the robots.
+     */
+    private static final int ROBOT_SIZE = 10;
+    private static final int ROBOT_SPEED = 5;
+
+    /**
+     * Number of production areas visited by each robot.
+     */
+    private static final int DESTINATIONS_PER_ROBOT = 2;
+
+    private FactoryGenerator() {
+    }
+
+    /**
+     * Generates a model holding one factory.
+     *
+     * @param rooms The number of rooms of the factory.
+     * @param robots The number of robots of the factory.
+     * @param seed The seed of the random choice of the robot positions and destinations.
+     * @return The model.
+     */
+    public static Model generate(int rooms, int robots, long seed) {
+        int cols = (int) Math.ceil(Math.sqrt(rooms));
+        int rows = (rooms + cols - 1) / cols;
+        ModelBuilder builder = new ModelBuilder("Bench " + rooms + "x" + robots,
+                                                cols * ROOM_SIZE + 2 * Component.CANVAS_MARGIN,
+                                                rows * ROOM_SIZE + 2 * Component.CANVAS_MARGIN);
+        builder.factory("Bench factory", cols * ROOM_SIZE, rows * ROOM_SIZE);
+        for (int i = 0; i < rooms; i++) {
+            builder.room("Room " + i, x(i, cols), y(i, cols), ROOM_SIZE, ROOM_SIZE);
+        }
+        int offset = (ROOM_SIZE - DOOR_LENGTH) / 2;
+        for (int i = 0; i < rooms; i++) {
+            if (i % cols + 1 < cols && i + 1 < rooms) {
+                builder.door("Door " + i + "-" + (i + 1), x(i, cols) + ROOM_SIZE, y(i, cols) + offset, 1, DOOR_LENGTH,
+                             "Room " + i, "Room " + (i + 1));
+            }
+            if (i + cols < rooms) {
+                builder.door("Door " + i + "-" + (i + cols), x(i, cols) + offset, y(i, cols) + ROOM_SIZE, DOOR_LENGTH, 1,
+                             "Room " + i, "Room " + (i + cols));
+            }
+        }
+        for (int i = 0; i < rooms; i++) {
+            builder.area("Room " + i + " area", x(i, cols) + 10, y(i, cols) + 10, 40, 40, "Room " + i);
+            builder.machine("Room " + i + " machine", x(i, cols) + 20, y(i, cols) + 20, 10, 10, "Room " + i + " area");
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < robots; i++) {
+            int room = random.nextInt(rooms);
+            String[] destinations = new String[DESTINATIONS_PER_ROBOT];
+            for (int d = 0; d < DESTINATIONS_PER_ROBOT; d++) {
+                destinations[d] = "Room " + random.nextInt(rooms) + " area";
+            }
+            builder.robot("R" + i, x(room, cols) + 60 + random.nextInt(30), y(room, cols) + 60 + random.nextInt(30),
+                          ROBOT_SIZE, ROBOT_SPEED, "Room " + room, destinations);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the x-coordinate of a room of the grid.
+     */
+    private static int x(int room, int cols) {
+        return (room % cols) * ROOM_SIZE;
+    }
+
+    /**
+     * Gets the y-coordinate of a room of the grid.
+     */
+    private static int y(int room, int cols) {
+        return (room / cols) * ROOM_SIZE;
+    }
+}
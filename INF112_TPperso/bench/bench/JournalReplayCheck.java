@@ -0,0 +1,184 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compo.*;
+import model.Model;
+import simu.SimulationEngine;
+import simu.SimulationJournal;
+
+/**
+ * JournalReplayCheck simulates generated models while recording them in a journal, restores them at a few ticks
+ * and simulates the restored models up to the end of the original run, checking that every robot ends in the same
+ * state. It is run whenever a robot or its factory keeps a new piece of state from one tick to the next, since state
+ * the journal does not record makes restored models drift away from the run they were recorded from.
+ *
+ * Usage: {@code java bench.JournalReplayCheck}.
+ * The process exits with status 1 if a restored model drifted.
+ */
+public final class JournalReplayCheck {
+
+    /**
+     * Number of ticks of the original run.
+     */
+    private static final int TICKS = 400;
+
+    /**
+     * Ticks the models are restored at.
+     */
+    private static final int[] RESTORED_TICKS = { 50, 250 };
+
+    /**
+     * Numbers of ticks between two snapshots of the journals: restoring then replays deltas from tick 0, or from
+     * a later snapshot.
+     */
+    private static final int[] SNAPSHOT_INTERVALS = { SimulationJournal.DEFAULT_SNAPSHOT_INTERVAL, 100 };
+
+    private JournalReplayCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Unused.
+     * @throws IOException If a journal cannot be written or read.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean passed = true;
+        for (String setting : new String[] { "défaut", "batteries", "portes", "tâches", "flotte" }) {
+            for (int interval : SNAPSHOT_INTERVALS) {
+                passed &= check(setting, interval);
+            }
+        }
+        System.out.println(passed ? "Rejeu du journal : OK" : "Rejeu du journal : ECHEC");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Records a run of a generated model, then restores it at each tick checked and simulates it to the end of the run.
+     *
+     * @param setting The settings of the factory, beyond the defaults.
+     * @param interval The number of ticks between two snapshots of the journal.
+     * @return True if every restored model ended in the state of the original one.
+     * @throws IOException If the journal cannot be written or read.
+     */
+    private static boolean check(String setting, int interval) throws IOException {
+        Model model = generate(setting);
+        Path file = Files.createTempFile("replay", ".jnl");
+        try (SimulationJournal journal = new SimulationJournal(model, file, interval)) {
+            SimulationEngine engine = new SimulationEngine(model);
+            engine.setJournal(journal);
+            engine.run(TICKS);
+            engine.setJournal(null);
+            int[][] expected = state(model);
+            boolean passed = true;
+            for (int tick : RESTORED_TICKS) {
+                Model restored = journal.restore(tick);
+                new SimulationEngine(restored).run(TICKS - tick);
+                int drifted = compare(expected, state(restored));
+                if (drifted > 0) {
+                    System.out.println(setting + ", instantané toutes les " + interval + " ticks, restauré au tick " + tick + " : "
+                                       + drifted + " robots divergent");
+                    passed = false;
+                }
+            }
+            return passed;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Generates a model with the given settings: the defaults, batteries sending the robots to charge, doors
+     * letting one robot through at a time, machines emitting jobs dispatched to the robots, or robots with batteries
+     * moved by a fleet.
+     */
+    private static Model generate(String setting) {
+        Model model = FactoryGenerator.generate(16, 30, 7);
+        Factory factory = model.getFactories().get(0);
+        switch (setting) {
+        case "batteries":
+            addStations(factory);
+            factory.setBatteries(600, 40);
+            break;
+        case "portes":
+            for (Door door : factory.getDoors()) {
+                door.setCapacity(1);
+            }
+            break;
+        case "tâches":
+            addStations(factory);
+            factory.setBatteries(900, 40);
+            factory.setDispatching(true);
+            List<ProductionMachine> machines = new ArrayList<>();
+            for (Room room : factory.getRooms()) {
+                for (ProductionArea area : room.getPaList()) {
+                    machines.addAll(area.getPm());
+                }
+            }
+            for (int i = 0; i < machines.size(); i++) {
+                machines.get(i).setJobs(machines.get((i + 5) % machines.size()), 30);
+            }
+            break;
+        case "flotte":
+            addStations(factory);
+            factory.setBatteries(600, 40);
+            factory.useFleet();
+            break;
+        default:
+            break;
+        }
+        return model;
+    }
+
+    /**
+     * Adds a power supply station to every other room of a factory.
+     */
+    private static void addStations(Factory factory) {
+        List<Room> rooms = factory.getRooms();
+        for (int i = 0; i < rooms.size(); i += 2) {
+            Room room = rooms.get(i);
+            new PowerSupplyStation("Station " + i, room.getxCoordinate() + 10, room.getyCoordinate() + 10, 'h', room);
+        }
+    }
+
+    /**
+     * Gets the state of the robots of a model: position, index of the destination and battery level of each robot.
+     */
+    private static int[][] state(Model model) {
+        List<int[]> robots = new ArrayList<>();
+        for (Factory factory : model.getFactories()) {
+            for (Component c : factory.getComponents()) {
+                if (c instanceof Robot) {
+                    Robot robot = (Robot) c;
+                    robots.add(new int[] { robot.getxCoordinate(), robot.getyCoordinate(), robot.getIndexOfDestination(),
+                                           robot.getEnergy() });
+                }
+            }
+        }
+        return robots.toArray(new int[0][]);
+    }
+
+    /**
+     * Counts the robots whose state differs between two models.
+     */
+    private static int compare(int[][] expected, int[][] actual) {
+        if (expected.length != actual.length) {
+            return Math.max(expected.length, actual.length);
+        }
+        int drifted = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (!Arrays.equals(expected[i], actual[i])) {
+                drifted++;
+            }
+        }
+        return drifted;
+    }
+}
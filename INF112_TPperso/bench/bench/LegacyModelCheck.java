@@ -0,0 +1,96 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import compo.*;
+import model.Model;
+import model.ModelCodec;
+import simu.SimulationEngine;
+
+/**
+ * LegacyModelCheck loads a model file, such as one saved in the legacy Java serialization format by former versions,
+ * simulates it for a few ticks and checks that every robot moved. It is run against the shipped model files whenever
+ * a field is added to a serialized component, since fields missing from old files are read as 0 or null.
+ *
+ * Usage: {@code java bench.LegacyModelCheck [model.bin ...]}, checking {@code M01.bin} by default.
+ * The process exits with status 1 if a robot of a file did not move.
+ */
+public final class LegacyModelCheck {
+
+    /**
+     * Number of ticks simulated before checking the positions of the robots.
+     */
+    private static final int TICKS = 50;
+
+    private LegacyModelCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args The model files to check.
+     * @throws IOException If a model file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String[] files = args.length > 0 ? args : new String[] { "M01.bin" };
+        boolean passed = true;
+        for (String file : files) {
+            passed &= check(Path.of(file), false);
+            passed &= check(Path.of(file), true);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads a model file, simulates it and checks that every robot moved.
+     *
+     * @param file The model file.
+     * @param batteries True to give batteries to the robots of the loaded factories before simulating them.
+     * @return True if every robot moved.
+     * @throws IOException If the model file cannot be read.
+     */
+    private static boolean check(Path file, boolean batteries) throws IOException {
+        Model model;
+        try (InputStream in = Files.newInputStream(file)) {
+            model = ModelCodec.read(in);
+        }
+        List<Robot> robots = new ArrayList<>();
+        for (Factory factory : model.getFactories()) {
+            if (batteries) {
+                factory.setBatteries(10000, 100);
+            }
+            for (Component c : factory.getComponents()) {
+                if (c instanceof Robot) {
+                    robots.add((Robot) c);
+                }
+            }
+        }
+        int[] xs = new int[robots.size()];
+        int[] ys = new int[robots.size()];
+        for (int i = 0; i < robots.size(); i++) {
+            xs[i] = robots.get(i).getxCoordinate();
+            ys[i] = robots.get(i).getyCoordinate();
+        }
+        new SimulationEngine(model).run(TICKS);
+
+        boolean passed = !robots.isEmpty();
+        String mode = batteries ? " (batteries)" : "";
+        for (int i = 0; i < robots.size(); i++) {
+            Robot robot = robots.get(i);
+            boolean moved = robot.getxCoordinate() != xs[i] || robot.getyCoordinate() != ys[i];
+            System.out.println(file + mode + " " + robot.getName() + " : (" + xs[i] + "," + ys[i] + ") -> ("
+                               + robot.getxCoordinate() + "," + robot.getyCoordinate() + ")"
+                               + (moved ? "" : " IMMOBILE"));
+            passed &= moved;
+        }
+        System.out.println(file + mode + (passed ? " : OK" : " : ECHEC"));
+        return passed;
+    }
+}
@@ -0,0 +1,177 @@
+package bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compo.*;
+import model.Model;
+import simu.ScenarioResult;
+import simu.ScenarioRunner;
+import simu.SimulationEngine;
+import simu.SimulationState;
+
+/**
+ * ScenarioCopyCheck simulates a generated model for a while, hands it to a {@link ScenarioRunner} and checks that the
+ * base scenario goes on exactly as the model itself does: same charges, strandings, delivered jobs and door waits.
+ * It also checks that a model whose robots cannot reach any station reports its strandings, and that a model rewound
+ * to a {@link SimulationState} captured earlier runs again exactly as it did. It is run whenever a
+ * factory keeps a new setting or piece of state, since the copies of the runner would silently lose it.
+ *
+ * Usage: {@code java bench.ScenarioCopyCheck}.
+ * The process exits with status 1 if a scenario did not behave as its base model.
+ */
+public final class ScenarioCopyCheck {
+
+    /**
+     * Number of ticks the base model is simulated before the runner copies it.
+     */
+    private static final int WARMUP_TICKS = 100;
+
+    /**
+     * Number of ticks simulated in the scenario and in the base model after the copy.
+     */
+    private static final int TICKS = 300;
+
+    private ScenarioCopyCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args Unused.
+     * @throws IOException If the model cannot be copied.
+     * @throws InterruptedException If the thread is interrupted while scenarios are running.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean passed = checkStrandings();
+        passed &= checkContinuation();
+        passed &= checkRewind();
+        System.out.println(passed ? "Copie des scénarios : OK" : "Copie des scénarios : ECHEC");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks that the robots of a factory without stations strand in the base scenario.
+     */
+    private static boolean checkStrandings() throws IOException, InterruptedException {
+        Model model = FactoryGenerator.generate(9, 20, 1);
+        model.getFactories().get(0).setBatteries(200, 5);
+        ScenarioResult result = new ScenarioRunner(model).run(TICKS).get(0);
+        if (result.getStrandings() == 0) {
+            System.out.println("sans station : aucun robot à court d'énergie");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the base scenario of a model already running measures what the model measures over the same ticks.
+     */
+    private static boolean checkContinuation() throws IOException, InterruptedException {
+        Model model = generate();
+        Factory factory = model.getFactories().get(0);
+        SimulationEngine engine = new SimulationEngine(model);
+        engine.run(WARMUP_TICKS);
+        ScenarioRunner runner = new ScenarioRunner(model);
+
+        ChargingScheduler scheduler = factory.getChargingScheduler();
+        long charges = scheduler.getCharges(), strandings = scheduler.getStrandings(), doorWaits = doorWaits(factory);
+        engine.run(TICKS);
+        ScenarioResult result = runner.run(TICKS).get(0);
+        boolean passed = check("recharges", scheduler.getCharges() - charges, result.getCharges());
+        passed &= check("robots à court d'énergie", scheduler.getStrandings() - strandings, result.getStrandings());
+        passed &= check("attentes aux portes", doorWaits(factory) - doorWaits, result.getDoorWaitTicks());
+        if (result.getCharges() == 0) {
+            System.out.println("continuation : aucune recharge");
+            passed = false;
+        }
+        return passed;
+    }
+
+    /**
+     * Checks that a model restored to a state captured during its run goes on exactly as it did from that state.
+     */
+    private static boolean checkRewind() {
+        Model model = generate();
+        SimulationEngine engine = new SimulationEngine(model);
+        engine.run(WARMUP_TICKS);
+        SimulationState state = SimulationState.capture(model);
+        engine.run(TICKS);
+        List<int[]> expected = robots(model);
+        state.restore(model);
+        engine.run(TICKS);
+        List<int[]> actual = robots(model);
+        int drifted = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals(expected.get(i), actual.get(i))) {
+                drifted++;
+            }
+        }
+        if (drifted > 0) {
+            System.out.println("retour en arrière : " + drifted + " robots divergent");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Generates a model whose robots charge at the stations of every other room and queue at a door letting one
+     * robot through at a time. The stations are added from the last room, so that the copies decoded by the runner
+     * list them in another order than the model.
+     */
+    private static Model generate() {
+        Model model = FactoryGenerator.generate(16, 30, 7);
+        Factory factory = model.getFactories().get(0);
+        List<Room> rooms = factory.getRooms();
+        for (int i = rooms.size() - 1; i >= 0; i -= 2) {
+            Room room = rooms.get(i);
+            new PowerSupplyStation("Station " + i, room.getxCoordinate() + 10, room.getyCoordinate() + 10, 'h', room);
+        }
+        factory.setBatteries(600, 40);
+        factory.getDoors().get(0).setCapacity(1);
+        return model;
+    }
+
+    /**
+     * Gets the position, index of the destination and battery level of each robot of a model.
+     */
+    private static List<int[]> robots(Model model) {
+        List<int[]> robots = new ArrayList<>();
+        for (Component c : model.getFactories().get(0).getComponents()) {
+            if (c instanceof Robot) {
+                Robot robot = (Robot) c;
+                robots.add(new int[] { robot.getxCoordinate(), robot.getyCoordinate(), robot.getIndexOfDestination(),
+                                       robot.getEnergy() });
+            }
+        }
+        return robots;
+    }
+
+    /**
+     * Gets the total number of ticks robots waited at the doors of a factory.
+     */
+    private static long doorWaits(Factory factory) {
+        long waits = 0;
+        for (Door door : factory.getDoors()) {
+            waits += door.getTraffic().getWaitTicks();
+        }
+        return waits;
+    }
+
+    /**
+     * Checks that an indicator of the scenario matches the base model, printing it otherwise.
+     *
+     * @return True if the indicator is the same.
+     */
+    private static boolean check(String indicator, long expected, long actual) {
+        if (expected == actual) {
+            return true;
+        }
+        System.out.println("continuation : " + indicator + " " + expected + " -> " + actual);
+        return false;
+    }
+}
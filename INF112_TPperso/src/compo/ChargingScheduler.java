@@ -0,0 +1,604 @@
+package compo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+
+/**
+ * The ChargingScheduler class sends the robots of a factory to charge their battery at its power supply stations.
+ * A robot must go and charge once its battery only holds the energy needed to reach the nearest station, through
+ * the doors, plus a safety margin of {@link #LOW_BATTERY_PERCENT} of the capacity. Robots are kept in a priority
+ * queue keyed by the tick this is predicted to happen, assuming they keep moving at full speed away from the stations,
+ * so that each tick only looks at the robots due: a robot which is not low yet is put back with a later key, and
+ * a robot whose battery is low is assigned the station it can charge at the soonest, given the distance to the
+ * station and the robots already assigned to it. A charging detour through the station is then inserted before the
+ * next destination of the robot.
+ * Each station charges one robot at a time; the robots waiting at a station are kept in a priority queue keyed by
+ * the tick their battery would be empty, so that the most urgent robot charges first.
+ * Every event, a robot getting low, arriving at or leaving a station, takes O(log N) time for N robots, plus a scan
+ * of the stations when assigning one. Robots are referred to by their index in the {@link RobotTasks} of the factory,
+ * which holds their batteries and detours.
+ */
+public class ChargingScheduler {
+
+    /**
+     * Energy, in percent of the capacity, a robot should still hold when it reaches a station.
+     */
+    public static final int LOW_BATTERY_PERCENT = 25;
+
+    /**
+     * The factory whose robots are scheduled.
+     */
+    private final Factory factory;
+
+    /**
+     * The robots of the factory and their batteries and detours.
+     */
+    private final RobotTasks tasks;
+
+    /**
+     * The capacity of the batteries and the energy a station gives per tick.
+     */
+    private final int capacity;
+    private final int chargeRate;
+
+    /**
+     * The stations of the factory, in the order of its rooms.
+     */
+    private final ArrayList<Station> stations = new ArrayList<>();
+    private final IdentityHashMap<PowerSupplyStation, Station> stationsByComponent = new IdentityHashMap<>();
+
+    /**
+     * The robots which are not heading to a station, by the tick their battery is predicted to get low.
+     */
+    private final PriorityQueue<Entry> due = new PriorityQueue<>();
+
+    /**
+     * The number of ticks scheduled so far, and the number of entries created, which orders entries with the same key.
+     */
+    private long tick;
+    private long sequence;
+
+    /**
+     * The statistics of the scheduler: the number of charges completed, the number of robots whose battery
+     * ran out away from a station, and the number of ticks robots spent waiting at a station, summed over the robots.
+     */
+    private long charges;
+    private long strandings;
+    private long waitTicks;
+
+    /**
+     * Constructs the scheduler of a factory and registers its robots, whose batteries are filled if they had none.
+     *
+     * @param factory The factory.
+     * @param capacity The capacity of the batteries.
+     * @param chargeRate The energy a station gives per tick.
+     */
+    public ChargingScheduler(Factory factory, int capacity, int chargeRate) {
+        this.factory = factory;
+        this.capacity = capacity;
+        this.chargeRate = chargeRate;
+        this.tasks = factory.getRobotTasks();
+        for (Room room : factory.getRooms()) {
+            for (PowerSupplyStation pss : room.getPssList()) {
+                if (!stationsByComponent.containsKey(pss)) {
+                    Station station = new Station(pss);
+                    stations.add(station);
+                    stationsByComponent.put(pss, station);
+                }
+            }
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            register(i);
+        }
+    }
+
+    /**
+     * Starts scheduling a robot. A robot without battery is given a full one; a robot already heading to a station
+     * is counted as assigned to it.
+     *
+     * @param robot The index of the robot.
+     */
+    void register(int robot) {
+        if (tasks.getEnergy(robot) < 0) {
+            tasks.setEnergy(robot, capacity);
+        }
+        PowerSupplyStation pss = tasks.getChargingStation(robot);
+        Station station = pss == null ? null : stationsByComponent.get(pss);
+        if (station != null) {
+            station.assigned++;
+        } else {
+            tasks.cancelDetour(robot);
+            due.add(new Entry(robot, tick + ticksUntilDue(robot)));
+        }
+    }
+
+    /**
+     * Runs one tick of the schedule, after the robots moved: the robots at the stations are charged, those
+     * fully charged go on with their itinerary and are replaced by the next robots waiting, and the robots whose
+     * battery got low are assigned a station.
+     */
+    public void tick() {
+        tick++;
+        for (Station station : stations) {
+            if (station.charging >= 0) {
+                int robot = station.charging;
+                tasks.setEnergy(robot, Math.min(capacity, tasks.getEnergy(robot) + chargeRate));
+                station.busyTicks++;
+                if (tasks.getEnergy(robot) >= capacity) {
+                    tasks.undock(robot);
+                    station.charging = -1;
+                    station.assigned--;
+                    station.charges++;
+                    charges++;
+                    due.add(new Entry(robot, tick + ticksUntilDue(robot)));
+                }
+            }
+            if (station.charging < 0 && !station.waiting.isEmpty()) {
+                station.charging = station.waiting.poll().robot;
+            }
+            waitTicks += station.waiting.size();
+        }
+        while (!due.isEmpty() && due.peek().key <= tick) {
+            int robot = due.poll().robot;
+            if (tasks.getRobot(robot).getFactory() != factory) {
+                continue;
+            }
+            long remaining = ticksUntilDue(robot);
+            if (remaining > 0) {
+                due.add(new Entry(robot, tick + remaining));
+            } else if (!assign(robot)) {
+                // No station can be reached for now: the robot is looked at again later
+                due.add(new Entry(robot, tick + chargeTicks()));
+            }
+        }
+    }
+
+    /**
+     * Sends a robot to charge at the station it can charge at the soonest: each station is given the time the robot
+     * takes to reach it or the time the robots already assigned to it take to charge, whichever is longer.
+     * A station the robot does not have the energy to reach is only chosen if it cannot reach any.
+     *
+     * @param index The index of the robot.
+     * @return True if a station was assigned, false if the factory has no station the robot can reach.
+     */
+    private boolean assign(int index) {
+        Robot robot = tasks.getRobot(index);
+        RoomGraph graph = factory.getRoomGraph();
+        Room from = robot.getRoom();
+        Station best = null;
+        long bestCost = Long.MAX_VALUE;
+        for (Station station : stations) {
+            long distance = distance(index, station.pss);
+            if (distance < 0) {
+                continue;
+            }
+            long travel = distance / Math.max(1, robot.getSpeed());
+            long cost = Math.max(travel, (long) station.assigned * chargeTicks());
+            if (distance > tasks.getEnergy(index)) {
+                cost += Integer.MAX_VALUE;
+            }
+            if (cost < bestCost) {
+                best = station;
+                bestCost = cost;
+            }
+        }
+        if (best == null) {
+            return false;
+        }
+        ArrayList<Component> detour = new ArrayList<>();
+        List<Door> doors = from == null ? null : graph.route(from, best.pss.getRoom());
+        if (doors != null) {
+            detour.addAll(doors);
+        }
+        detour.add(best.pss);
+        Component next = tasks.getResumeTarget(index);
+        List<Door> back = next == null ? null : graph.route(best.pss.getRoom(), roomOf(next, best.pss.getRoom(), graph));
+        if (back != null) {
+            detour.addAll(back);
+        }
+        tasks.startDetour(index, detour);
+        best.assigned++;
+        return true;
+    }
+
+    /**
+     * Gets the room to head to in order to reach a destination: the room of the destination, or for a door,
+     * the room it connects which is the closest to the given room.
+     */
+    private static Room roomOf(Component destination, Room from, RoomGraph graph) {
+        if (!(destination instanceof Door)) {
+            return destination.getRoom();
+        }
+        Room best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Room room : ((Door) destination).getRooms()) {
+            int distance = graph.distance(from, room);
+            if (distance >= 0 && distance < bestDistance) {
+                best = room;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the energy a robot needs to reach a station: the distance, along the x axis plus along the y axis,
+     * from the robot to the station through the doors of the shortest route between their rooms.
+     *
+     * @return The distance, or -1 if the robot cannot reach the station.
+     */
+    private long distance(int index, PowerSupplyStation pss) {
+        Robot robot = tasks.getRobot(index);
+        int x = robot.getxCoordinate(), y = robot.getyCoordinate();
+        long distance = 0;
+        if (robot.getRoom() != null) {
+            List<Door> doors = factory.getRoomGraph().route(robot.getRoom(), pss.getRoom());
+            if (doors == null) {
+                return -1;
+            }
+            for (Door door : doors) {
+                int doorX = door.getxCoordinate() + door.getWidth() / 2, doorY = door.getyCoordinate() + door.getHeight() / 2;
+                distance += Math.abs(doorX - x) + Math.abs(doorY - y);
+                x = doorX;
+                y = doorY;
+            }
+        }
+        return distance + Math.abs(pss.getxCoordinate() + pss.getWidth() / 2 - x) + Math.abs(pss.getyCoordinate() + pss.getHeight() / 2 - y);
+    }
+
+    /**
+     * Puts a robot which reached its station in the queue of the station.
+     *
+     * @param robot The index of the robot.
+     * @param pss The station.
+     */
+    void arrive(int robot, PowerSupplyStation pss) {
+        Station station = stationsByComponent.get(pss);
+        if (station == null) {
+            tasks.undock(robot);
+            return;
+        }
+        int speed = tasks.getRobot(robot).getSpeed();
+        station.waiting.add(new Entry(robot, tick + tasks.getEnergy(robot) / Math.max(1, 2 * speed)));
+        if (station.charging < 0) {
+            station.charging = station.waiting.poll().robot;
+        }
+    }
+
+    /**
+     * Counts a robot whose battery ran out away from a station.
+     *
+     * @param robot The index of the robot.
+     */
+    void strand(int robot) {
+        strandings++;
+    }
+
+    /**
+     * Gets the tick the next call to {@link #tick()} changes anything at, other than counting the ticks: a robot is
+     * due, or a station completes a charge. The charge of a station in between only grows by the charge rate.
+     *
+     * @return The tick, or Long.MAX_VALUE if nothing is scheduled.
+     */
+    long getNextEventTick() {
+        long next = due.isEmpty() ? Long.MAX_VALUE : Math.max(tick + 1, due.peek().key);
+        for (Station station : stations) {
+            if (station.charging >= 0) {
+                long missing = capacity - tasks.getEnergy(station.charging);
+                next = Math.min(next, tick + Math.max(1, (missing + chargeRate - 1) / chargeRate));
+            } else if (!station.waiting.isEmpty()) {
+                next = tick + 1;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Runs the ticks up to the given one at once, which must come before {@link #getNextEventTick()}: the stations
+     * charge their robots and the waiting robots are counted, in bulk.
+     *
+     * @param target The tick to run to.
+     */
+    void skipTo(long target) {
+        long ticks = target - tick;
+        if (ticks <= 0) {
+            return;
+        }
+        for (Station station : stations) {
+            if (station.charging >= 0) {
+                int robot = station.charging;
+                tasks.setEnergy(robot, (int) Math.min(capacity, tasks.getEnergy(robot) + ticks * chargeRate));
+                station.busyTicks += ticks;
+            }
+            waitTicks += station.waiting.size() * ticks;
+        }
+        tick = target;
+    }
+
+    /**
+     * Applies an action to the robots due at the given tick, before they are looked at, e.g. to bring their position
+     * up to date.
+     *
+     * @param target The tick.
+     * @param action The action, given the index of each robot.
+     */
+    void forEachDue(long target, IntConsumer action) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        while (!due.isEmpty() && due.peek().key <= target) {
+            entries.add(due.poll());
+        }
+        for (Entry entry : entries) {
+            action.accept(entry.robot);
+        }
+        due.addAll(entries);
+    }
+
+    /**
+     * Gets the number of ticks scheduled so far.
+     *
+     * @return The number of ticks.
+     */
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Writes the clock of the scheduler to a state: the number of ticks scheduled and of queue entries created.
+     *
+     * @param out The state.
+     */
+    void writeClock(FactoryState.Writer out) {
+        out.writeLong(tick);
+        out.writeLong(sequence);
+    }
+
+    /**
+     * Reads the clock of the scheduler from a state written by {@link #writeClock(FactoryState.Writer)}.
+     *
+     * @param in The state.
+     */
+    void readClock(FactoryState.Reader in) {
+        tick = in.readLong();
+        sequence = in.readLong();
+    }
+
+    /**
+     * Writes the queues of the scheduler to a state: the robots due, and for each station the robot it charges,
+     * the robots waiting for it and the number of robots assigned to it. Robots which left the factory are left out.
+     *
+     * @param out The state.
+     */
+    void writeQueues(FactoryState.Writer out) {
+        writeEntries(out, due);
+        out.writeInt(stations.size());
+        for (Station station : stations) {
+            out.writeRobot(out.hasRobot(station.charging) ? station.charging : -1);
+            out.writeInt(station.assigned);
+            writeEntries(out, station.waiting);
+        }
+    }
+
+    /**
+     * Writes the entries of a queue in order.
+     */
+    private static void writeEntries(FactoryState.Writer out, PriorityQueue<Entry> queue) {
+        Entry[] entries = queue.toArray(new Entry[0]);
+        Arrays.sort(entries);
+        int count = 0;
+        for (Entry entry : entries) {
+            if (out.hasRobot(entry.robot)) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Entry entry : entries) {
+            if (out.hasRobot(entry.robot)) {
+                out.writeRobot(entry.robot);
+                out.writeLong(entry.key);
+                out.writeLong(entry.order);
+            }
+        }
+    }
+
+    /**
+     * Reads the queues of the scheduler from a state written by {@link #writeQueues(FactoryState.Writer)}, keeping the statistics.
+     *
+     * @param in The state.
+     * @throws IllegalArgumentException If the state does not have the stations of the scheduler.
+     */
+    void readQueues(FactoryState.Reader in) {
+        readEntries(in, due);
+        if (in.readInt() != stations.size()) {
+            throw new IllegalArgumentException("The state does not match the stations of factory " + factory.getName());
+        }
+        for (Station station : stations) {
+            station.charging = in.readRobot();
+            station.assigned = in.readInt();
+            readEntries(in, station.waiting);
+        }
+    }
+
+    /**
+     * Reads the entries of a queue, replacing its contents.
+     */
+    private void readEntries(FactoryState.Reader in, PriorityQueue<Entry> queue) {
+        queue.clear();
+        for (int count = in.readInt(); count > 0; count--) {
+            queue.add(new Entry(in.readRobot(), in.readLong(), in.readLong()));
+        }
+    }
+
+    /**
+     * Forgets every assignment, cancels the charging detours of the robots and schedules them again from their
+     * current battery level, e.g. when the robots were moved to another state or the stations changed.
+     */
+    public void reset() {
+        due.clear();
+        for (Station station : stations) {
+            station.charging = -1;
+            station.waiting.clear();
+            station.assigned = 0;
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.cancelDetour(i);
+            register(i);
+        }
+    }
+
+    /**
+     * Predicts the number of ticks before a robot must go and charge. Moving at full speed along both axes drains
+     * twice its speed per tick, and takes it as much farther from the nearest station at worst.
+     */
+    private long ticksUntilDue(int robot) {
+        long reserve = Long.MAX_VALUE;
+        for (Station station : stations) {
+            long distance = distance(robot, station.pss);
+            if (distance >= 0) {
+                reserve = Math.min(reserve, distance);
+            }
+        }
+        if (reserve == Long.MAX_VALUE) {
+            reserve = 0;
+        }
+        long margin = tasks.getEnergy(robot) - reserve - (long) capacity * LOW_BATTERY_PERCENT / 100;
+        return Math.max(0, margin / Math.max(1, 4 * tasks.getRobot(robot).getSpeed()));
+    }
+
+    /**
+     * Estimates the number of ticks a station takes to charge a robot from a low battery.
+     */
+    private long chargeTicks() {
+        return Math.max(1, (capacity - (long) capacity * LOW_BATTERY_PERCENT / 100) / chargeRate);
+    }
+
+    /**
+     * Gets the capacity of the batteries.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the energy a station gives per tick.
+     *
+     * @return The charge rate.
+     */
+    public int getChargeRate() {
+        return chargeRate;
+    }
+
+    /**
+     * Gets the stations of the factory.
+     *
+     * @return The stations, in the order of the rooms.
+     */
+    public List<PowerSupplyStation> getStations() {
+        ArrayList<PowerSupplyStation> list = new ArrayList<>(stations.size());
+        for (Station station : stations) {
+            list.add(station.pss);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Gets the number of charges completed.
+     *
+     * @return The number of charges.
+     */
+    public long getCharges() {
+        return charges;
+    }
+
+    /**
+     * Gets the number of times a robot ran out of battery away from a station, a sign that stations are missing.
+     *
+     * @return The number of strandings.
+     */
+    public long getStrandings() {
+        return strandings;
+    }
+
+    /**
+     * Gets the number of ticks robots spent waiting for a free station, summed over the robots.
+     *
+     * @return The number of waiting ticks.
+     */
+    public long getWaitTicks() {
+        return waitTicks;
+    }
+
+    /**
+     * Gets the share of the ticks a station spent charging a robot.
+     *
+     * @param pss The station.
+     * @return The utilization, between 0 and 1, or 0 if the station is not scheduled.
+     */
+    public double getUtilization(PowerSupplyStation pss) {
+        Station station = stationsByComponent.get(pss);
+        return station == null || tick == 0 ? 0 : (double) station.busyTicks / tick;
+    }
+
+    /**
+     *
+     * @return A string describing the charges.
+     */
+    @Override
+    public String toString() {
+        String res = "Recharges de l'usine " + factory.getName() + " : " + charges + " recharges, " + strandings
+                     + " robots à court de batterie, " + waitTicks + " ticks d'attente";
+        for (Station station : stations) {
+            res += "\n \t" + station.pss.getName() + " : " + station.charges + " recharges, occupée "
+                   + String.format("%.0f", 100 * getUtilization(station.pss)) + " % du temps";
+        }
+        return res;
+    }
+
+    /**
+     * The state of a power supply station: the index of the robot it charges, or -1, the robots waiting for it and
+     * the number of robots assigned to it, heading to it included.
+     */
+    private static final class Station {
+        private final PowerSupplyStation pss;
+        private final PriorityQueue<Entry> waiting = new PriorityQueue<>();
+        private int charging = -1;
+        private int assigned;
+        private long busyTicks;
+        private long charges;
+
+        private Station(PowerSupplyStation pss) {
+            this.pss = pss;
+        }
+    }
+
+    /**
+     * The index of a robot in a priority queue, with its key. Entries with the same key are ordered by creation, so that the
+     * schedule does not depend on the order the queue happens to keep them in.
+     */
+    private final class Entry implements Comparable<Entry> {
+        private final int robot;
+        private final long key;
+        private final long order;
+
+        private Entry(int robot, long key) {
+            this(robot, key, sequence++);
+        }
+
+        private Entry(int robot, long key, long order) {
+            this.robot = robot;
+            this.key = key;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return key != other.key ? Long.compare(key, other.key) : Long.compare(order, other.order);
+        }
+    }
+}
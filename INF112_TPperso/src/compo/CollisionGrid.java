@@ -0,0 +1,266 @@
+package compo;
+
+import java.util.Arrays;
+
+/**
+ * The CollisionGrid class keeps robots of a factory from running into each other.
+ * It is a spatial hash of the robot positions: the cell of each robot is looked up in an open addressing hash table
+ * whose entries head the list of the robots of the cell, so the grid is rebuilt in linear time at each tick whatever
+ * the extent of the factory, and checking a move only looks at the robots of the neighbouring cells.
+ * Planned moves are applied one robot after the other: a robot whose move would bring it onto another robot slides
+ * along one axis if this is free, or else steps aside, to the right of its move first, and otherwise waits where it is.
+ * A robot is never blocked by a robot it already overlaps, so that robots placed on top of each other can separate,
+ * and a robot which has waited for
+ * {@link #MAX_WAIT_TICKS} ticks in a row without being able to go where it planned moves anyway, so that robots
+ * stepping aside in front of each other or waiting for each other in a door do not do so forever.
+ */
+public class CollisionGrid {
+
+    /**
+     * Number of consecutive ticks a robot waits for the way to be free before it moves anyway.
+     */
+    public static final int MAX_WAIT_TICKS = 20;
+
+    /**
+     * The size of a grid cell, at least the size of the largest robot, so that overlapping robots are in neighbouring cells.
+     */
+    private int cellSize;
+
+    /**
+     * The number of robots of the grid.
+     */
+    private int size;
+
+    /**
+     * The position and size of each robot, and the next robot of its cell, or -1.
+     */
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private int[] sizes = new int[0];
+    private int[] next = new int[0];
+
+    /**
+     * Marks of the hash table entries never used since the grid was cleared, and of the entries of emptied cells.
+     */
+    private static final int FREE = -1;
+    private static final int EMPTY = -2;
+
+    /**
+     * The hash table of the cells: the key of each used entry and the first robot of its cell, or {@link #FREE}
+     * or {@link #EMPTY}. A tick adds at most one entry per robot to the entries of the initial cells, so the table
+     * holds four entries per robot to stay at most half full.
+     */
+    private long[] keys = new long[0];
+    private int[] heads = new int[0];
+    private int mask;
+
+    /**
+     * Empties the grid and prepares it for the given number of robots.
+     *
+     * @param robots The number of robots that will be added.
+     * @param cellSize The size of the cells, at least the size of the largest robot.
+     */
+    public void clear(int robots, int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+        this.size = robots;
+        if (xs.length < robots) {
+            xs = new int[robots];
+            ys = new int[robots];
+            sizes = new int[robots];
+            next = new int[robots];
+        }
+        int capacity = Integer.highestOneBit(Math.max(4, robots) * 4 - 1) << 1;
+        if (heads.length != capacity) {
+            keys = new long[capacity];
+            heads = new int[capacity];
+            mask = capacity - 1;
+        }
+        Arrays.fill(heads, FREE);
+    }
+
+    /**
+     * Adds a robot to the grid.
+     *
+     * @param robot The index of the robot, from 0 to the number of robots given to {@link #clear(int, int)}.
+     * @param x The x-coordinate of the robot.
+     * @param y The y-coordinate of the robot.
+     * @param robotSize The size of the robot.
+     */
+    public void add(int robot, int x, int y, int robotSize) {
+        xs[robot] = x;
+        ys[robot] = y;
+        sizes[robot] = robotSize;
+        link(robot);
+    }
+
+    /**
+     * Moves a robot towards the position it planned, as far as other robots allow.
+     *
+     * @param robot The index of the robot.
+     * @param x The planned x-coordinate.
+     * @param y The planned y-coordinate.
+     * @param force True to move to the planned position even if it is not free.
+     * @return True if the robot moved to the planned position, false if it slid, stepped aside or waited.
+     */
+    public boolean moveTo(int robot, int x, int y, boolean force) {
+        int x0 = xs[robot], y0 = ys[robot];
+        if (x == x0 && y == y0) {
+            return true;
+        }
+        int nx = x0, ny = y0;
+        // Sidesteps to the right of the move, then to its left, so that robots facing each other pass each other
+        int step = Math.max(Math.abs(x - x0), Math.abs(y - y0));
+        int rightX = -Integer.signum(y - y0) * step, rightY = Integer.signum(x - x0) * step;
+        if (Math.abs(x - x0) >= Math.abs(y - y0)) {
+            rightX = 0;
+        } else {
+            rightY = 0;
+        }
+        if (force || isFree(robot, x, y)) {
+            nx = x;
+            ny = y;
+        } else if (x != x0 && isFree(robot, x, y0)) {
+            nx = x;
+        } else if (y != y0 && isFree(robot, x0, y)) {
+            ny = y;
+        } else if (isFree(robot, x0 + rightX, y0 + rightY)) {
+            nx = x0 + rightX;
+            ny = y0 + rightY;
+        } else if (isFree(robot, x0 - rightX, y0 - rightY)) {
+            nx = x0 - rightX;
+            ny = y0 - rightY;
+        }
+        if (nx != x0 || ny != y0) {
+            if (cell(nx) != cell(x0) || cell(ny) != cell(y0)) {
+                unlink(robot);
+                xs[robot] = nx;
+                ys[robot] = ny;
+                link(robot);
+            } else {
+                xs[robot] = nx;
+                ys[robot] = ny;
+            }
+        }
+        return nx == x && ny == y;
+    }
+
+    /**
+     * Gets the x-coordinate of a robot after its move.
+     *
+     * @param robot The index of the robot.
+     * @return The x-coordinate.
+     */
+    public int getX(int robot) {
+        return xs[robot];
+    }
+
+    /**
+     * Gets the y-coordinate of a robot after its move.
+     *
+     * @param robot The index of the robot.
+     * @return The y-coordinate.
+     */
+    public int getY(int robot) {
+        return ys[robot];
+    }
+
+    /**
+     * Gets the number of robots of the grid.
+     *
+     * @return The number of robots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a robot can stand at a position: it would overlap no robot that it does not already overlap.
+     */
+    private boolean isFree(int robot, int x, int y) {
+        int s = sizes[robot];
+        int cx = cell(x), cy = cell(y);
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int other = head(cx + dx, cy + dy); other >= 0; other = next[other]) {
+                    if (other != robot && overlaps(x, y, s, other) && !overlaps(xs[robot], ys[robot], s, other)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a robot of the given position and size would overlap another robot.
+     */
+    private boolean overlaps(int x, int y, int s, int other) {
+        return x < xs[other] + sizes[other] && xs[other] < x + s && y < ys[other] + sizes[other] && ys[other] < y + s;
+    }
+
+    /**
+     * Gets the cell coordinate of a coordinate.
+     */
+    private int cell(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    /**
+     * Gets the first robot of a cell.
+     *
+     * @return The index of the robot, or -1 if the cell is empty.
+     */
+    private int head(int cx, int cy) {
+        long key = key(cx, cy);
+        for (int e = hash(key); heads[e] != FREE; e = (e + 1) & mask) {
+            if (keys[e] == key) {
+                return heads[e] >= 0 ? heads[e] : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a robot at the head of the list of its cell.
+     */
+    private void link(int robot) {
+        long key = key(cell(xs[robot]), cell(ys[robot]));
+        int e = hash(key);
+        while (heads[e] != FREE && keys[e] != key) {
+            e = (e + 1) & mask;
+        }
+        keys[e] = key;
+        next[robot] = heads[e] >= 0 ? heads[e] : -1;
+        heads[e] = robot;
+    }
+
+    /**
+     * Removes a robot from the list of its cell. The entry of the cell stays in the table even when the cell
+     * becomes empty, marked {@link #EMPTY}, so that the probe sequences of the other cells are not broken.
+     */
+    private void unlink(int robot) {
+        long key = key(cell(xs[robot]), cell(ys[robot]));
+        int e = hash(key);
+        while (heads[e] == FREE || keys[e] != key) {
+            e = (e + 1) & mask;
+        }
+        if (heads[e] == robot) {
+            heads[e] = next[robot] >= 0 ? next[robot] : EMPTY;
+            return;
+        }
+        int previous = heads[e];
+        while (next[previous] != robot) {
+            previous = next[previous];
+        }
+        next[previous] = next[robot];
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+}
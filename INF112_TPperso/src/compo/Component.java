@@ -3,8 +3,11 @@ package compo;
 import java.io.Serializable;
 
 import drawable.ColorObject;
+import drawable.Rectangle;
+import drawable.ReducedFigure;
 import drawable.StyleObject;
 import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 import model.Model;
 
@@ -20,6 +23,11 @@ public abstract class Component implements Figure, Serializable {
      * Serial version UID for serialization.
      */
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Offset added to the coordinates given to the constructors, leaving a margin around the canvas.
+     */
+    public static final int CANVAS_MARGIN = 50;
     
     // Properties of the component
     String name;
@@ -31,6 +39,15 @@ public abstract class Component implements Figure, Serializable {
     Model model;
     Room room;
     Factory factory;
+    
+    // Rendering objects, built on first use and rebuilt only when the size of the component changes
+    private transient Shape shape;
+    private transient int shapeWidth;
+    private transient int shapeHeight;
+    private transient Style style;
+    // Figures drawn in place of the component when the canvas is zoomed out, built on first use
+    private transient ReducedFigure unlabeled;
+    private transient ReducedFigure point;
 
     /**
      * Constructs a new Component with specified properties.
@@ -44,8 +61,8 @@ public abstract class Component implements Figure, Serializable {
     public Component(String name, int xCoord, int yCoord, int xSize, int ySize) {
         super();
         this.name = name;
-        this.xCoord = xCoord + 50;
-        this.yCoord = yCoord + 50;
+        this.xCoord = xCoord + CANVAS_MARGIN;
+        this.yCoord = yCoord + CANVAS_MARGIN;
         this.xSize = xSize;
         this.ySize = ySize;
         this.model = null;
@@ -62,13 +79,13 @@ public abstract class Component implements Figure, Serializable {
     }
 
     /**
-     * Sets the x-coordinate of the component and notifies the model observers.
+     * Sets the x-coordinate of the component and marks the model as changed.
      * 
      * @param xCoord The new x-coordinate.
      */
     public void setxCoord(int xCoord) {
         this.xCoord = xCoord;
-        model.notifyObservers();
+        changed();
     }
 
     /**
@@ -81,13 +98,37 @@ public abstract class Component implements Figure, Serializable {
     }
 
     /**
-     * Sets the y-coordinate of the component and notifies the model observers.
+     * Sets the y-coordinate of the component and marks the model as changed.
      * 
      * @param yCoord The new y-coordinate.
      */
     public void setyCoord(int yCoord) {
         this.yCoord = yCoord;
-        model.notifyObservers();
+        changed();
+    }
+
+    /**
+     * Marks the model as changed, and its layout too if the component is static: the factory owning it then
+     * rebuilds its room index, graph and path planner around the new position.
+     */
+    private void changed() {
+        if (isStatic()) {
+            model.layoutChanged();
+            if (factory != null) {
+                factory.invalidateLayout();
+            }
+        }
+        model.markDirty();
+    }
+
+    /**
+     * Checks if the component is part of the layout, which only changes when it is edited,
+     * or if it moves on its own during the simulation.
+     * 
+     * @return True for static components; subclasses moving on their own return false.
+     */
+    public boolean isStatic() {
+        return true;
     }
 
     /**
@@ -153,8 +194,20 @@ public abstract class Component implements Figure, Serializable {
         this.room = room;
     }
     
+    /**
+     * Prepares the behavior of the component for the next tick, without changing anything that other
+     * components can observe. Components of a model are planned concurrently, then their behavior is
+     * applied one after the other with {@link #behave(boolean)}. The planning can be defined by subclasses.
+     * 
+     * @param play A boolean flag to determine the behavior state.
+     */
+    public void plan(boolean play) {
+        // To be implemented by subclasses
+    }
+
     /**
      * Defines the behavior of the component. The behavior can be defined by subclasses.
+     * When the component was planned for this tick, only the planned changes are applied.
      * 
      * @param play A boolean flag to determine the behavior state.
      */
@@ -164,34 +217,16 @@ public abstract class Component implements Figure, Serializable {
     
     /**
      * Determines the appropriate room for the component.
-     * If the component is not in a room, it searches for a suitable room in the model.
+     * If the component is no longer inside its current room, the room containing it is looked up
+     * in the spatial index of the factories of the model.
      * 
-     * @return The appropriate room for the component, or null if no suitable room is found.
+     * @return The appropriate room for the component, or null if no room contains it.
      */
     public Room getGoodRoom() {
-        if (room == null) {
-            for (Factory factory : model.getFactories()) {
-                for (Room r : factory.getRooms()) {
-                    if (isInRoom(r)) {
-                        return r;
-                    } else {
-                        return null;
-                    }
-                }
-            }
-        }
-        if (!isInRoom(this.room)) {
-            for (Factory factory : model.getFactories()) {
-                for (Room r : factory.getRooms()) {
-                    if (isInRoom(r)) {
-                        return r;
-                    } else {
-                        return null;
-                    }
-                }
-            }
+        if (room != null && isInRoom(room)) {
+            return room;
         }
-        return this.room;
+        return model.findRoom(getxCoordinate(), getyCoordinate());
     }
     
     /**
@@ -201,21 +236,78 @@ public abstract class Component implements Figure, Serializable {
      * @return True if the component is inside the room, false otherwise.
      */
     public boolean isInRoom(Room room) {
-        return this.getxCoordinate() >= room.getxCoordinate() 
-            && this.getxCoordinate() <= room.getxCoordinate() + room.getWidth()
-            && this.getyCoordinate() >= room.getyCoordinate() 
-            && this.getyCoordinate() <= room.getyCoordinate() + room.getHeight();
+        return room.contains(getxCoordinate(), getyCoordinate());
     }
 
     /**
-     * Gets the style of the component.
+     * Gets the style of the component, built once from its color.
      * 
      * @return The style as a {@link Style} object.
      */
     public Style getStyle() {
-        return new StyleObject(color);
+        Style s = style;
+        if (s == null) {
+            s = new StyleObject(color);
+            style = s;
+        }
+        return s;
+    }
+
+    /**
+     * Gets the shape of the component. The shape is cached and only created again when the size of
+     * the component has changed since it was last created.
+     * 
+     * @return The shape as a {@link Shape} object.
+     */
+    public Shape getShape() {
+        Shape s = shape;
+        if (s == null || shapeWidth != getWidth() || shapeHeight != getHeight()) {
+            shapeWidth = getWidth();
+            shapeHeight = getHeight();
+            s = createShape();
+            shape = s;
+        }
+        return s;
+    }
+
+    /**
+     * Creates the shape of the component. Subclasses may override it to use another shape.
+     * 
+     * @return A rectangle as wide and high as the component.
+     */
+    protected Shape createShape() {
+        return new Rectangle(getWidth(), getHeight());
     }
     
+    /**
+     * Gets a lighter figure drawn in place of the component when the canvas is zoomed out.
+     * The reduced figure follows the component, so it is built only once.
+     * 
+     * @param point True for a figure drawn as a single point, false for the same figure without its label.
+     * @return The reduced figure.
+     */
+    public ReducedFigure getReducedFigure(boolean point) {
+        ReducedFigure f = point ? this.point : unlabeled;
+        if (f == null) {
+            f = new ReducedFigure(this, point);
+            if (point) {
+                this.point = f;
+            } else {
+                unlabeled = f;
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Gets the model associated with the component.
+     * 
+     * @return The model, or null if the component was not added to a model.
+     */
+    public Model getModel() {
+        return model;
+    }
+
     /**
      * Sets the model associated with the component.
      * 
@@ -3,15 +3,16 @@ package compo;
 import java.util.ArrayList;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StyleObject;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
  * The Door class represents a door in a canvas model.
  * It is a specific type of Component that connects multiple rooms.
  * The door has a specific color, shape, and style.
+ * A door lets a limited number of robots through at a time, its capacity: a robot must reserve the door
+ * before coming close to it, and releases its reservation once it moved away on the other side.
  */
 public final class Door extends Component {
     
@@ -23,13 +24,33 @@ public final class Door extends Component {
     /**
      * Default color of the door (red).
      */
-    private static final ColorObject color = new ColorObject(240, 16, 16);
+    private static final ColorObject color = Palette.color(240, 16, 16);
+
+    /**
+     * Shared style of the doors.
+     */
+    private static final StyleObject style = Palette.style(color);
+
+    /**
+     * Width of the lane taken by a robot going through a door, used to derive the default capacity of the doors.
+     */
+    public static final int LANE_WIDTH = 20;
 
     /**
      * List of rooms connected by this door.
      */
     private ArrayList<Room> rooms;
 
+    /**
+     * The number of robots which may go through the door at the same time, or 0 for the default capacity.
+     */
+    private int capacity;
+
+    /**
+     * The reservations of the door and the statistics of its traffic, created on first use.
+     */
+    private transient volatile DoorTraffic traffic;
+
     /**
      * Constructs a Door with specified properties.
      * 
@@ -59,6 +80,70 @@ public final class Door extends Component {
         return rooms;
     }
 
+    /**
+     * Gets the number of robots which may go through the door at the same time. Unless it was set, the capacity
+     * is the number of lanes of {@link #LANE_WIDTH} fitting along the door, at least one.
+     * 
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity > 0 ? capacity : Math.max(1, Math.max(xSize, ySize) / LANE_WIDTH);
+    }
+
+    /**
+     * Checks if the capacity of the door was set, rather than derived from its size.
+     * 
+     * @return True if the capacity was set.
+     */
+    public boolean isCapacitySet() {
+        return capacity > 0;
+    }
+
+    /**
+     * Sets the number of robots which may go through the door at the same time.
+     * 
+     * @param capacity The new capacity, or 0 to restore the default capacity.
+     * @throws IllegalArgumentException If the capacity is negative.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity + " for door " + name);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the reservations of the door and the statistics of its traffic.
+     * 
+     * @return The traffic of the door.
+     */
+    public DoorTraffic getTraffic() {
+        DoorTraffic t = traffic;
+        if (t == null) {
+            synchronized (this) {
+                t = traffic;
+                if (t == null) {
+                    t = new DoorTraffic(this);
+                    traffic = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Checks if a robot is close enough to the door to need a reservation, i.e. if the robot, grown by its own
+     * size on every side, overlaps the door.
+     * 
+     * @param x The x-coordinate of the robot.
+     * @param y The y-coordinate of the robot.
+     * @param size The size of the robot.
+     * @return True if the robot is in the approach zone of the door.
+     */
+    public boolean isNear(int x, int y, int size) {
+        return x - size < xCoord + xSize && xCoord < x + 2 * size && y - size < yCoord + ySize && yCoord < y + 2 * size;
+    }
+
     /** 
      * @return A string describing the door's coordinates and size.
      */
@@ -69,16 +154,6 @@ public final class Door extends Component {
                xSize + " x " + ySize;
     }
 
-    /**
-     * Gets the shape of the door.
-     * 
-     * @return The shape as a {@link Shape} object.
-     */
-    @Override
-    public Shape getShape() {
-        return new Rectangle(getWidth(), getHeight());
-    }
-
     /**
      * Gets the style of the door.
      * 
@@ -86,6 +161,6 @@ public final class Door extends Component {
      */
     @Override
     public Style getStyle() {
-        return new StyleObject(color);
+        return style;
     }
 }
@@ -0,0 +1,220 @@
+package compo;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DoorTraffic class holds the reservations of a door and the statistics of the traffic through it.
+ * At most {@link Door#getCapacity()} robots hold a reservation at a time; the others wait in a first in,
+ * first out queue, and only the robot at the head of the queue can take a reservation as soon as one is
+ * released. Reservations are counted by an atomic counter and the queue is a lock-free queue, so that
+ * robots can be admitted and the statistics read from any thread without locking the door.
+ */
+public final class DoorTraffic {
+
+    /**
+     * The door.
+     */
+    private final Door door;
+
+    /**
+     * The number of robots holding a reservation.
+     */
+    private final AtomicInteger occupancy = new AtomicInteger();
+
+    /**
+     * The indexes of the robots waiting for a reservation, in arrival order, and their number.
+     */
+    private final ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The statistics of the door: the number of reservations released, the number of ticks robots spent
+     * waiting for a reservation, summed over the robots, and the longest queue seen.
+     */
+    private final AtomicLong crossings = new AtomicLong();
+    private final AtomicLong waitTicks = new AtomicLong();
+    private final AtomicInteger peakQueue = new AtomicInteger();
+
+    /**
+     * Constructs the traffic of a door, with no reservation and no robot waiting.
+     *
+     * @param door The door.
+     */
+    DoorTraffic(Door door) {
+        this.door = door;
+    }
+
+    /**
+     * Tries to reserve the door for a robot. The robot is admitted if it is first in the queue, or the queue is
+     * empty, and fewer robots than the capacity of the door hold a reservation. Otherwise it joins the queue if
+     * it was not waiting yet, and its waiting tick is counted.
+     *
+     * @param robot The index of the robot among the robots of the factory.
+     * @param waiting True if the robot is already in the queue of the door.
+     * @return True if the robot now holds a reservation.
+     */
+    boolean tryEnter(int robot, boolean waiting) {
+        Integer head = queue.peek();
+        if (head == null || head == robot) {
+            int capacity = door.getCapacity();
+            for (int n = occupancy.get(); n < capacity; n = occupancy.get()) {
+                if (occupancy.compareAndSet(n, n + 1)) {
+                    if (head != null) {
+                        queue.poll();
+                        queued.decrementAndGet();
+                    }
+                    return true;
+                }
+            }
+        }
+        if (!waiting) {
+            queue.add(robot);
+            int length = queued.incrementAndGet();
+            peakQueue.accumulateAndGet(length, Math::max);
+        }
+        waitTicks.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Removes a robot from the queue, e.g. when it no longer heads to the door.
+     *
+     * @param robot The index of the robot among the robots of the factory.
+     */
+    void cancel(int robot) {
+        if (queue.remove(robot)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases a reservation once its robot went through the door.
+     */
+    void leave() {
+        if (occupancy.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            crossings.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops every reservation and empties the queue, keeping the statistics.
+     */
+    void clear() {
+        occupancy.set(0);
+        queue.clear();
+        queued.set(0);
+    }
+
+    /**
+     * Writes the reservations and the queue of the door to a state. Robots which left the factory are left out.
+     *
+     * @param out The state.
+     */
+    void writeState(FactoryState.Writer out) {
+        out.writeInt(occupancy.get());
+        int count = 0;
+        for (Integer robot : queue) {
+            if (out.hasRobot(robot)) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Integer robot : queue) {
+            if (out.hasRobot(robot)) {
+                out.writeRobot(robot);
+            }
+        }
+    }
+
+    /**
+     * Reads the reservations and the queue of the door from a state written by {@link #writeState(FactoryState.Writer)},
+     * keeping the statistics.
+     *
+     * @param in The state.
+     */
+    void readState(FactoryState.Reader in) {
+        clear();
+        occupancy.set(in.readInt());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            queue.add(in.readRobot());
+        }
+        queued.set(count);
+    }
+
+    /**
+     * Gets the load of the door: the robots holding a reservation plus the robots waiting for one.
+     *
+     * @return The load.
+     */
+    public int getLoad() {
+        return occupancy.get() + queued.get();
+    }
+
+    /**
+     * Gets the number of robots holding a reservation.
+     *
+     * @return The occupancy.
+     */
+    public int getOccupancy() {
+        return occupancy.get();
+    }
+
+    /**
+     * Gets the number of robots waiting for a reservation.
+     *
+     * @return The length of the queue.
+     */
+    public int getQueueLength() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of robots which went through the door holding a reservation.
+     *
+     * @return The number of crossings.
+     */
+    public long getCrossings() {
+        return crossings.get();
+    }
+
+    /**
+     * Gets the number of ticks robots spent waiting for a reservation, summed over the robots.
+     *
+     * @return The number of waiting ticks.
+     */
+    public long getWaitTicks() {
+        return waitTicks.get();
+    }
+
+    /**
+     * Gets the longest queue seen in front of the door.
+     *
+     * @return The length of the longest queue.
+     */
+    public int getPeakQueue() {
+        return peakQueue.get();
+    }
+
+    /**
+     * Gets the average number of ticks a robot waited for a reservation.
+     *
+     * @return The waiting ticks per crossing, 0 if no robot went through the door.
+     */
+    public double getAverageWait() {
+        long n = crossings.get();
+        return n > 0 ? (double) waitTicks.get() / n : 0;
+    }
+
+    /**
+     *
+     * @return A string describing the traffic through the door.
+     */
+    @Override
+    public String toString() {
+        return "Porte " + door.getName() + " : " + getCrossings() + " passages, " + getWaitTicks() + " ticks d'attente, file maximale "
+               + getPeakQueue() + ", " + getOccupancy() + " / " + door.getCapacity() + " réservations";
+    }
+}
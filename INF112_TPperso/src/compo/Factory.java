@@ -1,12 +1,17 @@
 package compo;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StyleObject;
 import fr.tp.inf112.projects.canvas.model.RectangleShape;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
@@ -25,7 +30,12 @@ public class Factory extends Component implements RectangleShape {
     /**
      * Default color of the factory.
      */
-    private static final ColorObject color = new ColorObject(215, 50, 175);
+    private static final ColorObject color = Palette.color(215, 50, 175);
+
+    /**
+     * Shared style of the factories.
+     */
+    private static final StyleObject style = Palette.style(color);
 
     /**
      * List of components contained within this factory.
@@ -37,6 +47,96 @@ public class Factory extends Component implements RectangleShape {
      */
     private ArrayList<Room> rooms = new ArrayList<Room>();
 
+    /**
+     * The components of the factory, by identity, to check in constant time whether a component was already added.
+     * Built on first use, and rebuilt when the list of components was replaced or changed since.
+     */
+    private transient Set<Component> componentSet;
+
+    /**
+     * The list of components and its number of modifications when {@link #componentSet} was built.
+     */
+    private transient ComponentList componentSetList;
+    private transient int componentSetModifications;
+
+    /**
+     * Spatial index over the bounds of the rooms, built on first use.
+     */
+    private transient RoomIndex roomIndex;
+
+    /**
+     * Connectivity graph of the rooms through their doors, built on first use.
+     */
+    private transient RoomGraph roomGraph;
+
+    /**
+     * Motion planner over the occupancy grid of the factory, built on first use.
+     */
+    private transient PathPlanner pathPlanner;
+
+    /**
+     * Structure-of-arrays backend holding the state of the robots, or null when robots behave on their own.
+     */
+    private transient RobotFleet fleet;
+
+    /**
+     * Indicates whether robots may run into each other, as they did before collisions were avoided.
+     */
+    private boolean collisionsIgnored;
+
+    /**
+     * Spatial hash of the robot positions, rebuilt at each tick.
+     */
+    private transient CollisionGrid collisionGrid;
+
+    /**
+     * The robots of the factory by index, and the state they keep on top of their itinerary, built on first use.
+     */
+    private transient RobotTasks robotTasks;
+
+    /**
+     * The collision grid the robots move in while the factory applies a tick, null otherwise.
+     */
+    private transient CollisionGrid activeGrid;
+
+    /**
+     * The capacity of the batteries of the robots, 0 if robots have no battery, and the energy a power supply
+     * station gives per tick.
+     */
+    private int batteryCapacity;
+    private int chargeRate;
+
+    /**
+     * Scheduler sending the robots to charge, built on first use when robots have batteries.
+     */
+    private transient ChargingScheduler chargingScheduler;
+
+    /**
+     * Indicates whether the robots carry out the jobs emitted by the machines instead of following their itinerary.
+     */
+    private boolean dispatching;
+
+    /**
+     * Dispatcher handing the jobs to the robots, built on first use when the factory dispatches jobs.
+     */
+    private transient TaskDispatcher taskDispatcher;
+
+    /**
+     * Timeline simulating the factory event by event, or null while it is simulated tick by tick.
+     */
+    private transient FactoryTimeline timeline;
+
+    /**
+     * Reads the components of the factory from a model file the first time they are needed,
+     * or null once they are loaded.
+     */
+    private transient volatile Consumer<Factory> contentLoader;
+
+    /**
+     * Indicates whether the components are being loaded, during which the factory is already usable by the loader.
+     */
+    private transient boolean loading;
+
     /**
      * Constructs a Factory with the specified name and size.
      * 
@@ -46,7 +146,7 @@ public class Factory extends Component implements RectangleShape {
      */
     public Factory(String name, int xSize, int ySize) {
         super(name, 0, 0, xSize, ySize);
-        this.components = new ArrayList<Component>();
+        this.components = new ComponentList(0);
         this.factory = this;
     }
 
@@ -56,11 +156,11 @@ public class Factory extends Component implements RectangleShape {
      * @param name The name of the factory.
      * @param xSize The width of the factory.
      * @param ySize The height of the factory.
-     * @param components The list of components to be contained in the factory.
+     * @param components The list of components to be contained in the factory, copied.
      */
     public Factory(String name, int xSize, int ySize, ArrayList<Component> components) {
         super(name, 0, 0, xSize, ySize);
-        this.components = components;
+        this.components = new ComponentList(components);
         this.factory = this;
     }
 
@@ -71,26 +171,264 @@ public class Factory extends Component implements RectangleShape {
      * @return True if the component was successfully added, false if it already exists in the factory.
      */
     public boolean addCompo(Component compo) {
-        for (Component c : components) {
-            if (c.equals(compo)) {
-                System.out.println("L'objet " + compo.getName() + " appartient déjà à l'usine");
-                return false;
-            }
+        load();
+        if (!getComponentSet().add(compo)) {
+            System.out.println("L'objet " + compo.getName() + " appartient déjà à l'usine");
+            return false;
+        }
+        if (compo instanceof Robot) {
+            releaseFleet();
         }
         components.add(compo);
+        componentsAdded();
+        if (compo instanceof Robot && robotTasks != null) {
+            robotTasks.add((Robot) compo);
+        }
+        if (compo instanceof Robot && chargingScheduler != null) {
+            chargingScheduler.register(((Robot) compo).getIndex());
+        }
+        if (compo instanceof Robot && taskDispatcher != null) {
+            taskDispatcher.register(((Robot) compo).getIndex());
+        }
         model.addComponent(compo);
         if (compo instanceof Room) {
             rooms.add((Room) compo);
+            invalidateLayout();
         }
         return true;
     }
 
+    /**
+     * Adds several components to the factory at once. Components already in the factory are skipped.
+     * The fleet and the layout structures are only updated once, after every component is added,
+     * which makes building a large factory much faster than adding its components one by one.
+     * 
+     * @param compos The components to add.
+     * @return The number of components added.
+     */
+    public int addAll(Collection<? extends Component> compos) {
+        load();
+        Set<Component> set = getComponentSet();
+        int added = 0;
+        boolean newRobots = false;
+        boolean newRooms = false;
+        components.ensureCapacity(components.size() + compos.size());
+        for (Component compo : compos) {
+            if (!set.add(compo)) {
+                System.out.println("L'objet " + compo.getName() + " appartient déjà à l'usine");
+                continue;
+            }
+            components.add(compo);
+            model.addComponent(compo);
+            if (compo instanceof Robot) {
+                newRobots = true;
+                if (robotTasks != null) {
+                    robotTasks.add((Robot) compo);
+                }
+                if (chargingScheduler != null) {
+                    chargingScheduler.register(((Robot) compo).getIndex());
+                }
+                if (taskDispatcher != null) {
+                    taskDispatcher.register(((Robot) compo).getIndex());
+                }
+            } else if (compo instanceof Room) {
+                rooms.add((Room) compo);
+                newRooms = true;
+            }
+            added++;
+        }
+        componentsAdded();
+        if (newRobots) {
+            releaseFleet();
+        }
+        if (newRooms) {
+            invalidateLayout();
+        }
+        return added;
+    }
+
+    /**
+     * Gets the set of the components of the factory, building it if needed.
+     * 
+     * @return The components, by identity.
+     */
+    private Set<Component> getComponentSet() {
+        ComponentList list = getComponentList();
+        Set<Component> set = componentSet;
+        if (set == null || componentSetList != list || componentSetModifications != list.getModifications()) {
+            set = Collections.newSetFromMap(new IdentityHashMap<>(list.size() * 2));
+            set.addAll(list);
+            componentSet = set;
+            componentSetList = list;
+            componentSetModifications = list.getModifications();
+        }
+        return set;
+    }
+
+    /**
+     * Records that the factory added components to its list and to the set of its components, which is then
+     * still up to date.
+     */
+    private void componentsAdded() {
+        componentSetModifications = getComponentList().getModifications();
+    }
+
+    /**
+     * Gets the list of components as a list counting its modifications, converting the list read from a file
+     * written with Java serialization by former versions.
+     * 
+     * @return The list of components.
+     */
+    private ComponentList getComponentList() {
+        if (!(components instanceof ComponentList)) {
+            components = new ComponentList(components);
+        }
+        return (ComponentList) components;
+    }
+
+    /**
+     * Gets the connectivity graph of the rooms of the factory, building it if needed.
+     * 
+     * @return The room graph.
+     */
+    public RoomGraph getRoomGraph() {
+        load();
+        RoomGraph graph = roomGraph;
+        if (graph == null) {
+            graph = new RoomGraph(rooms);
+            roomGraph = graph;
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the motion planner of the factory, building its occupancy grid if needed.
+     * 
+     * @return The path planner.
+     */
+    public PathPlanner getPathPlanner() {
+        load();
+        PathPlanner planner = pathPlanner;
+        if (planner == null) {
+            planner = new PathPlanner(new OccupancyGrid(this));
+            pathPlanner = planner;
+        }
+        return planner;
+    }
+
+    /**
+     * Discards the room index, the room graph, the path planner, the charging scheduler and the task dispatcher so
+     * that they are rebuilt with the current rooms, doors, machines and stations on next use. Robots on a charging detour go back
+     * to their itinerary, and the jobs not delivered yet are dropped.
+     */
+    public void invalidateLayout() {
+        roomIndex = null;
+        roomGraph = null;
+        pathPlanner = null;
+        if (taskDispatcher != null) {
+            // The dispatcher refers to the former room graph and machines
+            getRobotTasks().cancelJobs();
+            taskDispatcher = null;
+        }
+        if (chargingScheduler != null) {
+            // The stations may have changed: the scheduler is built again with the current ones
+            RobotTasks tasks = getRobotTasks();
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.cancelDetour(i);
+            }
+            chargingScheduler = null;
+        }
+        if (model != null) {
+            model.layoutChanged();
+        }
+    }
+
+    /**
+     * Finds the room of the factory containing the given point.
+     * 
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The room containing the point, or null if no room of the factory contains it.
+     */
+    public Room findRoom(int x, int y) {
+        return getRoomIndex().find(x, y);
+    }
+
+    /**
+     * Gets the spatial index over the rooms of the factory, building it if needed.
+     * The rooms are indexed in the order of {@link #getRooms()}.
+     * 
+     * @return The room index.
+     */
+    public RoomIndex getRoomIndex() {
+        load();
+        RoomIndex index = roomIndex;
+        if (index == null) {
+            index = new RoomIndex(xCoord, yCoord, xSize, ySize);
+            for (Room room : rooms) {
+                index.add(room);
+            }
+            roomIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Gets the robots of the factory by index, and the state they keep on top of their itinerary,
+     * giving each robot its index if needed.
+     * 
+     * @return The robot tasks.
+     */
+    RobotTasks getRobotTasks() {
+        load();
+        RobotTasks tasks = robotTasks;
+        if (tasks == null) {
+            tasks = new RobotTasks(this);
+            robotTasks = tasks;
+        }
+        return tasks;
+    }
+
+    /**
+     * Moves the state of the robots of the factory to a structure-of-arrays fleet, if not done yet.
+     * Robots are then ticked by the fleet. The fleet is released when a robot is added to the factory.
+     * 
+     * @return The fleet of the factory.
+     */
+    public RobotFleet useFleet() {
+        load();
+        if (fleet == null) {
+            fleet = new RobotFleet(this);
+        }
+        return fleet;
+    }
+
+    /**
+     * Copies the state of the fleet back into the robots, which behave on their own again.
+     */
+    public void releaseFleet() {
+        if (fleet != null) {
+            fleet.release();
+            fleet = null;
+        }
+    }
+
+    /**
+     * Gets the structure-of-arrays fleet of the factory.
+     * 
+     * @return The fleet, or null if the robots are not managed by a fleet.
+     */
+    public RobotFleet getFleet() {
+        return fleet;
+    }
+
     /**
      * 
      * @return A string describing the factory.
      */
     @Override
     public String toString() {
+        load();
         String res = "Usine " + name + " : " + xSize + " x " + ySize;
         for (Component c : components) {
             res += "\n \t";
@@ -100,26 +438,72 @@ public class Factory extends Component implements RectangleShape {
     }
 
     /**
-     * Gets the list of components contained in the factory.
+     * Sets the loader reading the components of the factory from a model file, run the first time the
+     * components are needed. Loading adds the components to the factory and to its model.
+     * 
+     * @param contentLoader The loader, or null if the factory holds all its components.
+     */
+    public void setContentLoader(Consumer<Factory> contentLoader) {
+        this.contentLoader = contentLoader;
+    }
+
+    /**
+     * Checks if the components of the factory are loaded.
+     * 
+     * @return True if the factory holds all its components.
+     */
+    public boolean isLoaded() {
+        return contentLoader == null;
+    }
+
+    /**
+     * Loads the components of the factory from its model file, if not done yet.
+     */
+    public void load() {
+        if (contentLoader == null) {
+            return;
+        }
+        synchronized (this) {
+            Consumer<Factory> loader = contentLoader;
+            if (loader != null && !loading) {
+                loading = true;
+                try {
+                    loader.accept(this);
+                } finally {
+                    loading = false;
+                }
+                contentLoader = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the list of components contained in the factory. Components should be added through
+     * {@link #addCompo(Component)} or {@link #addAll(Collection)}, which also add them to the model and to the rooms,
+     * robots and layout of the factory.
      * 
      * @return The list of components.
      */
     public ArrayList<Component> getComponents() {
-        return components;
+        load();
+        return getComponentList();
     }
 
     /**
      * Sets the list of components contained in the factory. If a component is a room, it is also added to the list of rooms.
      * 
-     * @param components The list of components to set.
+     * @param components The list of components to set, copied.
      */
     public void setComponents(ArrayList<Component> components) {
-        this.components = components;
+        this.contentLoader = null;
+        this.components = new ComponentList(components);
+        this.componentSet = null;
         for (Component compo : components) {
             if (compo instanceof Room) {
                 rooms.add((Room) compo);
             }
         }
+        invalidateLayout();
     }
 
     /**
@@ -128,27 +512,56 @@ public class Factory extends Component implements RectangleShape {
      * @return The list of rooms.
      */
     public ArrayList<Room> getRooms() {
+        load();
         return rooms;
     }
 
     /**
-     * Gets the shape of the factory.
+     * Gets the style of the factory.
      * 
-     * @return The shape as a {@link Shape} object.
+     * @return The style as a {@link Style} object.
      */
     @Override
-    public Shape getShape() {
-        return new Rectangle(getWidth(), getHeight());
+    public Style getStyle() {
+        return style;
     }
 
     /**
-     * Gets the style of the factory.
+     * Prepares the behavior of the components of the factory for the next tick.
+     * The layout structures shared by the components are built beforehand, so that planning in parallel
+     * only reads them.
      * 
-     * @return The style as a {@link Style} object.
+     * @param play A boolean flag to determine the behavior state.
      */
     @Override
-    public Style getStyle() {
-        return new StyleObject(color);
+    public void plan(boolean play) {
+        plan(play, false);
+    }
+
+    /**
+     * Prepares the behavior of the components of the factory for the next tick, possibly in parallel.
+     * When run in parallel, the tasks are executed by the fork join pool of the calling thread.
+     * 
+     * @param play A boolean flag to determine the behavior state.
+     * @param parallel True to plan the components concurrently.
+     */
+    public void plan(boolean play, boolean parallel) {
+        load();
+        checkTicking();
+        getPathPlanner();
+        getRoomIndex();
+        getRoomGraph();
+        getRobotTasks();
+        if (fleet != null && play) {
+            fleet.plan(parallel);
+        }
+        if (parallel) {
+            components.parallelStream().forEach(c -> c.plan(play));
+        } else {
+            for (Component c : components) {
+                c.plan(play);
+            }
+        }
     }
 
     /**
@@ -158,8 +571,361 @@ public class Factory extends Component implements RectangleShape {
      */
     @Override 
     public void behave(boolean play) {
+        load();
+        checkTicking();
+        CollisionGrid grid = play && !collisionsIgnored ? buildCollisionGrid() : null;
+        if (fleet != null && play) {
+            if (!fleet.isPlanned()) {
+                fleet.plan(false);
+            }
+            if (fleet.commit(grid)) {
+                model.markDirty();
+            }
+        }
+        activeGrid = grid;
+        try {
+            for (Component c : components) {
+                c.behave(play);
+            }
+        } finally {
+            activeGrid = null;
+        }
+        ChargingScheduler scheduler = play ? getChargingScheduler() : null;
+        if (scheduler != null) {
+            scheduler.tick();
+        }
+        TaskDispatcher dispatcher = play ? getTaskDispatcher() : null;
+        if (dispatcher != null) {
+            dispatcher.tick();
+        }
+    }
+
+    /**
+     * Checks that the factory is simulated tick by tick, since ticking a factory driven by a timeline would
+     * desynchronize them.
+     * 
+     * @throws IllegalStateException If the factory is simulated event by event.
+     */
+    private void checkTicking() {
+        if (timeline != null) {
+            throw new IllegalStateException("Factory " + getName() + " is simulated event by event");
+        }
+    }
+
+    /**
+     * Starts simulating the factory event by event: the robots behave on their own again, and are moved by
+     * a {@link FactoryTimeline} instead of ticking the factory, until {@link #stopTimeline()} is called.
+     * The timeline moves the robots as ticking does only if they never wait for each other: collisions must be
+     * ignored, and every door must let all the robots through at the same time.
+     * 
+     * @return The timeline.
+     * @throws IllegalStateException If the factory is already simulated event by event, if its robots avoid
+     * each other, or if a door could make them wait for a reservation.
+     */
+    public FactoryTimeline startTimeline() {
+        load();
+        if (timeline != null) {
+            throw new IllegalStateException("Factory " + getName() + " is already simulated event by event");
+        }
+        if (!collisionsIgnored) {
+            throw new IllegalStateException("Factory " + getName() + " cannot be simulated event by event: "
+                                            + "its robots avoid collisions");
+        }
+        int robots = 0;
         for (Component c : components) {
-            c.behave(play);
+            if (c instanceof Robot) {
+                robots++;
+            }
+        }
+        for (Door door : getDoors()) {
+            if (door.getCapacity() < robots) {
+                throw new IllegalStateException("Factory " + getName() + " cannot be simulated event by event: door "
+                                                + door.getName() + " lets " + door.getCapacity() + " of its "
+                                                + robots + " robots through at a time");
+            }
+        }
+        releaseFleet();
+        getRoomIndex();
+        getRoomGraph();
+        timeline = new FactoryTimeline(this);
+        return timeline;
+    }
+
+    /**
+     * Stops simulating the factory event by event: the robots are brought to their current position, and the factory
+     * can be ticked again.
+     */
+    public void stopTimeline() {
+        if (timeline != null) {
+            timeline.syncAll();
+            timeline = null;
+        }
+    }
+
+    /**
+     * Gets the timeline simulating the factory event by event.
+     * 
+     * @return The timeline, or null if the factory is simulated tick by tick.
+     */
+    public FactoryTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Rebuilds the collision grid from the current positions of the robots, read from the fleet if any.
+     * The slot of each robot in the grid is its index.
+     * 
+     * @return The grid.
+     */
+    private CollisionGrid buildCollisionGrid() {
+        if (collisionGrid == null) {
+            collisionGrid = new CollisionGrid();
+        }
+        RobotTasks tasks = getRobotTasks();
+        int cellSize = 1;
+        for (int i = 0; i < tasks.size(); i++) {
+            cellSize = Math.max(cellSize, tasks.getRobot(i).getWidth());
+        }
+        collisionGrid.clear(tasks.size(), cellSize);
+        if (fleet != null) {
+            fleet.addTo(collisionGrid);
+        } else {
+            for (int i = 0; i < tasks.size(); i++) {
+                Robot robot = tasks.getRobot(i);
+                collisionGrid.add(i, robot.getxCoordinate(), robot.getyCoordinate(), robot.getWidth());
+            }
+        }
+        return collisionGrid;
+    }
+
+    /**
+     * Gets the collision grid the robots move in while the factory applies a tick.
+     * 
+     * @return The grid, or null outside of {@link #behave(boolean)} or if collisions are ignored.
+     */
+    CollisionGrid getActiveCollisionGrid() {
+        return activeGrid;
+    }
+
+    /**
+     * Chooses the door a robot goes through in place of a door of its itinerary, among the doors connecting the same
+     * rooms. Each door is given the distance from the robot to the next destination through it, plus the distance the
+     * robots holding or waiting for a reservation of the door still have to cover to go through it, shared between the
+     * lanes of the door. The door of the itinerary is kept unless another door costs less.
+     * 
+     * @param target The destination of the itinerary the robot now heads to.
+     * @param x The x-coordinate of the robot.
+     * @param y The y-coordinate of the robot.
+     * @param size The size of the robot.
+     * @param next The destination following the door in the itinerary.
+     * @return The least loaded door, or the given destination if it is not a door or has no alternative.
+     */
+    public Component chooseDoor(Component target, int x, int y, int size, Component next) {
+        if (!(target instanceof Door)) {
+            return target;
+        }
+        List<Door> doors = getRoomGraph().getParallelDoors((Door) target);
+        if (doors.size() < 2) {
+            return target;
+        }
+        Door best = (Door) target;
+        long bestCost = doorCost(best, x, y, size, next);
+        for (Door door : doors) {
+            long cost = doorCost(door, x, y, size, next);
+            if (cost < bestCost) {
+                best = door;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the cost of going through a door, as a distance.
+     */
+    private static long doorCost(Door door, int x, int y, int size, Component next) {
+        int doorX = door.getxCoordinate() + door.getWidth() / 2;
+        int doorY = door.getyCoordinate() + door.getHeight() / 2;
+        int nextX = next.getxCoordinate() + next.getWidth() / 2;
+        int nextY = next.getyCoordinate() + next.getHeight() / 2;
+        long travel = Math.max(Math.abs(doorX - x), Math.abs(doorY - y)) + Math.max(Math.abs(nextX - doorX), Math.abs(nextY - doorY));
+        // A robot covers about three times its size from entering the approach zone of a door to leaving it
+        return travel + (long) door.getTraffic().getLoad() * 3 * size / door.getCapacity();
+    }
+
+    /**
+     * Gets the doors of the rooms of the factory, each door once.
+     * 
+     * @return The doors, in the order of the rooms.
+     */
+    public List<Door> getDoors() {
+        Set<Door> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<Door> doors = new ArrayList<>();
+        for (Room room : getRooms()) {
+            for (Door door : room.getDoorList()) {
+                if (seen.add(door)) {
+                    doors.add(door);
+                }
+            }
+        }
+        return doors;
+    }
+
+    /**
+     * Drops the reservations of every door and empties their queues, e.g. when the robots are moved to another
+     * state. Robots ask for a reservation again before coming close to a door, except those already close to it.
+     * The statistics of the doors are kept.
+     */
+    public void clearDoorReservations() {
+        for (Door door : getDoors()) {
+            door.getTraffic().clear();
+        }
+        getRobotTasks().clearDoorReservations();
+    }
+
+    /**
+     * Gives batteries to the robots of the factory, drained by the distance they travel and charged at the power
+     * supply stations of the factory, where the robots are sent by a {@link ChargingScheduler}. The batteries of the
+     * robots are filled, and the robots on a charging detour go back to their itinerary.
+     * 
+     * @param capacity The capacity of the batteries, or 0 to remove the batteries: robots never run out of energy.
+     * @param chargeRate The energy a station gives per tick.
+     * @throws IllegalArgumentException If the capacity is negative or the charge rate is not positive.
+     */
+    public void setBatteries(int capacity, int chargeRate) {
+        if (capacity < 0 || chargeRate <= 0) {
+            throw new IllegalArgumentException("Invalid batteries for factory " + name + ": capacity " + capacity
+                                               + ", charge rate " + chargeRate);
+        }
+        load();
+        this.batteryCapacity = capacity;
+        this.chargeRate = chargeRate;
+        this.chargingScheduler = null;
+        getRobotTasks().resetBatteries(capacity > 0 ? capacity : -1);
+    }
+
+    /**
+     * Gets the capacity of the batteries of the robots.
+     * 
+     * @return The capacity, or 0 if robots have no battery.
+     */
+    public int getBatteryCapacity() {
+        return batteryCapacity;
+    }
+
+    /**
+     * Gets the energy a power supply station gives per tick.
+     * 
+     * @return The charge rate.
+     */
+    public int getChargeRate() {
+        return chargeRate;
+    }
+
+    /**
+     * Gets the scheduler sending the robots of the factory to charge, building it if needed.
+     * 
+     * @return The scheduler, or null if robots have no battery.
+     */
+    public ChargingScheduler getChargingScheduler() {
+        ChargingScheduler scheduler = chargingScheduler;
+        if (scheduler == null && batteryCapacity > 0) {
+            scheduler = new ChargingScheduler(this, batteryCapacity, chargeRate);
+            chargingScheduler = scheduler;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Sets whether the robots of the factory carry out the transport jobs emitted by its machines (see
+     * {@link ProductionMachine#setJobs(Component, int)}), handed to them by a {@link TaskDispatcher}, instead of
+     * following their itinerary. The robots drop their current job, and wait for a job where they are.
+     * 
+     * @param dispatching True to dispatch jobs, false to make the robots follow their itinerary again.
+     */
+    public void setDispatching(boolean dispatching) {
+        load();
+        this.dispatching = dispatching;
+        this.taskDispatcher = null;
+        getRobotTasks().cancelJobs();
+    }
+
+    /**
+     * Checks if the robots of the factory carry out the jobs emitted by its machines.
+     * 
+     * @return True if the factory dispatches jobs, false if robots follow their itinerary.
+     */
+    public boolean isDispatching() {
+        return dispatching;
+    }
+
+    /**
+     * Gets the dispatcher handing the jobs of the factory to its robots, building it if needed.
+     * 
+     * @return The dispatcher, or null if the factory does not dispatch jobs.
+     */
+    public TaskDispatcher getTaskDispatcher() {
+        TaskDispatcher dispatcher = taskDispatcher;
+        if (dispatcher == null && dispatching) {
+            dispatcher = new TaskDispatcher(this);
+            taskDispatcher = dispatcher;
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Checks if robots of the factory may run into each other.
+     * 
+     * @return True if collisions are ignored, false if robots avoid each other.
+     */
+    public boolean isCollisionsIgnored() {
+        return collisionsIgnored;
+    }
+
+    /**
+     * Sets whether robots of the factory may run into each other. Robots avoid each other by default.
+     * 
+     * @param collisionsIgnored True to let robots overlap, false to make them avoid each other.
+     */
+    public void setCollisionsIgnored(boolean collisionsIgnored) {
+        this.collisionsIgnored = collisionsIgnored;
+    }
+
+    /**
+     * The ComponentList class is the list of components of a factory. It counts all its modifications, replacing
+     * a component included, so that the factory notices the changes made through {@link Factory#getComponents()}.
+     */
+    private static final class ComponentList extends ArrayList<Component> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs an empty list with the specified initial capacity.
+         */
+        ComponentList(int capacity) {
+            super(capacity);
+        }
+
+        /**
+         * Constructs a list holding the given components.
+         */
+        ComponentList(Collection<? extends Component> components) {
+            super(components);
+        }
+
+        @Override
+        public Component set(int index, Component element) {
+            modCount++;
+            return super.set(index, element);
+        }
+
+        /**
+         * Gets the number of modifications of the list.
+         *
+         * @return The number of modifications since the list was built.
+         */
+        int getModifications() {
+            return modCount;
         }
     }
 }
@@ -0,0 +1,605 @@
+package compo;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The FactoryState class captures and restores the state a factory keeps from one tick to the next on top of the
+ * positions and itineraries of its robots: the door each robot heads to and the path it follows, its collision
+ * waits, door reservations, battery, charging detour and job, the queues of the doors, and the queues and clocks of
+ * the charging scheduler and of the task dispatcher. Together with the positions and itineraries, this state is what
+ * makes a restored factory go on exactly as the factory it was captured from.
+ *
+ * The state is split into parts, each encoded as bytes on its own, so that a journal only records the parts which
+ * changed during a tick: a few parts shared by the factory, one part for each door, then three parts for each robot.
+ * The plan of a robot, its path, detour and job, changes when it is sent somewhere else; its status, the door it heads
+ * to, its door reservations and its progress along its detour and job, changes a few times on the way; its progress,
+ * along its path and in its battery, changes as it moves. Components are referred to by their rank in the rooms, doors,
+ * production areas, machines and power supply stations of the factory, and robots by their rank among its components,
+ * so that a state can be restored in another copy of the factory, e.g. one decoded by the model codec. The statistics
+ * of the doors, scheduler and dispatcher are not part of the state.
+ *
+ * A FactoryState is bound to the layout and robots the factory had when it was built: a new one must be built once
+ * they change.
+ */
+public final class FactoryState {
+
+    /**
+     * The parts shared by the factory: whether its robots are moved by a fleet, and the clock and queues of the
+     * charging scheduler and of the task dispatcher.
+     */
+    private static final int FLEET = 0;
+    private static final int SCHEDULER_CLOCK = 1;
+    private static final int SCHEDULER = 2;
+    private static final int DISPATCHER_CLOCK = 3;
+    private static final int DISPATCHER = 4;
+    private static final int SHARED_PARTS = 5;
+
+    /**
+     * The parts of each robot: its plan, its status and its progress.
+     */
+    private static final int PLAN = 0;
+    private static final int STATUS = 1;
+    private static final int PROGRESS = 2;
+    private static final int ROBOT_PARTS = 3;
+
+    /**
+     * The factory.
+     */
+    private final Factory factory;
+
+    /**
+     * The doors of the factory, in the order of its rooms.
+     */
+    private final Door[] doors;
+
+    /**
+     * The robots of the factory, in the order of its components.
+     */
+    private final Robot[] robots;
+
+    /**
+     * The rank of each robot of the factory in {@link #robots}, by index of the robot, or -1 for the robots which left the factory.
+     */
+    private final int[] ranks;
+
+    /**
+     * The static components of the factory which robots refer to, and their rank.
+     */
+    private final List<Component> components = new ArrayList<>();
+    private final IdentityHashMap<Component, Integer> componentRanks = new IdentityHashMap<>();
+
+    /**
+     * The plan of each robot as last captured: the objects it is encoded from, which are replaced rather than changed,
+     * and the part encoded, so that plans which did not change are not encoded again.
+     */
+    private final Object[][] plans;
+    private final byte[][] planParts;
+
+    /**
+     * The writer encoding the parts, reused from one part to the next.
+     */
+    private final Writer out = new Writer();
+
+    /**
+     * Builds the state of a factory, bound to its current layout and robots.
+     *
+     * @param factory The factory.
+     */
+    public FactoryState(Factory factory) {
+        this.factory = factory;
+        RobotTasks tasks = factory.getRobotTasks();
+        ArrayList<Robot> list = new ArrayList<>();
+        for (Component c : factory.getComponents()) {
+            if (c instanceof Robot) {
+                list.add((Robot) c);
+            }
+        }
+        this.robots = list.toArray(new Robot[0]);
+        this.ranks = new int[tasks.size()];
+        Arrays.fill(ranks, -1);
+        for (int i = 0; i < robots.length; i++) {
+            ranks[robots[i].getIndex()] = i;
+        }
+        this.plans = new Object[robots.length][6];
+        this.planParts = new byte[robots.length][];
+        this.doors = factory.getDoors().toArray(new Door[0]);
+        ArrayList<Component> statics = new ArrayList<>(factory.getRooms());
+        statics.addAll(Arrays.asList(doors));
+        for (Room room : factory.getRooms()) {
+            for (ProductionArea area : room.getPaList()) {
+                statics.add(area);
+                statics.addAll(area.getPm());
+            }
+            statics.addAll(room.getPssList());
+        }
+        for (Component c : statics) {
+            if (componentRanks.putIfAbsent(c, components.size()) == null) {
+                components.add(c);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of parts of the state.
+     *
+     * @return The number of parts.
+     */
+    public int getPartCount() {
+        return SHARED_PARTS + doors.length + ROBOT_PARTS * robots.length;
+    }
+
+    /**
+     * Gets the static components of the factory the state refers to, in the order of their rank. The ranks only
+     * depend on the rooms of the factory and on what they hold, so a copy of the factory decoded by the model codec
+     * ranks the same components the same way, whatever the order of its components.
+     *
+     * @return The rooms, doors, production areas, machines and power supply stations of the factory.
+     */
+    public List<Component> getComponents() {
+        return Collections.unmodifiableList(components);
+    }
+
+    /**
+     * Captures a part of the current state of the factory.
+     *
+     * @param part The index of the part.
+     * @return The part, encoded.
+     * @throws IllegalArgumentException If a robot refers to a component which is not part of the factory.
+     */
+    public byte[] capture(int part) {
+        write(part);
+        return out.toByteArray();
+    }
+
+    /**
+     * Captures a part of the current state of the factory if it changed, without allocating anything otherwise.
+     *
+     * @param part The index of the part.
+     * @param previous The part as captured before.
+     * @return The part, encoded, or null if it is the same as before.
+     * @throws IllegalArgumentException If a robot refers to a component which is not part of the factory.
+     */
+    public byte[] captureChange(int part, byte[] previous) {
+        int robot = part - SHARED_PARTS - doors.length;
+        if (robot >= 0 && robot % ROBOT_PARTS == PLAN) {
+            robot /= ROBOT_PARTS;
+            if (samePlan(robot) && previous != null && previous == planParts[robot]) {
+                return null;
+            }
+            write(part);
+            byte[] plan = out.contentEquals(previous) ? null : out.toByteArray();
+            planParts[robot] = plan == null ? previous : plan;
+            return plan;
+        }
+        write(part);
+        return out.contentEquals(previous) ? null : out.toByteArray();
+    }
+
+    /**
+     * Checks if the plan of a robot is made of the objects it was last captured from, and records them otherwise.
+     */
+    private boolean samePlan(int robot) {
+        Robot r = robots[robot];
+        RobotTasks tasks = factory.getRobotTasks();
+        int index = r.getIndex();
+        Object[] plan = plans[robot];
+        boolean same = plan[0] == r.getPathDestination() & plan[1] == r.getPath() & plan[2] == tasks.getDetour(index)
+                       & plan[3] == tasks.getJob(index) & plan[4] == tasks.getJobRoute(index)
+                       & plan[5] == tasks.getDeliveredJob(index);
+        if (!same) {
+            plan[0] = r.getPathDestination();
+            plan[1] = r.getPath();
+            plan[2] = tasks.getDetour(index);
+            plan[3] = tasks.getJob(index);
+            plan[4] = tasks.getJobRoute(index);
+            plan[5] = tasks.getDeliveredJob(index);
+        }
+        return same;
+    }
+
+    /**
+     * Captures the whole current state of the factory.
+     *
+     * @return The parts, encoded.
+     * @throws IllegalArgumentException If a robot refers to a component which is not part of the factory.
+     */
+    public byte[][] capture() {
+        byte[][] parts = new byte[getPartCount()][];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = capture(i);
+        }
+        return parts;
+    }
+
+    /**
+     * Encodes a part of the current state of the factory into the writer.
+     */
+    private void write(int part) {
+        out.reset();
+        if (part < 0 || part >= getPartCount()) {
+            throw new IndexOutOfBoundsException("No part " + part + " in the state of factory " + factory.getName());
+        }
+        if (part >= SHARED_PARTS + doors.length) {
+            int robot = (part - SHARED_PARTS - doors.length) / ROBOT_PARTS;
+            int index = robots[robot].getIndex();
+            RobotTasks tasks = factory.getRobotTasks();
+            switch ((part - SHARED_PARTS - doors.length) % ROBOT_PARTS) {
+            case PLAN:
+                tasks.writePlan(index, out);
+                robots[robot].writePlan(out);
+                break;
+            case STATUS:
+                tasks.writeStatus(index, out);
+                robots[robot].writeStatus(out);
+                break;
+            default:
+                tasks.writeProgress(index, out);
+                robots[robot].writeProgress(out);
+                break;
+            }
+            return;
+        }
+        if (part >= SHARED_PARTS) {
+            doors[part - SHARED_PARTS].getTraffic().writeState(out);
+            return;
+        }
+        ChargingScheduler scheduler = factory.getChargingScheduler();
+        TaskDispatcher dispatcher = factory.getTaskDispatcher();
+        switch (part) {
+        case FLEET:
+            out.writeBoolean(factory.getFleet() != null);
+            break;
+        case SCHEDULER_CLOCK:
+            if (scheduler != null) {
+                scheduler.writeClock(out);
+            }
+            break;
+        case SCHEDULER:
+            if (scheduler != null) {
+                scheduler.writeQueues(out);
+            }
+            break;
+        case DISPATCHER_CLOCK:
+            if (dispatcher != null) {
+                dispatcher.writeClock(out);
+            }
+            break;
+        default:
+            if (dispatcher != null) {
+                dispatcher.writeQueues(out);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Restores a state into the factory, which must have the layout, robots and settings of the factory the state was
+     * captured from. The positions, itineraries and destination indexes of the robots must be restored beforehand,
+     * since they are not part of the state.
+     *
+     * @param parts The parts of the state, as captured.
+     * @throws IllegalArgumentException If the state does not match the factory.
+     */
+    public void restore(byte[][] parts) {
+        if (parts.length != getPartCount()) {
+            throw new IllegalArgumentException("The state has " + parts.length + " parts instead of " + getPartCount()
+                                               + " for factory " + factory.getName());
+        }
+        try {
+            factory.releaseFleet();
+            RobotTasks tasks = factory.getRobotTasks();
+            // The scheduler and dispatcher are built first, since building them changes the detours and jobs
+            ChargingScheduler scheduler = factory.getChargingScheduler();
+            TaskDispatcher dispatcher = factory.getTaskDispatcher();
+            // The robots read their path once the version of their route is read
+            Reader[] readers = new Reader[ROBOT_PARTS * robots.length];
+            for (int i = 0; i < robots.length; i++) {
+                int index = robots[i].getIndex();
+                for (int k = 0; k < ROBOT_PARTS; k++) {
+                    readers[ROBOT_PARTS * i + k] = reader(parts, SHARED_PARTS + doors.length + ROBOT_PARTS * i + k);
+                }
+                tasks.readPlan(index, readers[ROBOT_PARTS * i + PLAN]);
+                tasks.readStatus(index, readers[ROBOT_PARTS * i + STATUS]);
+                tasks.readProgress(index, readers[ROBOT_PARTS * i + PROGRESS]);
+            }
+            for (int i = 0; i < robots.length; i++) {
+                robots[i].readPlan(readers[ROBOT_PARTS * i + PLAN]);
+                robots[i].readStatus(readers[ROBOT_PARTS * i + STATUS]);
+                robots[i].readProgress(readers[ROBOT_PARTS * i + PROGRESS]);
+            }
+            for (int i = 0; i < doors.length; i++) {
+                doors[i].getTraffic().readState(reader(parts, SHARED_PARTS + i));
+            }
+            if ((scheduler != null) != (parts[SCHEDULER].length > 0) || (dispatcher != null) != (parts[DISPATCHER].length > 0)) {
+                throw new IllegalArgumentException("The state does not match the settings of factory " + factory.getName());
+            }
+            if (scheduler != null) {
+                scheduler.readClock(reader(parts, SCHEDULER_CLOCK));
+                scheduler.readQueues(reader(parts, SCHEDULER));
+            }
+            if (dispatcher != null) {
+                dispatcher.readClock(reader(parts, DISPATCHER_CLOCK));
+                dispatcher.readQueues(reader(parts, DISPATCHER));
+            }
+            if (reader(parts, FLEET).readBoolean()) {
+                factory.useFleet();
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException ex) {
+            throw new IllegalArgumentException("The state does not match factory " + factory.getName(), ex);
+        }
+    }
+
+    /**
+     * Gets a reader of a part.
+     */
+    private Reader reader(byte[][] parts, int part) {
+        return new Reader(ByteBuffer.wrap(parts[part]));
+    }
+
+    /**
+     * Encodes a part of the state: integers are written 7 bits at a time, signed ones zigzag encoded, components
+     * as their rank plus one and robots as their rank, 0 standing for null.
+     */
+    final class Writer {
+        private final Buffer bytes = new Buffer();
+
+        private Writer() {
+        }
+
+        /**
+         * Writes an integer.
+         */
+        void writeInt(int value) {
+            writeLong(value);
+        }
+
+        /**
+         * Writes a long integer.
+         */
+        void writeLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes.write((int) (zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes.write((int) zigzag);
+        }
+
+        /**
+         * Writes a boolean.
+         */
+        void writeBoolean(boolean value) {
+            bytes.write(value ? 1 : 0);
+        }
+
+        /**
+         * Writes an array of integers, or null.
+         */
+        void writeInts(int[] values) {
+            writeInt(values == null ? -1 : values.length);
+            if (values != null) {
+                for (int value : values) {
+                    writeInt(value);
+                }
+            }
+        }
+
+        /**
+         * Writes a reference to a component of the factory, or null.
+         *
+         * @throws IllegalArgumentException If the component is not part of the factory.
+         */
+        void writeRef(Component component) {
+            if (component == null) {
+                writeInt(0);
+                return;
+            }
+            Integer rank = componentRanks.get(component);
+            if (rank == null) {
+                throw new IllegalArgumentException(component.getName() + " is not part of factory " + factory.getName());
+            }
+            writeInt(rank + 1);
+        }
+
+        /**
+         * Writes references to components of the factory, or null.
+         */
+        void writeRefs(Component[] components) {
+            writeInt(components == null ? -1 : components.length);
+            if (components != null) {
+                for (Component c : components) {
+                    writeRef(c);
+                }
+            }
+        }
+
+        /**
+         * Writes a job, or null.
+         */
+        void writeJob(Job job) {
+            writeRef(job == null ? null : job.getMachine());
+            if (job != null) {
+                writeRef(job.getDestination());
+                writeLong(job.getEmitted());
+                writeLong(job.getAssigned());
+            }
+        }
+
+        /**
+         * Checks if a robot is still part of the factory, and can be written.
+         *
+         * @param index The index of the robot.
+         */
+        boolean hasRobot(int index) {
+            return index >= 0 && index < ranks.length && ranks[index] >= 0;
+        }
+
+        /**
+         * Writes a robot of the factory, or -1 for none.
+         *
+         * @param index The index of the robot, which must be part of the factory, or -1.
+         */
+        void writeRobot(int index) {
+            writeInt(index < 0 ? -1 : ranks[index]);
+        }
+
+        /**
+         * Forgets the bytes written.
+         */
+        private void reset() {
+            bytes.reset();
+        }
+
+        /**
+         * Checks if the bytes written are the given ones.
+         */
+        private boolean contentEquals(byte[] other) {
+            return bytes.contentEquals(other);
+        }
+
+        /**
+         * Gets the bytes written.
+         */
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * A byte array output stream whose contents can be compared without being copied.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        /**
+         * Checks if the bytes written are the given ones.
+         */
+        boolean contentEquals(byte[] other) {
+            return other != null && Arrays.equals(buf, 0, count, other, 0, other.length);
+        }
+    }
+
+    /**
+     * Decodes a part of the state written by a {@link Writer}.
+     */
+    final class Reader {
+        private final ByteBuffer in;
+
+        private Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads an integer.
+         */
+        int readInt() {
+            long value = readLong();
+            if (value != (int) value) {
+                throw new IllegalArgumentException("Malformed state of factory " + factory.getName());
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a long integer.
+         */
+        long readLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.get();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IllegalArgumentException("Malformed state of factory " + factory.getName());
+        }
+
+        /**
+         * Reads a boolean.
+         */
+        boolean readBoolean() {
+            return in.get() != 0;
+        }
+
+        /**
+         * Reads an array of integers, or null.
+         */
+        int[] readInts() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            int[] values = new int[Math.min(length, in.remaining())];
+            if (values.length != length) {
+                throw new BufferUnderflowException();
+            }
+            for (int i = 0; i < length; i++) {
+                values[i] = readInt();
+            }
+            return values;
+        }
+
+        /**
+         * Reads a reference to a component of the factory, or null.
+         */
+        Component readRef() {
+            int rank = readInt();
+            return rank == 0 ? null : components.get(rank - 1);
+        }
+
+        /**
+         * Reads a reference to a component of the factory of the given type, or null.
+         */
+        <T extends Component> T readRef(Class<T> type) {
+            return type.cast(readRef());
+        }
+
+        /**
+         * Reads references to components of the factory, or null.
+         */
+        Component[] readRefs() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            Component[] refs = new Component[Math.min(length, in.remaining())];
+            if (refs.length != length) {
+                throw new BufferUnderflowException();
+            }
+            for (int i = 0; i < length; i++) {
+                refs[i] = readRef();
+            }
+            return refs;
+        }
+
+        /**
+         * Reads a job, or null.
+         */
+        Job readJob() {
+            ProductionMachine machine = readRef(ProductionMachine.class);
+            if (machine == null) {
+                return null;
+            }
+            Job job = new Job(machine, readRef(), readLong());
+            job.setAssigned(readLong());
+            return job;
+        }
+
+        /**
+         * Reads a robot of the factory.
+         *
+         * @return The index of the robot, or -1 for none.
+         */
+        int readRobot() {
+            int rank = readInt();
+            return rank < 0 ? -1 : robots[rank].getIndex();
+        }
+    }
+}
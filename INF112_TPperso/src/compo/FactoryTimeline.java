@@ -0,0 +1,403 @@
+package compo;
+
+import java.util.PriorityQueue;
+
+/**
+ * The FactoryTimeline class simulates a factory event by event instead of tick by tick. Between two events,
+ * a robot moves in a straight line towards its target, by its speed along each axis per tick, as in a
+ * {@link RobotFleet}, so its position and battery level at any tick are computed from where its current move started.
+ * Only the events change anything, and they are kept in a priority queue ordered by tick:
+ * <ul>
+ * <li>a robot reaches the target it heads to, and heads to the next one;</li>
+ * <li>the battery of a robot runs out;</li>
+ * <li>a robot reaches its charging station or delivers its job, and is handed to the charging scheduler or to
+ * the task dispatcher;</li>
+ * <li>the charging scheduler has work, when a battery gets low or a station completes a charge;</li>
+ * <li>the task dispatcher has work, when a machine completes a production cycle and emits a job, or jobs wait
+ * for idle robots.</li>
+ * </ul>
+ * Events of the same tick are handled in the order ticking the factory runs them, so the simulation matches
+ * ticking the factory with its robots managed by a fleet. This requires that robots never wait for each other, which
+ * {@link Factory#startTimeline()} enforces: the factory must ignore collisions, and each of its doors must let all
+ * its robots through at the same time. The robots themselves are only brought to their current position when an
+ * event looks at them, or when {@link #syncAll()} is called, e.g. to draw a frame.
+ */
+public class FactoryTimeline {
+
+    /**
+     * The kinds of events, in the order they are handled within a tick.
+     */
+    private static final int ARRIVAL = 0;
+    private static final int STEP = 1;
+    private static final int CHARGE = 2;
+    private static final int DISPATCH = 3;
+
+    /**
+     * The factory simulated, its charging scheduler and its task dispatcher, if any.
+     */
+    private final Factory factory;
+    private final ChargingScheduler scheduler;
+    private final TaskDispatcher dispatcher;
+
+    /**
+     * The ticks of the scheduler and of the dispatcher when the timeline started, which may have been ticked before.
+     */
+    private final long schedulerStart;
+    private final long dispatcherStart;
+
+    /**
+     * The robots of the factory and their batteries and tasks, by index, which is their slot in the arrays below.
+     */
+    private final RobotTasks tasks;
+    private final Robot[] robots;
+
+    /**
+     * The current move of each robot: the tick it started at, its position and battery level then, and the center
+     * of its target. A robot which does not move has no current move, and its own state is up to date.
+     */
+    private final long[] starts;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] energies;
+    private final int[] targetXs;
+    private final int[] targetYs;
+    private final boolean[] moving;
+
+    /**
+     * The version of the move of each robot, which makes the events of former moves obsolete.
+     */
+    private final int[] versions;
+
+    /**
+     * The events to come, and the ticks of the pending events of the scheduler and of the dispatcher.
+     */
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long chargeTick = Long.MAX_VALUE;
+    private long dispatchTick = Long.MAX_VALUE;
+
+    /**
+     * The tick being simulated, or the last tick simulated between events, and the number of events handled.
+     */
+    private long now;
+    private long eventCount;
+
+    /**
+     * Constructs the timeline of a factory, whose robots start moving from their current state.
+     * The factory must not be ticked while it is simulated event by event, see {@link Factory#startTimeline()}.
+     *
+     * @param factory The factory.
+     */
+    FactoryTimeline(Factory factory) {
+        this.factory = factory;
+        this.scheduler = factory.getChargingScheduler();
+        this.dispatcher = factory.getTaskDispatcher();
+        this.schedulerStart = scheduler == null ? 0 : scheduler.getTick();
+        this.dispatcherStart = dispatcher == null ? 0 : dispatcher.getTick();
+        this.tasks = factory.getRobotTasks();
+        int n = tasks.size();
+        robots = new Robot[n];
+        for (int i = 0; i < n; i++) {
+            robots[i] = tasks.getRobot(i);
+        }
+        starts = new long[n];
+        xs = new int[n];
+        ys = new int[n];
+        energies = new int[n];
+        targetXs = new int[n];
+        targetYs = new int[n];
+        moving = new boolean[n];
+        versions = new int[n];
+        for (int i = 0; i < n; i++) {
+            startMove(i, 0);
+        }
+        scheduleTasks();
+    }
+
+    /**
+     * Simulates the factory up to the given tick, counted from the start of the timeline: every event up to this tick
+     * is handled, and the scheduler and dispatcher are brought to it. The robots are only brought to their position
+     * at this tick by {@link #syncAll()}.
+     *
+     * @param tick The tick.
+     */
+    public void advanceTo(long tick) {
+        while (!events.isEmpty() && events.peek().tick <= tick) {
+            Event event = events.poll();
+            if (event.slot >= 0 ? event.version != versions[event.slot]
+                                : event.tick != (event.kind == CHARGE ? chargeTick : dispatchTick)) {
+                continue;
+            }
+            eventCount++;
+            handle(event);
+        }
+        now = Math.max(now, tick);
+        if (scheduler != null) {
+            scheduler.skipTo(schedulerStart + now);
+        }
+        if (dispatcher != null) {
+            dispatcher.skipTo(dispatcherStart + now);
+        }
+    }
+
+    /**
+     * Handles an event.
+     */
+    private void handle(Event event) {
+        int slot = event.slot;
+        switch (event.kind) {
+            case ARRIVAL:
+                // The target was reached at the end of the previous tick, and the robot heads to the next one
+                now = event.tick - 1;
+                sync(slot);
+                Robot robot = robots[slot];
+                if (!tasks.reachTaskTarget(slot)) {
+                    robot.nextDestination();
+                }
+                startMove(slot, 1);
+                if (robot.isStopped()) {
+                    events.add(new Event(event.tick, STEP, slot, versions[slot]));
+                }
+                break;
+            case STEP:
+                now = event.tick;
+                sync(slot);
+                if (moving[slot]) {
+                    // The battery ran out during the move
+                    moving[slot] = false;
+                    versions[slot]++;
+                    if (scheduler != null) {
+                        scheduler.strand(slot);
+                    }
+                } else {
+                    catchUp(now - 1);
+                    tasks.afterStep(slot, 0);
+                }
+                scheduleTasks();
+                break;
+            case CHARGE:
+                now = event.tick;
+                scheduler.forEachDue(schedulerStart + now, this::sync);
+                scheduler.skipTo(schedulerStart + now - 1);
+                scheduler.tick();
+                scheduleTasks();
+                break;
+            default:
+                now = event.tick;
+                dispatcher.skipTo(dispatcherStart + now - 1);
+                dispatcher.tick();
+                scheduleTasks();
+                break;
+        }
+    }
+
+    /**
+     * Brings the scheduler and the dispatcher to the given tick, before a robot is handed to them.
+     */
+    private void catchUp(long tick) {
+        if (scheduler != null) {
+            scheduler.skipTo(schedulerStart + tick);
+        }
+        if (dispatcher != null) {
+            dispatcher.skipTo(dispatcherStart + tick);
+        }
+    }
+
+    /**
+     * Schedules the next events of the scheduler and of the dispatcher, which change as robots are handed to them.
+     */
+    private void scheduleTasks() {
+        if (scheduler != null) {
+            long next = scheduler.getNextEventTick();
+            long tick = next == Long.MAX_VALUE ? next : next - schedulerStart;
+            if (tick != chargeTick) {
+                chargeTick = tick;
+                if (tick != Long.MAX_VALUE) {
+                    events.add(new Event(tick, CHARGE, -1, 0));
+                }
+            }
+        }
+        if (dispatcher != null) {
+            long next = dispatcher.getNextEventTick();
+            long tick = next == Long.MAX_VALUE ? next : next - dispatcherStart;
+            if (tick != dispatchTick) {
+                dispatchTick = tick;
+                if (tick != Long.MAX_VALUE) {
+                    events.add(new Event(tick, DISPATCH, -1, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the move of a robot from its current state towards its target, and schedules its arrival and, if its
+     * battery runs out before, the end of its battery.
+     *
+     * @param slot The slot of the robot.
+     * @param minTicks The minimum number of ticks before the robot can reach its target: 1 if it just headed to it,
+     *                 since the next tick is the first to check it, 0 otherwise.
+     */
+    private void startMove(int slot, int minTicks) {
+        Robot robot = robots[slot];
+        versions[slot]++;
+        starts[slot] = now;
+        xs[slot] = robot.getxCoordinate();
+        ys[slot] = robot.getyCoordinate();
+        energies[slot] = tasks.getEnergy(slot);
+        int speed = robot.getSpeed();
+        moving[slot] = !robot.isStopped() && speed > 0;
+        if (!moving[slot]) {
+            return;
+        }
+        Component target = robot.getTarget();
+        targetXs[slot] = target.getxCoordinate() + target.getWidth() / 2;
+        targetYs[slot] = target.getyCoordinate() + target.getHeight() / 2;
+        long dx = Math.abs(targetXs[slot] - xs[slot]), dy = Math.abs(targetYs[slot] - ys[slot]);
+        // The target is reached at the end of the first tick the robot is closer than its speed along both axes
+        long ticks = Math.max(minTicks, Math.max(dx / speed, dy / speed));
+        events.add(new Event(now + ticks + 1, ARRIVAL, slot, versions[slot]));
+        if (energies[slot] > 0 && moved(slot, ticks) >= energies[slot]) {
+            long low = 1, high = ticks;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (moved(slot, middle) >= energies[slot]) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            events.add(new Event(now + low, STEP, slot, versions[slot]));
+        }
+    }
+
+    /**
+     * Computes the distance a robot covered, along the x axis plus along the y axis, after the given number of ticks
+     * of its current move.
+     */
+    private long moved(int slot, long ticks) {
+        long reach = ticks * robots[slot].getSpeed();
+        return Math.min(reach, Math.abs(targetXs[slot] - xs[slot])) + Math.min(reach, Math.abs(targetYs[slot] - ys[slot]));
+    }
+
+    /**
+     * Brings a robot to its position and battery level at the current tick, which becomes the start of its move.
+     */
+    private void sync(int slot) {
+        if (!moving[slot] || starts[slot] == now) {
+            return;
+        }
+        long reach = (now - starts[slot]) * robots[slot].getSpeed();
+        int dx = (int) Math.max(-reach, Math.min(reach, targetXs[slot] - xs[slot]));
+        int dy = (int) Math.max(-reach, Math.min(reach, targetYs[slot] - ys[slot]));
+        Robot robot = robots[slot];
+        xs[slot] += dx;
+        ys[slot] += dy;
+        starts[slot] = now;
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        robot.setxCoord(xs[slot]);
+        robot.setyCoord(ys[slot]);
+        Room room = robot.getRoom();
+        if (room == null || !room.contains(xs[slot], ys[slot])) {
+            RoomIndex roomIndex = factory.getRoomIndex();
+            int index = roomIndex.indexOf(xs[slot], ys[slot]);
+            robot.setRoom(index < 0 ? null : roomIndex.get(index));
+        }
+        if (energies[slot] >= 0) {
+            energies[slot] = Math.max(0, energies[slot] - Math.abs(dx) - Math.abs(dy));
+            tasks.setEnergy(slot, energies[slot]);
+        }
+    }
+
+    /**
+     * Brings every robot to its position and battery level at the last tick simulated.
+     */
+    public void syncAll() {
+        for (int i = 0; i < robots.length; i++) {
+            sync(i);
+        }
+    }
+
+    /**
+     * Starts a new move of a robot heading to a new target, e.g. when it is sent to charge or given a job.
+     *
+     * @param slot The slot of the robot, which is its index.
+     */
+    void reroute(int slot) {
+        if (slot < robots.length) {
+            sync(slot);
+            startMove(slot, 0);
+        }
+    }
+
+    /**
+     * Gets the last tick simulated, counted from the start of the timeline.
+     *
+     * @return The tick.
+     */
+    public long getTick() {
+        return now;
+    }
+
+    /**
+     * Gets the number of events handled so far.
+     *
+     * @return The number of events.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Gets the number of events to come, obsolete ones included.
+     *
+     * @return The number of events.
+     */
+    public int getQueuedEvents() {
+        return events.size();
+    }
+
+    /**
+     * Gets the factory simulated.
+     *
+     * @return The factory.
+     */
+    public Factory getFactory() {
+        return factory;
+    }
+
+    /**
+     *
+     * @return A string describing the timeline.
+     */
+    @Override
+    public String toString() {
+        return "Chronologie de l'usine " + factory.getName() + " : tick " + now + ", " + eventCount + " événements traités, "
+               + events.size() + " en attente";
+    }
+
+    /**
+     * An event, ordered by tick, then by kind, then by robot, as ticking the factory would handle them.
+     */
+    private static final class Event implements Comparable<Event> {
+        private final long tick;
+        private final int kind;
+        private final int slot;
+        private final int version;
+
+        private Event(long tick, int kind, int slot, int version) {
+            this.tick = tick;
+            this.kind = kind;
+            this.slot = slot;
+            this.version = version;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (tick != other.tick) {
+                return Long.compare(tick, other.tick);
+            }
+            return kind != other.kind ? Integer.compare(kind, other.kind) : Integer.compare(slot, other.slot);
+        }
+    }
+}
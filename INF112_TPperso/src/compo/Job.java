@@ -0,0 +1,88 @@
+package compo;
+
+/**
+ * The Job class represents a transport job emitted by a production machine: a robot must go to the machine,
+ * pick up what it produced, and bring it to the destination of the machine. Jobs are handed to the robots
+ * by the {@link TaskDispatcher} of the factory.
+ */
+public final class Job {
+
+    /**
+     * The machine which emitted the job, and the component the robot brings its load to.
+     */
+    private final ProductionMachine machine;
+    private final Component destination;
+
+    /**
+     * The tick the job was emitted at, and the tick it was given to a robot, or -1 while it waits for one.
+     */
+    private final long emitted;
+    private long assigned = -1;
+
+    /**
+     * Constructs a job waiting for a robot.
+     *
+     * @param machine The machine emitting the job.
+     * @param destination The component the load is brought to.
+     * @param emitted The tick the job is emitted at.
+     */
+    Job(ProductionMachine machine, Component destination, long emitted) {
+        this.machine = machine;
+        this.destination = destination;
+        this.emitted = emitted;
+    }
+
+    /**
+     * Gets the machine which emitted the job, where the load is picked up.
+     *
+     * @return The machine.
+     */
+    public ProductionMachine getMachine() {
+        return machine;
+    }
+
+    /**
+     * Gets the component the load is brought to.
+     *
+     * @return The destination.
+     */
+    public Component getDestination() {
+        return destination;
+    }
+
+    /**
+     * Gets the tick the job was emitted at, counted by the dispatcher.
+     *
+     * @return The tick.
+     */
+    public long getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * Gets the tick the job was given to a robot.
+     *
+     * @return The tick, or -1 if the job waits for a robot.
+     */
+    public long getAssigned() {
+        return assigned;
+    }
+
+    /**
+     * Records the tick the job was given to a robot.
+     *
+     * @param assigned The tick.
+     */
+    void setAssigned(long assigned) {
+        this.assigned = assigned;
+    }
+
+    /**
+     *
+     * @return A string describing the job.
+     */
+    @Override
+    public String toString() {
+        return "Tâche " + machine.getName() + " -> " + destination.getName() + " émise au tick " + emitted;
+    }
+}
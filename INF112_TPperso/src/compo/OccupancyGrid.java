@@ -0,0 +1,230 @@
+package compo;
+
+/**
+ * The OccupancyGrid class rasterizes the layout of a factory into square cells for motion planning.
+ * The borders of the rooms are walls, except where a door opens them, and production machines are obstacles.
+ * Production areas are left free since robots move inside them to serve their machines.
+ */
+public class OccupancyGrid {
+
+    /**
+     * Default size of a cell, in pixels.
+     */
+    public static final int DEFAULT_CELL_SIZE = 5;
+
+    /**
+     * Flag of the cells crossed by the border of a room.
+     */
+    public static final byte WALL = 1;
+
+    /**
+     * Flag of the cells covered by a production machine.
+     */
+    public static final byte OBSTACLE = 2;
+
+    /**
+     * The size of a cell, in pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * The coordinates of the top left corner of the grid.
+     */
+    private final int originX;
+    private final int originY;
+
+    /**
+     * The number of columns and rows of the grid.
+     */
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The flags of each cell, row by row.
+     */
+    private final byte[] flags;
+
+    /**
+     * Constructs the occupancy grid of a factory with the default cell size.
+     *
+     * @param factory The factory to rasterize.
+     */
+    public OccupancyGrid(Factory factory) {
+        this(factory, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs the occupancy grid of a factory.
+     *
+     * @param factory The factory to rasterize.
+     * @param cellSize The size of a cell, in pixels.
+     */
+    public OccupancyGrid(Factory factory, int cellSize) {
+        this.cellSize = cellSize;
+        this.originX = factory.getxCoordinate();
+        this.originY = factory.getyCoordinate();
+        this.cols = factory.getWidth() / cellSize + 1;
+        this.rows = factory.getHeight() / cellSize + 1;
+        this.flags = new byte[cols * rows];
+
+        for (Room room : factory.getRooms()) {
+            int x = room.getxCoordinate(), y = room.getyCoordinate();
+            int w = room.getWidth(), h = room.getHeight();
+            mark(x, y, w, 0, WALL);
+            mark(x, y + h, w, 0, WALL);
+            mark(x, y, 0, h, WALL);
+            mark(x + w, y, 0, h, WALL);
+        }
+        for (Room room : factory.getRooms()) {
+            for (Door door : room.getDoorList()) {
+                clear(door.getxCoordinate(), door.getyCoordinate(), door.getWidth(), door.getHeight(), WALL);
+            }
+        }
+        for (Room room : factory.getRooms()) {
+            for (ProductionArea area : room.getPaList()) {
+                for (ProductionMachine machine : area.getPm()) {
+                    mark(machine.getxCoordinate(), machine.getyCoordinate(), machine.getWidth(), machine.getHeight(), OBSTACLE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a flag on every cell overlapping the given rectangle.
+     */
+    private void mark(int x, int y, int width, int height, byte flag) {
+        int c0 = clampCol(colOf(x)), c1 = clampCol(colOf(x + width));
+        int r0 = clampRow(rowOf(y)), r1 = clampRow(rowOf(y + height));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                flags[r * cols + c] |= flag;
+            }
+        }
+    }
+
+    /**
+     * Removes a flag from every cell overlapping the given rectangle.
+     */
+    private void clear(int x, int y, int width, int height, byte flag) {
+        int c0 = clampCol(colOf(x)), c1 = clampCol(colOf(x + width));
+        int r0 = clampRow(rowOf(y)), r1 = clampRow(rowOf(y + height));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                flags[r * cols + c] &= ~flag;
+            }
+        }
+    }
+
+    /**
+     * Brings a column or a row back inside the grid.
+     */
+    private int clampCol(int col) {
+        return Math.max(0, Math.min(cols - 1, col));
+    }
+
+    private int clampRow(int row) {
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    /**
+     * Gets the column of the cell containing the given x-coordinate.
+     *
+     * @param x The x-coordinate.
+     * @return The column, possibly outside of the grid.
+     */
+    public int colOf(int x) {
+        return Math.floorDiv(x - originX, cellSize);
+    }
+
+    /**
+     * Gets the row of the cell containing the given y-coordinate.
+     *
+     * @param y The y-coordinate.
+     * @return The row, possibly outside of the grid.
+     */
+    public int rowOf(int y) {
+        return Math.floorDiv(y - originY, cellSize);
+    }
+
+    /**
+     * Gets the index of the cell containing the given point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The cell index, or -1 if the point is outside of the grid.
+     */
+    public int cellOf(int x, int y) {
+        int col = colOf(x), row = rowOf(y);
+        if (col < 0 || row < 0 || col >= cols || row >= rows) {
+            return -1;
+        }
+        return row * cols + col;
+    }
+
+    /**
+     * Gets the x-coordinate of the center of a cell.
+     *
+     * @param cell The cell index.
+     * @return The x-coordinate of the center.
+     */
+    public int centerX(int cell) {
+        return originX + (cell % cols) * cellSize + cellSize / 2;
+    }
+
+    /**
+     * Gets the y-coordinate of the center of a cell.
+     *
+     * @param cell The cell index.
+     * @return The y-coordinate of the center.
+     */
+    public int centerY(int cell) {
+        return originY + (cell / cols) * cellSize + cellSize / 2;
+    }
+
+    /**
+     * Checks if a cell carries the given flag.
+     *
+     * @param cell The cell index.
+     * @param flag The flag, {@link #WALL} or {@link #OBSTACLE}.
+     * @return True if the flag is set on the cell.
+     */
+    public boolean is(int cell, byte flag) {
+        return (flags[cell] & flag) != 0;
+    }
+
+    /**
+     * Gets the size of a cell.
+     *
+     * @return The cell size, in pixels.
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Gets the number of columns of the grid.
+     *
+     * @return The number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Gets the number of rows of the grid.
+     *
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of cells of the grid.
+     *
+     * @return The number of cells.
+     */
+    public int size() {
+        return flags.length;
+    }
+}
@@ -0,0 +1,362 @@
+package compo;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The PathPlanner class computes collision-free shortest paths over the occupancy grid of a factory
+ * with the A* algorithm on 8-connected cells.
+ * Each thread searches with its own buffers, allocated once and reused between its queries, so that robots
+ * planned concurrently search concurrently. The paths found are kept in a cache shared by the threads,
+ * by destination and start cell, so that robots sharing a route share a single search; the cache is bounded and
+ * drops the least recently used paths first.
+ */
+public class PathPlanner {
+
+    /**
+     * Default number of paths kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 16384;
+
+    /**
+     * Cost of an orthogonal and of a diagonal move between two cells.
+     */
+    private static final int STRAIGHT_COST = 10;
+    private static final int DIAGONAL_COST = 14;
+
+    /**
+     * Column and row offsets of the 8 neighbours of a cell, orthogonal ones first.
+     */
+    private static final int[] NEIGHBOUR_COLS = { 1, -1, 0, 0, 1, 1, -1, -1 };
+    private static final int[] NEIGHBOUR_ROWS = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+    /**
+     * Path cached for a destination which cannot be reached, told apart from an empty path by identity.
+     */
+    private static final int[] UNREACHABLE = new int[0];
+
+    /**
+     * The grid searched by the planner.
+     */
+    private final OccupancyGrid grid;
+
+    /**
+     * The search buffers of each thread using the planner.
+     */
+    private final ThreadLocal<Search> searches;
+
+    /**
+     * Paths already found, by destination and start cell, in least recently used order. Guarded by the cache itself.
+     */
+    private final LinkedHashMap<PathKey, int[]> cache;
+
+    /**
+     * Constructs a planner for the given grid, with a cache of {@link #DEFAULT_CACHE_CAPACITY} paths.
+     *
+     * @param grid The occupancy grid to search.
+     */
+    public PathPlanner(OccupancyGrid grid) {
+        this(grid, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Constructs a planner for the given grid.
+     *
+     * @param grid The occupancy grid to search.
+     * @param cacheCapacity The maximum number of paths kept in the cache.
+     * @throws IllegalArgumentException If the capacity is negative.
+     */
+    public PathPlanner(OccupancyGrid grid, int cacheCapacity) {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("The cache capacity must not be negative: " + cacheCapacity);
+        }
+        this.grid = grid;
+        this.searches = ThreadLocal.withInitial(() -> new Search(grid.size()));
+        this.cache = new LinkedHashMap<PathKey, int[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PathKey, int[]> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the grid searched by the planner.
+     *
+     * @return The occupancy grid.
+     */
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Finds the shortest path from a point to the center of a destination component.
+     * Walls can only be crossed through doors, and machines can only be entered if they are the
+     * destination or left if the path starts inside them.
+     * Several threads may find paths at once.
+     *
+     * @param x The x-coordinate of the start point.
+     * @param y The y-coordinate of the start point.
+     * @param destination The component to reach.
+     * @return The cells to go through, excluding the start cell and ending with the cell of the
+     *         destination center, or null if the destination cannot be reached.
+     */
+    public int[] findPath(int x, int y, Component destination) {
+        int start = grid.cellOf(x, y);
+        int goal = grid.cellOf(destination.getxCoordinate() + destination.getWidth() / 2,
+                               destination.getyCoordinate() + destination.getHeight() / 2);
+        if (start < 0 || goal < 0) {
+            return null;
+        }
+        PathKey key = new PathKey(destination, start);
+        int[] path;
+        synchronized (cache) {
+            path = cache.get(key);
+        }
+        if (path == null) {
+            // Searched without holding the cache: threads asking for the same path at once may both search it
+            Search search = searches.get();
+            search.goalCell = goal;
+            search.goalCol0 = grid.colOf(destination.getxCoordinate());
+            search.goalCol1 = grid.colOf(destination.getxCoordinate() + destination.getWidth());
+            search.goalRow0 = grid.rowOf(destination.getyCoordinate());
+            search.goalRow1 = grid.rowOf(destination.getyCoordinate() + destination.getHeight());
+            path = search.search(start);
+            if (path == null) {
+                path = UNREACHABLE;
+            }
+            synchronized (cache) {
+                cache.put(key, path);
+            }
+        }
+        return path == UNREACHABLE ? null : path;
+    }
+
+    /**
+     * Drops every cached path.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Gets the number of paths in the cache.
+     *
+     * @return The number of paths.
+     */
+    public int getCachedPaths() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * The search buffers of a thread: the cost of the cells from the start cell and the cell each was reached from,
+     * valid for the cells stamped with the current search, so that buffers need no clearing between searches,
+     * and the binary heap of open cells ordered by estimated total cost.
+     */
+    private final class Search {
+        private final int[] costs;
+        private final int[] parents;
+        private final int[] openStamps;
+        private final int[] closedStamps;
+        private int stamp;
+        private int[] heapCells = new int[64];
+        private int[] heapScores = new int[64];
+        private int heapSize;
+
+        /**
+         * Goal of the current search: its cell and the cells covered by the destination component.
+         */
+        private int goalCell;
+        private int goalCol0, goalCol1, goalRow0, goalRow1;
+
+        private Search(int size) {
+            costs = new int[size];
+            parents = new int[size];
+            openStamps = new int[size];
+            closedStamps = new int[size];
+        }
+
+        /**
+         * Runs A* from the start cell to the current goal.
+         *
+         * @param start The start cell.
+         * @return The path, or null if the goal cannot be reached.
+         */
+        private int[] search(int start) {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(openStamps, 0);
+                Arrays.fill(closedStamps, 0);
+                stamp = 1;
+            }
+            int cols = grid.getCols(), rows = grid.getRows();
+            heapSize = 0;
+            costs[start] = 0;
+            parents[start] = -1;
+            openStamps[start] = stamp;
+            push(start, heuristic(start));
+
+            while (heapSize > 0) {
+                int cell = pop();
+                if (closedStamps[cell] == stamp) {
+                    continue;
+                }
+                if (cell == goalCell) {
+                    return buildPath(start);
+                }
+                closedStamps[cell] = stamp;
+                int col = cell % cols, row = cell / cols;
+                for (int k = 0; k < 8; k++) {
+                    int nc = col + NEIGHBOUR_COLS[k], nr = row + NEIGHBOUR_ROWS[k];
+                    if (nc < 0 || nr < 0 || nc >= cols || nr >= rows) {
+                        continue;
+                    }
+                    int next = nr * cols + nc;
+                    if (closedStamps[next] == stamp || !canEnter(cell, next)) {
+                        continue;
+                    }
+                    int cost = costs[cell] + STRAIGHT_COST;
+                    if (k >= 4) {
+                        // No corner cutting: both orthogonal cells around a diagonal move must be free
+                        if (!canEnter(cell, row * cols + nc) || !canEnter(cell, nr * cols + col)) {
+                            continue;
+                        }
+                        cost = costs[cell] + DIAGONAL_COST;
+                    }
+                    if (openStamps[next] != stamp || cost < costs[next]) {
+                        openStamps[next] = stamp;
+                        costs[next] = cost;
+                        parents[next] = cell;
+                        push(next, cost + heuristic(next));
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Checks if a move from a cell into a neighbour cell is allowed.
+         */
+        private boolean canEnter(int from, int to) {
+            if (to == goalCell) {
+                return true;
+            }
+            if (grid.is(to, OccupancyGrid.WALL)) {
+                return false;
+            }
+            return !grid.is(to, OccupancyGrid.OBSTACLE) || grid.is(from, OccupancyGrid.OBSTACLE) || isInGoal(to);
+        }
+
+        /**
+         * Checks if a cell is covered by the destination component.
+         */
+        private boolean isInGoal(int cell) {
+            int col = cell % grid.getCols(), row = cell / grid.getCols();
+            return col >= goalCol0 && col <= goalCol1 && row >= goalRow0 && row <= goalRow1;
+        }
+
+        /**
+         * Octile distance from a cell to the goal, which never overestimates the cost of 8-connected moves.
+         */
+        private int heuristic(int cell) {
+            int cols = grid.getCols();
+            int dx = Math.abs(cell % cols - goalCell % cols);
+            int dy = Math.abs(cell / cols - goalCell / cols);
+            return STRAIGHT_COST * (dx + dy) + (DIAGONAL_COST - 2 * STRAIGHT_COST) * Math.min(dx, dy);
+        }
+
+        /**
+         * Follows the parents from the goal back to the start cell.
+         */
+        private int[] buildPath(int start) {
+            int length = 0;
+            for (int cell = goalCell; cell != start; cell = parents[cell]) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int cell = goalCell; cell != start; cell = parents[cell]) {
+                path[--length] = cell;
+            }
+            return path;
+        }
+
+        /**
+         * Adds a cell to the open heap.
+         */
+        private void push(int cell, int score) {
+            if (heapSize == heapCells.length) {
+                heapCells = Arrays.copyOf(heapCells, heapSize * 2);
+                heapScores = Arrays.copyOf(heapScores, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heapScores[parent] <= score) {
+                    break;
+                }
+                heapCells[i] = heapCells[parent];
+                heapScores[i] = heapScores[parent];
+                i = parent;
+            }
+            heapCells[i] = cell;
+            heapScores[i] = score;
+        }
+
+        /**
+         * Removes and returns the open cell with the lowest score.
+         */
+        private int pop() {
+            int top = heapCells[0];
+            int cell = heapCells[--heapSize];
+            int score = heapScores[heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heapScores[child + 1] < heapScores[child]) {
+                    child++;
+                }
+                if (heapScores[child] >= score) {
+                    break;
+                }
+                heapCells[i] = heapCells[child];
+                heapScores[i] = heapScores[child];
+                i = child;
+            }
+            heapCells[i] = cell;
+            heapScores[i] = score;
+            return top;
+        }
+    }
+
+    /**
+     * The key of a cached path: its destination, compared by identity, and its start cell.
+     */
+    private static final class PathKey {
+        private final Component destination;
+        private final int start;
+
+        private PathKey(Component destination, int start) {
+            this.destination = destination;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PathKey && ((PathKey) o).destination == destination && ((PathKey) o).start == start;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(destination) * 31 + start;
+        }
+    }
+}
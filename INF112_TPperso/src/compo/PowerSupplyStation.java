@@ -1,10 +1,9 @@
 package compo;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StyleObject;
 import fr.tp.inf112.projects.canvas.model.RectangleShape;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
@@ -23,7 +22,12 @@ public class PowerSupplyStation extends Component implements RectangleShape {
     /**
      * Default color of the power supply station.
      */
-    private final ColorObject color = new ColorObject(100, 200, 0);
+    private static final ColorObject color = Palette.color(100, 200, 0);
+
+    /**
+     * Shared style of the power supply stations.
+     */
+    private static final StyleObject style = Palette.style(color);
 
     /**
      * Constructs a PowerSupplyStation with the specified properties.
@@ -51,22 +55,24 @@ public class PowerSupplyStation extends Component implements RectangleShape {
     }
 
     /**
+     * Gets the orientation of the power supply station, deduced from its size.
      * 
-     * @return A string describing the power supply station's coordinates.
+     * @return 'v' if the station is vertical, 'h' if it is horizontal, or ' ' if it has no size.
      */
-    @Override
-    public String toString() {
-        return "\t x = " + xCoord + " y = " + yCoord;
+    public char getOrientation() {
+        if (xSize == 25 && ySize == 50) {
+            return 'v';
+        }
+        return xSize == 50 && ySize == 25 ? 'h' : ' ';
     }
 
     /**
-     * Gets the shape of the power supply station.
      * 
-     * @return The shape as a {@link Shape} object.
+     * @return A string describing the power supply station's coordinates.
      */
     @Override
-    public Shape getShape() {
-        return new Rectangle(getWidth(), getHeight());
+    public String toString() {
+        return "\t x = " + xCoord + " y = " + yCoord;
     }
 
     /**
@@ -76,6 +82,6 @@ public class PowerSupplyStation extends Component implements RectangleShape {
      */
     @Override
     public Style getStyle() {
-        return new StyleObject(color);
+        return style;
     }
 }
@@ -3,9 +3,8 @@ package compo;
 import java.util.ArrayList;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StyleObject;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
@@ -29,7 +28,12 @@ public class ProductionArea extends Component {
     /**
      * Default color of the production area.
      */
-    private final ColorObject color = new ColorObject(50, 255, 255);
+    private static final ColorObject color = Palette.color(50, 255, 255);
+
+    /**
+     * Shared style of the production areas.
+     */
+    private static final StyleObject style = Palette.style(color);
 
     /**
      * Constructs a ProductionArea with the specified properties.
@@ -70,6 +74,7 @@ public class ProductionArea extends Component {
         this.prodMachines = new ArrayList<ProductionMachine>();
         this.room = room;
         this.room.addPa(this);
+        this.factory = room.getFactory();
     }
 
     /**
@@ -91,6 +96,9 @@ public class ProductionArea extends Component {
         for (ProductionMachine pm : prodMachines) {
             model.addComponent(pm);
         }
+        if (factory != null) {
+            factory.invalidateLayout();
+        }
     }
 
     /**
@@ -101,6 +109,9 @@ public class ProductionArea extends Component {
     public void addPm(ProductionMachine pm) {
         this.prodMachines.add(pm);
         model.addComponent(pm);
+        if (factory != null) {
+            factory.invalidateLayout();
+        }
     }
 
     /**
@@ -123,16 +134,6 @@ public class ProductionArea extends Component {
         return res;
     }
 
-    /**
-     * Gets the shape of the production area.
-     * 
-     * @return The shape as a {@link Shape} object.
-     */
-    @Override
-    public Shape getShape() {
-        return new Rectangle(getWidth(), getHeight());
-    }
-
     /**
      * Gets the style of the production area.
      * 
@@ -140,6 +141,6 @@ public class ProductionArea extends Component {
      */
     @Override
     public Style getStyle() {
-        return new StyleObject(color);
+        return style;
     }
 }
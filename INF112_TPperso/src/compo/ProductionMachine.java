@@ -1,9 +1,8 @@
 package compo;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StyleObject;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
@@ -21,13 +20,25 @@ public class ProductionMachine extends Component {
     /**
      * Default color of the production machine.
      */
-    private final ColorObject color = new ColorObject(153, 0, 153);
+    private static final ColorObject color = Palette.color(153, 0, 153);
+
+    /**
+     * Shared style of the production machines.
+     */
+    private static final StyleObject style = Palette.style(color);
 
     /**
      * The production area to which this machine belongs.
      */
     private ProductionArea pa;
 
+    /**
+     * The component the machine sends its production to, and the number of ticks between two transport jobs
+     * emitted by the machine, 0 if it emits none.
+     */
+    private Component jobDestination;
+    private int jobInterval;
+
     /**
      * Constructs a ProductionMachine with the specified properties.
      * 
@@ -48,22 +59,57 @@ public class ProductionMachine extends Component {
     }
 
     /**
+     * Gets the production area to which the machine belongs.
      * 
-     * @return A string describing the production machine.
+     * @return The production area.
      */
-    @Override
-    public String toString() {
-        return "\t \t x = " + xCoord + " y = " + yCoord;
+    public ProductionArea getPa() {
+        return pa;
+    }
+
+    /**
+     * Makes the machine emit a transport job at a regular interval, carried out by the robots of the factory
+     * when it dispatches jobs (see {@link Factory#setDispatching(boolean)}).
+     * 
+     * @param destination The component the production is brought to, or null if the machine emits no job.
+     * @param interval The number of ticks between two jobs, or 0 if the machine emits no job.
+     * @throws IllegalArgumentException If the interval is negative, or positive without a destination,
+     *         or the destination is a door.
+     */
+    public void setJobs(Component destination, int interval) {
+        if (interval < 0 || (interval > 0 && destination == null) || destination instanceof Door) {
+            throw new IllegalArgumentException("Invalid jobs for machine " + name + ": every " + interval + " ticks to "
+                                               + (destination == null ? null : destination.getName()));
+        }
+        this.jobDestination = interval > 0 ? destination : null;
+        this.jobInterval = interval;
+    }
+
+    /**
+     * Gets the component the machine sends its production to.
+     * 
+     * @return The destination, or null if the machine emits no job.
+     */
+    public Component getJobDestination() {
+        return jobDestination;
+    }
+
+    /**
+     * Gets the number of ticks between two transport jobs emitted by the machine.
+     * 
+     * @return The interval, or 0 if the machine emits no job.
+     */
+    public int getJobInterval() {
+        return jobInterval;
     }
 
     /**
-     * Gets the shape of the production machine.
      * 
-     * @return The shape as a {@link Shape} object.
+     * @return A string describing the production machine.
      */
     @Override
-    public Shape getShape() {
-        return new Rectangle(getWidth(), getHeight());
+    public String toString() {
+        return "\t \t x = " + xCoord + " y = " + yCoord;
     }
 
     /**
@@ -73,6 +119,6 @@ public class ProductionMachine extends Component {
      */
     @Override
     public Style getStyle() {
-        return new StyleObject(color);
+        return style;
     }
 }
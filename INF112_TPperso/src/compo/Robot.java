@@ -1,8 +1,15 @@
 package compo;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import drawable.ColorObject;
+import drawable.Palette;
 import drawable.Oval;
 import drawable.StyleObject;
 import fr.tp.inf112.projects.canvas.model.Shape;
@@ -28,7 +35,12 @@ public class Robot extends Component {
     /**
      * The default color of the robot.
      */
-    private final ColorObject color = new ColorObject(0, 0, 0);
+    private static final ColorObject color = Palette.color(0, 0, 0);
+
+    /**
+     * Shared style of the robots.
+     */
+    private static final StyleObject style = Palette.style(color);
 
     /**
      * The factory to which the robot belongs.
@@ -40,6 +52,12 @@ public class Robot extends Component {
      */
     private ArrayList<Component> destinations;
 
+    /**
+     * The destinations of the robot, by identity, to check in constant time whether a destination is already in
+     * the itinerary. Built on first use; the list is only changed by the robot, which keeps the set up to date.
+     */
+    private transient Set<Component> destinationSet;
+
     /**
      * The current destination the robot is heading towards.
      */
@@ -55,6 +73,57 @@ public class Robot extends Component {
      */
     private int indexOfDestination;
 
+    /**
+     * The path followed towards the current destination, as cells of the occupancy grid of the factory,
+     * or null to head straight to the destination when no path exists.
+     */
+    private transient int[] path;
+
+    /**
+     * The index in the path of the next cell to reach.
+     */
+    private transient int pathIndex;
+
+    /**
+     * The destination, the planner and the version of the route of the robot the path was computed for.
+     */
+    private transient Component pathDestination;
+    private transient PathPlanner pathPlanner;
+    private transient int pathRoute;
+
+    /**
+     * The destination the robot heads to although no path leads to it, reported once until the robot heads
+     * elsewhere, or null.
+     */
+    private transient Component unreachable;
+
+    /**
+     * The position planned for the end of the current tick.
+     */
+    private transient int nextX;
+    private transient int nextY;
+
+    /**
+     * The position in the path before the planned step, restored if other robots keep the robot from moving.
+     */
+    private transient int plannedPathIndex;
+
+    /**
+     * Indicates whether the current tick has been planned but not applied yet.
+     */
+    private transient boolean planned;
+
+    /**
+     * The fleet holding the state of the robot, or null when the robot holds its own state.
+     */
+    private transient RobotFleet fleet;
+
+    /**
+     * The index of the robot among the robots of its factory, which is also its slot in the fleet
+     * and in the collision grid of the factory. Given by the {@link RobotTasks} of the factory.
+     */
+    private transient int index;
+
     /**
      * Constructs a Robot with the specified properties.
      * 
@@ -80,44 +149,251 @@ public class Robot extends Component {
     }
 
     /**
-     * Defines the behavior of the robot.
+     * Constructs a Robot following an itinerary already calculated, such as the itinerary of a saved robot.
+     * 
+     * @param name The name of the robot.
+     * @param xCoord The x-coordinate of the robot.
+     * @param yCoord The y-coordinate of the robot.
+     * @param xSize The size of the robot (width and height will be the same).
+     * @param speed The speed of the robot.
+     * @param factory The factory to which the robot belongs.
+     * @param currentRoom The current room where the robot is located, or null if it is outside of every room.
+     * @param itinerary The itinerary of the robot, doors included.
+     * @param indexOfDestination The index of the current destination in the itinerary.
+     */
+    public Robot(String name, int xCoord, int yCoord, int xSize, int speed, Factory factory, Room currentRoom,
+                 ArrayList<Component> itinerary, int indexOfDestination) {
+        super(name, xCoord, yCoord, xSize, xSize);
+        this.speed = speed;
+        this.factory = factory;
+        this.factory.addCompo(this);
+        this.room = currentRoom;
+        this.destinations = new ArrayList<>(itinerary);
+        this.numberOfDestinations = itinerary.size();
+        this.indexOfDestination = indexOfDestination;
+        this.currentDestination = itinerary.get(indexOfDestination);
+    }
+
+    /**
+     * Plans the behavior of the robot: moves on to the next destination when the current one is reached
+     * and computes the next position. When the next destination is a door, the robot heads to the least loaded door
+     * connecting the same rooms. A robot on a charging detour follows the detour first, and a robot charging or
+     * out of battery stays where it is. In a factory dispatching jobs, the robot carries out its job instead of
+     * following its itinerary, and stays where it is while it waits for one. Only the state of the robot is changed,
+     * its own fields and its slot in the {@link RobotTasks} of its factory, so robots can be planned concurrently;
+     * the new position is published by {@link #behave(boolean)}.
+     * 
+     * @param play If true, the robot plans its move; otherwise, it remains idle.
+     */
+    @Override
+    public void plan(boolean play) {
+        if (fleet != null) {
+            return;
+        }
+        nextX = getxCoordinate();
+        nextY = getyCoordinate();
+        if (play && !isStopped()) {
+            Component target = getTarget();
+            float xMiddle = target.getxCoordinate() + (target.getWidth()) / 2;
+            float yMiddle = target.getyCoordinate() + (target.getHeight()) / 2;
+            if (Math.abs(xMiddle - this.getxCoordinate()) < speed && Math.abs(yMiddle - this.getyCoordinate()) < speed) {
+                if (!factory.getRobotTasks().reachTaskTarget(index)) {
+                    nextDestination();
+                }
+            }
+            if (!isStopped()) {
+                stepTowards(getTarget());
+            }
+        }
+        planned = true;
+    }
+
+    /**
+     * Moves on to the next destination of the itinerary once the current one is reached. When it is a door,
+     * the robot heads to the least loaded door connecting the same rooms.
+     */
+    void nextDestination() {
+        indexOfDestination = (indexOfDestination + 1) % numberOfDestinations;
+        currentDestination = factory.chooseDoor(destinations.get(indexOfDestination), getxCoordinate(), getyCoordinate(),
+                                                getWidth(), destinations.get((indexOfDestination + 1) % numberOfDestinations));
+    }
+
+    /**
+     * Defines the behavior of the robot, planning it first if this was not done for the current tick.
      * 
      * @param play If true, the robot performs its behavior; otherwise, it remains idle.
      */
     @Override
     public void behave(boolean play) {
+        if (fleet != null) {
+            return;
+        }
+        if (!planned) {
+            plan(play);
+        }
+        planned = false;
         if (play) {
-            float xMiddle = currentDestination.getxCoordinate() + (currentDestination.getWidth()) / 2;
-            float yMiddle = currentDestination.getyCoordinate() + (currentDestination.getHeight()) / 2;
-            if (Math.abs(xMiddle - this.getxCoordinate()) < speed && Math.abs(yMiddle - this.getyCoordinate()) < speed) {
-                indexOfDestination = (indexOfDestination + 1) % numberOfDestinations;
-                currentDestination = destinations.get(indexOfDestination);
-            }
-            move(currentDestination);
+            applyStep(getTarget());
         }
     }
 
     /**
-     * Moves the robot towards a specified destination.
+     * Moves the robot towards a specified destination, following the shortest path of the planner of the factory.
      * 
      * @param desti The destination to move towards.
      */
     public void move(Component desti) {
-        float xMiddle = desti.getxCoordinate() + (desti.getWidth()) / 2;
-        float yMiddle = desti.getyCoordinate() + (desti.getHeight()) / 2;
-        if (xMiddle > this.getxCoordinate()) {
-            setxCoord(this.getxCoordinate() + speed);
+        stepTowards(desti);
+        applyStep(desti);
+    }
+
+    /**
+     * Computes the next position of the robot towards a destination, following the shortest path of the planner
+     * of the factory. The robot moves by at most its speed along each axis, through as many cells of the path as
+     * this allows, and ends at the center of the destination. The path is computed when the destination changes.
+     * 
+     * @param desti The destination to move towards.
+     */
+    private void stepTowards(Component desti) {
+        int xMiddle = desti.getxCoordinate() + desti.getWidth() / 2;
+        int yMiddle = desti.getyCoordinate() + desti.getHeight() / 2;
+        PathPlanner planner = factory.getPathPlanner();
+        int route = factory.getRobotTasks().getRoute(index);
+        if (desti != pathDestination || planner != pathPlanner || route != pathRoute) {
+            path = planner.findPath(getxCoordinate(), getyCoordinate(), desti);
+            if (path == null && desti != unreachable) {
+                System.out.println("Aucun chemin ne mène le robot " + name + " à " + desti.getName());
+            }
+            unreachable = path == null ? desti : null;
+            pathIndex = 0;
+            pathDestination = desti;
+            pathPlanner = planner;
+            pathRoute = route;
         }
-        if (xMiddle < this.getxCoordinate()) {
-            setxCoord(this.getxCoordinate() - speed);
+        plannedPathIndex = pathIndex;
+        OccupancyGrid grid = planner.getGrid();
+        int x = getxCoordinate();
+        int y = getyCoordinate();
+        int xBudget = speed;
+        int yBudget = speed;
+        while (true) {
+            boolean last = path == null || pathIndex >= path.length - 1;
+            int xTarget = last ? xMiddle : grid.centerX(path[pathIndex]);
+            int yTarget = last ? yMiddle : grid.centerY(path[pathIndex]);
+            int dx = Math.max(-xBudget, Math.min(xBudget, xTarget - x));
+            int dy = Math.max(-yBudget, Math.min(yBudget, yTarget - y));
+            x += dx;
+            y += dy;
+            xBudget -= Math.abs(dx);
+            yBudget -= Math.abs(dy);
+            if (last || x != xTarget || y != yTarget) {
+                break;
+            }
+            pathIndex++;
         }
-        if (yMiddle > this.getyCoordinate()) {
-            setyCoord(this.getyCoordinate() + speed);
+        nextX = x;
+        nextY = y;
+    }
+
+    /**
+     * Moves the robot to its computed next position and updates its room. The robot waits in front of a door until
+     * it holds a reservation of it. While its factory applies a tick, the robot only moves as far as the other robots
+     * allow, and goes on along its path from where it stopped, except through a door it holds a reservation of:
+     * the robots waiting on the other side would otherwise keep it from leaving the door.
+     * 
+     * @param desti The destination the robot moves towards.
+     */
+    private void applyStep(Component desti) {
+        RobotTasks tasks = factory.getRobotTasks();
+        if (!tasks.passDoor(index, desti, getxCoordinate(), getyCoordinate(), nextX, nextY, getWidth())) {
+            nextX = getxCoordinate();
+            nextY = getyCoordinate();
+            pathIndex = plannedPathIndex;
         }
-        if (yMiddle < this.getyCoordinate()) {
-            setyCoord(this.getyCoordinate() - speed);
+        CollisionGrid grid = factory.getActiveCollisionGrid();
+        if (grid != null && index < grid.size()) {
+            tasks.moveInGrid(grid, index, nextX, nextY, tasks.hasDoorReservation(index));
+            if (grid.getX(index) != nextX || grid.getY(index) != nextY) {
+                nextX = grid.getX(index);
+                nextY = grid.getY(index);
+                pathIndex = plannedPathIndex;
+            }
+        }
+        int moved = Math.abs(nextX - getxCoordinate()) + Math.abs(nextY - getyCoordinate());
+        if (nextX != getxCoordinate()) {
+            setxCoord(nextX);
+        }
+        if (nextY != getyCoordinate()) {
+            setyCoord(nextY);
         }
         this.room = getGoodRoom();
+        tasks.afterStep(index, moved);
+    }
+
+    /**
+     * Gets the component the robot is heading to: the current target of its charging detour or of its job if it has
+     * one, otherwise its current destination, unless its factory dispatches jobs.
+     * 
+     * @return The target, or null if the robot waits for a job.
+     */
+    Component getTarget() {
+        Component task = factory.getRobotTasks().getTaskTarget(index);
+        return task != null || factory.isDispatching() ? task : currentDestination;
+    }
+
+    /**
+     * Checks if the robot cannot move on its own: it reached its charging station or charges at it,
+     * its battery is empty, or it waits for a job.
+     * 
+     * @return True if the robot stays where it is.
+     */
+    boolean isStopped() {
+        return factory.getRobotTasks().isHeld(index) || getTarget() == null;
+    }
+
+    /**
+     * Gets the job the robot carries out.
+     * 
+     * @return The job, or null if the robot has none.
+     */
+    public Job getJob() {
+        return factory.getRobotTasks().getJob(index);
+    }
+
+    /**
+     * Gets the power supply station of the charging detour of the robot.
+     * 
+     * @return The station, or null if the robot is not on a charging detour.
+     */
+    public PowerSupplyStation getChargingStation() {
+        return factory.getRobotTasks().getChargingStation(index);
+    }
+
+    /**
+     * Checks if the robot is at its charging station, waiting for it or charging.
+     * 
+     * @return True if the robot is at its station.
+     */
+    public boolean isCharging() {
+        return factory.getRobotTasks().isCharging(index);
+    }
+
+    /**
+     * Gets the energy left in the battery of the robot.
+     * 
+     * @return The energy, or -1 if the robot has no battery.
+     */
+    public int getEnergy() {
+        return factory.getRobotTasks().getEnergy(index);
+    }
+
+    /**
+     * Sets the energy left in the battery of the robot.
+     * 
+     * @param energy The energy, or -1 to remove the battery.
+     */
+    public void setEnergy(int energy) {
+        factory.getRobotTasks().setEnergy(index, energy);
     }
 
     /**
@@ -127,10 +403,12 @@ public class Robot extends Component {
      * @return True if the destination was added; false if it was already in the list.
      */
     public boolean addDestination(Component destination) {
-        for (Component desti : destinations) {
-            if (destination.equals(desti)) {
-                return false;
-            }
+        if (fleet != null) {
+            factory.releaseFleet();
+        }
+        Set<Component> set = getDestinationSet();
+        if (!set.add(destination)) {
+            return false;
         }
         this.destinations.add(destination);
         this.numberOfDestinations += 1;
@@ -138,96 +416,359 @@ public class Robot extends Component {
     }
 
     /**
-     * Gets the list of destinations.
+     * Gets the set of the destinations of the robot, building it if needed. The itinerary may go
+     * several times through the same door, so the set may be smaller than the list.
+     * 
+     * @return The destinations, by identity.
+     */
+    private Set<Component> getDestinationSet() {
+        Set<Component> set = destinationSet;
+        if (set == null) {
+            set = Collections.newSetFromMap(new IdentityHashMap<>(destinations.size() * 2));
+            set.addAll(destinations);
+            destinationSet = set;
+        }
+        return set;
+    }
+
+    /**
+     * Gets the list of destinations, which can only be changed through the robot.
      * 
-     * @return The list of destinations.
+     * @return The list of destinations, unmodifiable.
      */
-    public ArrayList<Component> getDestinations() {
-        return destinations;
+    public List<Component> getDestinations() {
+        return Collections.unmodifiableList(destinations);
     }
 
     /**
-     * Sets the list of destinations.
+     * Sets the list of destinations. The list is copied, so changing it afterwards does not change the robot.
      * 
      * @param destinations The new list of destinations.
      */
     public void setDestinations(ArrayList<Component> destinations) {
-        this.destinations = destinations;
+        if (fleet != null) {
+            factory.releaseFleet();
+        }
+        this.destinations = new ArrayList<>(destinations);
+        this.destinationSet = null;
         this.numberOfDestinations = destinations.size();
     }
 
     /**
      * Calculates the itinerary for the robot based on the provided destinations.
+     * The doors to cross are taken from the shortest routes of the room graph of the factory,
+     * and the itinerary ends back at the first destination. A destination no route leads to is kept without doors
+     * before it: the robot reports it when it heads to it ({@link #getUnreachableDestination()}).
      * 
      * @param destinations The list of destinations.
      * @return The calculated itinerary.
      */
     public ArrayList<Component> calculateItinerary(ArrayList<Component> destinations) {
-        ArrayList<Component> destinationsTmp = new ArrayList<>();
+        ArrayList<Component> itinerary = new ArrayList<>();
+        RoomGraph graph = factory.getRoomGraph();
         Room roomTmp = this.room;
-        Component destination0 = destinations.get(0);
-        Component destinationTmp = destinations.get(0);
-
-        int i = 0;
-
-        while (i <= destinations.size()) {
-            if (roomTmp == destinationTmp.getRoom()) {
-                destinationsTmp.add(destinationTmp);
-                i += 1;
-                if (i < destinations.size()) {
-                    destinationTmp = destinations.get(i);
-                } else {
-                    destinationTmp = destination0;
-                }
-            } else {
-                if (roomTmp.findDoor(destinationTmp) != null) {
-                    destinationsTmp.add(roomTmp.findDoor(destinationTmp));
-                    destinationsTmp.add(destinationTmp);
-                    roomTmp = destinationTmp.getRoom();
-                    i += 1;
-                    if (i < destinations.size()) {
-                        destinationTmp = destinations.get(i);
-                    } else {
-                        destinationTmp = destination0;
-                    }
-                } else {
-                    Room intermediateRoom = findIntermediateRoom(destinationTmp);
-                    if (intermediateRoom != null) {
-                        destinationsTmp.add(roomTmp.findDoor(intermediateRoom));
-                        destinationsTmp.add(intermediateRoom);
-                        roomTmp = intermediateRoom;
-                    }
+
+        for (int i = 0; i <= destinations.size(); i++) {
+            Component destination = destinations.get(i % destinations.size());
+            Room destinationRoom = destination.getRoom();
+            if (roomTmp != destinationRoom && destinationRoom != null) {
+                List<Door> doors = graph.route(roomTmp, destinationRoom);
+                if (doors != null) {
+                    itinerary.addAll(doors);
                 }
+                roomTmp = destinationRoom;
             }
+            itinerary.add(destination);
         }
-        return destinationsTmp;
+        return itinerary;
     }
 
     /**
-     * Finds an intermediate room between the robot's current room and the destination's room.
+     * Gets the destination the robot heads to although no path of the planner of the factory leads to it.
+     * The robot then heads straight to it, and the first time it does so it is reported on the console.
+     * 
+     * @return The destination, or null if the robot follows a path to where it heads.
+     */
+    public Component getUnreachableDestination() {
+        return unreachable;
+    }
+
+    /**
+     * Finds the next room to enter on the way from the robot's current room to the destination's room.
      * 
      * @param destination The destination component.
-     * @return The intermediate room, or null if none is found.
+     * @return The intermediate room, the current room if the destination is in it, or null if none is found.
      */
     public Room findIntermediateRoom(Component destination) {
-        if (isInRoom(destination.getRoom())) {
-            return this.room;
+        List<Door> doors = factory.getRoomGraph().route(this.room, destination.getRoom());
+        if (doors == null) {
+            return null;
         }
-        for (Door doorCurrentRoom : this.room.getDoorList()) {
-            for (Door doorDestinationRoom : destination.getRoom().getDoorList()) {
-                if (doorCurrentRoom.equals(doorDestinationRoom)) {
-                    return destination.getRoom();
-                }
-            }
+        if (doors.isEmpty()) {
+            return this.room;
         }
-        for (Room intermediateRoom : this.factory.getRooms()) {
-            if (intermediateRoom != this.room && intermediateRoom != destination.getRoom() && this.room.findDoor(intermediateRoom) != null) {
-                return intermediateRoom;
+        for (Room room : doors.get(0).getRooms()) {
+            if (room != this.room) {
+                return room;
             }
         }
         return null;
     }
 
+    /**
+     * Sets the index of the robot among the robots of its factory.
+     * 
+     * @param index The index.
+     */
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the index of the robot among the robots of its factory.
+     * 
+     * @return The index.
+     */
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the destination of the path the robot follows, if the path is still the one of its current route.
+     * 
+     * @return The destination, or null if the path is computed again on the next move.
+     */
+    Component getPathDestination() {
+        boolean current = fleet == null && pathDestination != null && pathPlanner == factory.getPathPlanner()
+                          && pathRoute == factory.getRobotTasks().getRoute(index);
+        return current ? pathDestination : null;
+    }
+
+    /**
+     * Gets the cells of the path the robot follows.
+     * 
+     * @return The cells, or null if the robot heads straight to its destination.
+     */
+    int[] getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the plan of the robot to a state: the path it follows and the destination of the path, if the path is
+     * still the one of its current route.
+     *
+     * @param out The state.
+     */
+    void writePlan(FactoryState.Writer out) {
+        Component destination = getPathDestination();
+        out.writeRef(destination);
+        if (destination != null) {
+            out.writeInts(path);
+        }
+    }
+
+    /**
+     * Reads the plan of the robot from a state written by {@link #writePlan(FactoryState.Writer)}. The version of
+     * the route of the robot must be read beforehand.
+     *
+     * @param in The state.
+     */
+    void readPlan(FactoryState.Reader in) {
+        pathDestination = in.readRef();
+        path = pathDestination == null ? null : in.readInts();
+        pathPlanner = pathDestination == null ? null : factory.getPathPlanner();
+        pathRoute = factory.getRobotTasks().getRoute(index);
+    }
+
+    /**
+     * Writes the status of the robot to a state: the destination it heads to, which may be a door other than the
+     * one of its itinerary.
+     *
+     * @param out The state.
+     */
+    void writeStatus(FactoryState.Writer out) {
+        out.writeRef(getCurrentDestination());
+    }
+
+    /**
+     * Reads the status of the robot from a state written by {@link #writeStatus(FactoryState.Writer)}.
+     *
+     * @param in The state.
+     */
+    void readStatus(FactoryState.Reader in) {
+        currentDestination = in.readRef();
+        planned = false;
+    }
+
+    /**
+     * Writes the progress of the robot to a state: its progress along its path.
+     *
+     * @param out The state.
+     */
+    void writeProgress(FactoryState.Writer out) {
+        out.writeInt(fleet == null ? pathIndex : 0);
+    }
+
+    /**
+     * Reads the progress of the robot from a state written by {@link #writeProgress(FactoryState.Writer)}.
+     *
+     * @param in The state.
+     */
+    void readProgress(FactoryState.Reader in) {
+        pathIndex = in.readInt();
+    }
+
+    /**
+     * Attaches the robot to a fleet, which holds its state from now on in the slot of its index.
+     * 
+     * @param fleet The fleet.
+     */
+    void attach(RobotFleet fleet) {
+        this.fleet = fleet;
+    }
+
+    /**
+     * Copies the state held by the fleet back into the robot and detaches it.
+     */
+    void detach() {
+        if (fleet != null) {
+            syncFromFleet();
+            fleet = null;
+            path = null;
+            pathDestination = null;
+        }
+    }
+
+    /**
+     * Copies the state held by the fleet into the fields of the robot.
+     */
+    private void syncFromFleet() {
+        xCoord = fleet.getX(index);
+        yCoord = fleet.getY(index);
+        room = fleet.getRoom(index);
+        indexOfDestination = fleet.getDestinationIndex(index);
+        currentDestination = fleet.getDestination(index);
+    }
+
+    /**
+     * Saves the robot with the state held by its fleet, if any.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (fleet != null) {
+            syncFromFleet();
+        }
+        out.defaultWriteObject();
+    }
+
+    @Override
+    public int getxCoordinate() {
+        return fleet != null ? fleet.getX(index) : xCoord;
+    }
+
+    @Override
+    public void setxCoord(int xCoord) {
+        if (fleet != null) {
+            fleet.setX(index, xCoord);
+            model.markDirty();
+        } else {
+            super.setxCoord(xCoord);
+        }
+    }
+
+    @Override
+    public int getyCoordinate() {
+        return fleet != null ? fleet.getY(index) : yCoord;
+    }
+
+    @Override
+    public void setyCoord(int yCoord) {
+        if (fleet != null) {
+            fleet.setY(index, yCoord);
+            model.markDirty();
+        } else {
+            super.setyCoord(yCoord);
+        }
+    }
+
+    @Override
+    public Room getRoom() {
+        return fleet != null ? fleet.getRoom(index) : room;
+    }
+
+    /**
+     * Robots move on their own during the simulation.
+     * 
+     * @return False.
+     */
+    @Override
+    public boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * Gets the speed of the robot.
+     * 
+     * @return The speed.
+     */
+    public int getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Gets the factory to which the robot belongs.
+     * 
+     * @return The factory.
+     */
+    @Override
+    public Factory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Sets the speed of the robot.
+     * 
+     * @param speed The new speed, the maximum distance covered along each axis per tick.
+     */
+    public void setSpeed(int speed) {
+        if (fleet != null) {
+            factory.releaseFleet();
+        }
+        this.speed = speed;
+    }
+
+    /**
+     * Gets the index of the current destination in the destinations list.
+     * 
+     * @return The index of the current destination.
+     */
+    public int getIndexOfDestination() {
+        return fleet != null ? fleet.getDestinationIndex(index) : indexOfDestination;
+    }
+
+    /**
+     * Sets the index of the current destination in the destinations list. The path towards
+     * the new destination is computed on the next move.
+     * 
+     * @param indexOfDestination The index of the new current destination.
+     */
+    public void setIndexOfDestination(int indexOfDestination) {
+        if (fleet != null) {
+            factory.releaseFleet();
+        }
+        this.indexOfDestination = indexOfDestination;
+        this.currentDestination = destinations.get(indexOfDestination);
+        this.pathDestination = null;
+    }
+
+    /**
+     * Gets the destination the robot is currently heading towards.
+     * 
+     * @return The current destination.
+     */
+    public Component getCurrentDestination() {
+        return fleet != null ? fleet.getDestination(index) : currentDestination;
+    }
+
     /**
      * Returns a string representation of the robot's properties.
      * 
@@ -235,16 +776,16 @@ public class Robot extends Component {
      */
     @Override
     public String toString() {
-        return "\t ROBOT " + this.getName() + " en x = " + xCoord + " y = " + yCoord + " _ " + xSize + " x " + xSize + " _ speed " + speed;
+        return "\t ROBOT " + this.getName() + " en x = " + getxCoordinate() + " y = " + getyCoordinate() + " _ " + xSize + " x " + xSize + " _ speed " + speed;
     }
 
     /**
-     * Gets the shape of the robot.
+     * Creates the shape of the robot.
      * 
-     * @return The shape as a {@link Shape} object.
+     * @return An oval as wide and high as the robot.
      */
     @Override
-    public Shape getShape() {
+    protected Shape createShape() {
         return new Oval(getWidth(), getHeight());
     }
 
@@ -255,6 +796,6 @@ public class Robot extends Component {
      */
     @Override
     public Style getStyle() {
-        return new StyleObject(color);
+        return style;
     }
 }
@@ -0,0 +1,425 @@
+package compo;
+
+import java.util.stream.IntStream;
+
+/**
+ * The RobotFleet class is an optional structure-of-arrays backend for the robots of a factory.
+ * Positions, speeds, itinerary indexes and room indexes of every robot are kept in primitive arrays,
+ * and the itineraries are flattened into arrays of target points, so that a tick over the whole fleet
+ * is a tight loop that allocates nothing. The {@link Robot} objects stay attached as thin views whose
+ * getters and setters read and write the arrays.
+ * Robots of a fleet head straight to each target of their itinerary: since itineraries go through the
+ * doors between rooms, every leg stays inside a room, but the motion planner of the factory is not used.
+ * Each tick is planned into back buffers, possibly in parallel, then published at once.
+ */
+public class RobotFleet {
+
+    /**
+     * Number of robots planned by each parallel task.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * The factory owning the fleet.
+     */
+    private final Factory factory;
+
+    /**
+     * The robots attached to the fleet, by slot, which is their index in the factory.
+     */
+    private final Robot[] robots;
+
+    /**
+     * The state the robots keep on top of their itinerary, indexed by slot as well.
+     */
+    private final RobotTasks tasks;
+
+    /**
+     * The number of robots of the fleet.
+     */
+    private final int size;
+
+    /**
+     * Positions and room indexes of the robots, and the back buffers they are planned into.
+     */
+    private int[] xs;
+    private int[] ys;
+    private int[] roomIndexes;
+    private int[] nextXs;
+    private int[] nextYs;
+    private int[] nextRoomIndexes;
+
+    /**
+     * Speeds and sizes of the robots.
+     */
+    private final int[] speeds;
+    private final int[] sizes;
+
+    /**
+     * Index of the current target of each robot within its itinerary.
+     */
+    private final int[] destinationIndexes;
+
+    /**
+     * Offset and length of the itinerary of each robot in the target arrays.
+     */
+    private final int[] itineraryStarts;
+    private final int[] itineraryLengths;
+
+    /**
+     * Center of every target of every itinerary, and the targets themselves.
+     */
+    private final int[] targetXs;
+    private final int[] targetYs;
+    private final Component[] targets;
+
+    /**
+     * The door each robot heads to in place of the door of its itinerary, or null if it follows its itinerary.
+     */
+    private final Door[] chosenDoors;
+
+    /**
+     * Indicates whether the back buffers hold a planned tick not published yet.
+     */
+    private boolean planned;
+
+    /**
+     * Constructs a fleet from the robots of a factory and attaches them to it.
+     *
+     * @param factory The factory whose robots are moved to the fleet.
+     */
+    public RobotFleet(Factory factory) {
+        this.factory = factory;
+        this.tasks = factory.getRobotTasks();
+        this.size = tasks.size();
+        this.robots = new Robot[size];
+        int targetCount = 0;
+        for (int i = 0; i < size; i++) {
+            robots[i] = tasks.getRobot(i);
+            targetCount += robots[i].getDestinations().size();
+        }
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.roomIndexes = new int[size];
+        this.nextXs = new int[size];
+        this.nextYs = new int[size];
+        this.nextRoomIndexes = new int[size];
+        this.speeds = new int[size];
+        this.sizes = new int[size];
+        this.destinationIndexes = new int[size];
+        this.itineraryStarts = new int[size];
+        this.itineraryLengths = new int[size];
+        this.targetXs = new int[targetCount];
+        this.targetYs = new int[targetCount];
+        this.targets = new Component[targetCount];
+        this.chosenDoors = new Door[size];
+
+        RoomIndex roomIndex = factory.getRoomIndex();
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            Robot robot = robots[i];
+            xs[i] = robot.getxCoordinate();
+            ys[i] = robot.getyCoordinate();
+            roomIndexes[i] = roomIndex.indexOf(xs[i], ys[i]);
+            speeds[i] = robot.getSpeed();
+            sizes[i] = robot.getWidth();
+            destinationIndexes[i] = robot.getIndexOfDestination();
+            itineraryStarts[i] = offset;
+            itineraryLengths[i] = robot.getDestinations().size();
+            for (Component target : robot.getDestinations()) {
+                targets[offset] = target;
+                targetXs[offset] = target.getxCoordinate() + target.getWidth() / 2;
+                targetYs[offset] = target.getyCoordinate() + target.getHeight() / 2;
+                offset++;
+            }
+            Component current = robot.getCurrentDestination();
+            if (current instanceof Door && current != targets[itineraryStarts[i] + destinationIndexes[i]]) {
+                chosenDoors[i] = (Door) current;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            robots[i].attach(this);
+        }
+    }
+
+    /**
+     * Plans the next tick of every robot into the back buffers.
+     *
+     * @param parallel True to plan chunks of robots concurrently, in the fork join pool of the calling thread.
+     */
+    public void plan(boolean parallel) {
+        if (parallel && size > CHUNK_SIZE) {
+            IntStream.range(0, (size + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel()
+                     .forEach(chunk -> plan(chunk * CHUNK_SIZE, Math.min(size, (chunk + 1) * CHUNK_SIZE)));
+        } else {
+            plan(0, size);
+        }
+        planned = true;
+    }
+
+    /**
+     * Checks if a planned tick is waiting to be published.
+     *
+     * @return True if {@link #commit()} would publish a planned tick.
+     */
+    public boolean isPlanned() {
+        return planned;
+    }
+
+    /**
+     * Plans the next tick of the robots of the given slot range: a robot close enough to its target moves
+     * on to the next one, heading to the least loaded door when it is a door, then moves by at most its speed
+     * along each axis towards its target. The charging detours and the jobs, kept in the {@link RobotTasks} of the
+     * factory, come first; a robot charging, out of battery or waiting for a job stays where it is.
+     */
+    private void plan(int from, int to) {
+        RoomIndex roomIndex = factory.getRoomIndex();
+        boolean dispatching = factory.isDispatching();
+        for (int i = from; i < to; i++) {
+            int x = xs[i], y = ys[i], speed = speeds[i];
+            int nx = x, ny = y;
+            if (!tasks.isHeld(i) && (!dispatching || tasks.getTaskTarget(i) != null)) {
+                int tx = targetX(i), ty = targetY(i);
+                if (Math.abs(tx - x) < speed && Math.abs(ty - y) < speed) {
+                    if (!tasks.reachTaskTarget(i)) {
+                        int start = itineraryStarts[i];
+                        int index = destinationIndexes[i] + 1 == itineraryLengths[i] ? 0 : destinationIndexes[i] + 1;
+                        destinationIndexes[i] = index;
+                        Component next = targets[start + (index + 1 == itineraryLengths[i] ? 0 : index + 1)];
+                        Component chosen = factory.chooseDoor(targets[start + index], x, y, sizes[i], next);
+                        chosenDoors[i] = chosen != targets[start + index] ? (Door) chosen : null;
+                    }
+                    tx = targetX(i);
+                    ty = targetY(i);
+                }
+                if (!tasks.isHeld(i) && (!dispatching || tasks.getTaskTarget(i) != null)) {
+                    nx = x + Math.max(-speed, Math.min(speed, tx - x));
+                    ny = y + Math.max(-speed, Math.min(speed, ty - y));
+                }
+            }
+            int room = roomIndexes[i];
+            if (nx != x || ny != y) {
+                if (room < 0 || !roomIndex.get(room).contains(nx, ny)) {
+                    room = roomIndex.indexOf(nx, ny);
+                }
+            }
+            nextXs[i] = nx;
+            nextYs[i] = ny;
+            nextRoomIndexes[i] = room;
+        }
+    }
+
+    /**
+     * Gets the component a robot heads to: the target of its charging detour or of its job, the door chosen in place
+     * of the door of its itinerary, or its current target.
+     */
+    private Component getHeading(int slot) {
+        Component task = tasks.getTaskTarget(slot);
+        return task != null ? task : chosenDoors[slot];
+    }
+
+    /**
+     * Gets the x-coordinate of the center of the component a robot heads to.
+     */
+    private int targetX(int slot) {
+        Component c = getHeading(slot);
+        return c != null ? c.getxCoordinate() + c.getWidth() / 2 : targetXs[itineraryStarts[slot] + destinationIndexes[slot]];
+    }
+
+    /**
+     * Gets the y-coordinate of the center of the component a robot heads to.
+     */
+    private int targetY(int slot) {
+        Component c = getHeading(slot);
+        return c != null ? c.getyCoordinate() + c.getHeight() / 2 : targetYs[itineraryStarts[slot] + destinationIndexes[slot]];
+    }
+
+    /**
+     * Publishes the planned tick by swapping the back buffers with the current ones.
+     *
+     * @return True if at least one robot moved.
+     */
+    public boolean commit() {
+        return commit(null);
+    }
+
+    /**
+     * Publishes the planned tick by swapping the back buffers with the current ones, keeping the robots waiting in
+     * front of the doors they have no reservation of yet, and from running into each other, except through the doors
+     * they hold a reservation of.
+     * The robots of the fleet must occupy the first slots of the grid.
+     *
+     * @param grid The collision grid holding the current position of the robots, or null to ignore collisions.
+     * @return True if at least one robot moved.
+     */
+    public boolean commit(CollisionGrid grid) {
+        if (!planned) {
+            return false;
+        }
+        planned = false;
+        boolean dispatching = factory.isDispatching();
+        for (int i = 0; i < size; i++) {
+            Component task = tasks.getTaskTarget(i);
+            Component desti = task != null || dispatching ? task : getDestination(i);
+            if (!tasks.passDoor(i, desti, xs[i], ys[i], nextXs[i], nextYs[i], sizes[i])) {
+                nextXs[i] = xs[i];
+                nextYs[i] = ys[i];
+                nextRoomIndexes[i] = roomIndexes[i];
+            }
+        }
+        if (grid != null) {
+            RoomIndex roomIndex = factory.getRoomIndex();
+            for (int i = 0; i < size; i++) {
+                tasks.moveInGrid(grid, i, nextXs[i], nextYs[i], tasks.hasDoorReservation(i));
+                if (grid.getX(i) != nextXs[i] || grid.getY(i) != nextYs[i]) {
+                    nextXs[i] = grid.getX(i);
+                    nextYs[i] = grid.getY(i);
+                    nextRoomIndexes[i] = roomIndex.indexOf(nextXs[i], nextYs[i]);
+                    if (nextRoomIndexes[i] < 0) {
+                        nextRoomIndexes[i] = roomIndexes[i];
+                    }
+                }
+            }
+        }
+        if (factory.getChargingScheduler() != null || dispatching) {
+            for (int i = 0; i < size; i++) {
+                tasks.afterStep(i, Math.abs(nextXs[i] - xs[i]) + Math.abs(nextYs[i] - ys[i]));
+            }
+        }
+        boolean moved = false;
+        for (int i = 0; i < size && !moved; i++) {
+            moved = xs[i] != nextXs[i] || ys[i] != nextYs[i];
+        }
+        int[] swap = xs;
+        xs = nextXs;
+        nextXs = swap;
+        swap = ys;
+        ys = nextYs;
+        nextYs = swap;
+        swap = roomIndexes;
+        roomIndexes = nextRoomIndexes;
+        nextRoomIndexes = swap;
+        return moved;
+    }
+
+    /**
+     * Copies the state of every robot back into the robot objects and detaches them from the fleet.
+     */
+    public void release() {
+        for (int i = 0; i < size; i++) {
+            robots[i].detach();
+        }
+    }
+
+    /**
+     * Adds the robots of the fleet to a collision grid, in the first slots, at their current positions.
+     *
+     * @param grid The grid.
+     */
+    void addTo(CollisionGrid grid) {
+        for (int i = 0; i < size; i++) {
+            grid.add(i, xs[i], ys[i], sizes[i]);
+        }
+    }
+
+    /**
+     * Gets the number of robots of the fleet.
+     *
+     * @return The number of robots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the robot attached to a slot.
+     *
+     * @param slot The slot of the robot.
+     * @return The robot.
+     */
+    public Robot getRobot(int slot) {
+        return robots[slot];
+    }
+
+    /**
+     * Gets the x-coordinate of a robot.
+     *
+     * @param slot The slot of the robot.
+     * @return The x-coordinate.
+     */
+    public int getX(int slot) {
+        return xs[slot];
+    }
+
+    /**
+     * Sets the x-coordinate of a robot.
+     *
+     * @param slot The slot of the robot.
+     * @param x The new x-coordinate.
+     */
+    public void setX(int slot, int x) {
+        xs[slot] = x;
+    }
+
+    /**
+     * Gets the y-coordinate of a robot.
+     *
+     * @param slot The slot of the robot.
+     * @return The y-coordinate.
+     */
+    public int getY(int slot) {
+        return ys[slot];
+    }
+
+    /**
+     * Sets the y-coordinate of a robot.
+     *
+     * @param slot The slot of the robot.
+     * @param y The new y-coordinate.
+     */
+    public void setY(int slot, int y) {
+        ys[slot] = y;
+    }
+
+    /**
+     * Gets the speed of a robot.
+     *
+     * @param slot The slot of the robot.
+     * @return The speed.
+     */
+    public int getSpeed(int slot) {
+        return speeds[slot];
+    }
+
+    /**
+     * Gets the index of the current target of a robot within its itinerary.
+     *
+     * @param slot The slot of the robot.
+     * @return The index of the current destination.
+     */
+    public int getDestinationIndex(int slot) {
+        return destinationIndexes[slot];
+    }
+
+    /**
+     * Gets the current target of a robot, which may be a door in place of the door of its itinerary.
+     *
+     * @param slot The slot of the robot.
+     * @return The component the robot is heading to.
+     */
+    public Component getDestination(int slot) {
+        Door door = chosenDoors[slot];
+        return door != null ? door : targets[itineraryStarts[slot] + destinationIndexes[slot]];
+    }
+
+    /**
+     * Gets the room a robot is in.
+     *
+     * @param slot The slot of the robot.
+     * @return The room, or null if the robot is outside of every room.
+     */
+    public Room getRoom(int slot) {
+        int room = roomIndexes[slot];
+        return room < 0 ? null : factory.getRoomIndex().get(room);
+    }
+}
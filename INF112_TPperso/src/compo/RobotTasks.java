@@ -0,0 +1,646 @@
+package compo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The RobotTasks class holds, in primitive arrays indexed by robot, the state the robots of a factory keep on top of
+ * their itinerary: its battery, its charging detour, its job, the door it holds a reservation of or waits for, and the
+ * number of ticks it has been kept by other robots from going where it planned.
+ * A robot is given its index when it is added, in the order of the components of the factory, and keeps it.
+ * The {@link RobotFleet} of the factory reads and writes the same arrays, its slots being the indexes of the robots,
+ * so that a tick over the fleet stays a loop over arrays; robots behaving on their own use their index as well.
+ */
+final class RobotTasks {
+
+    /**
+     * The factory whose robots are indexed.
+     */
+    private final Factory factory;
+
+    /**
+     * The robots, by index, and their number.
+     */
+    private Robot[] robots;
+    private int size;
+
+    /**
+     * Number of consecutive ticks each robot has been kept by other robots from going where it planned.
+     */
+    private int[] waits;
+
+    /**
+     * The door each robot holds a reservation of, and the door it waits for a reservation of, if any.
+     */
+    private Door[] reservedDoors;
+    private Door[] queuedDoors;
+
+    /**
+     * The energy left in the battery of each robot, drained by the distance it travels,
+     * or -1 if the robot has no battery, in a factory without batteries.
+     * Batteries are not saved: a loaded robot gets a full one when the charging scheduler registers it.
+     */
+    private int[] energies;
+
+    /**
+     * The charging detour each robot follows before going on with its itinerary, through a power supply station,
+     * or null if it follows its itinerary, and the index of its current target in the detour.
+     */
+    private Component[][] detours;
+    private int[] detourIndexes;
+
+    /**
+     * Indicates whether each robot reached the station of its detour and has to be handed to the charging scheduler,
+     * and whether it is at the station, waiting for it or charging.
+     */
+    private boolean[] dockPendings;
+    private boolean[] docked;
+
+    /**
+     * The job each robot carries out when the factory dispatches jobs, or null if it has none, the components
+     * it goes through for it, and the index of its current target among them.
+     */
+    private Job[] jobs;
+    private Component[][] jobRoutes;
+    private int[] jobIndexes;
+
+    /**
+     * The job each robot just delivered, handed back to the task dispatcher once the tick is applied.
+     */
+    private Job[] deliveredJobs;
+
+    /**
+     * The version of the route of each robot, increased when it is sent on or taken off a route whatever its target,
+     * so that it computes its path again.
+     */
+    private int[] routes;
+
+    /**
+     * Constructs the arrays of the robots of a factory, giving each robot its index.
+     *
+     * @param factory The factory.
+     */
+    RobotTasks(Factory factory) {
+        this.factory = factory;
+        int count = 0;
+        for (Component c : factory.getComponents()) {
+            if (c instanceof Robot) {
+                count++;
+            }
+        }
+        robots = new Robot[Math.max(4, count)];
+        waits = new int[robots.length];
+        reservedDoors = new Door[robots.length];
+        queuedDoors = new Door[robots.length];
+        energies = new int[robots.length];
+        detours = new Component[robots.length][];
+        detourIndexes = new int[robots.length];
+        dockPendings = new boolean[robots.length];
+        docked = new boolean[robots.length];
+        jobs = new Job[robots.length];
+        jobRoutes = new Component[robots.length][];
+        jobIndexes = new int[robots.length];
+        deliveredJobs = new Job[robots.length];
+        routes = new int[robots.length];
+        for (Component c : factory.getComponents()) {
+            if (c instanceof Robot) {
+                add((Robot) c);
+            }
+        }
+    }
+
+    /**
+     * Adds a robot, which is given the next index.
+     *
+     * @param robot The robot.
+     */
+    void add(Robot robot) {
+        if (size == robots.length) {
+            int capacity = size * 2;
+            robots = Arrays.copyOf(robots, capacity);
+            waits = Arrays.copyOf(waits, capacity);
+            reservedDoors = Arrays.copyOf(reservedDoors, capacity);
+            queuedDoors = Arrays.copyOf(queuedDoors, capacity);
+            energies = Arrays.copyOf(energies, capacity);
+            detours = Arrays.copyOf(detours, capacity);
+            detourIndexes = Arrays.copyOf(detourIndexes, capacity);
+            dockPendings = Arrays.copyOf(dockPendings, capacity);
+            docked = Arrays.copyOf(docked, capacity);
+            jobs = Arrays.copyOf(jobs, capacity);
+            jobRoutes = Arrays.copyOf(jobRoutes, capacity);
+            jobIndexes = Arrays.copyOf(jobIndexes, capacity);
+            deliveredJobs = Arrays.copyOf(deliveredJobs, capacity);
+            routes = Arrays.copyOf(routes, capacity);
+        }
+        energies[size] = -1;
+        robot.setIndex(size);
+        robots[size++] = robot;
+    }
+
+    /**
+     * Gets the number of robots.
+     *
+     * @return The number of robots.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets a robot.
+     *
+     * @param index The index of the robot.
+     * @return The robot.
+     */
+    Robot getRobot(int index) {
+        return robots[index];
+    }
+
+    /**
+     * Gets the current target of the charging detour of a robot if it follows one, otherwise of its job.
+     *
+     * @param index The index of the robot.
+     * @return The target, or null if the robot has neither.
+     */
+    Component getTaskTarget(int index) {
+        Component[] detour = detours[index];
+        if (detour != null) {
+            return detour[detourIndexes[index]];
+        }
+        return jobs[index] != null ? jobRoutes[index][jobIndexes[index]] : null;
+    }
+
+    /**
+     * Gets the component a robot heads to once its charging detour is over: the current target of its job if it
+     * has one, otherwise its current destination, unless the factory dispatches jobs.
+     *
+     * @param index The index of the robot.
+     * @return The target, or null if the robot waits for a job.
+     */
+    Component getResumeTarget(int index) {
+        return jobs[index] != null ? jobRoutes[index][jobIndexes[index]]
+                                   : factory.isDispatching() ? null : robots[index].getCurrentDestination();
+    }
+
+    /**
+     * Checks if a robot is held where it is whatever its target: it reached its charging station or charges at it,
+     * or its battery is empty.
+     *
+     * @param index The index of the robot.
+     * @return True if the robot stays where it is.
+     */
+    boolean isHeld(int index) {
+        return dockPendings[index] || docked[index] || energies[index] == 0;
+    }
+
+    /**
+     * Moves a robot on to the next target of its charging detour or of its job once the current one is reached.
+     * A robot reaching the station of its detour stops there, and is handed to the charging scheduler once the tick
+     * is applied; a robot reaching the last target of its job delivered it, and is handed back to the task dispatcher.
+     *
+     * @param index The index of the robot.
+     * @return True if the robot follows a charging detour or a job, false if it follows its itinerary.
+     */
+    boolean reachTaskTarget(int index) {
+        Component[] detour = detours[index];
+        if (detour == null) {
+            return reachJobTarget(index);
+        }
+        if (detour[detourIndexes[index]] instanceof PowerSupplyStation) {
+            dockPendings[index] = true;
+        } else {
+            nextDetourTarget(index);
+        }
+        return true;
+    }
+
+    /**
+     * Moves a robot on to the next target of its job, if it has one.
+     */
+    private boolean reachJobTarget(int index) {
+        if (jobs[index] == null) {
+            return false;
+        }
+        if (++jobIndexes[index] >= jobRoutes[index].length) {
+            deliveredJobs[index] = jobs[index];
+            jobs[index] = null;
+            jobRoutes[index] = null;
+            jobIndexes[index] = 0;
+            routes[index]++;
+        }
+        return true;
+    }
+
+    /**
+     * Moves a robot on to the next target of its charging detour, going back to its itinerary after the last one.
+     */
+    private void nextDetourTarget(int index) {
+        if (++detourIndexes[index] >= detours[index].length) {
+            detours[index] = null;
+            detourIndexes[index] = 0;
+            routes[index]++;
+        }
+    }
+
+    /**
+     * Updates the battery of a robot once it moved, and hands it to the charging scheduler of the factory
+     * if it reached its station, or to the task dispatcher if it delivered its job.
+     *
+     * @param index The index of the robot.
+     * @param moved The distance covered, along the x axis plus along the y axis.
+     */
+    void afterStep(int index, int moved) {
+        if (deliveredJobs[index] != null) {
+            TaskDispatcher dispatcher = factory.getTaskDispatcher();
+            if (dispatcher != null) {
+                dispatcher.complete(index, deliveredJobs[index]);
+            }
+            deliveredJobs[index] = null;
+        }
+        if (energies[index] < 0) {
+            return;
+        }
+        ChargingScheduler scheduler = factory.getChargingScheduler();
+        if (moved > 0) {
+            energies[index] = Math.max(0, energies[index] - moved);
+            if (energies[index] == 0 && scheduler != null) {
+                scheduler.strand(index);
+            }
+        }
+        if (dockPendings[index]) {
+            dockPendings[index] = false;
+            docked[index] = true;
+            if (scheduler != null) {
+                scheduler.arrive(index, (PowerSupplyStation) detours[index][detourIndexes[index]]);
+            }
+        }
+    }
+
+    /**
+     * Sends a robot on a charging detour, followed before its next destination.
+     *
+     * @param index The index of the robot.
+     * @param detour The components to go through, doors and one power supply station.
+     */
+    void startDetour(int index, List<Component> detour) {
+        detours[index] = detour.toArray(new Component[0]);
+        detourIndexes[index] = 0;
+        dockPendings[index] = false;
+        docked[index] = false;
+        rerouted(index);
+    }
+
+    /**
+     * Lets a robot leave its charging station and go on with its detour.
+     *
+     * @param index The index of the robot.
+     */
+    void undock(int index) {
+        docked[index] = false;
+        if (detours[index] != null) {
+            nextDetourTarget(index);
+        }
+        rerouted(index);
+    }
+
+    /**
+     * Cancels the charging detour of a robot, which goes on with its itinerary.
+     *
+     * @param index The index of the robot.
+     */
+    void cancelDetour(int index) {
+        detours[index] = null;
+        detourIndexes[index] = 0;
+        dockPendings[index] = false;
+        docked[index] = false;
+        routes[index]++;
+    }
+
+    /**
+     * Cancels the charging detours of every robot, which go on with their itinerary, and sets their batteries.
+     *
+     * @param energy The energy of the batteries, or -1 to remove them.
+     */
+    void resetBatteries(int energy) {
+        for (int i = 0; i < size; i++) {
+            cancelDetour(i);
+            energies[i] = energy;
+        }
+    }
+
+    /**
+     * Gives a job to a robot, carried out once its charging detour, if any, is over.
+     *
+     * @param index The index of the robot.
+     * @param job The job.
+     * @param route The components to go through, doors included, ending with the destination of the job.
+     */
+    void startJob(int index, Job job, List<Component> route) {
+        jobs[index] = job;
+        jobRoutes[index] = route.toArray(new Component[0]);
+        jobIndexes[index] = 0;
+        deliveredJobs[index] = null;
+        rerouted(index);
+    }
+
+    /**
+     * Drops the job of a robot, which waits for another one if the factory dispatches jobs.
+     *
+     * @param index The index of the robot.
+     */
+    void cancelJob(int index) {
+        jobs[index] = null;
+        jobRoutes[index] = null;
+        jobIndexes[index] = 0;
+        deliveredJobs[index] = null;
+        routes[index]++;
+    }
+
+    /**
+     * Drops the jobs of every robot.
+     */
+    void cancelJobs() {
+        for (int i = 0; i < size; i++) {
+            cancelJob(i);
+        }
+    }
+
+    /**
+     * Checks if a robot can be given a job now: it has none, and is neither charging nor out of battery.
+     *
+     * @param index The index of the robot.
+     * @return True if the robot is available.
+     */
+    boolean canTakeJob(int index) {
+        return jobs[index] == null && deliveredJobs[index] == null && detours[index] == null && energies[index] != 0;
+    }
+
+    /**
+     * Gets the job a robot carries out.
+     *
+     * @param index The index of the robot.
+     * @return The job, or null if the robot has none.
+     */
+    Job getJob(int index) {
+        return jobs[index];
+    }
+
+    /**
+     * Gets the charging detour of a robot.
+     *
+     * @param index The index of the robot.
+     * @return The components of the detour, or null if the robot follows none.
+     */
+    Component[] getDetour(int index) {
+        return detours[index];
+    }
+
+    /**
+     * Gets the components a robot goes through for its job.
+     *
+     * @param index The index of the robot.
+     * @return The components, or null if the robot has no job.
+     */
+    Component[] getJobRoute(int index) {
+        return jobRoutes[index];
+    }
+
+    /**
+     * Gets the job a robot delivered during the tick being applied.
+     *
+     * @param index The index of the robot.
+     * @return The job, or null.
+     */
+    Job getDeliveredJob(int index) {
+        return deliveredJobs[index];
+    }
+
+    /**
+     * Gets the power supply station of the charging detour of a robot.
+     *
+     * @param index The index of the robot.
+     * @return The station, or null if the robot is not on a charging detour.
+     */
+    PowerSupplyStation getChargingStation(int index) {
+        if (detours[index] != null) {
+            for (Component c : detours[index]) {
+                if (c instanceof PowerSupplyStation) {
+                    return (PowerSupplyStation) c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a robot is at its charging station, waiting for it or charging.
+     *
+     * @param index The index of the robot.
+     * @return True if the robot is at its station.
+     */
+    boolean isCharging(int index) {
+        return docked[index];
+    }
+
+    /**
+     * Gets the energy left in the battery of a robot.
+     *
+     * @param index The index of the robot.
+     * @return The energy, or -1 if the robot has no battery.
+     */
+    int getEnergy(int index) {
+        return energies[index];
+    }
+
+    /**
+     * Sets the energy left in the battery of a robot.
+     *
+     * @param index The index of the robot.
+     * @param energy The energy, or -1 to remove the battery.
+     */
+    void setEnergy(int index, int energy) {
+        energies[index] = energy;
+    }
+
+    /**
+     * Gets the version of the route of a robot, which changes whenever the robot must compute its path again.
+     *
+     * @param index The index of the robot.
+     * @return The version.
+     */
+    int getRoute(int index) {
+        return routes[index];
+    }
+
+    /**
+     * Tells the timeline of the factory, if it is simulated event by event, that a robot heads to a new target.
+     *
+     * @param index The index of the robot.
+     */
+    void rerouted(int index) {
+        FactoryTimeline timeline = factory.getTimeline();
+        if (timeline != null) {
+            timeline.reroute(index);
+        }
+    }
+
+    /**
+     * Moves a robot as far as the other robots of a collision grid allow towards its planned position. A robot which
+     * has waited for {@link CollisionGrid#MAX_WAIT_TICKS} ticks in a row, or has the right of way, moves anyway.
+     * The slot of a robot in the grid is its index.
+     *
+     * @param grid The collision grid.
+     * @param index The index of the robot.
+     * @param x The planned x-coordinate.
+     * @param y The planned y-coordinate.
+     * @param priority True if the robot has the right of way.
+     */
+    void moveInGrid(CollisionGrid grid, int index, int x, int y, boolean priority) {
+        boolean force = priority || waits[index] >= CollisionGrid.MAX_WAIT_TICKS;
+        boolean free = grid.moveTo(index, x, y, force);
+        waits[index] = free ? 0 : waits[index] + 1;
+    }
+
+    /**
+     * Checks if a robot may move to its next position as far as doors are concerned, reserving the door it heads to
+     * when the move takes it close to the door. The reservation of a door is released once the robot heads elsewhere
+     * and moved away from the door, or if it is kept away from the door it heads to. A robot already close to a door
+     * without a reservation, e.g. after the reservations were cleared, goes on without one.
+     *
+     * @param index The index of the robot.
+     * @param desti The destination the robot heads to.
+     * @param x The current x-coordinate of the robot.
+     * @param y The current y-coordinate of the robot.
+     * @param nextX The x-coordinate the robot moves to.
+     * @param nextY The y-coordinate the robot moves to.
+     * @param size The size of the robot.
+     * @return True if the robot may move, false if it must wait for a reservation.
+     */
+    boolean passDoor(int index, Component desti, int x, int y, int nextX, int nextY, int size) {
+        Door held = reservedDoors[index];
+        // A robot pushed away from the door it reserved by other robots gives its reservation back to the next robot
+        if (held != null && (held != desti ? desti instanceof Door || !held.isNear(x, y, size)
+                                           : !held.isNear(x, y, size) && !held.isNear(nextX, nextY, size))) {
+            held.getTraffic().leave();
+            reservedDoors[index] = null;
+        }
+        Door queued = queuedDoors[index];
+        if (queued != null && queued != desti) {
+            queued.getTraffic().cancel(index);
+            queuedDoors[index] = queued = null;
+        }
+        if (!(desti instanceof Door) || desti == reservedDoors[index]) {
+            return true;
+        }
+        Door door = (Door) desti;
+        if (queued != door && (!door.isNear(nextX, nextY, size) || door.isNear(x, y, size))) {
+            return true;
+        }
+        if (door.getTraffic().tryEnter(index, queued == door)) {
+            reservedDoors[index] = door;
+            queuedDoors[index] = null;
+            return true;
+        }
+        queuedDoors[index] = door;
+        return false;
+    }
+
+    /**
+     * Checks if a robot holds the reservation of a door, which gives it the right of way through the door.
+     *
+     * @param index The index of the robot.
+     * @return True if the robot holds a reservation.
+     */
+    boolean hasDoorReservation(int index) {
+        return reservedDoors[index] != null;
+    }
+
+    /**
+     * Writes the plan of a robot to a state: its charging detour and its job.
+     *
+     * @param index The index of the robot.
+     * @param out The state.
+     */
+    void writePlan(int index, FactoryState.Writer out) {
+        out.writeRefs(detours[index]);
+        out.writeJob(jobs[index]);
+        out.writeRefs(jobRoutes[index]);
+        out.writeJob(deliveredJobs[index]);
+    }
+
+    /**
+     * Reads the plan of a robot from a state written by {@link #writePlan(int, FactoryState.Writer)}.
+     *
+     * @param index The index of the robot.
+     * @param in The state.
+     */
+    void readPlan(int index, FactoryState.Reader in) {
+        detours[index] = in.readRefs();
+        jobs[index] = in.readJob();
+        jobRoutes[index] = in.readRefs();
+        deliveredJobs[index] = in.readJob();
+    }
+
+    /**
+     * Writes the status of a robot to a state: its door reservations, its progress along its detour and its job,
+     * and the version of its route.
+     *
+     * @param index The index of the robot.
+     * @param out The state.
+     */
+    void writeStatus(int index, FactoryState.Writer out) {
+        out.writeRef(reservedDoors[index]);
+        out.writeRef(queuedDoors[index]);
+        out.writeInt(detourIndexes[index]);
+        out.writeBoolean(dockPendings[index]);
+        out.writeBoolean(docked[index]);
+        out.writeInt(jobIndexes[index]);
+        out.writeInt(routes[index]);
+    }
+
+    /**
+     * Reads the status of a robot from a state written by {@link #writeStatus(int, FactoryState.Writer)}.
+     *
+     * @param index The index of the robot.
+     * @param in The state.
+     */
+    void readStatus(int index, FactoryState.Reader in) {
+        reservedDoors[index] = in.readRef(Door.class);
+        queuedDoors[index] = in.readRef(Door.class);
+        detourIndexes[index] = in.readInt();
+        dockPendings[index] = in.readBoolean();
+        docked[index] = in.readBoolean();
+        jobIndexes[index] = in.readInt();
+        routes[index] = in.readInt();
+    }
+
+    /**
+     * Writes the progress of a robot to a state: its collision waits and its battery.
+     *
+     * @param index The index of the robot.
+     * @param out The state.
+     */
+    void writeProgress(int index, FactoryState.Writer out) {
+        out.writeInt(waits[index]);
+        out.writeInt(energies[index]);
+    }
+
+    /**
+     * Reads the progress of a robot from a state written by {@link #writeProgress(int, FactoryState.Writer)}.
+     *
+     * @param index The index of the robot.
+     * @param in The state.
+     */
+    void readProgress(int index, FactoryState.Reader in) {
+        waits[index] = in.readInt();
+        energies[index] = in.readInt();
+    }
+
+    /**
+     * Forgets the door reservations of the robots and their places in the queues of the doors, without releasing them.
+     */
+    void clearDoorReservations() {
+        Arrays.fill(reservedDoors, null);
+        Arrays.fill(queuedDoors, null);
+    }
+}
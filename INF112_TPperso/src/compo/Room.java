@@ -1,12 +1,15 @@
 package compo;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import drawable.ColorObject;
-import drawable.Rectangle;
+import drawable.Palette;
 import drawable.StrokeObject;
 import drawable.StyleObject;
-import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 /**
@@ -40,7 +43,12 @@ public class Room extends Component {
     /**
      * The default color of the room.
      */
-    private final ColorObject color = new ColorObject(192, 192, 192);
+    private static final ColorObject color = Palette.color(192, 192, 192);
+
+    /**
+     * Shared style of the rooms.
+     */
+    private static final StyleObject style = new StyleObject(color, new StrokeObject(1));
 
     /**
      * Constructs a room with the specified properties.
@@ -82,6 +90,17 @@ public class Room extends Component {
         this.doorList = doorList;
     }
 
+    /**
+     * Checks if the given point lies inside the room, borders included.
+     * 
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return True if the point is inside the room, false otherwise.
+     */
+    public boolean contains(int x, int y) {
+        return x >= xCoord && x <= xCoord + xSize && y >= yCoord && y <= yCoord + ySize;
+    }
+
     /**
      * Gets the list of doors in the room.
      * 
@@ -101,6 +120,9 @@ public class Room extends Component {
         for (Door door : doorList) {
             model.addComponent(door);
         }
+        if (factory != null) {
+            factory.invalidateLayout();
+        }
     }
 
     /**
@@ -111,6 +133,9 @@ public class Room extends Component {
     public void addDoor(Door door) {
         this.doorList.add(door);
         model.addComponent(door);
+        if (factory != null) {
+            factory.invalidateLayout();
+        }
     }
     
     /**
@@ -142,6 +167,9 @@ public class Room extends Component {
     public void addPa(ProductionArea pa) {
         this.paList.add(pa);
         model.addComponent(pa);
+        if (factory != null) {
+            factory.invalidateLayout();
+        }
     }
 
     /**
@@ -175,6 +203,43 @@ public class Room extends Component {
         model.addComponent(pss);
     }
 
+    /**
+     * Adds several doors, production areas and power supply stations to the room at once. Components already
+     * in the room are skipped. The layout of the factory is only invalidated once, after every component is added.
+     * 
+     * @param compos The components to add; components of other kinds are ignored.
+     * @return The number of components added.
+     */
+    public int addAll(Collection<? extends Component> compos) {
+        Set<Component> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(doorList);
+        set.addAll(paList);
+        set.addAll(pssList);
+        int added = 0;
+        for (Component compo : compos) {
+            if (!(compo instanceof Door || compo instanceof ProductionArea || compo instanceof PowerSupplyStation)) {
+                continue;
+            }
+            if (!set.add(compo)) {
+                System.out.println("L'objet " + compo.getName() + " appartient déjà à la salle");
+                continue;
+            }
+            if (compo instanceof Door) {
+                doorList.add((Door) compo);
+            } else if (compo instanceof ProductionArea) {
+                paList.add((ProductionArea) compo);
+            } else {
+                pssList.add((PowerSupplyStation) compo);
+            }
+            model.addComponent(compo);
+            added++;
+        }
+        if (added > 0 && factory != null) {
+            factory.invalidateLayout();
+        }
+        return added;
+    }
+
     /**
      * Returns a string representation of the room's properties, including its production areas,
      * power supply stations, and doors.
@@ -226,16 +291,6 @@ public class Room extends Component {
 		return null;
 	}
 	
-    /**
-     * Gets the shape of the robot.
-     * 
-     * @return The shape as a {@link Shape} object.
-     */
-	@Override
-	public Shape getShape() {
-		return new Rectangle(getWidth(), getHeight());
-	}
-	
 	/**
      * Gets the style of the robot.
      * 
@@ -243,6 +298,6 @@ public class Room extends Component {
      */
 	@Override
 	public Style getStyle() {
-		return new StyleObject(color, new StrokeObject(1));
+		return style;
 	}
 }
\ No newline at end of file
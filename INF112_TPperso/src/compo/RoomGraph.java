@@ -0,0 +1,259 @@
+package compo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The RoomGraph class is the connectivity graph of the rooms of a factory, whose edges are the doors.
+ * Shortest routes, in number of doors crossed, are computed with one breadth-first search per source room.
+ * The search trees are cached, so that once a source room has been explored every route starting
+ * from it is rebuilt in time proportional to its length.
+ * Doors connecting the same rooms are alternatives to each other, among which robots choose the least loaded.
+ * The graph is a snapshot of the doors at construction time: it must be rebuilt when doors are added.
+ */
+public class RoomGraph {
+
+    /**
+     * The rooms of the graph.
+     */
+    private final ArrayList<Room> rooms;
+
+    /**
+     * The position of each room in the list of rooms.
+     */
+    private final IdentityHashMap<Room, Integer> indexes;
+
+    /**
+     * For each room, the doors leaving it and the rooms they lead to, in the same order.
+     */
+    private final ArrayList<ArrayList<Door>> exitDoors;
+    private final int[][] exitRooms;
+
+    /**
+     * For each door of the graph, the doors connecting the same rooms, itself included, in the order of the rooms.
+     */
+    private final IdentityHashMap<Door, List<Door>> parallelDoors;
+
+    /**
+     * For each explored source room, the room preceding each room on its shortest route from the source.
+     * Unexplored sources hold null.
+     */
+    private final int[][] previousRooms;
+
+    /**
+     * For each explored source room, the door crossed to enter each room on its shortest route from the source.
+     */
+    private final Door[][] previousDoors;
+
+    /**
+     * For each explored source room, the number of doors crossed to reach each room, -1 if unreachable.
+     */
+    private final int[][] distances;
+
+    /**
+     * For each explored source room, the rooms reachable from it in breadth-first order, the source first.
+     */
+    private final int[][] orders;
+
+    /**
+     * Constructs the connectivity graph of the given rooms from their doors.
+     *
+     * @param rooms The rooms of the graph.
+     */
+    public RoomGraph(List<Room> rooms) {
+        int n = rooms.size();
+        this.rooms = new ArrayList<>(rooms);
+        this.indexes = new IdentityHashMap<>(n);
+        for (int i = 0; i < n; i++) {
+            indexes.put(rooms.get(i), i);
+        }
+        this.exitDoors = new ArrayList<>(n);
+        this.exitRooms = new int[n][];
+        for (int i = 0; i < n; i++) {
+            ArrayList<Door> doors = new ArrayList<>();
+            ArrayList<Integer> targets = new ArrayList<>();
+            for (Door door : rooms.get(i).getDoorList()) {
+                for (Room other : door.getRooms()) {
+                    Integer j = indexes.get(other);
+                    if (j != null && j != i) {
+                        doors.add(door);
+                        targets.add(j);
+                    }
+                }
+            }
+            exitDoors.add(doors);
+            exitRooms[i] = new int[targets.size()];
+            for (int k = 0; k < targets.size(); k++) {
+                exitRooms[i][k] = targets.get(k);
+            }
+        }
+        this.parallelDoors = new IdentityHashMap<>();
+        HashMap<List<Integer>, List<Door>> doorsByRooms = new HashMap<>();
+        for (ArrayList<Door> doors : exitDoors) {
+            for (Door door : doors) {
+                if (!parallelDoors.containsKey(door)) {
+                    ArrayList<Integer> key = new ArrayList<>();
+                    for (Room room : door.getRooms()) {
+                        Integer index = indexes.get(room);
+                        if (index != null && !key.contains(index)) {
+                            key.add(index);
+                        }
+                    }
+                    Collections.sort(key);
+                    List<Door> group = doorsByRooms.computeIfAbsent(key, k -> new ArrayList<>());
+                    group.add(door);
+                    parallelDoors.put(door, Collections.unmodifiableList(group));
+                }
+            }
+        }
+        this.previousRooms = new int[n][];
+        this.previousDoors = new Door[n][];
+        this.distances = new int[n][];
+        this.orders = new int[n][];
+    }
+
+    /**
+     * Computes the shortest route between two rooms.
+     *
+     * @param from The room where the route starts.
+     * @param to The room where the route ends.
+     * @return The doors to cross in order, an empty list if both rooms are the same,
+     *         or null if the rooms are not connected or not part of the graph.
+     */
+    public List<Door> route(Room from, Room to) {
+        Integer source = from == null ? null : indexes.get(from);
+        Integer target = to == null ? null : indexes.get(to);
+        if (source == null || target == null) {
+            return null;
+        }
+        if (source.intValue() == target.intValue()) {
+            return Collections.emptyList();
+        }
+        explore(source);
+        int length = distances[source][target];
+        if (length < 0) {
+            return null;
+        }
+        Door[] doors = new Door[length];
+        for (int room = target; room != source; room = previousRooms[source][room]) {
+            doors[--length] = previousDoors[source][room];
+        }
+        return List.of(doors);
+    }
+
+    /**
+     * Gets the number of doors to cross to go from a room to another.
+     *
+     * @param from The room where the route starts.
+     * @param to The room where the route ends.
+     * @return The number of doors on the shortest route, or -1 if the rooms are not connected.
+     */
+    public int distance(Room from, Room to) {
+        Integer source = from == null ? null : indexes.get(from);
+        Integer target = to == null ? null : indexes.get(to);
+        if (source == null || target == null) {
+            return -1;
+        }
+        explore(source);
+        return distances[source][target];
+    }
+
+    /**
+     * Walks the shortest routes from a room to every room reachable from it, in breadth-first order, so that each
+     * room is visited after the room preceding it on its route. This gives every route from the room in time
+     * proportional to the number of rooms, without building them one by one.
+     *
+     * @param from The room where the routes start, visited first with no previous room.
+     * @param visitor The visitor, given the rooms by their index in {@link #getRooms()}.
+     */
+    public void walk(Room from, RouteVisitor visitor) {
+        Integer source = from == null ? null : indexes.get(from);
+        if (source == null) {
+            return;
+        }
+        explore(source);
+        int[] order = orders[source];
+        visitor.visit(source, -1, null);
+        for (int i = 1; i < order.length; i++) {
+            int room = order[i];
+            visitor.visit(room, previousRooms[source][room], previousDoors[source][room]);
+        }
+    }
+
+    /**
+     * A RouteVisitor is given the last step of the shortest routes walked by {@link RoomGraph#walk(Room, RouteVisitor)}.
+     */
+    @FunctionalInterface
+    public interface RouteVisitor {
+
+        /**
+         * Visits the route to a room.
+         *
+         * @param room The index of the room the route ends in.
+         * @param previousRoom The index of the room before it on the route, or -1 for the room the routes start from.
+         * @param door The door between both rooms, or null for the room the routes start from.
+         */
+        void visit(int room, int previousRoom, Door door);
+    }
+
+    /**
+     * Gets the doors connecting the same rooms as a door, which a robot may go through instead of it.
+     *
+     * @param door The door.
+     * @return The doors, the given door included, or a list of the door alone if it is not part of the graph.
+     */
+    public List<Door> getParallelDoors(Door door) {
+        List<Door> doors = parallelDoors.get(door);
+        return doors != null ? doors : List.of(door);
+    }
+
+    /**
+     * Gets the rooms of the graph.
+     *
+     * @return The rooms, in the order of the factory.
+     */
+    public List<Room> getRooms() {
+        return Collections.unmodifiableList(rooms);
+    }
+
+    /**
+     * Runs a breadth-first search from the given room unless it was already done.
+     *
+     * @param source The index of the source room.
+     */
+    private synchronized void explore(int source) {
+        if (distances[source] != null) {
+            return;
+        }
+        int n = rooms.size();
+        int[] distance = new int[n];
+        int[] previousRoom = new int[n];
+        Door[] previousDoor = new Door[n];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        distance[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int room = queue[head++];
+            ArrayList<Door> doors = exitDoors.get(room);
+            for (int k = 0; k < doors.size(); k++) {
+                int next = exitRooms[room][k];
+                if (distance[next] < 0) {
+                    distance[next] = distance[room] + 1;
+                    previousRoom[next] = room;
+                    previousDoor[next] = doors.get(k);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        previousRooms[source] = previousRoom;
+        previousDoors[source] = previousDoor;
+        distances[source] = distance;
+        orders[source] = Arrays.copyOf(queue, tail);
+    }
+}
@@ -0,0 +1,198 @@
+package compo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The RoomIndex class is a uniform grid spatial index over the bounds of rooms.
+ * Each cell of the grid lists the rooms overlapping it, so finding the room containing a point
+ * only checks the few rooms registered in the cell of that point instead of every room of the factory.
+ * The grid grows when a room is added outside of its current extent.
+ */
+public class RoomIndex {
+
+    /**
+     * Default size of a grid cell, in pixels.
+     */
+    public static final int DEFAULT_CELL_SIZE = 64;
+
+    /**
+     * The size of a grid cell, in pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * The cell coordinates of the top left cell of the grid.
+     */
+    private int minCellX;
+    private int minCellY;
+
+    /**
+     * The number of columns and rows of the grid.
+     */
+    private int cols;
+    private int rows;
+
+    /**
+     * The indexes of the rooms overlapping each cell, row by row. Empty cells hold null.
+     */
+    private int[][] cells;
+
+    /**
+     * All the rooms of the index, in insertion order.
+     */
+    private final ArrayList<Room> rooms;
+
+    /**
+     * Constructs an empty RoomIndex with the default cell size, whose grid initially covers the given area.
+     *
+     * @param x The x-coordinate of the covered area.
+     * @param y The y-coordinate of the covered area.
+     * @param width The width of the covered area.
+     * @param height The height of the covered area.
+     */
+    public RoomIndex(int x, int y, int width, int height) {
+        this(DEFAULT_CELL_SIZE, x, y, width, height);
+    }
+
+    /**
+     * Constructs an empty RoomIndex with the specified cell size, whose grid initially covers the given area.
+     *
+     * @param cellSize The size of a grid cell, in pixels.
+     * @param x The x-coordinate of the covered area.
+     * @param y The y-coordinate of the covered area.
+     * @param width The width of the covered area.
+     * @param height The height of the covered area.
+     */
+    public RoomIndex(int cellSize, int x, int y, int width, int height) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.rooms = new ArrayList<>();
+        this.minCellX = Math.floorDiv(x, cellSize);
+        this.minCellY = Math.floorDiv(y, cellSize);
+        this.cols = Math.floorDiv(x + width, cellSize) - minCellX + 1;
+        this.rows = Math.floorDiv(y + height, cellSize) - minCellY + 1;
+        rebuild();
+    }
+
+    /**
+     * Adds a room to the index. Rooms added first take precedence when several rooms contain a point.
+     *
+     * @param room The room to add.
+     */
+    public void add(Room room) {
+        int index = rooms.size();
+        rooms.add(room);
+        int x0 = Math.floorDiv(room.getxCoordinate(), cellSize);
+        int y0 = Math.floorDiv(room.getyCoordinate(), cellSize);
+        int x1 = Math.floorDiv(room.getxCoordinate() + room.getWidth(), cellSize);
+        int y1 = Math.floorDiv(room.getyCoordinate() + room.getHeight(), cellSize);
+        if (x0 < minCellX || y0 < minCellY || x1 >= minCellX + cols || y1 >= minCellY + rows) {
+            rebuild();
+        } else {
+            insert(index, x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Finds the room containing the given point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The first added room containing the point, or null if no room contains it.
+     */
+    public Room find(int x, int y) {
+        int index = indexOf(x, y);
+        return index < 0 ? null : rooms.get(index);
+    }
+
+    /**
+     * Finds the index of the room containing the given point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The insertion index of the first added room containing the point, or -1 if no room contains it.
+     */
+    public int indexOf(int x, int y) {
+        int cx = Math.floorDiv(x, cellSize) - minCellX;
+        int cy = Math.floorDiv(y, cellSize) - minCellY;
+        if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) {
+            return -1;
+        }
+        int[] cell = cells[cy * cols + cx];
+        if (cell != null) {
+            for (int index : cell) {
+                if (rooms.get(index).contains(x, y)) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a room from its insertion index.
+     *
+     * @param index The insertion index of the room.
+     * @return The room.
+     */
+    public Room get(int index) {
+        return rooms.get(index);
+    }
+
+    /**
+     * Gets the number of rooms in the index.
+     *
+     * @return The number of rooms.
+     */
+    public int size() {
+        return rooms.size();
+    }
+
+    /**
+     * Extends the grid to the bounds of all the rooms and registers them again.
+     */
+    private void rebuild() {
+        int x0 = minCellX, y0 = minCellY;
+        int x1 = minCellX + cols - 1, y1 = minCellY + rows - 1;
+        for (Room room : rooms) {
+            x0 = Math.min(x0, Math.floorDiv(room.getxCoordinate(), cellSize));
+            y0 = Math.min(y0, Math.floorDiv(room.getyCoordinate(), cellSize));
+            x1 = Math.max(x1, Math.floorDiv(room.getxCoordinate() + room.getWidth(), cellSize));
+            y1 = Math.max(y1, Math.floorDiv(room.getyCoordinate() + room.getHeight(), cellSize));
+        }
+        minCellX = x0;
+        minCellY = y0;
+        cols = x1 - x0 + 1;
+        rows = y1 - y0 + 1;
+        cells = new int[cols * rows][];
+        for (int index = 0; index < rooms.size(); index++) {
+            Room room = rooms.get(index);
+            insert(index,
+                   Math.floorDiv(room.getxCoordinate(), cellSize), Math.floorDiv(room.getyCoordinate(), cellSize),
+                   Math.floorDiv(room.getxCoordinate() + room.getWidth(), cellSize),
+                   Math.floorDiv(room.getyCoordinate() + room.getHeight(), cellSize));
+        }
+    }
+
+    /**
+     * Registers the index of a room in every cell of the given cell range.
+     */
+    private void insert(int index, int x0, int y0, int x1, int y1) {
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int c = (cy - minCellY) * cols + (cx - minCellX);
+                int[] cell = cells[c];
+                if (cell == null) {
+                    cells[c] = new int[] { index };
+                } else {
+                    cell = Arrays.copyOf(cell, cell.length + 1);
+                    cell[cell.length - 1] = index;
+                    cells[c] = cell;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package compo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The TaskDispatcher class hands the transport jobs emitted by the production machines of a factory to its robots.
+ * Jobs wait in a first in, first out queue, and each tick the oldest jobs are given to the nearest idle robots,
+ * as long as robots are idle. A robot carries out one job at a time and waits where it delivered until it is given
+ * the next one.
+ * Idle robots are kept in a list per room, and the travel between rooms is estimated by a cost matrix over the rooms:
+ * the distance through the doors of the shortest route, from the first door to the last. The matrix is computed one
+ * row at a time, the first time a job is dispatched from a room, and kept until the layout changes. The rooms are
+ * visited by increasing cost from the room of the machine, and the search stops as soon as reaching a room costs
+ * more than the best robot found, so that dispatching a job only looks at the idle robots of the closest rooms
+ * rather than at every robot of the factory. Robots are referred to by their index in the {@link RobotTasks} of the
+ * factory, which holds their jobs.
+ */
+public class TaskDispatcher {
+
+    /**
+     * The factory whose robots are dispatched.
+     */
+    private final Factory factory;
+
+    /**
+     * The robots of the factory and their jobs.
+     */
+    private final RobotTasks tasks;
+
+    /**
+     * The room graph of the factory when the dispatcher was built, its rooms and their index in it.
+     */
+    private final RoomGraph graph;
+    private final List<Room> rooms;
+    private final IdentityHashMap<Room, Integer> roomIndexes = new IdentityHashMap<>();
+
+    /**
+     * The machines of the factory, in the order of its rooms, and the tick each of them emits its next job at.
+     */
+    private final ArrayList<ProductionMachine> machines = new ArrayList<>();
+    private final long[] nextEmissions;
+
+    /**
+     * The indexes of the idle robots, by room index, and the length of each list; the last list holds the robots
+     * outside of every room. The lists are checked lazily: a robot which changed room while idle, e.g. to charge,
+     * is moved to the list of its room when it is met.
+     */
+    private final int[][] idle;
+    private final int[] idleSizes;
+
+    /**
+     * The number of robots in the idle lists.
+     */
+    private int idleCount;
+
+    /**
+     * The jobs waiting for a robot, oldest first.
+     */
+    private final ArrayDeque<Job> pending = new ArrayDeque<>();
+
+    /**
+     * The rows of the cost matrix, by index of the room of the machine, null until first needed.
+     */
+    private final Row[] rows;
+
+    /**
+     * The number of ticks dispatched so far.
+     */
+    private long tick;
+
+    /**
+     * The statistics of the dispatcher: the number of jobs emitted and delivered, the number of ticks jobs spent
+     * waiting for a robot, summed over the jobs, the number of ticks from emission to delivery, summed over the jobs
+     * delivered, and the longest queue of jobs seen.
+     */
+    private long emitted;
+    private long delivered;
+    private long waitTicks;
+    private long leadTicks;
+    private int peakPending;
+
+    /**
+     * Constructs the dispatcher of a factory, with every robot idle.
+     *
+     * @param factory The factory.
+     */
+    public TaskDispatcher(Factory factory) {
+        this.factory = factory;
+        this.tasks = factory.getRobotTasks();
+        this.graph = factory.getRoomGraph();
+        this.rooms = graph.getRooms();
+        for (int i = 0; i < rooms.size(); i++) {
+            roomIndexes.putIfAbsent(rooms.get(i), i);
+        }
+        this.idle = new int[rooms.size() + 1][];
+        this.idleSizes = new int[rooms.size() + 1];
+        for (int i = 0; i < idle.length; i++) {
+            idle[i] = new int[4];
+        }
+        this.rows = new Row[rooms.size()];
+        for (Room room : factory.getRooms()) {
+            for (ProductionArea area : room.getPaList()) {
+                machines.addAll(area.getPm());
+            }
+        }
+        this.nextEmissions = new long[machines.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            register(i);
+        }
+    }
+
+    /**
+     * Starts dispatching jobs to a robot, which drops its current job, if any, and waits for one.
+     *
+     * @param robot The index of the robot.
+     */
+    void register(int robot) {
+        tasks.cancelJob(robot);
+        addIdle(bucketOf(robot), robot);
+        idleCount++;
+    }
+
+    /**
+     * Runs one tick of the dispatcher, after the robots moved: the machines due emit their jobs, then the oldest
+     * jobs are given to the nearest idle robots. A job no idle robot can reach keeps its place in the queue.
+     */
+    public void tick() {
+        tick++;
+        for (int i = 0; i < machines.size(); i++) {
+            ProductionMachine machine = machines.get(i);
+            int interval = machine.getJobInterval();
+            if (interval > 0 && tick >= nextEmissions[i]) {
+                pending.add(new Job(machine, machine.getJobDestination(), tick));
+                emitted++;
+                nextEmissions[i] = tick + interval;
+            }
+        }
+        peakPending = Math.max(peakPending, pending.size());
+        ArrayList<Job> skipped = null;
+        for (int tries = pending.size(); idleCount > 0 && tries > 0; tries--) {
+            Job job = pending.poll();
+            int robot = takeNearest(job.getMachine());
+            if (robot >= 0) {
+                assign(job, robot);
+            } else {
+                if (skipped == null) {
+                    skipped = new ArrayList<>();
+                }
+                skipped.add(job);
+            }
+        }
+        if (skipped != null) {
+            for (int i = skipped.size() - 1; i >= 0; i--) {
+                pending.addFirst(skipped.get(i));
+            }
+        }
+        waitTicks += pending.size();
+    }
+
+    /**
+     * Gets the tick the next call to {@link #tick()} changes anything at, other than counting the waiting jobs:
+     * a machine emits a job, or jobs wait while robots are idle.
+     *
+     * @return The tick, or Long.MAX_VALUE if nothing is scheduled.
+     */
+    long getNextEventTick() {
+        if (!pending.isEmpty() && idleCount > 0) {
+            return tick + 1;
+        }
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < machines.size(); i++) {
+            if (machines.get(i).getJobInterval() > 0) {
+                next = Math.min(next, Math.max(tick + 1, nextEmissions[i]));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Runs the ticks up to the given one at once, which must come before {@link #getNextEventTick()}: the waiting
+     * jobs are counted, in bulk.
+     *
+     * @param target The tick to run to.
+     */
+    void skipTo(long target) {
+        if (target > tick) {
+            waitTicks += pending.size() * (target - tick);
+            tick = target;
+        }
+    }
+
+    /**
+     * Gets the number of ticks dispatched so far.
+     *
+     * @return The number of ticks.
+     */
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Finds the idle robot the closest to a machine and removes it from the idle robots.
+     *
+     * @param machine The machine.
+     * @return The index of the robot, or -1 if no idle robot can reach the machine for now.
+     */
+    private int takeNearest(ProductionMachine machine) {
+        int x = machine.getxCoordinate() + machine.getWidth() / 2;
+        int y = machine.getyCoordinate() + machine.getHeight() / 2;
+        Integer target = roomIndexes.get(machine.getRoom());
+        Row row = target == null ? null : row(target);
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+        int bestBucket = -1;
+        if (row != null) {
+            for (int room : row.order) {
+                if (row.costs[room] >= bestCost) {
+                    // Every room left costs at least as much to reach
+                    break;
+                }
+                int count = scan(room);
+                for (int k = 0; k < count; k++) {
+                    int robot = idle[room][k];
+                    if (!tasks.canTakeJob(robot)) {
+                        continue;
+                    }
+                    long cost = row.costs[room] + (room == target ? distance(robot, x, y)
+                                                                  : distance(robot, row.firstDoors[room]) + distance(row.lastDoors[room], x, y));
+                    if (cost < bestCost) {
+                        best = robot;
+                        bestCost = cost;
+                        bestBucket = room;
+                    }
+                }
+            }
+        }
+        // Robots outside of every room head straight to the machine, as do all robots if the machine is in no room
+        for (int room = row == null ? 0 : rooms.size(); room <= rooms.size(); room++) {
+            int count = scan(room);
+            for (int k = 0; k < count; k++) {
+                int robot = idle[room][k];
+                if (!tasks.canTakeJob(robot)) {
+                    continue;
+                }
+                long cost = distance(robot, x, y);
+                if (cost < bestCost) {
+                    best = robot;
+                    bestCost = cost;
+                    bestBucket = room;
+                }
+            }
+        }
+        if (best >= 0) {
+            remove(bestBucket, best);
+        }
+        return best;
+    }
+
+    /**
+     * Gets the idle robots of a room, after removing from its list the robots which no longer belong to the room
+     * or to the factory, or were given a job.
+     *
+     * @param bucket The index of the room, or the number of rooms for the robots outside of every room.
+     * @return The number of idle robots of the room, first in its list, some of which may be charging.
+     */
+    private int scan(int bucket) {
+        int[] list = idle[bucket];
+        int count = idleSizes[bucket];
+        for (int i = 0; i < count; ) {
+            int robot = list[i];
+            boolean gone = tasks.getRobot(robot).getFactory() != factory || tasks.getJob(robot) != null;
+            int actual = gone ? -1 : bucketOf(robot);
+            if (actual != bucket) {
+                list[i] = list[--count];
+                if (actual >= 0) {
+                    addIdle(actual, robot);
+                } else {
+                    idleCount--;
+                }
+                continue;
+            }
+            i++;
+        }
+        idleSizes[bucket] = count;
+        return count;
+    }
+
+    /**
+     * Adds a robot to a list of idle robots, without counting it.
+     */
+    private void addIdle(int bucket, int robot) {
+        if (idleSizes[bucket] == idle[bucket].length) {
+            idle[bucket] = Arrays.copyOf(idle[bucket], idleSizes[bucket] * 2);
+        }
+        idle[bucket][idleSizes[bucket]++] = robot;
+    }
+
+    /**
+     * Removes a robot from a list of idle robots.
+     */
+    private void remove(int bucket, int robot) {
+        int[] list = idle[bucket];
+        for (int i = idleSizes[bucket] - 1; i >= 0; i--) {
+            if (list[i] == robot) {
+                list[i] = list[--idleSizes[bucket]];
+                idleCount--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives a job to a robot: the robot goes to the machine through the doors of the shortest route, then to the
+     * destination of the job.
+     */
+    private void assign(Job job, int robot) {
+        ProductionMachine machine = job.getMachine();
+        ArrayList<Component> route = new ArrayList<>();
+        Room room = tasks.getRobot(robot).getRoom();
+        List<Door> doors = room == null ? null : graph.route(room, machine.getRoom());
+        if (doors != null) {
+            route.addAll(doors);
+        }
+        route.add(machine);
+        doors = graph.route(machine.getRoom(), job.getDestination().getRoom());
+        if (doors != null) {
+            route.addAll(doors);
+        }
+        route.add(job.getDestination());
+        job.setAssigned(tick);
+        tasks.startJob(robot, job, route);
+    }
+
+    /**
+     * Records the delivery of a job by a robot, which becomes idle.
+     *
+     * @param robot The index of the robot.
+     * @param job The job delivered.
+     */
+    void complete(int robot, Job job) {
+        delivered++;
+        leadTicks += tick - job.getEmitted();
+        addIdle(bucketOf(robot), robot);
+        idleCount++;
+    }
+
+    /**
+     * Writes the clock of the dispatcher to a state: the number of ticks dispatched.
+     *
+     * @param out The state.
+     */
+    void writeClock(FactoryState.Writer out) {
+        out.writeLong(tick);
+    }
+
+    /**
+     * Reads the clock of the dispatcher from a state written by {@link #writeClock(FactoryState.Writer)}.
+     *
+     * @param in The state.
+     */
+    void readClock(FactoryState.Reader in) {
+        tick = in.readLong();
+    }
+
+    /**
+     * Writes the queues of the dispatcher to a state: the tick each machine emits its next job at, the idle robots
+     * of each room, in the order of their lists, and the jobs waiting. Robots which left the factory are left out.
+     *
+     * @param out The state.
+     */
+    void writeQueues(FactoryState.Writer out) {
+        out.writeInt(nextEmissions.length);
+        for (long next : nextEmissions) {
+            out.writeLong(next);
+        }
+        out.writeInt(idle.length);
+        for (int bucket = 0; bucket < idle.length; bucket++) {
+            int count = 0;
+            for (int i = 0; i < idleSizes[bucket]; i++) {
+                if (out.hasRobot(idle[bucket][i])) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (int i = 0; i < idleSizes[bucket]; i++) {
+                if (out.hasRobot(idle[bucket][i])) {
+                    out.writeRobot(idle[bucket][i]);
+                }
+            }
+        }
+        out.writeInt(pending.size());
+        for (Job job : pending) {
+            out.writeJob(job);
+        }
+    }
+
+    /**
+     * Reads the queues of the dispatcher from a state written by {@link #writeQueues(FactoryState.Writer)}, keeping
+     * the statistics.
+     *
+     * @param in The state.
+     * @throws IllegalArgumentException If the state does not have the machines and rooms of the dispatcher.
+     */
+    void readQueues(FactoryState.Reader in) {
+        if (in.readInt() != nextEmissions.length) {
+            throw new IllegalArgumentException("The state does not match the machines of factory " + factory.getName());
+        }
+        for (int i = 0; i < nextEmissions.length; i++) {
+            nextEmissions[i] = in.readLong();
+        }
+        if (in.readInt() != idle.length) {
+            throw new IllegalArgumentException("The state does not match the rooms of factory " + factory.getName());
+        }
+        idleCount = 0;
+        for (int bucket = 0; bucket < idle.length; bucket++) {
+            idleSizes[bucket] = 0;
+            for (int count = in.readInt(); count > 0; count--) {
+                addIdle(bucket, in.readRobot());
+                idleCount++;
+            }
+        }
+        pending.clear();
+        for (int count = in.readInt(); count > 0; count--) {
+            pending.add(in.readJob());
+        }
+    }
+
+    /**
+     * Drops the jobs waiting and the jobs of the robots, which all become idle, e.g. when the robots were moved
+     * to another state. The statistics are kept.
+     */
+    public void reset() {
+        pending.clear();
+        Arrays.fill(idleSizes, 0);
+        idleCount = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            register(i);
+        }
+    }
+
+    /**
+     * Gets the index of the list of idle robots a robot belongs to, given its room.
+     */
+    private int bucketOf(int robot) {
+        Room room = tasks.getRobot(robot).getRoom();
+        Integer index = room == null ? null : roomIndexes.get(room);
+        return index == null ? rooms.size() : index;
+    }
+
+    /**
+     * Gets the row of the cost matrix for the machines of a room, computing it if needed.
+     */
+    private Row row(int target) {
+        Row row = rows[target];
+        if (row == null) {
+            row = new Row(target);
+            rows[target] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Gets the distance, along the x axis plus along the y axis, from a robot to a point.
+     */
+    private long distance(int index, int x, int y) {
+        Robot robot = tasks.getRobot(index);
+        return Math.abs(robot.getxCoordinate() - x) + Math.abs(robot.getyCoordinate() - y);
+    }
+
+    /**
+     * Gets the distance, along the x axis plus along the y axis, from a robot to the center of a door.
+     */
+    private long distance(int robot, Door door) {
+        return distance(robot, door.getxCoordinate() + door.getWidth() / 2, door.getyCoordinate() + door.getHeight() / 2);
+    }
+
+    /**
+     * Gets the distance, along the x axis plus along the y axis, from the center of a door to a point.
+     */
+    private static long distance(Door door, int x, int y) {
+        return Math.abs(door.getxCoordinate() + door.getWidth() / 2 - x) + Math.abs(door.getyCoordinate() + door.getHeight() / 2 - y);
+    }
+
+    /**
+     * Gets the number of jobs emitted by the machines.
+     *
+     * @return The number of jobs.
+     */
+    public long getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * Gets the number of jobs delivered by the robots.
+     *
+     * @return The number of jobs.
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Gets the number of jobs waiting for a robot.
+     *
+     * @return The number of jobs.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the longest queue of jobs seen, a sign that robots are missing when it keeps growing.
+     *
+     * @return The number of jobs.
+     */
+    public int getPeakPending() {
+        return peakPending;
+    }
+
+    /**
+     * Gets the number of robots waiting for a job, including those charging while they wait.
+     *
+     * @return The number of robots.
+     */
+    public int getIdleRobots() {
+        return idleCount;
+    }
+
+    /**
+     * Gets the number of ticks jobs spent waiting for a robot, summed over the jobs.
+     *
+     * @return The number of waiting ticks.
+     */
+    public long getWaitTicks() {
+        return waitTicks;
+    }
+
+    /**
+     * Gets the average number of ticks from the emission of a job to its delivery.
+     *
+     * @return The lead time, 0 if no job was delivered.
+     */
+    public double getAverageLeadTime() {
+        return delivered > 0 ? (double) leadTicks / delivered : 0;
+    }
+
+    /**
+     *
+     * @return A string describing the jobs of the factory.
+     */
+    @Override
+    public String toString() {
+        return "Tâches de l'usine " + factory.getName() + " : " + emitted + " émises, " + delivered + " livrées, "
+               + pending.size() + " en attente, " + idleCount + " robots libres, " + String.format("%.1f", getAverageLeadTime())
+               + " ticks de l'émission à la livraison";
+    }
+
+    /**
+     * A row of the cost matrix: the cost of reaching a room from each other room, through the doors of the shortest
+     * route from the first door to the last, the doors themselves, and the rooms reachable by increasing cost.
+     */
+    private final class Row {
+        private final long[] costs;
+        private final Door[] firstDoors;
+        private final Door[] lastDoors;
+        private final int[] order;
+
+        /**
+         * Computes the row of a room by walking the search tree of the room graph from it: the route from a room
+         * to the target room is the route from the room before it, seen from the target, plus one door.
+         *
+         * @param target The index of the room.
+         */
+        Row(int target) {
+            int n = rooms.size();
+            costs = new long[n];
+            firstDoors = new Door[n];
+            lastDoors = new Door[n];
+            long[] keys = new long[n];
+            int[] count = new int[1];
+            graph.walk(rooms.get(target), (room, previous, door) -> {
+                firstDoors[room] = door;
+                if (previous == target) {
+                    lastDoors[room] = door;
+                } else if (previous >= 0) {
+                    Door next = firstDoors[previous];
+                    lastDoors[room] = lastDoors[previous];
+                    costs[room] = costs[previous] + distance(door, next.getxCoordinate() + next.getWidth() / 2,
+                                                             next.getyCoordinate() + next.getHeight() / 2);
+                }
+                // Sorting the keys sorts the rooms by cost
+                keys[count[0]++] = costs[room] * n + room;
+            });
+            Arrays.sort(keys, 0, count[0]);
+            order = new int[count[0]];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = (int) (keys[i] % n);
+            }
+        }
+    }
+}
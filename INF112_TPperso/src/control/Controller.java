@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 
 import model.Model; // Model class
+import simu.SimulationEngine; // Tick loop driving the model
 import fr.tp.inf112.projects.canvas.controller.CanvasViewerController; // Interface implemented
 import fr.tp.inf112.projects.canvas.controller.Observer; // Interface implemented
 import fr.tp.inf112.projects.canvas.model.Canvas; // The canvas model
@@ -35,6 +36,11 @@ public class Controller implements CanvasViewerController, Serializable {
      */
     private CanvasPersistenceManager manager;
 
+    /**
+     * The engine running the animation of the current canvas model.
+     */
+    private transient SimulationEngine engine;
+
     /**
      * Constructs a Controller with the specified canvas model and persistence manager.
      * 
@@ -70,6 +76,10 @@ public class Controller implements CanvasViewerController, Serializable {
 
     @Override
     public void setCanvas(Canvas canvasModel) {
+        if (engine != null && engine.getModel() != canvasModel) {
+            // The animation of the former canvas must not keep running in the background
+            engine.stop();
+        }
         this.model = canvasModel;
     }
 
@@ -78,26 +88,36 @@ public class Controller implements CanvasViewerController, Serializable {
         return manager;
     }
 
+    /**
+     * Starts the animation of the canvas model and returns at once; the ticks run on the simulation executor.
+     */
     @Override
     public void startAnimation() {
-        ((Model) model).setPlay(true); 
-        while (((Model) model).isPlay()) { 
-            ((Model) model).behave(true); 
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
-        }
+        getEngine().start();
     }
 
+    /**
+     * Requests the animation to stop and returns at once; the tick being executed, if any, is completed first.
+     */
     @Override
     public void stopAnimation() {
-        ((Model) model).setPlay(false); 
+        getEngine().stop();
     }
 
     @Override
     public boolean isAnimationRunning() {
-        return ((Model) model).isPlay(); 
+        return getEngine().isRunning() || ((Model) model).isPlay();
+    }
+
+    /**
+     * Gets the simulation engine of the current canvas model, creating it if the canvas has changed.
+     * 
+     * @return The simulation engine, running in real time.
+     */
+    public synchronized SimulationEngine getEngine() {
+        if (engine == null || engine.getModel() != model) {
+            engine = new SimulationEngine((Model) model);
+        }
+        return engine;
     }
 }
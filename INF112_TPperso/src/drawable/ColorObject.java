@@ -11,9 +11,9 @@ import fr.tp.inf112.projects.canvas.model.Color;
 public class ColorObject implements Color, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private int red;
-    private int green;
-    private int blue;
+    private final int red;
+    private final int green;
+    private final int blue;
 
     /**
      * Constructs a ColorObject with the specified red, green, and blue components.
@@ -11,8 +11,8 @@ import fr.tp.inf112.projects.canvas.model.OvalShape;
 public class Oval implements OvalShape, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private int width;
-    private int height;
+    private final int width;
+    private final int height;
 
     /**
      * Constructs an Oval with the specified width and height.
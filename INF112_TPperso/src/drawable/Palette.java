@@ -0,0 +1,63 @@
+package drawable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Palette is a registry of shared, immutable colors, strokes and styles.
+ * Drawable objects being immutable, a single instance of each distinct color or style can be shared by every
+ * figure using it, so that painting figures does not create any object.
+ *
+ */
+public final class Palette {
+
+    /**
+     * Shared colors, by packed RGB value.
+     */
+    private static final ConcurrentHashMap<Integer, ColorObject> colors = new ConcurrentHashMap<>();
+
+    /**
+     * Shared styles with the default stroke, by background color.
+     */
+    private static final ConcurrentHashMap<ColorObject, StyleObject> styles = new ConcurrentHashMap<>();
+
+    /**
+     * The black color.
+     */
+    public static final ColorObject BLACK = color(0, 0, 0);
+
+    /**
+     * The default stroke: black dashed lines.
+     */
+    public static final StrokeObject DEFAULT_STROKE = new StrokeObject();
+
+    /**
+     * The default style: black background with the default stroke.
+     */
+    public static final StyleObject DEFAULT_STYLE = style(BLACK);
+
+    private Palette() {
+    }
+
+    /**
+     * Gets the shared color with the specified red, green, and blue components.
+     *
+     * @param red   The red component of the color.
+     * @param green The green component of the color.
+     * @param blue  The blue component of the color.
+     * @return The shared color.
+     */
+    public static ColorObject color(int red, int green, int blue) {
+        int key = (red & 0xFF) << 16 | (green & 0xFF) << 8 | (blue & 0xFF);
+        return colors.computeIfAbsent(key, k -> new ColorObject(red, green, blue));
+    }
+
+    /**
+     * Gets the shared style with the specified color and the default stroke.
+     *
+     * @param color The background color, preferably a shared color of the palette.
+     * @return The shared style.
+     */
+    public static StyleObject style(ColorObject color) {
+        return styles.computeIfAbsent(color, c -> new StyleObject(c, DEFAULT_STROKE));
+    }
+}
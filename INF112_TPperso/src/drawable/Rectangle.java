@@ -11,8 +11,8 @@ import fr.tp.inf112.projects.canvas.model.RectangleShape;
 public class Rectangle implements RectangleShape, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private int width;
-    private int height;
+    private final int width;
+    private final int height;
 
     /**
      * Constructs a Rectangle with the specified width and height.
@@ -0,0 +1,79 @@
+package drawable;
+
+import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.Shape;
+import fr.tp.inf112.projects.canvas.model.Style;
+
+/**
+ * ReducedFigure is a lighter view of a figure, drawn in place of it when the canvas is zoomed out.
+ * It follows the position and style of the figure, but has no label, and may be reduced to a single point.
+ */
+public class ReducedFigure implements Figure {
+
+    /**
+     * Shape of the figures reduced to a point: an empty rectangle is drawn as a single pixel.
+     */
+    private static final Shape POINT = new Rectangle(0, 0);
+
+    private final Figure figure;
+    private final boolean point;
+
+    /**
+     * Constructs a ReducedFigure of the specified figure.
+     *
+     * @param figure The figure to reduce.
+     * @param point  True to draw the figure as a single point, false to only remove its label.
+     */
+    public ReducedFigure(Figure figure, boolean point) {
+        this.figure = figure;
+        this.point = point;
+    }
+
+    /**
+     * Retrieves the figure reduced.
+     *
+     * @return The figure.
+     */
+    public Figure getFigure() {
+        return figure;
+    }
+
+    /**
+     * Checks if the figure is reduced to a single point.
+     *
+     * @return True if the figure is drawn as a point.
+     */
+    public boolean isPoint() {
+        return point;
+    }
+
+    /**
+     * Retrieves the label of the figure, always empty: the painter of the viewer does not accept null labels.
+     *
+     * @return An empty string.
+     */
+    @Override
+    public String getName() {
+        return "";
+    }
+
+    @Override
+    public int getxCoordinate() {
+        return figure.getxCoordinate();
+    }
+
+    @Override
+    public int getyCoordinate() {
+        return figure.getyCoordinate();
+    }
+
+    @Override
+    public Style getStyle() {
+        return figure.getStyle();
+    }
+
+    @Override
+    public Shape getShape() {
+        return point ? POINT : figure.getShape();
+    }
+}
@@ -12,9 +12,9 @@ import fr.tp.inf112.projects.canvas.model.Stroke;
 public class StrokeObject implements Stroke, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private ColorObject color;
-    private float thickness;
-    private float[] dashPattern;
+    private final ColorObject color;
+    private final float thickness;
+    private final float[] dashPattern;
 
     /**
      * Constructs a StrokeObject with the specified color, thickness, and dash pattern.
@@ -33,14 +33,14 @@ public class StrokeObject implements Stroke, Serializable {
      * Constructs a StrokeObject with the default color, thickness, and dash pattern.
      */
     public StrokeObject() {
-        this.color = new ColorObject(0, 0, 0);
+        this.color = Palette.BLACK;
         this.thickness = 2;
         this.dashPattern = new float[] { 5.0f, 2.0f };
     }
     
     public StrokeObject(float thickness) {
 		super();
-		this.color = new ColorObject(0,0,0);
+		this.color = Palette.BLACK;
 		this.thickness = 2;
 		this.dashPattern = new float[] {5.0f, 2.0f};
 	}
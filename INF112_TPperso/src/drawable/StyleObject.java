@@ -14,8 +14,8 @@ import fr.tp.inf112.projects.canvas.model.Style;
 public class StyleObject implements Style, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private ColorObject color;
-    private StrokeObject stroke;
+    private final ColorObject color;
+    private final StrokeObject stroke;
 
     /**
      * Constructs a StyleObject with the specified color and stroke.
@@ -35,15 +35,15 @@ public class StyleObject implements Style, Serializable {
      */
     public StyleObject(ColorObject color) {
         this.color = color;
-        this.stroke = new StrokeObject();
+        this.stroke = Palette.DEFAULT_STROKE;
     }
 
     /**
      * Constructs a StyleObject with the default color and stroke.
      */
     public StyleObject() {
-        this.color = new ColorObject(0, 0, 0);
-        this.stroke = new StrokeObject();
+        this.color = Palette.BLACK;
+        this.stroke = Palette.DEFAULT_STROKE;
     }
 
     /**
@@ -1,8 +1,6 @@
 package model;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.BufferedInputStream;
@@ -10,6 +8,9 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+
+import compo.Factory;
 
 import fr.tp.inf112.projects.canvas.model.Canvas;
 import fr.tp.inf112.projects.canvas.model.CanvasChooser;
@@ -18,11 +19,18 @@ import fr.tp.inf112.projects.canvas.view.FileCanvasChooser;
 
 /**
  * CanvasManager serves as a manager for reading, saving, and deleting canvas models.
+ * Models are saved in the binary format of {@link ModelCodec}; files saved with Java serialization
+ * by former versions are still read, and saved in the new format the next time they are persisted.
  * 
  */
 public class CanvasManager extends AbstractCanvasPersistenceManager {
     private FileCanvasChooser canvasChooser;
 
+    /**
+     * Indicates whether model files are mapped in memory, their factories being loaded on first use.
+     */
+    private boolean lazyLoading;
+
     /**
      * Constructs a CanvasManager with the specified canvas chooser.
      * 
@@ -33,6 +41,26 @@ public class CanvasManager extends AbstractCanvasPersistenceManager {
         this.canvasChooser = canvasChooser;
     }
 
+    /**
+     * Checks if model files are mapped in memory rather than read at once.
+     * 
+     * @return True if the factories of the models read are loaded on first use.
+     */
+    public boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
+    /**
+     * Sets whether model files are mapped in memory rather than read at once. Mapped models open
+     * immediately whatever their size, but their file must not be overwritten while factories remain to be loaded.
+     * Files saved with Java serialization are always read at once.
+     * 
+     * @param lazyLoading True to load the factories of the models read on first use.
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+    }
+
     /**
      * Reads a canvas model from the file system.
      * 
@@ -43,10 +71,12 @@ public class CanvasManager extends AbstractCanvasPersistenceManager {
     @Override
     public Canvas read(String canvasId) throws IOException {
         try (FileInputStream fileInpStr = new FileInputStream(canvasId);
-                InputStream bufInpStr = new BufferedInputStream(fileInpStr);
-                ObjectInputStream objInpStream = new ObjectInputStream(bufInpStr)) {
-            return (Canvas) objInpStream.readObject();
-        } catch (ClassNotFoundException | IOException e) {
+                InputStream bufInpStr = new BufferedInputStream(fileInpStr)) {
+            if (lazyLoading && ModelCodec.isBinary(bufInpStr)) {
+                return ModelCodec.map(Path.of(canvasId));
+            }
+            return ModelCodec.read(bufInpStr);
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
@@ -61,11 +91,15 @@ public class CanvasManager extends AbstractCanvasPersistenceManager {
     @Override
     public void persist(Canvas canvasModel) throws IOException {
         String fileName = canvasModel.getId() + ".bin";
+        Model model = (Model) canvasModel;
+        // Factories still mapped from the file must be loaded before the file is truncated
+        for (Factory factory : model.getFactories()) {
+            factory.load();
+        }
         try (OutputStream fileOutStream = new FileOutputStream(fileName);
-                OutputStream bufOutStream = new BufferedOutputStream(fileOutStream);
-                ObjectOutputStream objOutStream = new ObjectOutputStream(bufOutStream)) {
-            objOutStream.writeObject(canvasModel);
-        } 
+                OutputStream bufOutStream = new BufferedOutputStream(fileOutStream)) {
+            ModelCodec.write(model, bufOutStream);
+        }
     }
 
     /**
@@ -0,0 +1,177 @@
+package model;
+
+import fr.tp.inf112.projects.canvas.model.Figure;
+
+/**
+ * DirtyRegion describes the change of a figure of a model during a tick: the bounds the figure had before the
+ * tick and the bounds it has after. Repainting the union of both bounds is enough to update the figure on screen.
+ */
+public final class DirtyRegion {
+
+    /**
+     * The figure that changed.
+     */
+    private final Figure figure;
+
+    /**
+     * Bounds of the figure before the change.
+     */
+    private final int oldX, oldY, oldWidth, oldHeight;
+
+    /**
+     * Bounds of the figure after the change.
+     */
+    private final int newX, newY, newWidth, newHeight;
+
+    /**
+     * Constructs a dirty region.
+     *
+     * @param figure The figure that changed.
+     * @param oldX The x-coordinate of the figure before the change.
+     * @param oldY The y-coordinate of the figure before the change.
+     * @param oldWidth The width of the figure before the change.
+     * @param oldHeight The height of the figure before the change.
+     * @param newX The x-coordinate of the figure after the change.
+     * @param newY The y-coordinate of the figure after the change.
+     * @param newWidth The width of the figure after the change.
+     * @param newHeight The height of the figure after the change.
+     */
+    public DirtyRegion(Figure figure, int oldX, int oldY, int oldWidth, int oldHeight,
+                       int newX, int newY, int newWidth, int newHeight) {
+        this.figure = figure;
+        this.oldX = oldX;
+        this.oldY = oldY;
+        this.oldWidth = oldWidth;
+        this.oldHeight = oldHeight;
+        this.newX = newX;
+        this.newY = newY;
+        this.newWidth = newWidth;
+        this.newHeight = newHeight;
+    }
+
+    /**
+     * Gets the figure that changed.
+     *
+     * @return The figure.
+     */
+    public Figure getFigure() {
+        return figure;
+    }
+
+    /**
+     * Gets the x-coordinate of the figure before the change.
+     *
+     * @return The old x-coordinate.
+     */
+    public int getOldX() {
+        return oldX;
+    }
+
+    /**
+     * Gets the y-coordinate of the figure before the change.
+     *
+     * @return The old y-coordinate.
+     */
+    public int getOldY() {
+        return oldY;
+    }
+
+    /**
+     * Gets the width of the figure before the change.
+     *
+     * @return The old width.
+     */
+    public int getOldWidth() {
+        return oldWidth;
+    }
+
+    /**
+     * Gets the height of the figure before the change.
+     *
+     * @return The old height.
+     */
+    public int getOldHeight() {
+        return oldHeight;
+    }
+
+    /**
+     * Gets the x-coordinate of the figure after the change.
+     *
+     * @return The new x-coordinate.
+     */
+    public int getNewX() {
+        return newX;
+    }
+
+    /**
+     * Gets the y-coordinate of the figure after the change.
+     *
+     * @return The new y-coordinate.
+     */
+    public int getNewY() {
+        return newY;
+    }
+
+    /**
+     * Gets the width of the figure after the change.
+     *
+     * @return The new width.
+     */
+    public int getNewWidth() {
+        return newWidth;
+    }
+
+    /**
+     * Gets the height of the figure after the change.
+     *
+     * @return The new height.
+     */
+    public int getNewHeight() {
+        return newHeight;
+    }
+
+    /**
+     * Gets the x-coordinate of the smallest rectangle covering the old and new bounds.
+     *
+     * @return The x-coordinate of the union.
+     */
+    public int getX() {
+        return Math.min(oldX, newX);
+    }
+
+    /**
+     * Gets the y-coordinate of the smallest rectangle covering the old and new bounds.
+     *
+     * @return The y-coordinate of the union.
+     */
+    public int getY() {
+        return Math.min(oldY, newY);
+    }
+
+    /**
+     * Gets the width of the smallest rectangle covering the old and new bounds.
+     *
+     * @return The width of the union.
+     */
+    public int getWidth() {
+        return Math.max(oldX + oldWidth, newX + newWidth) - getX();
+    }
+
+    /**
+     * Gets the height of the smallest rectangle covering the old and new bounds.
+     *
+     * @return The height of the union.
+     */
+    public int getHeight() {
+        return Math.max(oldY + oldHeight, newY + newHeight) - getY();
+    }
+
+    /**
+     *
+     * @return A string describing the change.
+     */
+    @Override
+    public String toString() {
+        return figure.getName() + " : (" + oldX + ", " + oldY + ") -> (" + newX + ", " + newY + ")";
+    }
+}
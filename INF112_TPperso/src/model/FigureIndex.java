@@ -0,0 +1,185 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compo.Component;
+
+/**
+ * The FigureIndex class is a uniform grid spatial index over the bounds of the static components of a model.
+ * Each cell of the grid lists the components overlapping it, so finding the components visible in a viewport
+ * only checks the cells covered by the viewport instead of every component of the model.
+ * The index is built for one version of the layout and must be built again when the layout changes.
+ */
+public class FigureIndex {
+
+    /**
+     * Default size of a grid cell, in pixels.
+     */
+    public static final int DEFAULT_CELL_SIZE = 128;
+
+    /**
+     * The size of a grid cell, in pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * The cell coordinates of the top left cell of the grid.
+     */
+    private final int minCellX;
+    private final int minCellY;
+
+    /**
+     * The number of columns and rows of the grid.
+     */
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The indexes of the components overlapping each cell, row by row, in increasing order. Empty cells hold null.
+     */
+    private final int[][] cells;
+
+    /**
+     * All the components of the index, in drawing order.
+     */
+    private final List<Component> components;
+
+    /**
+     * The query each component was last reported by, so that components spanning several cells are reported once.
+     */
+    private final int[] marks;
+    private int query;
+
+    /**
+     * Constructs a FigureIndex with the default cell size over the given components.
+     *
+     * @param components The components to index, in drawing order.
+     */
+    public FigureIndex(List<Component> components) {
+        this(DEFAULT_CELL_SIZE, components);
+    }
+
+    /**
+     * Constructs a FigureIndex with the specified cell size over the given components.
+     *
+     * @param cellSize The size of a grid cell, in pixels.
+     * @param components The components to index, in drawing order.
+     */
+    public FigureIndex(int cellSize, List<Component> components) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.components = new ArrayList<>(components);
+        this.marks = new int[this.components.size()];
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (Component c : this.components) {
+            x0 = Math.min(x0, Math.floorDiv(c.getxCoordinate(), cellSize));
+            y0 = Math.min(y0, Math.floorDiv(c.getyCoordinate(), cellSize));
+            x1 = Math.max(x1, Math.floorDiv(c.getxCoordinate() + c.getWidth(), cellSize));
+            y1 = Math.max(y1, Math.floorDiv(c.getyCoordinate() + c.getHeight(), cellSize));
+        }
+        if (this.components.isEmpty()) {
+            x0 = y0 = x1 = y1 = 0;
+        }
+        this.minCellX = x0;
+        this.minCellY = y0;
+        this.cols = x1 - x0 + 1;
+        this.rows = y1 - y0 + 1;
+        this.cells = new int[cols * rows][];
+        int[] sizes = new int[cols * rows];
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass counts the components of each cell, the second one fills the cells
+            for (int index = 0; index < this.components.size(); index++) {
+                Component c = this.components.get(index);
+                int cx1 = Math.floorDiv(c.getxCoordinate() + c.getWidth(), cellSize) - minCellX;
+                int cy1 = Math.floorDiv(c.getyCoordinate() + c.getHeight(), cellSize) - minCellY;
+                for (int cy = Math.floorDiv(c.getyCoordinate(), cellSize) - minCellY; cy <= cy1; cy++) {
+                    for (int cx = Math.floorDiv(c.getxCoordinate(), cellSize) - minCellX; cx <= cx1; cx++) {
+                        int cell = cy * cols + cx;
+                        if (pass == 0) {
+                            sizes[cell]++;
+                        } else {
+                            cells[cell][cells[cell].length - sizes[cell]--] = index;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < sizes.length; cell++) {
+                    if (sizes[cell] > 0) {
+                        cells[cell] = new int[sizes[cell]];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the components overlapping the given area, in drawing order.
+     *
+     * @param x The x-coordinate of the area.
+     * @param y The y-coordinate of the area.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     * @return The indexes of the components overlapping the area, in increasing order.
+     */
+    public synchronized int[] query(int x, int y, int width, int height) {
+        int cx0 = Math.max(0, Math.floorDiv(x, cellSize) - minCellX);
+        int cy0 = Math.max(0, Math.floorDiv(y, cellSize) - minCellY);
+        int cx1 = Math.min(cols - 1, Math.floorDiv(x + width, cellSize) - minCellX);
+        int cy1 = Math.min(rows - 1, Math.floorDiv(y + height, cellSize) - minCellY);
+        if (++query == 0) {
+            Arrays.fill(marks, 0);
+            query = 1;
+        }
+        int[] found = new int[16];
+        int count = 0;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int[] cell = cells[cy * cols + cx];
+                if (cell == null) {
+                    continue;
+                }
+                for (int index : cell) {
+                    if (marks[index] == query) {
+                        continue;
+                    }
+                    marks[index] = query;
+                    Component c = components.get(index);
+                    if (c.getxCoordinate() <= x + width && c.getxCoordinate() + c.getWidth() >= x
+                        && c.getyCoordinate() <= y + height && c.getyCoordinate() + c.getHeight() >= y) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, 2 * count);
+                        }
+                        found[count++] = index;
+                    }
+                }
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Gets a component from its index.
+     *
+     * @param index The index of the component, in drawing order.
+     * @return The component.
+     */
+    public Component get(int index) {
+        return components.get(index);
+    }
+
+    /**
+     * Gets the number of components in the index.
+     *
+     * @return The number of components.
+     */
+    public int size() {
+        return components.size();
+    }
+}
@@ -0,0 +1,237 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import drawable.ReducedFigure;
+import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.Shape;
+import fr.tp.inf112.projects.canvas.model.Style;
+
+/**
+ * The Frame class is an immutable snapshot of what a model looks like at the end of a tick: its {@link Layout}
+ * and the position of every robot. The model builds each frame from its own state on the ticking thread, then
+ * publishes it at once ({@link Model#getFrame()}), so that a rendering thread drawing a frame never sees a tick
+ * half applied and never waits for the simulation. Frames of successive ticks share the layout and the names,
+ * styles and shapes of the robots; only the positions are copied for each tick.
+ */
+public final class Frame {
+
+    /**
+     * The number of ticks executed by the model before this frame was taken.
+     */
+    private final long tick;
+
+    /**
+     * The layout of the model.
+     */
+    private final Layout layout;
+
+    /**
+     * The names, styles, shapes and sizes of the robots, shared with the other frames of the same robots.
+     */
+    private final String[] names;
+    private final Style[] styles;
+    private final Shape[] shapes;
+    private final int[] widths;
+    private final int[] heights;
+
+    /**
+     * The positions of the robots, owned by this frame.
+     */
+    private final int[] xs;
+    private final int[] ys;
+
+    /**
+     * The figures of the robots, and their reduced figures, built on first use.
+     */
+    private volatile Figure[] robotFigures;
+    private volatile Figure[] unlabeledFigures;
+    private volatile Figure[] pointFigures;
+
+    /**
+     * Constructs a frame from its arrays, without copying them: the caller must never change the positions afterwards.
+     */
+    Frame(long tick, Layout layout, String[] names, Style[] styles, Shape[] shapes, int[] widths, int[] heights,
+          int[] xs, int[] ys) {
+        this.tick = tick;
+        this.layout = layout;
+        this.names = names;
+        this.styles = styles;
+        this.shapes = shapes;
+        this.widths = widths;
+        this.heights = heights;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    /**
+     * Gets the number of ticks executed by the model before this frame was taken.
+     *
+     * @return The tick number.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the layout of the model at the time of the frame.
+     *
+     * @return The layout.
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the number of robots of the frame.
+     *
+     * @return The number of robots.
+     */
+    public int getRobotCount() {
+        return xs.length;
+    }
+
+    /**
+     * Gets the x-coordinate of a robot.
+     *
+     * @param robot The index of the robot, in the order of {@link Model#getDynamicFigures()}.
+     * @return The x-coordinate.
+     */
+    public int getRobotX(int robot) {
+        return xs[robot];
+    }
+
+    /**
+     * Gets the y-coordinate of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The y-coordinate.
+     */
+    public int getRobotY(int robot) {
+        return ys[robot];
+    }
+
+    /**
+     * Gets the width of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The width.
+     */
+    public int getRobotWidth(int robot) {
+        return widths[robot];
+    }
+
+    /**
+     * Gets the height of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The height.
+     */
+    public int getRobotHeight(int robot) {
+        return heights[robot];
+    }
+
+    /**
+     * Gets the figure of a robot, as it was at the time of the frame.
+     *
+     * @param robot The index of the robot.
+     * @return The figure.
+     */
+    public Figure getRobotFigure(int robot) {
+        Figure[] figures = robotFigures;
+        if (figures == null) {
+            figures = new Figure[xs.length];
+            for (int i = 0; i < figures.length; i++) {
+                figures[i] = new RobotFigure(i);
+            }
+            robotFigures = figures;
+        }
+        return figures[robot];
+    }
+
+    /**
+     * Gets a lighter figure of a robot, drawn in place of it when the canvas is zoomed out.
+     *
+     * @param robot The index of the robot.
+     * @param point True for a figure drawn as a single point, false for the same figure without its label.
+     * @return The reduced figure.
+     */
+    public Figure getReducedRobotFigure(int robot, boolean point) {
+        Figure[] figures = point ? pointFigures : unlabeledFigures;
+        if (figures == null) {
+            figures = new Figure[xs.length];
+            for (int i = 0; i < figures.length; i++) {
+                figures[i] = new ReducedFigure(getRobotFigure(i), point);
+            }
+            if (point) {
+                pointFigures = figures;
+            } else {
+                unlabeledFigures = figures;
+            }
+        }
+        return figures[robot];
+    }
+
+    /**
+     * Gets all the figures of the frame: the layout, then the robots.
+     *
+     * @return An unmodifiable list of the figures, in drawing order.
+     */
+    public List<Figure> getFigures() {
+        int layoutSize = layout.size();
+        return new AbstractList<Figure>() {
+            @Override
+            public Figure get(int index) {
+                return index < layoutSize ? layout.get(index) : getRobotFigure(index - layoutSize);
+            }
+
+            @Override
+            public int size() {
+                return layoutSize + xs.length;
+            }
+        };
+    }
+
+    /**
+     * A RobotFigure is the figure of a robot of the frame.
+     */
+    private final class RobotFigure implements Figure {
+
+        private final int robot;
+
+        private RobotFigure(int robot) {
+            this.robot = robot;
+        }
+
+        @Override
+        public String getName() {
+            return names[robot];
+        }
+
+        @Override
+        public int getxCoordinate() {
+            return xs[robot];
+        }
+
+        @Override
+        public int getyCoordinate() {
+            return ys[robot];
+        }
+
+        @Override
+        public Style getStyle() {
+            return styles[robot];
+        }
+
+        @Override
+        public Shape getShape() {
+            return shapes[robot];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Image du tick " + tick + " : " + xs.length + " robots sur " + layout;
+    }
+}
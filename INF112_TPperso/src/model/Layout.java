@@ -0,0 +1,329 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import compo.Component;
+import compo.Door;
+import compo.PowerSupplyStation;
+import compo.ProductionArea;
+import compo.ProductionMachine;
+import compo.Room;
+import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.Shape;
+import fr.tp.inf112.projects.canvas.model.Style;
+
+/**
+ * The Layout class is an immutable snapshot of the static topology of a model: its rooms, doors, production areas,
+ * machines and charging stations, with their bounds, their rooms and the doors connecting the rooms.
+ * Unlike the components it is taken from, a layout holds no reference to a model, a factory or a mutable object,
+ * so it can be shared between threads and between runs, e.g. read by a rendering thread while the simulation ticks.
+ * A model gives a new layout whenever its layout changes ({@link Model#getLayout()}): layouts are copied on write,
+ * and layouts already handed out remain valid snapshots of the former layout.
+ * Elements are numbered in the order of {@link Model#getStaticFigures()}, which is also their drawing order.
+ */
+public final class Layout {
+
+    /**
+     * The kinds of elements of a layout.
+     */
+    public enum Kind {
+        ROOM, DOOR, AREA, MACHINE, STATION, OTHER
+    }
+
+    /**
+     * An Element is an immutable component of a layout. It is a figure, so that layouts can be drawn as they are.
+     */
+    public static final class Element implements Figure {
+
+        /**
+         * The kind, name, bounds and rendering of the element.
+         */
+        private final Kind kind;
+        private final String name;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final Style style;
+        private final Shape shape;
+
+        /**
+         * The index of the room of the element, and for doors the index of the other room they open on, or -1.
+         */
+        private final int room;
+        private final int otherRoom;
+
+        /**
+         * Constructs an Element from the current state of a component.
+         */
+        private Element(Kind kind, Component c, int room, int otherRoom) {
+            this.kind = kind;
+            this.name = c.getName();
+            this.x = c.getxCoordinate();
+            this.y = c.getyCoordinate();
+            this.width = c.getWidth();
+            this.height = c.getHeight();
+            // Shapes and styles of components are immutable, and replaced rather than changed
+            this.style = c.getStyle();
+            this.shape = c.getShape();
+            this.room = room;
+            this.otherRoom = otherRoom;
+        }
+
+        /**
+         * Gets the kind of the element.
+         *
+         * @return The kind.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getxCoordinate() {
+            return x;
+        }
+
+        @Override
+        public int getyCoordinate() {
+            return y;
+        }
+
+        /**
+         * Gets the width of the element.
+         *
+         * @return The width.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of the element.
+         *
+         * @return The height.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public Style getStyle() {
+            return style;
+        }
+
+        @Override
+        public Shape getShape() {
+            return shape;
+        }
+
+        /**
+         * Gets the room of the element: the room containing it, or for doors the first room they open on.
+         *
+         * @return The index of the room in the layout, or -1 if the element is in no room.
+         */
+        public int getRoom() {
+            return room;
+        }
+
+        /**
+         * Gets the second room a door opens on.
+         *
+         * @return The index of the room in the layout, or -1 if the element is not a door between two rooms.
+         */
+        public int getOtherRoom() {
+            return otherRoom;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " (" + x + ", " + y + ", " + width + " x " + height + ")";
+        }
+    }
+
+    /**
+     * The layout version of the model this layout was taken from.
+     */
+    private final int version;
+
+    /**
+     * The size of the canvas.
+     */
+    private final int width;
+    private final int height;
+
+    /**
+     * The elements, in drawing order.
+     */
+    private final List<Element> elements;
+
+    /**
+     * For each room element, the indexes of the doors opening on it; empty for other elements.
+     */
+    private final int[][] doors;
+
+    /**
+     * Takes a snapshot of the layout of a model.
+     *
+     * @param model The model.
+     */
+    Layout(Model model) {
+        this.version = model.getLayoutVersion();
+        this.width = model.getWidth();
+        this.height = model.getHeight();
+        List<Component> components = new ArrayList<>();
+        for (Figure figure : model.getStaticFigures()) {
+            components.add((Component) figure);
+        }
+        IdentityHashMap<Component, Integer> indexes = new IdentityHashMap<>(components.size() * 2);
+        for (int i = 0; i < components.size(); i++) {
+            indexes.putIfAbsent(components.get(i), i);
+        }
+        ArrayList<Element> list = new ArrayList<>(components.size());
+        int[] doorCounts = new int[components.size()];
+        for (int i = 0; i < components.size(); i++) {
+            Component c = components.get(i);
+            Kind kind = c instanceof Room ? Kind.ROOM : c instanceof Door ? Kind.DOOR : c instanceof ProductionArea ? Kind.AREA
+                        : c instanceof ProductionMachine ? Kind.MACHINE : c instanceof PowerSupplyStation ? Kind.STATION : Kind.OTHER;
+            int room = -1, otherRoom = -1;
+            if (c instanceof Door) {
+                List<Room> rooms = ((Door) c).getRooms();
+                room = rooms.size() > 0 ? indexes.getOrDefault(rooms.get(0), -1) : -1;
+                otherRoom = rooms.size() > 1 ? indexes.getOrDefault(rooms.get(1), -1) : -1;
+                if (indexes.get(c) == i) {
+                    // A door listed twice opens once on its rooms
+                    for (int r : new int[] { room, otherRoom }) {
+                        if (r >= 0) {
+                            doorCounts[r]++;
+                        }
+                    }
+                }
+            } else if (!(c instanceof Room) && c.getRoom() != null) {
+                room = indexes.getOrDefault(c.getRoom(), -1);
+            }
+            list.add(new Element(kind, c, room, otherRoom));
+        }
+        this.elements = Collections.unmodifiableList(list);
+        this.doors = new int[list.size()][];
+        for (int i = 0; i < doors.length; i++) {
+            doors[i] = new int[doorCounts[i]];
+        }
+        for (int i = 0; i < list.size(); i++) {
+            Element e = list.get(i);
+            if (e.kind == Kind.DOOR && indexes.get(components.get(i)) == i) {
+                for (int r : new int[] { e.room, e.otherRoom }) {
+                    if (r >= 0) {
+                        doors[r][doors[r].length - doorCounts[r]--] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the layout version of the model this layout was taken from.
+     *
+     * @return The version, as given by {@link Model#getLayoutVersion()}.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the width of the canvas.
+     *
+     * @return The width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the canvas.
+     *
+     * @return The height.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of elements of the layout.
+     *
+     * @return The number of elements.
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * Gets an element of the layout.
+     *
+     * @param index The index of the element.
+     * @return The element.
+     */
+    public Element get(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Gets all the elements of the layout, in drawing order.
+     *
+     * @return An unmodifiable list of the elements.
+     */
+    public List<Element> getElements() {
+        return elements;
+    }
+
+    /**
+     * Gets all the elements of the layout as figures, in drawing order.
+     *
+     * @return An unmodifiable collection of the elements.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Collection<Figure> getFigures() {
+        return (Collection) elements;
+    }
+
+    /**
+     * Gets the doors opening on a room.
+     *
+     * @param room The index of the room.
+     * @return The indexes of the doors, in drawing order.
+     */
+    public int[] getDoors(int room) {
+        return Arrays.copyOf(doors[room], doors[room].length);
+    }
+
+    /**
+     * Finds the room containing a point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return The index of the first room containing the point, or -1 if none does.
+     */
+    public int findRoom(int x, int y) {
+        for (int i = 0; i < elements.size(); i++) {
+            Element e = elements.get(i);
+            if (e.kind == Kind.ROOM && x >= e.x && x <= e.x + e.width && y >= e.y && y <= e.y + e.height) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "Agencement v" + version + " : " + elements.size() + " éléments";
+    }
+}
@@ -1,15 +1,21 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import compo.*;
-import drawable.StyleObject;
+import drawable.Palette;
 import fr.tp.inf112.projects.canvas.controller.Observable;
 import fr.tp.inf112.projects.canvas.controller.Observer;
 import fr.tp.inf112.projects.canvas.model.Canvas;
 import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.Shape;
 import fr.tp.inf112.projects.canvas.model.Style;
 
 // Represents the model of a canvas
@@ -27,8 +33,58 @@ public class Model implements Canvas, Observable, Serializable {
     private transient ArrayList<Observer> observers;
     // List of factories on the canvas
     private ArrayList<Factory> factories;
-    // Indicates whether animation is playing
-    private boolean play;
+    // Indicates whether animation is playing, read by the threads of the view and the simulation
+    private volatile boolean play;
+    // Indicates whether a tick is being executed, during which notifications are deferred
+    private transient boolean inTick;
+    // Indicates whether the model changed since observers were last notified
+    private transient boolean dirty;
+    // Maximum number of notifications sent to observers per second, 0 for no limit
+    private int maxFramesPerSecond;
+    // Time of the last notification sent at the end of a tick, in nanoseconds
+    private transient long lastFrameNanos;
+    // Minimum number of components for a tick to be planned in parallel
+    public static final int PARALLEL_THRESHOLD = 512;
+    // Number of threads planning the components during a tick, 1 to plan them on the ticking thread
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    // Pool of the threads planning the components, created on first use
+    private transient ForkJoinPool pool;
+    // Components that never move on their own (the layout) and the ones that do (robots), in drawing order
+    private transient ArrayList<Component> staticList;
+    private transient ArrayList<Component> dynamicList;
+    // Version of the layout, incremented whenever a static component is added or changed
+    private transient int layoutVersion;
+    // Bounds of the dynamic components at the beginning of the current tick, 4 values per component
+    private transient int[] tickBounds;
+    // Changes not yet sent to observers, and whether they cover the whole canvas
+    private transient ArrayList<DirtyRegion> pendingRegions;
+    private transient boolean pendingFullChange;
+    // Changes sent with the last notification, null if the whole canvas changed
+    private transient List<DirtyRegion> publishedRegions;
+    // Area of the canvas shown by the view and its zoom in pixels per canvas unit, no viewport if the width is 0
+    private transient int viewX;
+    private transient int viewY;
+    private transient int viewWidth;
+    private transient int viewHeight;
+    private transient double viewScale;
+    // Spatial index over the static components, built for the layout version it was built at
+    private transient FigureIndex figureIndex;
+    private transient int figureIndexVersion;
+    // Immutable snapshot of the layout, replaced by a new one when the layout changed
+    private transient volatile Layout layout;
+    // Last frame published for rendering, null when the model changed outside a tick and it must be taken again
+    private transient volatile Frame frame;
+    // Number of ticks executed
+    private transient long tickCount;
+    // Names, styles, shapes and sizes of the dynamic components, shared by the frames until the dynamic components change
+    private transient String[] frameNames;
+    private transient Style[] frameStyles;
+    private transient Shape[] frameShapes;
+    private transient int[] frameWidths;
+    private transient int[] frameHeights;
+    // Zoom under which labels are not drawn, and under which robots are drawn as single pixels
+    public static final double LABEL_MIN_SCALE = 0.5;
+    public static final double ROBOT_POINT_SCALE = 0.25;
     
     // Constructor
     public Model(String id, int xSize, int ySize) {
@@ -39,6 +95,21 @@ public class Model implements Canvas, Observable, Serializable {
         this.compoList = new ArrayList<Component>();
         this.factories = new ArrayList<Factory>();
         this.observers = new ArrayList<Observer>();
+        initLayers();
+    }
+    
+    // Split the components between the static and the dynamic layers
+    private void initLayers() {
+        this.staticList = new ArrayList<Component>();
+        this.dynamicList = new ArrayList<Component>();
+        for (Component c : compoList) {
+            (c.isStatic() ? staticList : dynamicList).add(c);
+        }
+        this.pendingRegions = new ArrayList<DirtyRegion>();
+        this.pendingFullChange = true;
+        this.layoutVersion++;
+        this.frameNames = null;
+        this.frame = null;
     }
     
     // Getters and setters
@@ -48,6 +119,7 @@ public class Model implements Canvas, Observable, Serializable {
     
     public void setCompoList(ArrayList<Component> compoList) {
         this.compoList = compoList;
+        initLayers();
     }
     
     // Add a component to the canvas
@@ -64,6 +136,15 @@ public class Model implements Canvas, Observable, Serializable {
             factories.add((Factory) compo);
         } else {
             compoList.add(compo);
+            if (compo.isStatic()) {
+                staticList.add(compo);
+                layoutChanged();
+            } else {
+                dynamicList.add(compo);
+                pendingFullChange = true;
+                frameNames = null;
+                frame = null;
+            }
         }
         compo.setModel(this);
         return true;
@@ -84,6 +165,17 @@ public class Model implements Canvas, Observable, Serializable {
         return factories;
     }
     
+    // Find the room containing the given point, in any factory of the canvas
+    public Room findRoom(int x, int y) {
+        for (Factory f : factories) {
+            Room room = f.findRoom(x, y);
+            if (room != null) {
+                return room;
+            }
+        }
+        return null;
+    }
+    
     // Getters and setters for canvas properties
     @Override
     public String getId() {
@@ -113,12 +205,87 @@ public class Model implements Canvas, Observable, Serializable {
     
     @Override
     public Collection<Figure> getFigures() {
-        return (Collection) compoList;
+        if (viewWidth > 0) {
+            return getFigures(viewX, viewY, viewWidth, viewHeight, viewScale);
+        }
+        // Factories mapped from a model file are loaded when first drawn
+        for (Factory f : factories) {
+            f.load();
+        }
+        return getFrame().getFigures();
+    }
+    
+    // Set the area of the canvas shown by the view and its zoom, so that getFigures only returns what is visible
+    public void setViewport(int x, int y, int width, int height, double scale) {
+        if (width <= 0 || height <= 0 || scale <= 0) {
+            throw new IllegalArgumentException("Invalid viewport: " + width + " x " + height + " at scale " + scale);
+        }
+        this.viewX = x;
+        this.viewY = y;
+        this.viewWidth = width;
+        this.viewHeight = height;
+        this.viewScale = scale;
+    }
+    
+    // Go back to getFigures returning every component at full detail
+    public void clearViewport() {
+        this.viewWidth = 0;
+        this.viewHeight = 0;
+    }
+    
+    // Figures overlapping the given area, in drawing order, reduced according to the zoom in pixels per canvas unit:
+    // below LABEL_MIN_SCALE labels are dropped, and robots below ROBOT_POINT_SCALE as well as figures smaller
+    // than a pixel are drawn as single pixels. Only the factories overlapping the area are loaded.
+    public List<Figure> getFigures(int x, int y, int width, int height, double scale) {
+        for (Factory f : factories) {
+            if (f.getxCoordinate() <= x + width && f.getxCoordinate() + f.getWidth() >= x
+                && f.getyCoordinate() <= y + height && f.getyCoordinate() + f.getHeight() >= y) {
+                f.load();
+            }
+        }
+        FigureIndex index = getFigureIndex();
+        int[] visible = index.query(x, y, width, height);
+        ArrayList<Figure> figures = new ArrayList<Figure>(visible.length + dynamicList.size());
+        for (int i : visible) {
+            figures.add(reduce(index.get(i), scale));
+        }
+        Frame frame = getFrame();
+        for (int i = 0; i < frame.getRobotCount(); i++) {
+            int rx = frame.getRobotX(i), ry = frame.getRobotY(i), rw = frame.getRobotWidth(i), rh = frame.getRobotHeight(i);
+            if (rx <= x + width && rx + rw >= x && ry <= y + height && ry + rh >= y) {
+                if (scale < ROBOT_POINT_SCALE || (rw * scale < 1 && rh * scale < 1)) {
+                    figures.add(frame.getReducedRobotFigure(i, true));
+                } else {
+                    figures.add(scale < LABEL_MIN_SCALE ? frame.getReducedRobotFigure(i, false) : frame.getRobotFigure(i));
+                }
+            }
+        }
+        return figures;
+    }
+    
+    // The figure to draw for a component at the given zoom
+    private static Figure reduce(Component c, double scale) {
+        if (c.getWidth() * scale < 1 && c.getHeight() * scale < 1) {
+            return c.getReducedFigure(true);
+        }
+        return scale < LABEL_MIN_SCALE ? c.getReducedFigure(false) : c;
+    }
+    
+    // Spatial index over the static components, built again when the layout changed
+    private FigureIndex getFigureIndex() {
+        FigureIndex index = figureIndex;
+        int version = layoutVersion;
+        if (index == null || figureIndexVersion != version) {
+            index = new FigureIndex(staticList);
+            figureIndex = index;
+            figureIndexVersion = version;
+        }
+        return index;
     }
     
     @Override
     public Style getStyle() {
-        return new StyleObject();
+        return Palette.DEFAULT_STYLE;
     }
     
     // Methods related to observers
@@ -134,18 +301,275 @@ public class Model implements Canvas, Observable, Serializable {
         return true;
     }
     
+    // Figures of the layout, which only change when the layout version changes
+    public Collection<Figure> getStaticFigures() {
+        return Collections.unmodifiableList(staticList);
+    }
+    
+    // Figures moving on their own, whose changes are described by the dirty regions
+    public Collection<Figure> getDynamicFigures() {
+        return Collections.unmodifiableList(dynamicList);
+    }
+    
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+    
+    // Immutable snapshot of the static topology of the model, which can be shared between threads and runs.
+    // The same snapshot is returned until the layout changes: it is then copied into a new snapshot.
+    public Layout getLayout() {
+        Layout l = layout;
+        if (l == null || l.getVersion() != layoutVersion) {
+            synchronized (this) {
+                l = layout;
+                if (l == null || l.getVersion() != layoutVersion) {
+                    l = new Layout(this);
+                    layout = l;
+                }
+            }
+        }
+        return l;
+    }
+    
+    // Record that the layout changed: static figures must be drawn again with the next notification
+    public void layoutChanged() {
+        layoutVersion++;
+        pendingFullChange = true;
+        dirty = true;
+        frame = null;
+    }
+    
+    // Last frame published: an immutable snapshot of the layout and of the positions of the robots at the end of
+    // the last tick, which can be drawn by any thread while the next tick runs. It is taken again when needed if
+    // the model was changed outside a tick.
+    public Frame getFrame() {
+        Frame f = frame;
+        if (f == null) {
+            synchronized (this) {
+                f = frame;
+                if (f == null) {
+                    f = takeFrame();
+                    frame = f;
+                }
+            }
+        }
+        return f;
+    }
+    
+    public long getTickCount() {
+        return tickCount;
+    }
+    
+    // Count ticks simulated without ticking the factories, e.g. by a discrete-event engine: the frame is taken again
+    public void addTicks(long ticks) {
+        tickCount += ticks;
+        frame = null;
+    }
+    
+    // Copy the positions of the dynamic components into a new frame, sharing everything else with the former frames
+    private Frame takeFrame() {
+        int n = dynamicList.size();
+        if (frameNames == null || frameNames.length != n) {
+            String[] names = new String[n];
+            Style[] styles = new Style[n];
+            Shape[] shapes = new Shape[n];
+            int[] widths = new int[n], heights = new int[n];
+            for (int i = 0; i < n; i++) {
+                Component c = dynamicList.get(i);
+                names[i] = c.getName();
+                styles[i] = c.getStyle();
+                shapes[i] = c.getShape();
+                widths[i] = c.getWidth();
+                heights[i] = c.getHeight();
+            }
+            frameStyles = styles;
+            frameShapes = shapes;
+            frameWidths = widths;
+            frameHeights = heights;
+            frameNames = names;
+        }
+        int[] xs = new int[n], ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            Component c = dynamicList.get(i);
+            xs[i] = c.getxCoordinate();
+            ys[i] = c.getyCoordinate();
+        }
+        return new Frame(tickCount, getLayout(), frameNames, frameStyles, frameShapes, frameWidths, frameHeights, xs, ys);
+    }
+    
+    // Changes sent with the last notification, with the old and new bounds of every figure that changed,
+    // or null if the whole canvas may have changed, e.g. after a layout change or a change made outside a tick
+    public List<DirtyRegion> getDirtyRegions() {
+        return publishedRegions;
+    }
+    
     // Notify all observers of model changes
     public void notifyObservers() {
+        if (pendingFullChange) {
+            publishedRegions = null;
+        } else {
+            publishedRegions = Collections.unmodifiableList(new ArrayList<DirtyRegion>(pendingRegions));
+        }
+        pendingRegions.clear();
+        pendingFullChange = false;
+        dirty = false;
         for (Observer obs : observers) {
             obs.modelChanged();
         }
     }
     
+    // Record that the model changed: observers are notified at once, or at the end of the current tick
+    public void markDirty() {
+        if (inTick) {
+            dirty = true;
+        } else {
+            pendingFullChange = true;
+            frame = null;
+            notifyObservers();
+        }
+    }
+    
+    // Apply several changes at once: observers are notified once at the end, with a full repaint
+    public void update(Runnable changes) {
+        boolean nested = inTick;
+        inTick = true;
+        try {
+            changes.run();
+        } finally {
+            inTick = nested;
+        }
+        if (!nested && dirty) {
+            pendingFullChange = true;
+            frame = null;
+            notifyObservers();
+        }
+    }
+    
+    // Notify observers once for all the changes of the last tick, unless the frame rate cap is reached.
+    // Skipped changes stay pending and are published with a later tick, when the animation stops or by flushChanges.
+    private void publishChanges() {
+        if (!dirty) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (maxFramesPerSecond > 0 && now - lastFrameNanos < 1_000_000_000L / maxFramesPerSecond) {
+            return;
+        }
+        lastFrameNanos = now;
+        notifyObservers();
+    }
+    
+    // Notify observers of the changes skipped by the frame rate cap, e.g. when no tick follows to publish them
+    public void flushChanges() {
+        if (dirty && !inTick) {
+            lastFrameNanos = System.nanoTime();
+            notifyObservers();
+        }
+    }
+    
+    public int getMaxFramesPerSecond() {
+        return maxFramesPerSecond;
+    }
+    
+    // Cap the number of notifications per second sent by ticks, 0 to notify after every changing tick
+    public void setMaxFramesPerSecond(int maxFramesPerSecond) {
+        this.maxFramesPerSecond = Math.max(0, maxFramesPerSecond);
+    }
+    
     // Methods related to animation behavior
     public void behave(boolean play) {
-        for (Factory f : factories) {
-            f.behave(play);
+        tick(play);
+        publishChanges();
+    }
+    
+    // Run the behavior of every factory in two phases, deferring the notifications of their changes.
+    // Every component first plans its move from the state of the previous tick, possibly in parallel,
+    // then the planned moves are applied in order, so the result does not depend on the number of threads.
+    private void tick(boolean play) {
+        inTick = true;
+        try {
+            // Factories mapped from a model file are loaded one at a time before they are planned
+            for (Factory f : factories) {
+                f.load();
+            }
+            captureDynamicBounds();
+            if (isParallel()) {
+                getPool().submit(() -> factories.parallelStream().forEach(f -> f.plan(play, true))).join();
+            } else {
+                for (Factory f : factories) {
+                    f.plan(play, false);
+                }
+            }
+            for (Factory f : factories) {
+                f.behave(play);
+            }
+            collectDirtyRegions();
+            // Publish the tick at once, before observers are told about it
+            tickCount++;
+            frame = takeFrame();
+        } finally {
+            inTick = false;
+        }
+    }
+    
+    // Record the bounds of the dynamic components before they move
+    private void captureDynamicBounds() {
+        int n = dynamicList.size();
+        if (tickBounds == null || tickBounds.length < 4 * n) {
+            tickBounds = new int[4 * n];
+        }
+        for (int i = 0; i < n; i++) {
+            Component c = dynamicList.get(i);
+            tickBounds[4 * i] = c.getxCoordinate();
+            tickBounds[4 * i + 1] = c.getyCoordinate();
+            tickBounds[4 * i + 2] = c.getWidth();
+            tickBounds[4 * i + 3] = c.getHeight();
+        }
+    }
+    
+    // Record a dirty region for every dynamic component whose bounds changed during the tick
+    private void collectDirtyRegions() {
+        int n = Math.min(dynamicList.size(), tickBounds.length / 4);
+        if (n < dynamicList.size()) {
+            // Components added during the tick have no previous bounds
+            pendingFullChange = true;
+        }
+        if (pendingFullChange) {
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            Component c = dynamicList.get(i);
+            int x = c.getxCoordinate(), y = c.getyCoordinate(), w = c.getWidth(), h = c.getHeight();
+            if (x != tickBounds[4 * i] || y != tickBounds[4 * i + 1] || w != tickBounds[4 * i + 2] || h != tickBounds[4 * i + 3]) {
+                pendingRegions.add(new DirtyRegion(c, tickBounds[4 * i], tickBounds[4 * i + 1], tickBounds[4 * i + 2],
+                                                   tickBounds[4 * i + 3], x, y, w, h));
+                dirty = true;
+            }
+        }
+    }
+    
+    // Check if the next tick is worth planning in parallel
+    private boolean isParallel() {
+        return parallelism > 1 && compoList.size() >= PARALLEL_THRESHOLD;
+    }
+    
+    private ForkJoinPool getPool() {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = new ForkJoinPool(parallelism);
         }
+        return pool;
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    // Set the number of threads planning the components during a tick, 1 to disable parallel planning
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
     }
     
     public boolean isPlay() {
@@ -155,10 +579,28 @@ public class Model implements Canvas, Observable, Serializable {
     public void setPlay(boolean play) {
         if (this.play != play) {
             this.play = play;
-            for (Factory f : factories) {
-                f.behave(play);
-            }
+            tick(play);
             notifyObservers();
         }
     }
+    
+    // Restore the transient state after Java deserialization, and repair models saved by former versions
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.observers = new ArrayList<Observer>();
+        initLayers();
+        if (this.parallelism < 1) {
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        if (this.factories == null) {
+            // The factory list used to be saved under another name: recover it from the components
+            this.factories = new ArrayList<Factory>();
+            for (Component c : compoList) {
+                Factory f = c.getFactory();
+                if (f != null && !factories.contains(f)) {
+                    factories.add(f);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,462 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import compo.*;
+
+/**
+ * ModelBuilder builds a model from a description of its factories, given element by element.
+ * Rooms, doors, production areas, machines, power supply stations and robots are only staged when they are
+ * described, and refer to each other by name within their factory. {@link #build()} then checks the whole
+ * description in a single pass (references, geometry and connectivity of the rooms through their doors),
+ * sizes the lists of the model and of the factories, and creates every component in dependency order.
+ * Building a model this way takes a time linear in its number of components.
+ *
+ * <pre>
+ * Model model = new ModelBuilder("M01", 600, 600)
+ *     .factory("My Factory", 500, 500)
+ *     .room("Packaging", 0, 0, 200, 300)
+ *     .room("Sorting", 200, 0, 300, 300)
+ *     .door("D2", 200, 125, 1, 75, "Packaging", "Sorting")
+ *     .area("Packaging Area", 10, 125, 100, 100, "Packaging")
+ *     .robot("R1", 100, 250, 10, 5, "Packaging", "Packaging Area", "Sorting")
+ *     .build();
+ * </pre>
+ */
+public class ModelBuilder {
+
+    /**
+     * Kinds of the elements of a factory.
+     */
+    private static final int ROOM = 0;
+    private static final int DOOR = 1;
+    private static final int AREA = 2;
+    private static final int MACHINE = 3;
+    private static final int STATION = 4;
+    private static final int ROBOT = 5;
+
+    /**
+     * Names of the kinds, for error messages.
+     */
+    private static final String[] KIND_NAMES = { "room", "door", "production area", "machine", "power supply station", "robot" };
+
+    /**
+     * An element staged in a factory: its name, bounds and the names of the elements it refers to.
+     */
+    private static final class Element {
+        final int kind;
+        final String name;
+        final int x, y, width, height;
+        final String[] refs;
+        int speed;
+        char orientation;
+        int index;
+        Component component;
+
+        Element(int kind, String name, int x, int y, int width, int height, String[] refs) {
+            this.kind = kind;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.refs = refs;
+        }
+
+        boolean contains(Element e) {
+            return e.x >= x && e.y >= y && e.x + e.width <= x + width && e.y + e.height <= y + height;
+        }
+
+        boolean touches(Element e) {
+            return e.x <= x + width && x <= e.x + e.width && e.y <= y + height && y <= e.y + e.height;
+        }
+    }
+
+    /**
+     * A factory staged in the model, with its elements by kind and by name.
+     */
+    private static final class FactorySpec {
+        final String name;
+        final int width, height;
+        final List<List<Element>> elements = new ArrayList<>();
+        final HashMap<String, Element> byName = new HashMap<>();
+        final List<String> duplicates = new ArrayList<>();
+
+        FactorySpec(String name, int width, int height) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            for (int kind = ROOM; kind <= ROBOT; kind++) {
+                elements.add(new ArrayList<>());
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (List<Element> list : elements) {
+                size += list.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Name and size of the model.
+     */
+    private final String name;
+    private final int width;
+    private final int height;
+
+    /**
+     * The factories staged, in order.
+     */
+    private final List<FactorySpec> factories = new ArrayList<>();
+
+    /**
+     * Constructs a builder of an empty model.
+     *
+     * @param name The name of the model.
+     * @param width The width of the model.
+     * @param height The height of the model.
+     */
+    public ModelBuilder(String name, int width, int height) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Stages a factory. The elements described next belong to it, until another factory is staged.
+     *
+     * @param name The name of the factory.
+     * @param width The width of the factory.
+     * @param height The height of the factory.
+     * @return This builder.
+     */
+    public ModelBuilder factory(String name, int width, int height) {
+        factories.add(new FactorySpec(name, width, height));
+        return this;
+    }
+
+    /**
+     * Stages a room in the current factory.
+     *
+     * @param name The name of the room, unique within the factory.
+     * @param x The x-coordinate of the room.
+     * @param y The y-coordinate of the room.
+     * @param width The width of the room.
+     * @param height The height of the room.
+     * @return This builder.
+     */
+    public ModelBuilder room(String name, int x, int y, int width, int height) {
+        return stage(new Element(ROOM, name, x, y, width, height, new String[0]));
+    }
+
+    /**
+     * Stages a door in the current factory. The door must touch every room it connects.
+     *
+     * @param name The name of the door, unique within the factory.
+     * @param x The x-coordinate of the door.
+     * @param y The y-coordinate of the door.
+     * @param width The width of the door.
+     * @param height The height of the door.
+     * @param rooms The names of the rooms connected by the door.
+     * @return This builder.
+     */
+    public ModelBuilder door(String name, int x, int y, int width, int height, String... rooms) {
+        return stage(new Element(DOOR, name, x, y, width, height, rooms));
+    }
+
+    /**
+     * Stages a production area in the current factory. The area must lie inside its room.
+     *
+     * @param name The name of the production area, unique within the factory.
+     * @param x The x-coordinate of the area.
+     * @param y The y-coordinate of the area.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     * @param room The name of the room of the area.
+     * @return This builder.
+     */
+    public ModelBuilder area(String name, int x, int y, int width, int height, String room) {
+        return stage(new Element(AREA, name, x, y, width, height, new String[] { room }));
+    }
+
+    /**
+     * Stages a production machine in the current factory. The machine must lie inside the factory.
+     *
+     * @param name The name of the machine, unique within the factory.
+     * @param x The x-coordinate of the machine.
+     * @param y The y-coordinate of the machine.
+     * @param width The width of the machine.
+     * @param height The height of the machine.
+     * @param area The name of the production area of the machine.
+     * @return This builder.
+     */
+    public ModelBuilder machine(String name, int x, int y, int width, int height, String area) {
+        return stage(new Element(MACHINE, name, x, y, width, height, new String[] { area }));
+    }
+
+    /**
+     * Stages a power supply station in the current factory. The station must lie inside its room.
+     *
+     * @param name The name of the station, unique within the factory.
+     * @param x The x-coordinate of the station.
+     * @param y The y-coordinate of the station.
+     * @param orientation The orientation of the station, 'v' for vertical or 'h' for horizontal.
+     * @param room The name of the room of the station.
+     * @return This builder.
+     */
+    public ModelBuilder station(String name, int x, int y, char orientation, String room) {
+        Element station = new Element(STATION, name, x, y, orientation == 'v' ? 25 : 50, orientation == 'v' ? 50 : 25,
+                                      new String[] { room });
+        station.orientation = orientation;
+        return stage(station);
+    }
+
+    /**
+     * Stages a robot in the current factory. The robot must lie inside its room, and every destination
+     * must be reachable from this room through doors.
+     *
+     * @param name The name of the robot, unique within the factory.
+     * @param x The x-coordinate of the robot.
+     * @param y The y-coordinate of the robot.
+     * @param size The size of the robot.
+     * @param speed The speed of the robot.
+     * @param room The name of the room the robot starts in.
+     * @param destinations The names of the destinations of the robot, in order.
+     * @return This builder.
+     */
+    public ModelBuilder robot(String name, int x, int y, int size, int speed, String room, String... destinations) {
+        String[] refs = new String[destinations.length + 1];
+        refs[0] = room;
+        System.arraycopy(destinations, 0, refs, 1, destinations.length);
+        Element robot = new Element(ROBOT, name, x, y, size, size, refs);
+        robot.speed = speed;
+        return stage(robot);
+    }
+
+    /**
+     * Adds an element to the current factory.
+     */
+    private ModelBuilder stage(Element element) {
+        if (factories.isEmpty()) {
+            throw new IllegalStateException("A factory must be staged before its " + KIND_NAMES[element.kind] + "s");
+        }
+        FactorySpec factory = factories.get(factories.size() - 1);
+        List<Element> list = factory.elements.get(element.kind);
+        element.index = list.size();
+        list.add(element);
+        if (factory.byName.putIfAbsent(element.name, element) != null) {
+            factory.duplicates.add(element.name);
+        }
+        return this;
+    }
+
+    /**
+     * Checks the description of the model: names, references between elements, geometry, and reachability
+     * of the destinations of the robots.
+     *
+     * @return The problems found, empty if the model can be built.
+     */
+    public List<String> validate() {
+        List<String> errors = new ArrayList<>();
+        for (FactorySpec factory : factories) {
+            validate(factory, errors);
+        }
+        return errors;
+    }
+
+    /**
+     * Checks the description of a factory.
+     */
+    private void validate(FactorySpec factory, List<String> errors) {
+        String prefix = factory.name + ": ";
+        Element bounds = new Element(ROOM, factory.name, 0, 0, factory.width, factory.height, null);
+        if (factory.width + Component.CANVAS_MARGIN > width || factory.height + Component.CANVAS_MARGIN > height) {
+            errors.add(prefix + "factory larger than the model");
+        }
+        for (String duplicate : factory.duplicates) {
+            errors.add(prefix + "duplicate name " + duplicate);
+        }
+
+        // Rooms connected by doors share the same root
+        List<Element> rooms = factory.elements.get(ROOM);
+        int[] parents = new int[rooms.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (Element room : rooms) {
+            if (!bounds.contains(room)) {
+                errors.add(prefix + "room " + room.name + " outside of the factory");
+            }
+        }
+        for (Element door : factory.elements.get(DOOR)) {
+            if (door.refs.length == 0) {
+                errors.add(prefix + "door " + door.name + " connects no room");
+            }
+            int first = -1;
+            for (String ref : door.refs) {
+                Element room = resolve(factory, door, ref, ROOM, errors);
+                if (room == null) {
+                    continue;
+                }
+                if (!door.touches(room)) {
+                    errors.add(prefix + "door " + door.name + " does not touch room " + room.name);
+                }
+                if (first < 0) {
+                    first = room.index;
+                } else {
+                    parents[root(parents, room.index)] = root(parents, first);
+                }
+            }
+        }
+        for (Element area : factory.elements.get(AREA)) {
+            Element room = resolve(factory, area, area.refs[0], ROOM, errors);
+            if (room != null && !room.contains(area)) {
+                errors.add(prefix + "production area " + area.name + " outside of room " + room.name);
+            }
+        }
+        for (Element machine : factory.elements.get(MACHINE)) {
+            resolve(factory, machine, machine.refs[0], AREA, errors);
+            if (!bounds.contains(machine)) {
+                errors.add(prefix + "machine " + machine.name + " outside of the factory");
+            }
+        }
+        for (Element station : factory.elements.get(STATION)) {
+            if (station.orientation != 'v' && station.orientation != 'h') {
+                errors.add(prefix + "power supply station " + station.name + " has no valid orientation");
+            }
+            Element room = resolve(factory, station, station.refs[0], ROOM, errors);
+            if (room != null && !room.contains(station)) {
+                errors.add(prefix + "power supply station " + station.name + " outside of room " + room.name);
+            }
+        }
+        for (Element robot : factory.elements.get(ROBOT)) {
+            if (robot.width <= 0 || robot.speed <= 0) {
+                errors.add(prefix + "robot " + robot.name + " must have a positive size and speed");
+            }
+            if (robot.refs.length < 2) {
+                errors.add(prefix + "robot " + robot.name + " has no destination");
+            }
+            Element room = resolve(factory, robot, robot.refs[0], ROOM, errors);
+            if (room == null) {
+                continue;
+            }
+            if (!room.contains(robot)) {
+                errors.add(prefix + "robot " + robot.name + " outside of room " + room.name);
+            }
+            for (int i = 1; i < robot.refs.length; i++) {
+                Element destination = resolve(factory, robot, robot.refs[i], -1, errors);
+                Element destinationRoom = destination == null ? null : roomOf(factory, destination);
+                if (destinationRoom != null && root(parents, destinationRoom.index) != root(parents, room.index)) {
+                    errors.add(prefix + "destination " + destination.name + " of robot " + robot.name
+                               + " cannot be reached from room " + room.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds an element referred to by another one, recording an error if it does not exist or is not of the
+     * expected kind.
+     *
+     * @param kind The expected kind, or -1 for any kind but robots.
+     */
+    private static Element resolve(FactorySpec factory, Element from, String ref, int kind, List<String> errors) {
+        Element element = factory.byName.get(ref);
+        if (element == null) {
+            errors.add(factory.name + ": " + KIND_NAMES[from.kind] + " " + from.name + " refers to unknown element " + ref);
+            return null;
+        }
+        if (kind >= 0 ? element.kind != kind : element.kind == ROBOT) {
+            errors.add(factory.name + ": " + KIND_NAMES[from.kind] + " " + from.name + " refers to "
+                       + KIND_NAMES[element.kind] + " " + ref + (kind >= 0 ? " instead of a " + KIND_NAMES[kind] : ""));
+            return null;
+        }
+        return element;
+    }
+
+    /**
+     * Gets the room an element belongs to, the first room of a door, or null if it refers to unknown elements.
+     */
+    private static Element roomOf(FactorySpec factory, Element element) {
+        while (element != null && element.kind != ROOM) {
+            element = element.refs.length == 0 ? null : factory.byName.get(element.refs[0]);
+        }
+        return element;
+    }
+
+    /**
+     * Finds the root of the set of a room in the union-find forest of connected rooms.
+     */
+    private static int root(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    /**
+     * Checks the description of the model and builds it.
+     *
+     * @return The model.
+     * @throws IllegalArgumentException If the description is not valid, with every problem found in the message.
+     */
+    public Model build() {
+        List<String> errors = validate();
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid model " + name + ":\n" + String.join("\n", errors));
+        }
+        Model model = new Model(name, width, height);
+        int total = 0;
+        for (FactorySpec spec : factories) {
+            total += spec.size();
+        }
+        model.getCompoList().ensureCapacity(total);
+        for (FactorySpec spec : factories) {
+            Factory factory = new Factory(spec.name, spec.width, spec.height, new ArrayList<>(spec.size()));
+            model.addComponent(factory);
+            build(spec, factory);
+        }
+        return model;
+    }
+
+    /**
+     * Creates the components of a factory, kind by kind, so that every component is created after the ones it
+     * refers to, and the robots last, once the layout is complete.
+     */
+    private static void build(FactorySpec spec, Factory factory) {
+        for (Element e : spec.elements.get(ROOM)) {
+            e.component = new Room(e.name, e.x, e.y, e.width, e.height, factory);
+        }
+        for (Element e : spec.elements.get(DOOR)) {
+            ArrayList<Room> rooms = new ArrayList<>(e.refs.length);
+            for (String ref : e.refs) {
+                rooms.add((Room) spec.byName.get(ref).component);
+            }
+            e.component = new Door(e.name, e.x, e.y, e.width, e.height, rooms, factory);
+        }
+        for (Element e : spec.elements.get(AREA)) {
+            e.component = new ProductionArea(e.name, e.x, e.y, e.width, e.height, (Room) spec.byName.get(e.refs[0]).component);
+        }
+        for (Element e : spec.elements.get(MACHINE)) {
+            e.component = new ProductionMachine(e.name, e.x, e.y, e.width, e.height,
+                                                (ProductionArea) spec.byName.get(e.refs[0]).component);
+        }
+        for (Element e : spec.elements.get(STATION)) {
+            e.component = new PowerSupplyStation(e.name, e.x, e.y, e.orientation, (Room) spec.byName.get(e.refs[0]).component);
+        }
+        for (Element e : spec.elements.get(ROBOT)) {
+            ArrayList<Component> destinations = new ArrayList<>(e.refs.length - 1);
+            for (int i = 1; i < e.refs.length; i++) {
+                destinations.add(spec.byName.get(e.refs[i]).component);
+            }
+            e.component = new Robot(e.name, e.x, e.y, e.width, e.speed, factory, destinations,
+                                    (Room) spec.byName.get(e.refs[0]).component);
+        }
+    }
+}
@@ -0,0 +1,698 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import compo.*;
+
+/**
+ * ModelCodec reads and writes models in a compact, versioned binary format.
+ * A file starts with a magic number and a format version, followed by a table of all the strings of the model,
+ * the model header, and one length-prefixed section per factory. Within a section, components are written by kind
+ * in construction order (rooms, doors, production areas, machines, power supply stations, robots), and refer to each
+ * other by their index within their kind. Integers are written as variable-length integers, so that coordinates and
+ * sizes mostly take one or two bytes. Components are rebuilt through their constructors when reading, so that no
+ * class is ever instantiated from the file contents.
+ * Since version 2, the settings of the simulation are saved as well: the batteries of each factory, whether it
+ * dispatches jobs and whether its robots ignore collisions, the capacity of the doors, and the jobs emitted by the machines, written after the robots since
+ * their destination may be any component. Files of version 1 are read with the default settings.
+ * Files written with Java serialization by former versions are still read, through a filter that only accepts
+ * the classes of the model.
+ * Files can also be mapped in memory rather than read: factories are then created empty, and the components
+ * of each factory are only decoded from its section when the factory is first used.
+ */
+public final class ModelCodec {
+
+    /**
+     * Magic number starting every model file: "FMDL".
+     */
+    public static final int MAGIC = 0x464D444C;
+
+    /**
+     * Version of the format written by this codec. Older versions are still read.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Magic number starting a stream written with Java serialization.
+     */
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    /**
+     * Kinds of components a robot itinerary can refer to.
+     */
+    private static final int ROOM = 0;
+    private static final int DOOR = 1;
+    private static final int AREA = 2;
+    private static final int MACHINE = 3;
+    private static final int STATION = 4;
+
+    /**
+     * Offset added by the component constructors to the coordinates they are given.
+     */
+    private static final int OFFSET = Component.CANVAS_MARGIN;
+
+    private ModelCodec() {
+    }
+
+    /**
+     * Writes a model to a stream.
+     *
+     * @param model The model to write.
+     * @param out The stream to write to. It is not closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void write(Model model, OutputStream out) throws IOException {
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<byte[]> sections = new ArrayList<>();
+        for (Factory factory : model.getFactories()) {
+            sections.add(encodeFactory(factory, strings, stringIds));
+        }
+        int modelName = stringId(model.getId(), strings, stringIds);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        writeInt(header, MAGIC);
+        writeVarint(header, VERSION);
+        writeVarint(header, strings.size());
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(header, bytes.length);
+            header.write(bytes);
+        }
+        writeVarint(header, modelName);
+        writeVarint(header, model.getWidth());
+        writeVarint(header, model.getHeight());
+        writeVarint(header, sections.size());
+        header.writeTo(out);
+        for (byte[] section : sections) {
+            ByteArrayOutputStream length = new ByteArrayOutputStream(5);
+            writeVarint(length, section.length);
+            length.writeTo(out);
+            out.write(section);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a model from a stream, in the binary format or in the legacy Java serialization format.
+     *
+     * @param in The stream to read from. It is not closed.
+     * @return The model.
+     * @throws IOException If an I/O error occurs or the contents are not a valid model.
+     */
+    public static Model read(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if ((first << 8 | second) == LEGACY_MAGIC) {
+            return readLegacy(buffered);
+        }
+        return decode(ByteBuffer.wrap(buffered.readAllBytes()));
+    }
+
+    /**
+     * Decodes a model in the binary format.
+     *
+     * @param buffer The buffer holding the model, from its current position.
+     * @return The model.
+     * @throws IOException If the contents are not a valid model.
+     */
+    public static Model decode(ByteBuffer buffer) throws IOException {
+        Header header = readHeader(buffer);
+        for (int f = 0; f < header.factoryCount; f++) {
+            ByteBuffer section = nextSection(buffer);
+            Factory factory = decodeFactoryHeader(section, header.strings, header.model, header.version);
+            decodeFactoryContents(section, header.strings, factory, header.version);
+        }
+        return header.model;
+    }
+
+    /**
+     * Maps a model file in memory and reads its header and the header of its factories only.
+     * The components of each factory are decoded from the mapped file the first time the factory is used,
+     * so that opening a file is fast whatever its size and only the factories used take up memory.
+     * The file must not be modified while factories remain to be loaded.
+     *
+     * @param file The model file, in the binary format.
+     * @return The model, with factories loaded on demand.
+     * @throws IOException If an I/O error occurs or the file is not a valid model.
+     */
+    public static Model map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Header header = readHeader(buffer);
+        for (int f = 0; f < header.factoryCount; f++) {
+            ByteBuffer section = nextSection(buffer);
+            Factory factory = decodeFactoryHeader(section, header.strings, header.model, header.version);
+            StringTable strings = header.strings;
+            int version = header.version;
+            factory.setContentLoader(loaded -> {
+                try {
+                    decodeFactoryContents(section, strings, loaded, version);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        return header.model;
+    }
+
+    /**
+     * Checks if a stream starts with the magic number of the binary format.
+     *
+     * @param in The stream, which must support marks. Its position is left unchanged.
+     * @return True if the stream holds a model in the binary format.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+        return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+    }
+
+    /**
+     * Reads a model written with Java serialization by former versions of the application.
+     * Only the classes of the model and the collections they use can be deserialized.
+     *
+     * @param in The stream to read from.
+     * @return The model.
+     * @throws IOException If an I/O error occurs or the stream contains unexpected classes.
+     */
+    public static Model readLegacy(InputStream in) throws IOException {
+        ObjectInputStream objInpStream = new ObjectInputStream(in);
+        objInpStream.setObjectInputFilter(ObjectInputFilter.Config.createFilter(
+                "maxdepth=64;model.Model;compo.*;drawable.*;java.util.ArrayList;java.lang.Object;java.lang.Number;java.lang.Integer;!*"));
+        try {
+            Object object = objInpStream.readObject();
+            if (!(object instanceof Model)) {
+                throw new InvalidClassException("Not a model: " + object.getClass().getName());
+            }
+            return (Model) object;
+        } catch (ClassNotFoundException ex) {
+            throw new InvalidClassException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Contents of the beginning of a model file: the format version, the string table and the model without its
+     * factories.
+     */
+    static final class Header {
+        int version;
+        StringTable strings;
+        Model model;
+        int factoryCount;
+    }
+
+    /**
+     * Table of the strings of a model file. Strings are only decoded when first asked for, so that the names
+     * of the components of factories never loaded are never decoded.
+     */
+    static final class StringTable {
+        private final ByteBuffer buffer;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final String[] strings;
+
+        /**
+         * Reads the offsets of the strings of the table starting at the position of the buffer,
+         * and moves the position after the table.
+         */
+        StringTable(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            int count = readCount(buffer);
+            this.offsets = new int[count];
+            this.lengths = new int[count];
+            this.strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = readVarint(buffer);
+                offsets[i] = buffer.position();
+                buffer.position(offsets[i] + lengths[i]);
+            }
+        }
+
+        /**
+         * Gets a string of the table.
+         */
+        String get(int index) {
+            String s = strings[index];
+            if (s == null) {
+                byte[] bytes = new byte[lengths[index]];
+                buffer.get(offsets[index], bytes);
+                s = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = s;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Reads the magic number, the version, the string table and the model header.
+     *
+     * @param buffer The buffer, positioned at the beginning of the file.
+     * @return The header.
+     * @throws IOException If the contents are not a model file of a supported version.
+     */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a model file");
+            }
+            int version = readVarint(buffer);
+            if (version > VERSION) {
+                throw new IOException("Unsupported model file version " + version);
+            }
+            Header header = new Header();
+            header.version = version;
+            header.strings = new StringTable(buffer);
+            String name = header.strings.get(readVarint(buffer));
+            int width = readVarint(buffer);
+            int height = readVarint(buffer);
+            header.model = new Model(name, width, height);
+            header.factoryCount = readVarint(buffer);
+            return header;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Truncated model file", ex);
+        }
+    }
+
+    /**
+     * Reads the length of the next factory section and moves the position of the buffer after it.
+     *
+     * @return The section.
+     */
+    private static ByteBuffer nextSection(ByteBuffer buffer) throws IOException {
+        try {
+            int length = readVarint(buffer);
+            ByteBuffer section = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return section;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Truncated model file", ex);
+        }
+    }
+
+    /**
+     * Encodes the section of a factory.
+     */
+    private static byte[] encodeFactory(Factory factory, ArrayList<String> strings, HashMap<String, Integer> stringIds)
+            throws IOException {
+        IdentityHashMap<Component, int[]> refs = new IdentityHashMap<>();
+        ArrayList<Door> doors = new ArrayList<>();
+        ArrayList<ProductionArea> areas = new ArrayList<>();
+        ArrayList<ProductionMachine> machines = new ArrayList<>();
+        ArrayList<PowerSupplyStation> stations = new ArrayList<>();
+        ArrayList<Robot> robots = new ArrayList<>();
+        List<Room> rooms = factory.getRooms();
+        for (int i = 0; i < rooms.size(); i++) {
+            refs.put(rooms.get(i), new int[] { ROOM, i });
+        }
+        for (Room room : rooms) {
+            for (Door door : room.getDoorList()) {
+                if (!refs.containsKey(door)) {
+                    refs.put(door, new int[] { DOOR, doors.size() });
+                    doors.add(door);
+                }
+            }
+            for (ProductionArea area : room.getPaList()) {
+                refs.put(area, new int[] { AREA, areas.size() });
+                areas.add(area);
+                for (ProductionMachine machine : area.getPm()) {
+                    refs.put(machine, new int[] { MACHINE, machines.size() });
+                    machines.add(machine);
+                }
+            }
+            for (PowerSupplyStation station : room.getPssList()) {
+                refs.put(station, new int[] { STATION, stations.size() });
+                stations.add(station);
+            }
+        }
+        if (factory.getModel() != null) {
+            // Doors are rebuilt in the order they were created in, so that the door list of every room keeps its order
+            IdentityHashMap<Component, Integer> creationOrder = new IdentityHashMap<>();
+            List<Component> compoList = factory.getModel().getCompoList();
+            for (int i = 0; i < compoList.size(); i++) {
+                creationOrder.put(compoList.get(i), i);
+            }
+            doors.sort(Comparator.comparingInt(door -> creationOrder.getOrDefault(door, Integer.MAX_VALUE)));
+            for (int i = 0; i < doors.size(); i++) {
+                refs.get(doors.get(i))[1] = i;
+            }
+        }
+        for (Component c : factory.getComponents()) {
+            if (c instanceof Robot) {
+                robots.add((Robot) c);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, stringId(factory.getName(), strings, stringIds));
+        writeVarint(out, factory.getWidth());
+        writeVarint(out, factory.getHeight());
+        writeVarint(out, factory.getBatteryCapacity());
+        writeVarint(out, factory.getChargeRate());
+        writeVarint(out, factory.isDispatching() ? 1 : 0);
+        writeVarint(out, factory.isCollisionsIgnored() ? 1 : 0);
+
+        writeVarint(out, rooms.size());
+        for (Room room : rooms) {
+            writeBounds(out, room, strings, stringIds);
+        }
+        writeVarint(out, doors.size());
+        for (Door door : doors) {
+            writeBounds(out, door, strings, stringIds);
+            writeVarint(out, door.getRooms().size());
+            for (Room room : door.getRooms()) {
+                writeRef(out, refs, room, ROOM);
+            }
+            writeVarint(out, door.isCapacitySet() ? door.getCapacity() : 0);
+        }
+        writeVarint(out, areas.size());
+        for (ProductionArea area : areas) {
+            writeBounds(out, area, strings, stringIds);
+            writeRef(out, refs, area.getRoom(), ROOM);
+        }
+        writeVarint(out, machines.size());
+        for (ProductionMachine machine : machines) {
+            writeBounds(out, machine, strings, stringIds);
+            writeRef(out, refs, machine.getPa(), AREA);
+        }
+        writeVarint(out, stations.size());
+        for (PowerSupplyStation station : stations) {
+            writeVarint(out, stringId(station.getName(), strings, stringIds));
+            writeSigned(out, station.getxCoordinate() - OFFSET);
+            writeSigned(out, station.getyCoordinate() - OFFSET);
+            writeVarint(out, station.getOrientation());
+            writeRef(out, refs, station.getRoom(), ROOM);
+        }
+        writeVarint(out, robots.size());
+        for (Robot robot : robots) {
+            writeVarint(out, stringId(robot.getName(), strings, stringIds));
+            writeSigned(out, robot.getxCoordinate() - OFFSET);
+            writeSigned(out, robot.getyCoordinate() - OFFSET);
+            writeVarint(out, robot.getWidth());
+            writeVarint(out, robot.getSpeed());
+            // Robots may be outside of every room: a flag tells whether a room index follows
+            Room room = robot.getRoom();
+            if (room == null) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, 1);
+                writeRef(out, refs, room, ROOM);
+            }
+            writeVarint(out, robot.getDestinations().size());
+            for (Component destination : robot.getDestinations()) {
+                int[] ref = refs.get(destination);
+                if (ref == null) {
+                    throw new IOException("Destination " + destination.getName() + " of robot " + robot.getName()
+                                          + " is not part of factory " + factory.getName());
+                }
+                writeVarint(out, ref[0]);
+                writeVarint(out, ref[1]);
+            }
+            writeVarint(out, robot.getIndexOfDestination());
+        }
+        for (ProductionMachine machine : machines) {
+            writeVarint(out, machine.getJobInterval());
+            if (machine.getJobInterval() > 0) {
+                int[] ref = refs.get(machine.getJobDestination());
+                if (ref == null) {
+                    throw new IOException("Job destination " + machine.getJobDestination().getName() + " of machine "
+                                          + machine.getName() + " is not part of factory " + factory.getName());
+                }
+                writeVarint(out, ref[0]);
+                writeVarint(out, ref[1]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the header of a factory section and adds the factory, still empty, to the model.
+     *
+     * @param in The buffer holding the section.
+     * @param strings The string table.
+     * @param model The model the factory belongs to.
+     * @param version The version of the format of the file.
+     * @return The factory.
+     * @throws IOException If the section is not valid.
+     */
+    static Factory decodeFactoryHeader(ByteBuffer in, StringTable strings, Model model, int version) throws IOException {
+        try {
+            Factory factory = new Factory(strings.get(readVarint(in)), readVarint(in), readVarint(in));
+            if (!model.addComponent(factory)) {
+                throw new IOException("Factory " + factory.getName() + " lies outside the model");
+            }
+            if (version >= 2) {
+                int capacity = readVarint(in), chargeRate = readVarint(in);
+                if (chargeRate > 0) {
+                    factory.setBatteries(capacity, chargeRate);
+                }
+                factory.setDispatching(readVarint(in) != 0);
+                factory.setCollisionsIgnored(readVarint(in) != 0);
+            }
+            return factory;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Corrupted factory section", ex);
+        }
+    }
+
+    /**
+     * Decodes the components of a factory section, the factory header having already been read.
+     */
+    static void decodeFactoryContents(ByteBuffer in, StringTable strings, Factory factory, int version) throws IOException {
+        try {
+            decodeComponents(in, strings, factory, version);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                 | IllegalArgumentException ex) {
+            throw new IOException("Corrupted factory section " + factory.getName(), ex);
+        }
+    }
+
+    /**
+     * Decodes the components of a factory section, kind by kind.
+     */
+    private static void decodeComponents(ByteBuffer in, StringTable strings, Factory factory, int version)
+            throws IOException {
+        Room[] rooms = new Room[readCount(in)];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = checkAdded(new Room(strings.get(readVarint(in)), readSigned(in), readSigned(in), readVarint(in),
+                                           readVarint(in), factory));
+        }
+        Door[] doors = new Door[readCount(in)];
+        for (int i = 0; i < doors.length; i++) {
+            String name = strings.get(readVarint(in));
+            int x = readSigned(in), y = readSigned(in), w = readVarint(in), h = readVarint(in);
+            ArrayList<Room> doorRooms = new ArrayList<>();
+            for (int n = readVarint(in); n > 0; n--) {
+                doorRooms.add(rooms[readVarint(in)]);
+            }
+            doors[i] = checkAdded(new Door(name, x, y, w, h, doorRooms, factory));
+            if (version >= 2) {
+                doors[i].setCapacity(readVarint(in));
+            }
+        }
+        ProductionArea[] areas = new ProductionArea[readCount(in)];
+        for (int i = 0; i < areas.length; i++) {
+            String name = strings.get(readVarint(in));
+            int x = readSigned(in), y = readSigned(in), w = readVarint(in), h = readVarint(in);
+            areas[i] = checkAdded(new ProductionArea(name, x, y, w, h, rooms[readVarint(in)]));
+        }
+        ProductionMachine[] machines = new ProductionMachine[readCount(in)];
+        for (int i = 0; i < machines.length; i++) {
+            String name = strings.get(readVarint(in));
+            int x = readSigned(in), y = readSigned(in), w = readVarint(in), h = readVarint(in);
+            machines[i] = checkAdded(new ProductionMachine(name, x, y, w, h, areas[readVarint(in)]));
+        }
+        PowerSupplyStation[] stations = new PowerSupplyStation[readCount(in)];
+        for (int i = 0; i < stations.length; i++) {
+            String name = strings.get(readVarint(in));
+            int x = readSigned(in), y = readSigned(in);
+            char orientation = (char) readVarint(in);
+            stations[i] = checkAdded(new PowerSupplyStation(name, x, y, orientation, rooms[readVarint(in)]));
+        }
+        Component[][] kinds = { rooms, doors, areas, machines, stations };
+        for (int n = readVarint(in); n > 0; n--) {
+            String name = strings.get(readVarint(in));
+            int x = readSigned(in), y = readSigned(in), size = readVarint(in), speed = readVarint(in);
+            Room room = readVarint(in) == 0 ? null : rooms[readVarint(in)];
+            ArrayList<Component> itinerary = new ArrayList<>();
+            for (int d = readVarint(in); d > 0; d--) {
+                int kind = readVarint(in);
+                if (kind >= kinds.length) {
+                    throw new IOException("Unknown component kind " + kind + " in the itinerary of robot " + name);
+                }
+                itinerary.add(kinds[kind][readVarint(in)]);
+            }
+            checkAdded(new Robot(name, x, y, size, speed, factory, room, itinerary, readVarint(in)));
+        }
+        if (version >= 2) {
+            for (ProductionMachine machine : machines) {
+                int interval = readVarint(in);
+                if (interval > 0) {
+                    int kind = readVarint(in);
+                    if (kind >= kinds.length) {
+                        throw new IOException("Unknown component kind " + kind + " for the jobs of machine "
+                                              + machine.getName());
+                    }
+                    machine.setJobs(kinds[kind][readVarint(in)], interval);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a decoded component was added to the model, which ignores components lying outside of it,
+     * so that the components referring to it are not built on a detached one.
+     *
+     * @return The component.
+     * @throws IOException If the component lies outside the model.
+     */
+    private static <C extends Component> C checkAdded(C component) throws IOException {
+        if (component.getModel() == null) {
+            throw new IOException("Component " + component.getName() + " lies outside the model");
+        }
+        return component;
+    }
+
+    /**
+     * Writes the name, position and size of a component.
+     */
+    private static void writeBounds(OutputStream out, Component c, ArrayList<String> strings, HashMap<String, Integer> stringIds)
+            throws IOException {
+        writeVarint(out, stringId(c.getName(), strings, stringIds));
+        writeSigned(out, c.getxCoordinate() - OFFSET);
+        writeSigned(out, c.getyCoordinate() - OFFSET);
+        writeVarint(out, c.getWidth());
+        writeVarint(out, c.getHeight());
+    }
+
+    /**
+     * Writes the index of a component within its kind.
+     */
+    private static void writeRef(OutputStream out, IdentityHashMap<Component, int[]> refs, Component c, int kind)
+            throws IOException {
+        int[] ref = c == null ? null : refs.get(c);
+        if (ref == null || ref[0] != kind) {
+            throw new IOException("Component " + (c == null ? null : c.getName()) + " is not part of its factory");
+        }
+        writeVarint(out, ref[1]);
+    }
+
+    /**
+     * Gets the index of a string in the string table, adding it if needed.
+     */
+    private static int stringId(String s, ArrayList<String> strings, HashMap<String, Integer> stringIds) {
+        String value = s == null ? "" : s;
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    /**
+     * Writes a 32-bit integer, most significant byte first.
+     */
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Writes a non-negative integer 7 bits at a time, least significant group first.
+     */
+    static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Writes a signed integer as a varint, small negative values being mapped to small positive ones.
+     */
+    static void writeSigned(OutputStream out, int value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a varint written by {@link #writeVarint(OutputStream, int)}, which is never negative.
+     *
+     * @throws IOException If the varint is malformed or negative.
+     */
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = readBits(in);
+        if (value < 0) {
+            throw new IOException("Negative count or length " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a number of elements, each taking at least one of the remaining bytes, so that a corrupted count never
+     * allocates more than the size of the buffer.
+     *
+     * @throws IOException If the count is malformed or larger than the remaining bytes.
+     */
+    static int readCount(ByteBuffer in) throws IOException {
+        int count = readVarint(in);
+        if (count > in.remaining()) {
+            throw new IOException("Count " + count + " exceeds the " + in.remaining() + " bytes left");
+        }
+        return count;
+    }
+
+    /**
+     * Reads the 32 bits of a varint, whatever their sign.
+     */
+    private static int readBits(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a signed integer written by {@link #writeSigned(OutputStream, int)}.
+     */
+    static int readSigned(ByteBuffer in) throws IOException {
+        int value = readBits(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,201 @@
+package simu;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compo.Factory;
+import compo.FactoryTimeline;
+import model.Frame;
+import model.Model;
+
+/**
+ * The DiscreteEventEngine class simulates a model event by event instead of tick by tick, skipping the ticks where
+ * nothing happens: each factory of the model is driven by a {@link FactoryTimeline}, which only handles the ticks where
+ * a robot reaches a waypoint, a battery gets low or runs out, a station completes a charge, or a machine completes
+ * a production cycle, and computes the positions of the robots in between from their moves. Long shifts are simulated
+ * at a cost proportional to the number of events rather than to the number of ticks times the number of components,
+ * and the positions of the robots are only computed when a frame is requested.
+ * Robots move in a straight line towards their targets, as the robots of a fleet do, and never wait for each other:
+ * the factories must ignore collisions, and their doors must let all their robots through at the same time (see
+ * {@link Factory#setCollisionsIgnored(boolean)} and {@link compo.Door#setCapacity(int)}), otherwise the engine
+ * refuses to drive them.
+ * The factories cannot be ticked nor changed while the engine drives them, until {@link #close()} is called.
+ */
+public class DiscreteEventEngine {
+
+    /**
+     * The model driven by the engine.
+     */
+    private final Model model;
+
+    /**
+     * The simulated time represented by one tick, in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * The timelines of the factories of the model.
+     */
+    private final List<FactoryTimeline> timelines = new ArrayList<>();
+
+    /**
+     * The number of ticks simulated, and the wall clock time, in nanoseconds, spent simulating them.
+     */
+    private long tickCount;
+    private long busyNanos;
+
+    /**
+     * Constructs a DiscreteEventEngine driving the given model with the default tick duration.
+     *
+     * @param model The model to drive.
+     */
+    public DiscreteEventEngine(Model model) {
+        this(model, SimulationEngine.DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Constructs a DiscreteEventEngine with the specified tick duration. The robots start from their current state.
+     *
+     * @param model The model to drive.
+     * @param tickMillis The simulated time represented by one tick, in milliseconds.
+     * @throws IllegalStateException If a factory of the model is already simulated event by event, does not ignore
+     * collisions, or has a door letting fewer robots through at a time than it has robots.
+     */
+    public DiscreteEventEngine(Model model, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick duration must be positive: " + tickMillis);
+        }
+        this.model = model;
+        this.tickMillis = tickMillis;
+        model.update(() -> {
+            try {
+                for (Factory factory : model.getFactories()) {
+                    timelines.add(factory.startTimeline());
+                }
+            } catch (IllegalStateException e) {
+                // The factories already started are ticked again, as if the engine had never been built
+                for (FactoryTimeline timeline : timelines) {
+                    timeline.getFactory().stopTimeline();
+                }
+                timelines.clear();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Simulates the given number of ticks on the calling thread, as fast as possible.
+     *
+     * @param ticks The number of ticks to simulate.
+     */
+    public void run(long ticks) {
+        if (ticks <= 0) {
+            return;
+        }
+        long begin = System.nanoTime();
+        long end = tickCount + ticks;
+        model.update(() -> {
+            for (FactoryTimeline timeline : timelines) {
+                timeline.advanceTo(end);
+            }
+        });
+        model.addTicks(ticks);
+        tickCount = end;
+        busyNanos += System.nanoTime() - begin;
+    }
+
+    /**
+     * Simulates as many ticks as needed to cover the given amount of simulated time, as fast as possible.
+     *
+     * @param simulatedMillis The simulated time to cover, in milliseconds.
+     */
+    public void runFor(long simulatedMillis) {
+        run(simulatedMillis / tickMillis);
+    }
+
+    /**
+     * Gets a frame of the model at the last tick simulated, bringing the robots to their position at this tick first.
+     *
+     * @return The frame.
+     */
+    public Frame getFrame() {
+        model.update(() -> {
+            for (FactoryTimeline timeline : timelines) {
+                timeline.syncAll();
+            }
+        });
+        return model.getFrame();
+    }
+
+    /**
+     * Stops driving the model: the robots are brought to their position at the last tick simulated, and the factories
+     * can be ticked again.
+     */
+    public void close() {
+        model.update(() -> {
+            for (FactoryTimeline timeline : timelines) {
+                timeline.getFactory().stopTimeline();
+            }
+        });
+        timelines.clear();
+    }
+
+    /**
+     * Gets the model driven by the engine.
+     *
+     * @return The model.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the number of ticks simulated.
+     *
+     * @return The number of ticks.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Gets the simulated time covered.
+     *
+     * @return The simulated time, in milliseconds.
+     */
+    public long getSimulatedMillis() {
+        return tickCount * tickMillis;
+    }
+
+    /**
+     * Gets the number of events handled, summed over the factories.
+     *
+     * @return The number of events.
+     */
+    public long getEventCount() {
+        long count = 0;
+        for (FactoryTimeline timeline : timelines) {
+            count += timeline.getEventCount();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of ticks the engine simulates per second of wall clock time spent simulating.
+     *
+     * @return The tick rate.
+     */
+    public double getTicksPerSecond() {
+        return busyNanos > 0 ? tickCount * 1e9 / busyNanos : 0;
+    }
+
+    /**
+     *
+     * @return A string describing the engine statistics.
+     */
+    @Override
+    public String toString() {
+        return "Simulation par événements : " + tickCount + " ticks (" + getSimulatedMillis() / 1000 + " s simulées), "
+               + getEventCount() + " événements, " + String.format("%.1f", getTicksPerSecond()) + " ticks/s";
+    }
+}
@@ -0,0 +1,267 @@
+package simu;
+
+import java.util.Locale;
+
+/**
+ * The ScenarioResult class holds the key performance indicators measured on one scenario of a {@link ScenarioRunner}:
+ * the work done by the robots, i.e. the destinations they reached, and the effort it took, i.e. the distance they
+ * covered and the ticks they spent without moving, including the ticks spent waiting for a door, and when robots
+ * have batteries, the charges they needed and the times they ran out of battery, and when robots carry out the
+ * jobs of the machines, the jobs delivered and the time jobs waited for a robot.
+ */
+public class ScenarioResult {
+
+    /**
+     * Header of the CSV lines written by {@link #toCsv()}.
+     */
+    public static final String CSV_HEADER =
+            "scenario,robots,ticks,simulated_ms,stops,door_crossings,distance,idle_robot_ticks,door_wait_ticks,busiest_door,"
+            + "charges,strandings,jobs_delivered,job_wait_ticks,stops_per_hour,wall_ms";
+
+    /**
+     * The name of the scenario and its indicators, described by their getters.
+     */
+    private final String name;
+    private final int robots;
+    private final long ticks;
+    private final long simulatedMillis;
+    private final long stops;
+    private final long doorCrossings;
+    private final long distance;
+    private final long idleRobotTicks;
+    private final long doorWaitTicks;
+    private final String busiestDoor;
+    private final long charges;
+    private final long strandings;
+    private final long jobsDelivered;
+    private final long jobWaitTicks;
+    private final long wallMillis;
+
+    /**
+     * Constructs a ScenarioResult with the specified indicators.
+     *
+     * @param name The name of the scenario.
+     * @param robots The number of robots of the scenario.
+     * @param ticks The number of ticks simulated.
+     * @param simulatedMillis The simulated time covered, in milliseconds.
+     * @param stops The number of destinations other than doors reached by the robots.
+     * @param doorCrossings The number of doors reached by the robots on their way.
+     * @param distance The distance covered by the robots, along the x axis plus along the y axis.
+     * @param idleRobotTicks The number of ticks each robot spent without moving, summed over the robots.
+     * @param doorWaitTicks The number of ticks each robot spent waiting for a door reservation, summed over the robots.
+     * @param busiestDoor The name of the door robots waited for the longest, or an empty string if they never waited.
+     * @param charges The number of charges completed at the power supply stations.
+     * @param strandings The number of times a robot ran out of battery away from a station.
+     * @param jobsDelivered The number of jobs of the machines delivered by the robots.
+     * @param jobWaitTicks The number of ticks each job waited for a robot, summed over the jobs.
+     * @param wallMillis The wall clock time taken by the simulation, in milliseconds.
+     */
+    public ScenarioResult(String name, int robots, long ticks, long simulatedMillis, long stops, long doorCrossings,
+                          long distance, long idleRobotTicks, long doorWaitTicks, String busiestDoor, long charges,
+                          long strandings, long jobsDelivered, long jobWaitTicks, long wallMillis) {
+        this.name = name;
+        this.robots = robots;
+        this.ticks = ticks;
+        this.simulatedMillis = simulatedMillis;
+        this.stops = stops;
+        this.doorCrossings = doorCrossings;
+        this.distance = distance;
+        this.idleRobotTicks = idleRobotTicks;
+        this.doorWaitTicks = doorWaitTicks;
+        this.busiestDoor = busiestDoor;
+        this.charges = charges;
+        this.strandings = strandings;
+        this.jobsDelivered = jobsDelivered;
+        this.jobWaitTicks = jobWaitTicks;
+        this.wallMillis = wallMillis;
+    }
+
+    /**
+     * Gets the name of the scenario, made of the names of its variations.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of robots of the scenario.
+     *
+     * @return The number of robots.
+     */
+    public int getRobots() {
+        return robots;
+    }
+
+    /**
+     * Gets the number of ticks simulated.
+     *
+     * @return The number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the simulated time covered.
+     *
+     * @return The simulated time, in milliseconds.
+     */
+    public long getSimulatedMillis() {
+        return simulatedMillis;
+    }
+
+    /**
+     * Gets the number of destinations other than doors reached by the robots.
+     *
+     * @return The number of stops.
+     */
+    public long getStops() {
+        return stops;
+    }
+
+    /**
+     * Gets the number of doors reached by the robots on their way.
+     *
+     * @return The number of door crossings.
+     */
+    public long getDoorCrossings() {
+        return doorCrossings;
+    }
+
+    /**
+     * Gets the distance covered by the robots, along the x axis plus along the y axis.
+     *
+     * @return The distance.
+     */
+    public long getDistance() {
+        return distance;
+    }
+
+    /**
+     * Gets the number of ticks each robot spent without moving, summed over the robots.
+     *
+     * @return The number of idle robot ticks.
+     */
+    public long getIdleRobotTicks() {
+        return idleRobotTicks;
+    }
+
+    /**
+     * Gets the number of ticks each robot spent waiting for a door reservation, summed over the robots.
+     *
+     * @return The number of door waiting ticks.
+     */
+    public long getDoorWaitTicks() {
+        return doorWaitTicks;
+    }
+
+    /**
+     * Gets the door robots waited for the longest, i.e. the bottleneck of the scenario.
+     *
+     * @return The name of the door, or an empty string if robots never waited for a door.
+     */
+    public String getBusiestDoor() {
+        return busiestDoor;
+    }
+
+    /**
+     * Gets the number of charges completed at the power supply stations.
+     *
+     * @return The number of charges, 0 if robots have no battery.
+     */
+    public long getCharges() {
+        return charges;
+    }
+
+    /**
+     * Gets the number of times a robot ran out of battery away from a station, a sign that stations are missing.
+     *
+     * @return The number of strandings.
+     */
+    public long getStrandings() {
+        return strandings;
+    }
+
+    /**
+     * Gets the number of jobs of the machines delivered by the robots.
+     *
+     * @return The number of jobs, 0 if robots follow their itinerary.
+     */
+    public long getJobsDelivered() {
+        return jobsDelivered;
+    }
+
+    /**
+     * Gets the number of ticks jobs waited for a robot, summed over the jobs, a sign that robots are missing.
+     *
+     * @return The number of waiting ticks.
+     */
+    public long getJobWaitTicks() {
+        return jobWaitTicks;
+    }
+
+    /**
+     * Gets the wall clock time taken by the simulation, decoding and variations included.
+     *
+     * @return The time, in milliseconds.
+     */
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * Gets the throughput of the scenario.
+     *
+     * @return The number of stops per hour of simulated time.
+     */
+    public double getStopsPerHour() {
+        return simulatedMillis > 0 ? stops * 3_600_000.0 / simulatedMillis : 0;
+    }
+
+    /**
+     * Formats the indicators as a CSV line matching {@link #CSV_HEADER}.
+     *
+     * @return The CSV line, without line terminator.
+     */
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%d,%d,%d,%s,%d,%d,%d,%d,%.1f,%d", csv(name), robots, ticks,
+                             simulatedMillis, stops, doorCrossings, distance, idleRobotTicks, doorWaitTicks, csv(busiestDoor),
+                             charges, strandings, jobsDelivered, jobWaitTicks, getStopsPerHour(), wallMillis);
+    }
+
+    /**
+     * Quotes a CSV field if it contains a comma or a quote.
+     */
+    private static String csv(String field) {
+        return field.indexOf(',') >= 0 || field.indexOf('"') >= 0 ? '"' + field.replace("\"", "\"\"") + '"' : field;
+    }
+
+    /**
+     * Escapes a string for a JSON string literal.
+     */
+    private static String json(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Formats the indicators as a JSON object.
+     *
+     * @return The JSON object.
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"scenario\": \"%s\", \"robots\": %d, \"ticks\": %d, \"simulated_ms\": %d, "
+                             + "\"stops\": %d, \"door_crossings\": %d, \"distance\": %d, \"idle_robot_ticks\": %d, "
+                             + "\"door_wait_ticks\": %d, \"busiest_door\": \"%s\", \"charges\": %d, \"strandings\": %d, "
+                             + "\"jobs_delivered\": %d, \"job_wait_ticks\": %d, \"stops_per_hour\": %.1f, \"wall_ms\": %d}",
+                             json(name), robots, ticks, simulatedMillis, stops, doorCrossings, distance, idleRobotTicks,
+                             doorWaitTicks, json(busiestDoor), charges, strandings, jobsDelivered, jobWaitTicks, getStopsPerHour(), wallMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Scénario " + name + " : " + stops + " arrêts (" + String.format("%.1f", getStopsPerHour()) + " / h), "
+               + distance + " de distance parcourue par " + robots + " robots";
+    }
+}
@@ -0,0 +1,312 @@
+package simu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import compo.ChargingScheduler;
+import compo.Component;
+import compo.Door;
+import compo.Factory;
+import compo.Robot;
+import compo.TaskDispatcher;
+import model.Model;
+import model.ModelCodec;
+
+/**
+ * The ScenarioRunner class answers "what if" questions on a model without the viewer: it applies every combination
+ * of a matrix of {@link Variation}s to a base model, simulates each resulting scenario headless for the same number
+ * of ticks, the scenarios running in parallel, and reports the indicators of each as a {@link ScenarioResult}.
+ * The base model is encoded once with {@link ModelCodec}, and its {@link SimulationState} captured; each scenario
+ * decodes its own copy from these shared bytes and restores the state into it, so that it starts where the base
+ * model stands, with the same batteries, detours, jobs and door queues. This is much cheaper than a
+ * deep copy through Java serialization and leaves the base model untouched.
+ */
+public class ScenarioRunner {
+
+    /**
+     * The base model, in the binary format.
+     */
+    private final byte[] image;
+
+    /**
+     * The state of the base model.
+     */
+    private final SimulationState state;
+
+    /**
+     * The dimensions of the matrix of variations: a scenario takes one variation of each dimension.
+     */
+    private final ArrayList<List<Variation>> dimensions = new ArrayList<>();
+
+    /**
+     * The number of scenarios simulated at once.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The simulated time represented by one tick, in milliseconds.
+     */
+    private long tickMillis = SimulationEngine.DEFAULT_TICK_MILLIS;
+
+    /**
+     * Constructs a ScenarioRunner on the given base model. Later changes of the model are not seen by the runner.
+     *
+     * @param base The base model.
+     * @throws IOException If the model cannot be encoded.
+     */
+    public ScenarioRunner(Model base) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelCodec.write(base, out);
+        this.image = out.toByteArray();
+        this.state = SimulationState.capture(base);
+    }
+
+    /**
+     * Adds a dimension to the matrix of variations. Every scenario applies exactly one of the given variations,
+     * so {@link Variation#none()} should be among them to keep scenarios without this change.
+     *
+     * @param variations The alternative variations of the dimension.
+     * @return This runner.
+     */
+    public ScenarioRunner vary(Variation... variations) {
+        if (variations.length == 0) {
+            throw new IllegalArgumentException("A dimension needs at least one variation");
+        }
+        dimensions.add(List.of(variations));
+        return this;
+    }
+
+    /**
+     * Gets all the scenarios of the matrix: every combination of one variation per dimension.
+     *
+     * @return The scenarios, the variations of the last dimension changing first.
+     */
+    public List<List<Variation>> getScenarios() {
+        List<List<Variation>> scenarios = new ArrayList<>();
+        scenarios.add(Collections.emptyList());
+        for (List<Variation> dimension : dimensions) {
+            List<List<Variation>> next = new ArrayList<>(scenarios.size() * dimension.size());
+            for (List<Variation> scenario : scenarios) {
+                for (Variation variation : dimension) {
+                    List<Variation> extended = new ArrayList<>(scenario);
+                    extended.add(variation);
+                    next.add(extended);
+                }
+            }
+            scenarios = next;
+        }
+        return scenarios;
+    }
+
+    /**
+     * Simulates every scenario of the matrix for the given number of ticks, the scenarios running in parallel.
+     *
+     * @param ticks The number of ticks to simulate in each scenario.
+     * @return The results, in the order of {@link #getScenarios()}.
+     * @throws IOException If the base model cannot be decoded.
+     * @throws InterruptedException If the calling thread is interrupted while scenarios are running.
+     */
+    public List<ScenarioResult> run(long ticks) throws IOException, InterruptedException {
+        List<List<Variation>> scenarios = getScenarios();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, scenarios.size())), task -> {
+            Thread thread = new Thread(task, "scenario");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<ScenarioResult>> futures = new ArrayList<>();
+            for (List<Variation> scenario : scenarios) {
+                futures.add(executor.submit(() -> run(scenario, ticks)));
+            }
+            List<ScenarioResult> results = new ArrayList<>();
+            for (Future<ScenarioResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Simulates one scenario on the calling thread.
+     *
+     * @param scenario The variations to apply to the base model, in order.
+     * @param ticks The number of ticks to simulate.
+     * @return The indicators measured on the scenario.
+     * @throws IOException If the base model cannot be decoded.
+     */
+    public ScenarioResult run(List<Variation> scenario, long ticks) throws IOException {
+        long begin = System.nanoTime();
+        Model model = ModelCodec.decode(ByteBuffer.wrap(image));
+        state.restore(model);
+        // Scenarios already keep the processors busy
+        model.setParallelism(1);
+        StringBuilder name = new StringBuilder();
+        for (Variation variation : scenario) {
+            variation.apply(model);
+            if (!Variation.BASE.equals(variation.getName())) {
+                name.append(name.length() > 0 ? " + " : "").append(variation.getName());
+            }
+        }
+
+        List<Robot> robots = new ArrayList<>();
+        for (Component c : model.getCompoList()) {
+            if (c instanceof Robot) {
+                robots.add((Robot) c);
+            }
+        }
+        int n = robots.size();
+        int[] xs = new int[n], ys = new int[n], indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            Robot robot = robots.get(i);
+            xs[i] = robot.getxCoordinate();
+            ys[i] = robot.getyCoordinate();
+            indexes[i] = robot.getIndexOfDestination();
+        }
+
+        SimulationEngine engine = new SimulationEngine(model, tickMillis, SimulationEngine.MAX_SPEED);
+        long stops = 0, doorCrossings = 0, distance = 0, idle = 0;
+        for (long t = 0; t < ticks; t++) {
+            engine.step();
+            for (int i = 0; i < n; i++) {
+                Robot robot = robots.get(i);
+                int x = robot.getxCoordinate(), y = robot.getyCoordinate(), index = robot.getIndexOfDestination();
+                int moved = Math.abs(x - xs[i]) + Math.abs(y - ys[i]);
+                if (moved == 0) {
+                    idle++;
+                }
+                distance += moved;
+                if (index != indexes[i]) {
+                    // The robot reached the destination it was heading to
+                    if (robot.getDestinations().get(indexes[i]) instanceof Door) {
+                        doorCrossings++;
+                    } else {
+                        stops++;
+                    }
+                }
+                xs[i] = x;
+                ys[i] = y;
+                indexes[i] = index;
+            }
+        }
+        long doorWaits = 0, busiestWaits = 0, charges = 0, strandings = 0, jobs = 0, jobWaits = 0;
+        String busiestDoor = "";
+        for (Factory factory : model.getFactories()) {
+            ChargingScheduler scheduler = factory.getChargingScheduler();
+            if (scheduler != null) {
+                charges += scheduler.getCharges();
+                strandings += scheduler.getStrandings();
+            }
+            TaskDispatcher dispatcher = factory.getTaskDispatcher();
+            if (dispatcher != null) {
+                jobs += dispatcher.getDelivered();
+                jobWaits += dispatcher.getWaitTicks();
+            }
+            for (Door door : factory.getDoors()) {
+                long waits = door.getTraffic().getWaitTicks();
+                doorWaits += waits;
+                if (waits > busiestWaits) {
+                    busiestWaits = waits;
+                    busiestDoor = door.getName();
+                }
+            }
+        }
+        return new ScenarioResult(name.length() > 0 ? name.toString() : Variation.BASE, n, ticks, engine.getSimulatedMillis(),
+                                  stops, doorCrossings, distance, idle, doorWaits, busiestDoor, charges, strandings, jobs, jobWaits,
+                                  (System.nanoTime() - begin) / 1_000_000);
+    }
+
+    /**
+     * Writes results as CSV, with a header line.
+     *
+     * @param results The results to write.
+     * @param out The writer to write to; it is not closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void writeCsv(List<ScenarioResult> results, Writer out) throws IOException {
+        out.write(ScenarioResult.CSV_HEADER);
+        out.write('\n');
+        for (ScenarioResult result : results) {
+            out.write(result.toCsv());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes results as a JSON array of objects.
+     *
+     * @param results The results to write.
+     * @param out The writer to write to; it is not closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void writeJson(List<ScenarioResult> results, Writer out) throws IOException {
+        out.write("[");
+        for (int i = 0; i < results.size(); i++) {
+            out.write(i > 0 ? ",\n  " : "\n  ");
+            out.write(results.get(i).toJson());
+        }
+        out.write("\n]\n");
+        out.flush();
+    }
+
+    /**
+     * Gets the number of scenarios simulated at once.
+     *
+     * @return The number of threads running scenarios.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of scenarios simulated at once.
+     *
+     * @param parallelism The number of threads running scenarios, at least 1.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Gets the simulated time represented by one tick.
+     *
+     * @return The tick duration, in milliseconds.
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Sets the simulated time represented by one tick, used to compute the throughput of the scenarios.
+     *
+     * @param tickMillis The tick duration, in milliseconds.
+     */
+    public void setTickMillis(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick duration must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+    }
+}
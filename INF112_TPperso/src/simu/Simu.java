@@ -1,6 +1,7 @@
 package simu;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import model.*;
 import compo.*;
 import control.Controller;
@@ -9,6 +10,7 @@ import fr.tp.inf112.projects.canvas.model.Canvas;
 import fr.tp.inf112.projects.canvas.model.CanvasPersistenceManager;
 import fr.tp.inf112.projects.canvas.view.CanvasViewer;
 import fr.tp.inf112.projects.canvas.view.FileCanvasChooser;
+import view.LayeredCanvasViewer;
 
 
 public class Simu {
@@ -102,6 +104,12 @@ public class Simu {
 	    
 	    
 // Initialisation du MVC
+	    // Avec l'option --layered, le modèle est affiché dans une fenêtre ne redessinant que les robots déplacés
+	    if (Arrays.asList(args).contains("--layered")) {
+	        Controller controller = new Controller((Canvas)myModel, null);
+	        new LayeredCanvasViewer(controller);
+	        return;
+	    }
 	    FileCanvasChooser canvasChooser = new FileCanvasChooser("bin","binary" );
 	    CanvasManager manager = new CanvasManager(canvasChooser);
 	    Controller controller = new Controller((Canvas)myModel, (CanvasPersistenceManager)manager);
@@ -0,0 +1,491 @@
+package simu;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.Model;
+
+/**
+ * The SimulationEngine class drives a model with a fixed-timestep tick loop.
+ * Each tick advances the simulation by the same amount of simulated time, whatever the pace at which
+ * ticks are executed: the engine can run headless as fast as possible, in real time, or at a given
+ * speed factor. It also keeps statistics about the number of ticks executed and the achieved tick rate.
+ * Started engines do not own a thread: each tick is a task of an executor shared by all the engines, which
+ * schedules the next tick when it ends, so that many models can be animated at once by a few threads.
+ */
+public class SimulationEngine {
+
+    /**
+     * Default amount of simulated time represented by one tick, in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    /**
+     * Speed factor running the simulation at the pace of the wall clock.
+     */
+    public static final double REAL_TIME = 1.0;
+
+    /**
+     * Speed factor running the simulation as fast as possible, without any pause between ticks.
+     */
+    public static final double MAX_SPEED = 0.0;
+
+    /**
+     * Maximum delay, in nanoseconds, the loop may fall behind its schedule before it stops trying to catch up.
+     */
+    private static final long MAX_LAG_NANOS = 1_000_000_000L;
+
+    /**
+     * Executor running the ticks of all the started engines, on daemon threads so that it never keeps the JVM alive.
+     */
+    private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+    /**
+     * The model driven by the engine.
+     */
+    private final Model model;
+
+    /**
+     * The simulated time represented by one tick, in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * The ratio between simulated time and wall clock time, or {@link #MAX_SPEED} for no pacing.
+     */
+    private volatile double speedFactor;
+
+    /**
+     * The number of ticks executed since the statistics were last reset. Ticks are executed by one thread at a time,
+     * the statistics are read by any.
+     */
+    private volatile long tickCount;
+
+    /**
+     * The wall clock time, in nanoseconds, at which the statistics were last reset.
+     */
+    private volatile long statStartNanos;
+
+    /**
+     * The wall clock time, in nanoseconds, spent executing ticks since the statistics were last reset.
+     */
+    private volatile long busyNanos;
+
+    /**
+     * The journal recording every tick executed, or null if ticks are not recorded.
+     */
+    private SimulationJournal journal;
+
+    /**
+     * Indicates whether the engine was started and not stopped since.
+     */
+    private volatile boolean running;
+
+    /**
+     * The next tick scheduled on the executor, or null while a tick is executing or when the engine is stopped.
+     * Guarded by the engine.
+     */
+    private Future<?> nextTick;
+
+    /**
+     * The wall clock time, in nanoseconds, at which the next tick is due according to the speed factor.
+     */
+    private long nextTickNanos;
+
+    /**
+     * Released when the tick loop started last has ended.
+     */
+    private volatile CountDownLatch stopped = new CountDownLatch(0);
+
+    /**
+     * The exception that ended the tick loop, or null if it ended normally or is running.
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * Constructs a SimulationEngine running the given model in real time with the default tick duration.
+     *
+     * @param model The model to drive.
+     */
+    public SimulationEngine(Model model) {
+        this(model, DEFAULT_TICK_MILLIS, REAL_TIME);
+    }
+
+    /**
+     * Constructs a SimulationEngine with the specified tick duration and speed factor.
+     *
+     * @param model The model to drive.
+     * @param tickMillis The simulated time represented by one tick, in milliseconds.
+     * @param speedFactor The ratio between simulated and wall clock time, or {@link #MAX_SPEED} to run headless.
+     */
+    public SimulationEngine(Model model, long tickMillis, double speedFactor) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick duration must be positive: " + tickMillis);
+        }
+        this.model = model;
+        this.tickMillis = tickMillis;
+        this.speedFactor = speedFactor;
+        resetStatistics();
+    }
+
+    /**
+     * Executes a single tick of the simulation while the engine is stopped.
+     * The changes of the tick are recorded in the journal of the engine, if any, and observers are told about the
+     * tick even if the frame rate cap of the model would skip it, since no later tick would publish it.
+     *
+     * @throws IllegalStateException If the engine is running: its ticks would race with this one.
+     * @throws UncheckedIOException If the tick cannot be written to the journal.
+     */
+    public synchronized void step() {
+        checkStopped();
+        execute();
+        model.flushChanges();
+    }
+
+    /**
+     * Executes a single tick of the simulation and records it in the journal, if any.
+     *
+     * @throws UncheckedIOException If the tick cannot be written to the journal.
+     */
+    private void execute() {
+        long begin = System.nanoTime();
+        model.behave(true);
+        if (journal != null) {
+            try {
+                journal.record();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        busyNanos += System.nanoTime() - begin;
+        tickCount++;
+    }
+
+    /**
+     * Executes the given number of ticks on the calling thread, as fast as possible, while the engine is stopped.
+     * This is meant for headless runs, e.g. simulating a whole shift for capacity planning; {@link #start()} waits
+     * for the run to end. Observers are told about the last tick even if the frame rate cap of the model skipped it.
+     *
+     * @param ticks The number of ticks to execute.
+     * @throws IllegalStateException If the engine is running: its ticks would race with these.
+     */
+    public synchronized void run(long ticks) {
+        checkStopped();
+        for (long i = 0; i < ticks; i++) {
+            execute();
+        }
+        model.flushChanges();
+    }
+
+    /**
+     * Executes as many ticks as needed to cover the given amount of simulated time, as fast as possible.
+     *
+     * @param simulatedMillis The simulated time to cover, in milliseconds.
+     * @throws IllegalStateException If the engine is running.
+     */
+    public void runFor(long simulatedMillis) {
+        run(simulatedMillis / tickMillis);
+    }
+
+    /**
+     * Checks that the tick loop is not running, nor still ending its last tick, before a tick is executed on the
+     * calling thread.
+     *
+     * @throws IllegalStateException If the tick loop is running.
+     */
+    private void checkStopped() {
+        if (running || stopped.getCount() > 0) {
+            throw new IllegalStateException("The engine is running: stop it before executing ticks");
+        }
+    }
+
+    /**
+     * Starts the simulation and returns at once: ticks are executed by the shared executor until {@link #stop()}
+     * is called. Ticks are paced according to the speed factor; when the loop falls too far behind schedule, it
+     * resynchronizes on the wall clock instead of bursting to catch up.
+     *
+     * @return True if the engine was started, false if it was already running.
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        running = true;
+        failure = null;
+        stopped = new CountDownLatch(1);
+        nextTick = EXECUTOR.submit(() -> {
+            if (!begin()) {
+                return;
+            }
+            try {
+                model.setPlay(true);
+            } catch (RuntimeException ex) {
+                failure = ex;
+                running = false;
+            }
+            nextTickNanos = System.nanoTime();
+            end();
+        });
+        return true;
+    }
+
+    /**
+     * Executes one tick of the loop and schedules the next one.
+     */
+    private void tick() {
+        if (!begin()) {
+            return;
+        }
+        try {
+            execute();
+        } catch (RuntimeException ex) {
+            failure = ex;
+            running = false;
+        }
+        end();
+    }
+
+    /**
+     * Marks the scheduled tick as executing, so that {@link #stop()} lets it end the loop.
+     *
+     * @return False if the loop was stopped in the meantime.
+     */
+    private synchronized boolean begin() {
+        nextTick = null;
+        return running;
+    }
+
+    /**
+     * Schedules the next tick according to the speed factor, or ends the loop if the engine was stopped.
+     */
+    private synchronized void end() {
+        if (!running) {
+            finish(stopped);
+            return;
+        }
+        long delay = 0;
+        long period = getTickPeriodNanos();
+        if (period > 0) {
+            nextTickNanos += period;
+            delay = nextTickNanos - System.nanoTime();
+            if (-delay > MAX_LAG_NANOS) {
+                nextTickNanos = System.nanoTime();
+            }
+        } else {
+            nextTickNanos = System.nanoTime();
+        }
+        nextTick = delay > 0 ? EXECUTOR.schedule(this::tick, delay, TimeUnit.NANOSECONDS) : EXECUTOR.submit(this::tick);
+    }
+
+    /**
+     * Ends the tick loop: the model is told that the animation stopped, unless the engine was started again
+     * in the meantime, then threads waiting for the loop are released.
+     *
+     * @param latch The latch of the loop to end.
+     */
+    private synchronized void finish(CountDownLatch latch) {
+        try {
+            if (!running) {
+                model.setPlay(false);
+            }
+        } catch (RuntimeException ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Requests the tick loop to stop and returns at once. The tick currently executed, if any, is completed,
+     * then the loop ends on the executor; use {@link #awaitStop(long)} to wait for it.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (nextTick != null && nextTick.cancel(false)) {
+            // No tick is executing: end the loop in place of the cancelled one
+            nextTick = null;
+            CountDownLatch latch = stopped;
+            EXECUTOR.execute(() -> finish(latch));
+        }
+    }
+
+    /**
+     * Waits for the tick loop to end after {@link #stop()} was called.
+     *
+     * @param timeoutMillis The maximum time to wait, in milliseconds.
+     * @return True if the loop has ended, false if the timeout elapsed first.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public boolean awaitStop(long timeoutMillis) throws InterruptedException {
+        return stopped.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks if the tick loop is running.
+     *
+     * @return True if the engine was started and not stopped since, false otherwise.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the exception thrown by a tick that ended the loop.
+     *
+     * @return The exception, or null if the last loop was stopped normally or is still running.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Creates the executor shared by the engines, with one daemon thread per processor.
+     *
+     * @return The executor.
+     */
+    private static ScheduledExecutorService createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "simulation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Gets the model driven by the engine.
+     *
+     * @return The model.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Gets the journal recording the ticks executed by the engine.
+     *
+     * @return The journal, or null if ticks are not recorded.
+     */
+    public SimulationJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal recording the ticks executed by the engine. The journal must have been opened on the
+     * model of the engine; it is not closed by the engine.
+     *
+     * @param journal The journal, or null to stop recording.
+     */
+    public void setJournal(SimulationJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Gets the simulated time represented by one tick.
+     *
+     * @return The tick duration, in milliseconds.
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Gets the speed factor of the engine.
+     *
+     * @return The ratio between simulated and wall clock time, or {@link #MAX_SPEED}.
+     */
+    public double getSpeedFactor() {
+        return speedFactor;
+    }
+
+    /**
+     * Sets the speed factor of the engine. It can be changed while the loop is running.
+     *
+     * @param speedFactor The ratio between simulated and wall clock time, or {@link #MAX_SPEED} to run headless.
+     */
+    public void setSpeedFactor(double speedFactor) {
+        this.speedFactor = speedFactor;
+    }
+
+    /**
+     * Gets the wall clock time to wait between two ticks according to the speed factor.
+     *
+     * @return The tick period in nanoseconds, or 0 if ticks are not paced.
+     */
+    private long getTickPeriodNanos() {
+        double factor = speedFactor;
+        if (factor <= 0) {
+            return 0;
+        }
+        return (long) (tickMillis * 1_000_000L / factor);
+    }
+
+    /**
+     * Gets the number of ticks executed since the statistics were last reset.
+     *
+     * @return The number of ticks.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Gets the simulated time covered since the statistics were last reset.
+     *
+     * @return The simulated time, in milliseconds.
+     */
+    public long getSimulatedMillis() {
+        return tickCount * tickMillis;
+    }
+
+    /**
+     * Gets the average number of ticks executed per second of wall clock time since the statistics were last reset.
+     *
+     * @return The effective tick rate.
+     */
+    public double getTicksPerSecond() {
+        long elapsed = System.nanoTime() - statStartNanos;
+        return elapsed > 0 ? tickCount * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * Gets the number of ticks the engine could execute per second if it never paused between ticks.
+     *
+     * @return The tick rate measured on the time actually spent in ticks.
+     */
+    public double getMaxTicksPerSecond() {
+        return busyNanos > 0 ? tickCount * 1e9 / busyNanos : 0;
+    }
+
+    /**
+     * Resets the tick counter and the tick rate statistics.
+     */
+    public void resetStatistics() {
+        tickCount = 0;
+        busyNanos = 0;
+        statStartNanos = System.nanoTime();
+    }
+
+    /**
+     *
+     * @return A string describing the engine statistics.
+     */
+    @Override
+    public String toString() {
+        return "Simulation : " + tickCount + " ticks (" + getSimulatedMillis() / 1000 + " s simulées), "
+               + String.format("%.1f", getTicksPerSecond()) + " ticks/s";
+    }
+}
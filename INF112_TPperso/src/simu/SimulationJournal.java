@@ -0,0 +1,545 @@
+package simu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import compo.Component;
+import compo.Factory;
+import compo.FactoryState;
+import compo.Robot;
+import model.Model;
+import model.ModelCodec;
+
+/**
+ * The SimulationJournal class records the evolution of a model in an append-only binary file, tick by tick.
+ * The journal starts with a full snapshot of the model in the format of {@link ModelCodec}, followed by the
+ * {@link FactoryState} of each factory, then records for each tick the robots that moved or changed destination,
+ * as deltas from their previous state, and the parts of the factory states which changed. A full snapshot is taken
+ * again every given number of ticks, and whenever robots are added or removed or the layout changes, so that the state
+ * of the model at any tick can be restored by decoding the nearest snapshot and replaying the following deltas.
+ * A restored model goes on exactly as the recorded one did: the doors chosen, paths, door reservations, batteries,
+ * detours and jobs of the robots are restored along with their positions.
+ * Records are gathered in a buffer and written to the file in groups, when the buffer is full, when a snapshot
+ * is taken, and when the journal is flushed or closed.
+ *
+ * A journal file is made of a header (a magic number and a format version) followed by records. Each record
+ * holds its type, the tick it describes, the length of its payload and its payload. Ticks during which nothing
+ * changed are not recorded. Journals of version 1, which hold no factory states, can still be restored: the robots
+ * of the restored model then compute their paths again and lose their door reservations, detours and jobs.
+ */
+public class SimulationJournal implements Closeable {
+
+    /**
+     * Magic number starting every journal file: "FJNL".
+     */
+    public static final int MAGIC = 0x464A4E4C;
+
+    /**
+     * Version of the format written by the journal.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Default number of ticks between two full snapshots.
+     */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    /**
+     * Types of the records.
+     */
+    private static final byte SNAPSHOT = 1;
+    private static final byte DELTA = 2;
+
+    /**
+     * Size of the buffer gathering records before they are written, in bytes.
+     */
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    /**
+     * The model recorded.
+     */
+    private final Model model;
+
+    /**
+     * The journal file.
+     */
+    private final Path file;
+
+    /**
+     * The channel writing the journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The number of ticks between two full snapshots.
+     */
+    private final int snapshotInterval;
+
+    /**
+     * Records not written to the file yet.
+     */
+    private final ByteBuffer batch;
+
+    /**
+     * Payload of the record being built.
+     */
+    private final ByteArrayOutputStream payload;
+
+    /**
+     * Changes of the robots during the tick being recorded.
+     */
+    private final ByteArrayOutputStream entries;
+
+    /**
+     * Robots of the model at the last snapshot, in the order of the snapshot.
+     */
+    private Robot[] robots;
+
+    /**
+     * State of each robot as last recorded: position and index of the current destination.
+     */
+    private int[] xs;
+    private int[] ys;
+    private int[] destinationIndexes;
+
+    /**
+     * The state of each factory of the model at the last snapshot, and its parts as last recorded.
+     */
+    private FactoryState[] states;
+    private byte[][][] parts;
+
+    /**
+     * The version of the layout of the model at the last snapshot.
+     */
+    private int layoutVersion;
+
+    /**
+     * Changes of the state of a factory during the tick being recorded.
+     */
+    private final ByteArrayOutputStream stateEntries;
+
+    /**
+     * Robots of the model during the current tick, reused from one tick to the next.
+     */
+    private final ArrayList<Robot> currentRobots;
+
+    /**
+     * The number of ticks recorded.
+     */
+    private long tick;
+
+    /**
+     * The tick of the last snapshot.
+     */
+    private long snapshotTick;
+
+    /**
+     * Opens a journal file, replacing any existing one, and records a snapshot of the current state of the model
+     * as tick 0.
+     *
+     * @param model The model to record.
+     * @param file The journal file.
+     * @param snapshotInterval The number of ticks between two full snapshots.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SimulationJournal(Model model, Path file, int snapshotInterval) throws IOException {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("The snapshot interval must be positive: " + snapshotInterval);
+        }
+        this.model = model;
+        this.file = file;
+        this.snapshotInterval = snapshotInterval;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING);
+        this.batch = ByteBuffer.allocate(BATCH_SIZE);
+        this.payload = new ByteArrayOutputStream();
+        this.entries = new ByteArrayOutputStream();
+        this.stateEntries = new ByteArrayOutputStream();
+        this.currentRobots = new ArrayList<>();
+        batch.putInt(MAGIC);
+        batch.put((byte) VERSION);
+        collectRobots(model, currentRobots);
+        snapshot();
+    }
+
+    /**
+     * Opens a journal file with the default snapshot interval.
+     *
+     * @param model The model to record.
+     * @param file The journal file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public SimulationJournal(Model model, Path file) throws IOException {
+        this(model, file, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Records the changes of the tick just executed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void record() throws IOException {
+        tick++;
+        collectRobots(model, currentRobots);
+        if (tick - snapshotTick >= snapshotInterval || !sameRobots() || model.getLayoutVersion() != layoutVersion) {
+            snapshot();
+            return;
+        }
+        payload.reset();
+        entries.reset();
+        int changes = 0;
+        int previous = -1;
+        for (int i = 0; i < robots.length; i++) {
+            Robot robot = robots[i];
+            int x = robot.getxCoordinate(), y = robot.getyCoordinate(), index = robot.getIndexOfDestination();
+            if (x == xs[i] && y == ys[i] && index == destinationIndexes[i]) {
+                continue;
+            }
+            writeVarint(entries, i - previous - 1);
+            writeVarint(entries, zigzag(x - xs[i]));
+            writeVarint(entries, zigzag(y - ys[i]));
+            writeVarint(entries, index == destinationIndexes[i] ? 0 : index + 1);
+            xs[i] = x;
+            ys[i] = y;
+            destinationIndexes[i] = index;
+            previous = i;
+            changes++;
+        }
+        writeVarint(payload, changes);
+        entries.writeTo(payload);
+        for (int f = 0; f < states.length; f++) {
+            stateEntries.reset();
+            int stateChanges = 0;
+            previous = -1;
+            for (int i = 0; i < parts[f].length; i++) {
+                byte[] part = states[f].captureChange(i, parts[f][i]);
+                if (part == null) {
+                    continue;
+                }
+                writeVarint(stateEntries, i - previous - 1);
+                writeVarint(stateEntries, part.length);
+                stateEntries.write(part, 0, part.length);
+                parts[f][i] = part;
+                previous = i;
+                stateChanges++;
+            }
+            writeVarint(payload, stateChanges);
+            stateEntries.writeTo(payload);
+            changes += stateChanges;
+        }
+        if (changes > 0) {
+            append(DELTA);
+        }
+    }
+
+    /**
+     * Writes the records gathered so far to the journal file.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void flush() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Flushes the journal, forces its contents to the storage device and closes the file.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Restores the state of the model at a tick recorded by this journal, in a new model.
+     *
+     * @param tick The tick to restore, between 0 and the number of ticks recorded.
+     * @return The model as it was at the end of the tick.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Model restore(long tick) throws IOException {
+        flush();
+        return restore(file, tick);
+    }
+
+    /**
+     * Gets the number of ticks recorded.
+     *
+     * @return The number of ticks.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return The path of the file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Restores the state of a model at a given tick from a journal file: the last snapshot taken at or before
+     * the tick is decoded, then the deltas recorded up to the tick are replayed, and the states of the factories
+     * are restored last.
+     *
+     * @param file The journal file.
+     * @param tick The tick to restore.
+     * @return The model as it was at the end of the tick.
+     * @throws IOException If an I/O error occurs, the file is not a journal or the tick precedes the journal.
+     */
+    public static Model restore(Path file, long tick) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a journal file");
+            }
+            int version = in.get();
+            if (version > VERSION) {
+                throw new IOException("Unsupported journal file version " + version);
+            }
+            // Find the last snapshot at or before the tick, skipping the payloads of the other records
+            int snapshot = -1;
+            while (in.hasRemaining()) {
+                int start = in.position();
+                byte type = in.get();
+                long recordTick = readVarlong(in);
+                int length = (int) readVarlong(in);
+                if (recordTick > tick) {
+                    break;
+                }
+                if (type == SNAPSHOT) {
+                    snapshot = start;
+                }
+                in.position(in.position() + length);
+            }
+            if (snapshot < 0) {
+                throw new IOException("No snapshot at or before tick " + tick);
+            }
+            in.position(snapshot + 1);
+            readVarlong(in);
+            int length = (int) readVarlong(in);
+            if (version >= 2) {
+                length = (int) readVarlong(in);
+            }
+            Model model = ModelCodec.decode(in.slice(in.position(), length));
+            in.position(in.position() + length);
+            ArrayList<Robot> robots = new ArrayList<>();
+            collectRobots(model, robots);
+            List<Factory> factories = model.getFactories();
+            byte[][][] parts = new byte[factories.size()][][];
+            if (version >= 2) {
+                for (int f = 0; f < parts.length; f++) {
+                    parts[f] = new byte[(int) readVarlong(in)][];
+                    for (int i = 0; i < parts[f].length; i++) {
+                        parts[f][i] = readBytes(in);
+                    }
+                }
+            }
+
+            // Replay the deltas recorded after the snapshot
+            while (in.hasRemaining()) {
+                byte type = in.get();
+                long recordTick = readVarlong(in);
+                length = (int) readVarlong(in);
+                if (recordTick > tick || type != DELTA) {
+                    break;
+                }
+                int i = -1;
+                for (int changes = (int) readVarlong(in); changes > 0; changes--) {
+                    i += (int) readVarlong(in) + 1;
+                    Robot robot = robots.get(i);
+                    robot.setxCoord(robot.getxCoordinate() + unzigzag((int) readVarlong(in)));
+                    robot.setyCoord(robot.getyCoordinate() + unzigzag((int) readVarlong(in)));
+                    int index = (int) readVarlong(in);
+                    if (index > 0) {
+                        robot.setIndexOfDestination(index - 1);
+                    }
+                }
+                for (int f = 0; version >= 2 && f < parts.length; f++) {
+                    int part = -1;
+                    for (int changes = (int) readVarlong(in); changes > 0; changes--) {
+                        part += (int) readVarlong(in) + 1;
+                        parts[f][part] = readBytes(in);
+                    }
+                }
+            }
+            for (Robot robot : robots) {
+                robot.setRoom(robot.getGoodRoom());
+            }
+            for (int f = 0; version >= 2 && f < parts.length; f++) {
+                new FactoryState(factories.get(f)).restore(parts[f]);
+            }
+            return model;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Corrupted journal file " + file, ex);
+        }
+    }
+
+    /**
+     * Records a full snapshot of the model at the current tick, and writes it out with the records before it.
+     */
+    private void snapshot() throws IOException {
+        payload.reset();
+        entries.reset();
+        ModelCodec.write(model, entries);
+        writeVarint(payload, entries.size());
+        entries.writeTo(payload);
+        List<Factory> factories = model.getFactories();
+        states = new FactoryState[factories.size()];
+        parts = new byte[states.length][][];
+        for (int f = 0; f < states.length; f++) {
+            states[f] = new FactoryState(factories.get(f));
+            parts[f] = states[f].capture();
+            writeVarint(payload, parts[f].length);
+            for (byte[] part : parts[f]) {
+                writeVarint(payload, part.length);
+                payload.write(part, 0, part.length);
+            }
+        }
+        layoutVersion = model.getLayoutVersion();
+        append(SNAPSHOT);
+        flush();
+        robots = currentRobots.toArray(new Robot[0]);
+        xs = new int[robots.length];
+        ys = new int[robots.length];
+        destinationIndexes = new int[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            xs[i] = robots[i].getxCoordinate();
+            ys[i] = robots[i].getyCoordinate();
+            destinationIndexes[i] = robots[i].getIndexOfDestination();
+        }
+        snapshotTick = tick;
+    }
+
+    /**
+     * Appends a record holding the current payload to the batch, writing the batch out first if it is full.
+     */
+    private void append(byte type) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(16);
+        header.write(type);
+        writeVarlong(header, tick);
+        writeVarlong(header, payload.size());
+        int size = header.size() + payload.size();
+        if (size > batch.remaining()) {
+            flush();
+        }
+        if (size > batch.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(size).put(header.toByteArray()).put(payload.toByteArray()).flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } else {
+            batch.put(header.toByteArray());
+            batch.put(payload.toByteArray());
+        }
+    }
+
+    /**
+     * Checks if the robots of the model are the ones of the last snapshot, in the same order.
+     */
+    private boolean sameRobots() {
+        if (currentRobots.size() != robots.length) {
+            return false;
+        }
+        for (int i = 0; i < robots.length; i++) {
+            if (currentRobots.get(i) != robots[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lists the robots of a model, factory by factory, in the order in which {@link ModelCodec} writes them.
+     */
+    private static void collectRobots(Model model, ArrayList<Robot> robots) {
+        robots.clear();
+        for (Factory factory : model.getFactories()) {
+            for (Component c : factory.getComponents()) {
+                if (c instanceof Robot) {
+                    robots.add((Robot) c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an array of bytes preceded by its length.
+     */
+    private static byte[] readBytes(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[(int) readVarlong(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Maps a signed integer to a non-negative one, small negative values being mapped to small positive ones.
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverts {@link #zigzag(int)}.
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a non-negative integer 7 bits at a time, least significant group first.
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a non-negative long integer 7 bits at a time, least significant group first.
+     */
+    private static void writeVarlong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads a varint written by {@link #writeVarlong(ByteArrayOutputStream, long)}.
+     */
+    private static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
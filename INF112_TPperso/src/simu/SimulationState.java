@@ -0,0 +1,381 @@
+package simu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import compo.Component;
+import compo.Factory;
+import compo.FactoryState;
+import compo.Robot;
+import compo.Room;
+import fr.tp.inf112.projects.canvas.model.Figure;
+import model.Layout;
+import model.Model;
+
+/**
+ * The SimulationState class holds the part of a model that changes while it is simulated: the position, speed,
+ * room, battery level and progress along its itinerary of every robot, and the {@link FactoryState} of every factory:
+ * the paths, door reservations, charging detours and jobs of the robots, and the queues of the doors, of the charging
+ * scheduler and of the task dispatcher. The itineraries and rooms refer to the elements of an immutable
+ * {@link Layout} by index, and the factory states refer to components by rank, so a state holds no reference to
+ * components and can be kept, copied and restored cheaply, e.g. to run several scenarios from the same starting
+ * point on one decoded model. Since a decoded model may list its components in another order, layout elements are
+ * found again in the model restored by their rank among the components of the factories, which does not depend on
+ * that order. Copies share the layout, the names, the itineraries and the factory states, which are never changed,
+ * and only duplicate the arrays of positions and indexes.
+ */
+public final class SimulationState {
+
+    /**
+     * The layout the itineraries and rooms refer to.
+     */
+    private final Layout layout;
+
+    /**
+     * The rank of each layout element among the static components of the model, as listed by {@link #rank(Model, FactoryState[])}.
+     */
+    private final int[] ranks;
+
+    /**
+     * The names and itineraries of the robots, as indexes of layout elements, shared between copies.
+     */
+    private final String[] names;
+    private final int[][] itineraries;
+
+    /**
+     * The state of each robot.
+     */
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] speeds;
+    private final int[] rooms;
+    private final int[] destinationIndexes;
+    private final int[] energies;
+
+    /**
+     * The parts of the state of each factory, in the order of the factories of the model, shared between copies.
+     */
+    private final byte[][][] factories;
+
+    /**
+     * Constructs a state from its arrays, without copying them.
+     */
+    private SimulationState(Layout layout, int[] ranks, String[] names, int[][] itineraries, int[] xs, int[] ys,
+                            int[] speeds, int[] rooms, int[] destinationIndexes, int[] energies, byte[][][] factories) {
+        this.layout = layout;
+        this.ranks = ranks;
+        this.names = names;
+        this.itineraries = itineraries;
+        this.xs = xs;
+        this.ys = ys;
+        this.speeds = speeds;
+        this.rooms = rooms;
+        this.destinationIndexes = destinationIndexes;
+        this.energies = energies;
+        this.factories = factories;
+    }
+
+    /**
+     * Captures the current state of the robots of a model.
+     *
+     * @param model The model.
+     * @return The state, referring to the current layout of the model.
+     * @throws IllegalArgumentException If a robot heads to a component which is not part of the layout.
+     */
+    public static SimulationState capture(Model model) {
+        Layout layout = model.getLayout();
+        IdentityHashMap<Figure, Integer> indexes = indexLayout(model);
+        FactoryState[] states = getFactoryStates(model);
+        List<Component> ranked = rank(model, states);
+        IdentityHashMap<Component, Integer> componentRanks = new IdentityHashMap<>();
+        for (int r = 0; r < ranked.size(); r++) {
+            componentRanks.put(ranked.get(r), r);
+        }
+        int[] ranks = new int[layout.size()];
+        int e = 0;
+        for (Figure figure : model.getStaticFigures()) {
+            ranks[e++] = componentRanks.get(figure);
+        }
+        List<Robot> robots = getRobots(model);
+        int n = robots.size();
+        String[] names = new String[n];
+        int[][] itineraries = new int[n][];
+        int[] xs = new int[n], ys = new int[n], speeds = new int[n], rooms = new int[n], destinationIndexes = new int[n];
+        int[] energies = new int[n];
+        for (int i = 0; i < n; i++) {
+            Robot robot = robots.get(i);
+            names[i] = robot.getName();
+            List<Component> itinerary = robot.getDestinations();
+            itineraries[i] = new int[itinerary.size()];
+            for (int d = 0; d < itinerary.size(); d++) {
+                Integer index = indexes.get(itinerary.get(d));
+                if (index == null) {
+                    throw new IllegalArgumentException("Robot " + robot.getName() + " heads to "
+                                                       + itinerary.get(d).getName() + ", which is not part of the layout");
+                }
+                itineraries[i][d] = index;
+            }
+            xs[i] = robot.getxCoordinate();
+            ys[i] = robot.getyCoordinate();
+            speeds[i] = robot.getSpeed();
+            rooms[i] = robot.getRoom() == null ? -1 : indexes.getOrDefault(robot.getRoom(), -1);
+            destinationIndexes[i] = robot.getIndexOfDestination();
+            energies[i] = robot.getEnergy();
+        }
+        byte[][][] factories = new byte[states.length][][];
+        for (int f = 0; f < factories.length; f++) {
+            factories[f] = states[f].capture();
+        }
+        return new SimulationState(layout, ranks, names, itineraries, xs, ys, speeds, rooms, destinationIndexes, energies,
+                                   factories);
+    }
+
+    /**
+     * Restores this state into the robots of a model. The model must have the same layout as the one this state
+     * was captured from, possibly in another copy of the model, e.g. one decoded by the model codec, and the same
+     * factories and robots, in the same order.
+     * The restored model then goes on exactly as the model the state was captured from did.
+     * Observers of the model are notified once.
+     *
+     * @param model The model.
+     * @throws IllegalArgumentException If the model does not match the state.
+     */
+    public void restore(Model model) {
+        List<Robot> robots = getRobots(model);
+        FactoryState[] states = getFactoryStates(model);
+        List<Component> ranked = rank(model, states);
+        if (robots.size() != names.length || model.getStaticFigures().size() != layout.size() || states.length != factories.length) {
+            throw new IllegalArgumentException("Model " + model.getName() + " does not match the state: "
+                                               + robots.size() + " robots, " + model.getStaticFigures().size()
+                                               + " layout elements and " + states.length + " factories instead of "
+                                               + names.length + ", " + layout.size() + " and " + factories.length);
+        }
+        List<Component> elements = new ArrayList<>(ranks.length);
+        for (int rank : ranks) {
+            if (rank >= ranked.size()) {
+                throw new IllegalArgumentException("Model " + model.getName() + " does not match the state: "
+                                                   + ranked.size() + " distinct layout elements instead of more than " + rank);
+            }
+            elements.add(ranked.get(rank));
+        }
+        model.update(() -> {
+            for (Factory factory : model.getFactories()) {
+                // The state is written into the robots themselves
+                factory.releaseFleet();
+            }
+            for (int i = 0; i < names.length; i++) {
+                Robot robot = robots.get(i);
+                if (!sameItinerary(robot.getDestinations(), itineraries[i], elements)) {
+                    ArrayList<Component> itinerary = new ArrayList<>(itineraries[i].length);
+                    for (int index : itineraries[i]) {
+                        itinerary.add(elements.get(index));
+                    }
+                    robot.setDestinations(itinerary);
+                }
+                robot.setxCoord(xs[i]);
+                robot.setyCoord(ys[i]);
+                robot.setSpeed(speeds[i]);
+                robot.setRoom(rooms[i] < 0 ? null : (Room) elements.get(rooms[i]));
+                robot.setIndexOfDestination(destinationIndexes[i]);
+                robot.setEnergy(energies[i]);
+            }
+            for (int f = 0; f < factories.length; f++) {
+                // Sends the robots back on their paths, detours and jobs, and uses the fleet again if it was
+                states[f].restore(factories[f]);
+            }
+        });
+    }
+
+    /**
+     * Copies this state. The copy can be restored after this state is changed, and conversely.
+     *
+     * @return The copy, sharing the layout, names, itineraries and factory states of this state.
+     */
+    public SimulationState copy() {
+        return new SimulationState(layout, ranks, names, itineraries, xs.clone(), ys.clone(), speeds.clone(), rooms.clone(),
+                                   destinationIndexes.clone(), energies.clone(), factories);
+    }
+
+    /**
+     * Gets the layout the state refers to.
+     *
+     * @return The layout.
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the number of robots of the state.
+     *
+     * @return The number of robots.
+     */
+    public int getRobotCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the name of a robot.
+     *
+     * @param robot The index of the robot, in the order of the factories of the model and of their components.
+     * @return The name.
+     */
+    public String getName(int robot) {
+        return names[robot];
+    }
+
+    /**
+     * Gets the x-coordinate of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The x-coordinate.
+     */
+    public int getX(int robot) {
+        return xs[robot];
+    }
+
+    /**
+     * Gets the y-coordinate of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The y-coordinate.
+     */
+    public int getY(int robot) {
+        return ys[robot];
+    }
+
+    /**
+     * Gets the speed of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The speed.
+     */
+    public int getSpeed(int robot) {
+        return speeds[robot];
+    }
+
+    /**
+     * Gets the room of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The index of the room in the layout, or -1 if the robot is in no room.
+     */
+    public int getRoom(int robot) {
+        return rooms[robot];
+    }
+
+    /**
+     * Gets the index of the destination a robot is heading to, within its itinerary.
+     *
+     * @param robot The index of the robot.
+     * @return The index of the destination.
+     */
+    public int getDestinationIndex(int robot) {
+        return destinationIndexes[robot];
+    }
+
+    /**
+     * Gets the energy left in the battery of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The energy, or -1 if the robot has no battery.
+     */
+    public int getEnergy(int robot) {
+        return energies[robot];
+    }
+
+    /**
+     * Gets the itinerary of a robot.
+     *
+     * @param robot The index of the robot.
+     * @return The indexes of the layout elements of the itinerary, doors included.
+     */
+    public int[] getItinerary(int robot) {
+        return itineraries[robot].clone();
+    }
+
+    /**
+     * Gets the robots of a model, in the order of its factories and of their components.
+     */
+    private static List<Robot> getRobots(Model model) {
+        List<Robot> robots = new ArrayList<>();
+        for (Factory factory : model.getFactories()) {
+            for (Component c : factory.getComponents()) {
+                if (c instanceof Robot) {
+                    robots.add((Robot) c);
+                }
+            }
+        }
+        return robots;
+    }
+
+    /**
+     * Builds the state of each factory of a model.
+     */
+    private static FactoryState[] getFactoryStates(Model model) {
+        FactoryState[] states = new FactoryState[model.getFactories().size()];
+        for (int f = 0; f < states.length; f++) {
+            states[f] = new FactoryState(model.getFactories().get(f));
+        }
+        return states;
+    }
+
+    /**
+     * Lists the static components of a model once each: those of each factory in the order of their rank in its
+     * state, then the others in the order of the layout.
+     */
+    private static List<Component> rank(Model model, FactoryState[] states) {
+        List<Component> ranked = new ArrayList<>();
+        Set<Component> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (FactoryState state : states) {
+            for (Component c : state.getComponents()) {
+                if (seen.add(c)) {
+                    ranked.add(c);
+                }
+            }
+        }
+        for (Figure figure : model.getStaticFigures()) {
+            if (seen.add((Component) figure)) {
+                ranked.add((Component) figure);
+            }
+        }
+        return ranked;
+    }
+
+
+    /**
+     * Maps the static components of a model to their index in its layout.
+     */
+    private static IdentityHashMap<Figure, Integer> indexLayout(Model model) {
+        IdentityHashMap<Figure, Integer> indexes = new IdentityHashMap<>();
+        int index = 0;
+        for (Figure figure : model.getStaticFigures()) {
+            // A component listed twice is referred to by its first occurrence
+            indexes.putIfAbsent(figure, index++);
+        }
+        return indexes;
+    }
+
+    /**
+     * Checks if the itinerary of a robot is made of the given layout elements.
+     */
+    private static boolean sameItinerary(List<Component> itinerary, int[] indexes, List<Component> elements) {
+        if (itinerary.size() != indexes.length) {
+            return false;
+        }
+        for (int d = 0; d < indexes.length; d++) {
+            if (itinerary.get(d) != elements.get(indexes[d])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "État de simulation : " + names.length + " robots sur " + layout;
+    }
+}
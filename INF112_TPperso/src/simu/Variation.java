@@ -0,0 +1,225 @@
+package simu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import compo.Component;
+import compo.Factory;
+import compo.PowerSupplyStation;
+import compo.ProductionMachine;
+import compo.Robot;
+import compo.Room;
+import model.Model;
+
+/**
+ * A Variation is a change applied to a copy of a base model before it is simulated by a {@link ScenarioRunner},
+ * such as adding robots or moving a door. Variations are applied to models decoded for them only, so they can
+ * change anything in the model. The static methods of this interface create the usual variations.
+ */
+public interface Variation {
+
+    /**
+     * Name of the variation leaving the model as it is, omitted from the names of scenarios.
+     */
+    String BASE = "base";
+
+    /**
+     * Gets the name of the variation, used to label the results of the scenarios it is part of.
+     *
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Applies the variation to a model.
+     *
+     * @param model The model to change.
+     * @throws IllegalArgumentException If the model has no component the variation refers to.
+     */
+    void apply(Model model);
+
+    /**
+     * Creates a variation with the given name and effect.
+     *
+     * @param name The name of the variation.
+     * @param effect The change applied to the model.
+     * @return The variation.
+     */
+    static Variation of(String name, Consumer<Model> effect) {
+        return new Variation() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public void apply(Model model) {
+                effect.accept(model);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * Creates a variation leaving the model as it is, to compare the other variations with.
+     *
+     * @return The variation.
+     */
+    static Variation none() {
+        return of(BASE, model -> { });
+    }
+
+    /**
+     * Creates a variation adding robots following the same itinerary as a robot of the model.
+     * The robots start where the robot is, heading to destinations spread over the itinerary.
+     *
+     * @param robotName The name of the robot to copy.
+     * @param count The number of robots to add.
+     * @return The variation.
+     */
+    static Variation addRobots(String robotName, int count) {
+        return of("+" + count + " " + robotName, model -> {
+            Robot template = find(model, robotName, Robot.class);
+            List<Component> itinerary = template.getDestinations();
+            for (int i = 1; i <= count; i++) {
+                new Robot(robotName + "+" + i,
+                          template.getxCoordinate() - Component.CANVAS_MARGIN, template.getyCoordinate() - Component.CANVAS_MARGIN,
+                          template.getWidth(), template.getSpeed(), template.getFactory(), template.getRoom(),
+                          new ArrayList<Component>(itinerary),
+                          (template.getIndexOfDestination() + i * itinerary.size() / (count + 1)) % itinerary.size());
+            }
+        });
+    }
+
+    /**
+     * Creates a variation setting the speed of every robot of the model.
+     *
+     * @param speed The new speed of the robots.
+     * @return The variation.
+     */
+    static Variation speed(int speed) {
+        return of("speed " + speed, model -> {
+            for (Component c : model.getCompoList()) {
+                if (c instanceof Robot) {
+                    ((Robot) c).setSpeed(speed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a variation giving new destinations to a robot. The itinerary is calculated again from its current room.
+     *
+     * @param robotName The name of the robot.
+     * @param destinationNames The names of the new destinations, in visiting order.
+     * @return The variation.
+     */
+    static Variation destinations(String robotName, String... destinationNames) {
+        return of(robotName + " -> " + String.join("/", destinationNames), model -> {
+            Robot robot = find(model, robotName, Robot.class);
+            ArrayList<Component> destinations = new ArrayList<Component>();
+            for (String name : destinationNames) {
+                destinations.add(find(model, name, Component.class));
+            }
+            robot.setDestinations(robot.calculateItinerary(destinations));
+            robot.setIndexOfDestination(0);
+        });
+    }
+
+    /**
+     * Creates a variation giving batteries to the robots of every factory of the model, charged at its power supply
+     * stations.
+     *
+     * @param capacity The capacity of the batteries.
+     * @param chargeRate The energy a station gives per tick.
+     * @return The variation.
+     */
+    static Variation batteries(int capacity, int chargeRate) {
+        return of("batteries " + capacity + "/" + chargeRate, model -> {
+            for (Factory factory : model.getFactories()) {
+                factory.setBatteries(capacity, chargeRate);
+            }
+        });
+    }
+
+    /**
+     * Creates a variation adding a power supply station to a room, to size the number of charging points.
+     *
+     * @param stationName The name of the new station.
+     * @param roomName The name of the room.
+     * @param x The x-coordinate of the station, as given to the constructors.
+     * @param y The y-coordinate of the station, as given to the constructors.
+     * @param orientation The orientation of the station ('v' for vertical, 'h' for horizontal).
+     * @return The variation.
+     */
+    static Variation addStation(String stationName, String roomName, int x, int y, char orientation) {
+        return of("+" + stationName, model -> {
+            Room room = find(model, roomName, Room.class);
+            new PowerSupplyStation(stationName, x, y, orientation, room);
+            Factory factory = room.getFactory();
+            if (factory != null) {
+                factory.invalidateLayout();
+            }
+        });
+    }
+
+    /**
+     * Creates a variation making a machine emit transport jobs, and the robots of its factory carry out jobs
+     * instead of following their itinerary.
+     *
+     * @param machineName The name of the machine.
+     * @param destinationName The name of the component the production of the machine is brought to.
+     * @param interval The number of ticks between two jobs.
+     * @return The variation.
+     */
+    static Variation jobs(String machineName, String destinationName, int interval) {
+        return of(machineName + " -> " + destinationName + " / " + interval, model -> {
+            ProductionMachine machine = find(model, machineName, ProductionMachine.class);
+            machine.setJobs(find(model, destinationName, Component.class), interval);
+            Factory factory = machine.getFactory();
+            if (factory != null && !factory.isDispatching()) {
+                factory.setDispatching(true);
+            }
+        });
+    }
+
+    /**
+     * Creates a variation moving a component of the layout, such as a door along its wall or a charging point.
+     * The paths of the robots are planned again around the new layout.
+     *
+     * @param componentName The name of the component.
+     * @param dx The move along the x axis.
+     * @param dy The move along the y axis.
+     * @return The variation.
+     */
+    static Variation move(String componentName, int dx, int dy) {
+        return of("move " + componentName + " (" + dx + ", " + dy + ")", model -> {
+            Component c = find(model, componentName, Component.class);
+            c.setxCoord(c.getxCoordinate() + dx);
+            c.setyCoord(c.getyCoordinate() + dy);
+        });
+    }
+
+    /**
+     * Finds the component of the model with the given name and type.
+     *
+     * @param model The model.
+     * @param name The name of the component.
+     * @param type The expected type of the component.
+     * @return The first component with that name and type.
+     * @throws IllegalArgumentException If the model has no such component.
+     */
+    static <T extends Component> T find(Model model, String name, Class<T> type) {
+        for (Component c : model.getCompoList()) {
+            if (type.isInstance(c) && name.equals(c.getName())) {
+                return type.cast(c);
+            }
+        }
+        throw new IllegalArgumentException("No " + type.getSimpleName() + " named '" + name + "' in model " + model.getName());
+    }
+}
@@ -0,0 +1,287 @@
+package view;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import fr.tp.inf112.projects.canvas.controller.Observer;
+import fr.tp.inf112.projects.canvas.model.Figure;
+import fr.tp.inf112.projects.canvas.model.OvalShape;
+import fr.tp.inf112.projects.canvas.model.RectangleShape;
+import fr.tp.inf112.projects.canvas.model.Shape;
+import fr.tp.inf112.projects.canvas.model.Style;
+import model.DirtyRegion;
+import model.Frame;
+import model.Layout;
+import model.Model;
+
+/**
+ * LayeredCanvasPanel paints a model in two layers. The static figures of the layout (rooms, doors, areas,
+ * machines and stations) are drawn once from the {@link Layout} snapshot of the model into a cached image,
+ * drawn again only when the layout version of the model changes or the panel is resized. On each notification
+ * of the model, only the regions covered by the dynamic figures before and after the tick are repainted: the
+ * cached image is copied there and the dynamic figures are drawn over it. Both layers are drawn from the last
+ * {@link Frame} published by the model, so painting never sees a tick half applied. Figures are drawn the same
+ * way as by the painter of the canvas viewer.
+ */
+@SuppressWarnings("serial")
+public class LayeredCanvasPanel extends JPanel implements Observer {
+
+    /**
+     * Distance between a figure and its label, in pixels.
+     */
+    private static final int LABEL_OFFSET = 4;
+
+    /**
+     * The model painted.
+     */
+    private final Model model;
+
+    /**
+     * The static figures, as drawn for the current size of the panel and layout version of the model.
+     */
+    private BufferedImage staticLayer;
+
+    /**
+     * The layout version of the model the static layer was drawn for.
+     */
+    private int staticLayerVersion;
+
+    /**
+     * AWT strokes and colors of the styles used by the figures, so that painting creates no object.
+     */
+    private final IdentityHashMap<Style, Stroke> strokes = new IdentityHashMap<>();
+    private final IdentityHashMap<Style, Color> strokeColors = new IdentityHashMap<>();
+    private final IdentityHashMap<Style, Color> backgroundColors = new IdentityHashMap<>();
+
+    /**
+     * Constructs a panel painting a model, and registers it as an observer of the model.
+     *
+     * @param model The model to paint.
+     */
+    public LayeredCanvasPanel(Model model) {
+        this.model = model;
+        model.addObserver(this);
+    }
+
+    /**
+     * Gets the model painted by the panel.
+     *
+     * @return The model.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Schedules the repainting of the regions changed by the last notification of the model,
+     * or of the whole panel if the layout changed.
+     */
+    @Override
+    public void modelChanged() {
+        // Read the changes now: the model publishes new ones with its next notification
+        List<DirtyRegion> regions = model.getDirtyRegions();
+        int layoutVersion = model.getLayoutVersion();
+        SwingUtilities.invokeLater(() -> repaintChanges(regions, layoutVersion));
+    }
+
+    /**
+     * Repaints the regions changed, on the event dispatch thread.
+     */
+    private void repaintChanges(List<DirtyRegion> regions, int layoutVersion) {
+        if (regions == null || layoutVersion != staticLayerVersion) {
+            staticLayer = null;
+            repaint();
+            return;
+        }
+        double sx = getScaleX(), sy = getScaleY();
+        FontMetrics metrics = getFontMetrics(getFont());
+        for (DirtyRegion region : regions) {
+            String name = region.getFigure().getName();
+            int labelWidth = name == null ? 0 : metrics.stringWidth(name);
+            int x = (int) (region.getX() * sx);
+            int y = (int) (region.getY() * sy) - LABEL_OFFSET - metrics.getAscent();
+            int width = Math.max((int) Math.ceil(region.getWidth() * sx), labelWidth + (int) (Math.abs(region.getNewX() - region.getOldX()) * sx));
+            int height = (int) Math.ceil(region.getHeight() * sy) + LABEL_OFFSET + metrics.getAscent();
+            // Strokes are drawn centered on the outline, so they overflow the bounds by half their thickness
+            repaint(x - 2, y - 2, width + 5, height + 5);
+        }
+    }
+
+    /**
+     * Paints the cached static layer, drawing it first if needed, then the dynamic figures within the clip.
+     *
+     * @param painter The graphics to paint with.
+     */
+    @Override
+    protected void paintComponent(Graphics painter) {
+        super.paintComponent(painter);
+        double sx = getScaleX(), sy = getScaleY();
+        Frame frame = model.getFrame();
+        if (staticLayer == null || staticLayer.getWidth() != getWidth() || staticLayer.getHeight() != getHeight()
+            || staticLayerVersion != frame.getLayout().getVersion()) {
+            drawStaticLayer(frame.getLayout(), sx, sy);
+        }
+        painter.drawImage(staticLayer, 0, 0, null);
+        // The frame is immutable: the robots are drawn as they were at the end of the same tick
+        Rectangle clip = painter.getClipBounds();
+        FontMetrics metrics = painter.getFontMetrics();
+        for (int i = 0; i < frame.getRobotCount(); i++) {
+            Figure figure = frame.getRobotFigure(i);
+            if (clip == null || intersects(clip, figure, sx, sy, metrics)) {
+                paint(painter, figure, sx, sy);
+            }
+        }
+    }
+
+    /**
+     * Checks if a figure, its label and its stroke overlap the given clip.
+     */
+    private static boolean intersects(Rectangle clip, Figure figure, double sx, double sy, FontMetrics metrics) {
+        Shape shape = figure.getShape();
+        int width = shape instanceof RectangleShape ? ((RectangleShape) shape).getWidth()
+                  : shape instanceof OvalShape ? ((OvalShape) shape).getWidth() : 0;
+        int height = shape instanceof RectangleShape ? ((RectangleShape) shape).getHeight()
+                   : shape instanceof OvalShape ? ((OvalShape) shape).getHeight() : 0;
+        int labelWidth = figure.getName() == null ? 0 : metrics.stringWidth(figure.getName());
+        int top = LABEL_OFFSET + metrics.getAscent();
+        return clip.intersects((int) (figure.getxCoordinate() * sx) - 2, (int) (figure.getyCoordinate() * sy) - top - 2,
+                               Math.max((int) Math.ceil(width * sx), labelWidth) + 5, (int) Math.ceil(height * sy) + top + 5);
+    }
+
+    /**
+     * Draws the canvas and the static figures into the cached image. The layout snapshot is immutable,
+     * so it is drawn without racing with edits of the model.
+     */
+    private void drawStaticLayer(Layout layout, double sx, double sy) {
+        BufferedImage image = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D painter = image.createGraphics();
+        try {
+            painter.setFont(getFont());
+            painter.setColor(getBackground());
+            painter.fillRect(0, 0, image.getWidth(), image.getHeight());
+            Style style = model.getStyle();
+            painter.setColor(Color.BLACK);
+            applyStroke(painter, style);
+            int width = (int) (model.getWidth() * sx), height = (int) (model.getHeight() * sy);
+            painter.drawRect(0, 0, width, height);
+            Color background = getBackgroundColor(style);
+            if (background != null) {
+                painter.setColor(background);
+                painter.fillRect(0, 0, width, height);
+            }
+            for (Figure figure : layout.getFigures()) {
+                paint(painter, figure, sx, sy);
+            }
+        } finally {
+            painter.dispose();
+        }
+        staticLayer = image;
+        staticLayerVersion = layout.getVersion();
+    }
+
+    /**
+     * Paints a figure: its label, its outline with the stroke of its style, and its inside with the
+     * background color of its style.
+     */
+    private void paint(Graphics painter, Figure figure, double sx, double sy) {
+        Color color = painter.getColor();
+        Stroke stroke = painter instanceof Graphics2D ? ((Graphics2D) painter).getStroke() : null;
+        Style style = figure.getStyle();
+        applyStroke(painter, style);
+
+        int x = (int) (figure.getxCoordinate() * sx);
+        int y = (int) (figure.getyCoordinate() * sy);
+        if (figure.getName() != null) {
+            painter.drawString(figure.getName(), x, y - LABEL_OFFSET);
+        }
+        Shape shape = figure.getShape();
+        Color background = getBackgroundColor(style);
+        if (shape instanceof RectangleShape) {
+            int width = (int) (((RectangleShape) shape).getWidth() * sx);
+            int height = (int) (((RectangleShape) shape).getHeight() * sy);
+            painter.drawRect(x, y, width, height);
+            if (background != null) {
+                painter.setColor(background);
+                painter.fillRect(x, y, width, height);
+            }
+        } else if (shape instanceof OvalShape) {
+            int width = (int) (((OvalShape) shape).getWidth() * sx);
+            int height = (int) (((OvalShape) shape).getHeight() * sy);
+            painter.drawOval(x, y, width, height);
+            if (background != null) {
+                painter.setColor(background);
+                painter.fillOval(x, y, width, height);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown figure shape '" + shape + "'!");
+        }
+
+        if (stroke != null) {
+            ((Graphics2D) painter).setStroke(stroke);
+        }
+        painter.setColor(color);
+    }
+
+    /**
+     * Sets the stroke and the stroke color of a style, if any.
+     */
+    private void applyStroke(Graphics painter, Style style) {
+        if (style == null || style.getStroke() == null) {
+            return;
+        }
+        fr.tp.inf112.projects.canvas.model.Stroke stroke = style.getStroke();
+        if (painter instanceof Graphics2D && stroke.getThickness() > 0) {
+            ((Graphics2D) painter).setStroke(strokes.computeIfAbsent(style, s -> new BasicStroke(
+                    stroke.getThickness(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_MITER, 10.0f, stroke.getDashPattern(), 0.0f)));
+        }
+        Color color = strokeColors.computeIfAbsent(style, s -> toAwt(stroke.getColor()));
+        if (color != null) {
+            painter.setColor(color);
+        }
+    }
+
+    /**
+     * Gets the background color of a style, or null if figures of this style are not filled.
+     */
+    private Color getBackgroundColor(Style style) {
+        if (style == null) {
+            return null;
+        }
+        return backgroundColors.computeIfAbsent(style, s -> toAwt(s.getBackgroundColor()));
+    }
+
+    /**
+     * Converts a color of the canvas model to an AWT color, or null if it is not a valid color.
+     */
+    private static Color toAwt(fr.tp.inf112.projects.canvas.model.Color color) {
+        if (color == null || color.getRedComponent() < 0 || color.getGreenComponent() < 0 || color.getBlueComponent() < 0) {
+            return null;
+        }
+        return new Color(color.getRedComponent(), color.getGreenComponent(), color.getBlueComponent());
+    }
+
+    /**
+     * Gets the ratio between the width of the panel and the width of the model.
+     */
+    private double getScaleX() {
+        return (double) getWidth() / model.getWidth();
+    }
+
+    /**
+     * Gets the ratio between the height of the panel and the height of the model.
+     */
+    private double getScaleY() {
+        return (double) getHeight() / model.getHeight();
+    }
+}
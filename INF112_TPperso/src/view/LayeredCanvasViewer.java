@@ -0,0 +1,105 @@
+package view;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
+
+import fr.tp.inf112.projects.canvas.controller.CanvasViewerController;
+import fr.tp.inf112.projects.canvas.controller.Observer;
+import model.Model;
+
+/**
+ * LayeredCanvasViewer is a window showing a model in a {@link LayeredCanvasPanel}, with buttons to start and stop
+ * its animation through a controller. It is meant for large models, which the canvas viewer repaints entirely on
+ * each tick; it does not open nor save models.
+ */
+@SuppressWarnings("serial")
+public class LayeredCanvasViewer extends JFrame implements Observer {
+
+    /**
+     * The controller animating the model.
+     */
+    private final CanvasViewerController controller;
+
+    /**
+     * The panel painting the model.
+     */
+    private final LayeredCanvasPanel canvasPanel;
+
+    /**
+     * The buttons starting and stopping the animation.
+     */
+    private final JButton startButton = new JButton("Démarrer");
+    private final JButton stopButton = new JButton("Arrêter");
+
+    /**
+     * Constructs a window showing the model of a controller, and makes it visible.
+     *
+     * @param controller The controller of the model, whose canvas must be a {@link Model}.
+     */
+    public LayeredCanvasViewer(CanvasViewerController controller) {
+        super(controller.getCanvas().getName());
+        this.controller = controller;
+        Model model = (Model) controller.getCanvas();
+        canvasPanel = new LayeredCanvasPanel(model);
+        canvasPanel.setPreferredSize(new Dimension(model.getWidth(), model.getHeight()));
+
+        startButton.addActionListener(e -> {
+            controller.startAnimation();
+            modelChanged();
+        });
+        stopButton.addActionListener(e -> {
+            controller.stopAnimation();
+            modelChanged();
+        });
+        JToolBar toolBar = new JToolBar();
+        toolBar.setFloatable(false);
+        toolBar.add(startButton);
+        toolBar.add(stopButton);
+
+        getContentPane().add(toolBar, BorderLayout.NORTH);
+        getContentPane().add(canvasPanel, BorderLayout.CENTER);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        controller.addObserver(this);
+        modelChanged();
+        pack();
+        setLocationRelativeTo(null);
+        setVisible(true);
+    }
+
+    /**
+     * Gets the panel painting the model.
+     *
+     * @return The panel.
+     */
+    public LayeredCanvasPanel getCanvasPanel() {
+        return canvasPanel;
+    }
+
+    /**
+     * Enables the button matching the state of the animation; the panel repaints the model by itself.
+     */
+    @Override
+    public void modelChanged() {
+        boolean running = controller.isAnimationRunning();
+        SwingUtilities.invokeLater(() -> {
+            startButton.setEnabled(!running);
+            stopButton.setEnabled(running);
+        });
+    }
+
+    /**
+     * Stops the animation and closes the window, unregistering it and its panel from the model.
+     */
+    @Override
+    public void dispose() {
+        controller.stopAnimation();
+        controller.removeObserver(this);
+        canvasPanel.getModel().removeObserver(canvasPanel);
+        super.dispose();
+    }
+}